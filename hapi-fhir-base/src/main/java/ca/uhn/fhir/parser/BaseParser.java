@@ -44,6 +44,7 @@ import org.apache.commons.lang3.StringUtils;
 import org.apache.commons.lang3.Validate;
 import org.hl7.fhir.instance.model.api.IAnyResource;
 import org.hl7.fhir.instance.model.api.IBase;
+import org.hl7.fhir.instance.model.api.IBaseBundle;
 import org.hl7.fhir.instance.model.api.IBaseCoding;
 import org.hl7.fhir.instance.model.api.IBaseElement;
 import org.hl7.fhir.instance.model.api.IBaseHasExtensions;
@@ -93,6 +94,8 @@ public abstract class BaseParser implements IParser {
 	private IIdType myEncodeForceResourceId;
 	private IParserErrorHandler myErrorHandler;
 	private boolean myOmitResourceId;
+	private IBaseBundle myStreamingBundle;
+	private Iterator<? extends IBase> myStreamingBundleEntries;
 	private List<Class<? extends IBaseResource>> myPreferTypes;
 	private String myServerBaseUrl;
 	private Boolean myStripVersionsFromReferences;
@@ -378,6 +381,33 @@ public abstract class BaseParser implements IParser {
 		doEncodeBundleToWriter(theBundle, theWriter);
 	}
 
+	/**
+	 * Encodes a Bundle resource to the given writer, taking the bundle entries from the given iterator instead of
+	 * from the bundle itself (any entries already present in <code>theBundle</code> are ignored). Each entry is
+	 * encoded as it is returned by the iterator, so this can be used to encode very large bundles without
+	 * holding all of the entry resources in memory at once.
+	 * 
+	 * @param theBundle
+	 *           The bundle "envelope" (type, total, links, etc.). Must not be null.
+	 * @param theEntries
+	 *           The bundle entries (e.g. <code>Bundle.BundleEntryComponent</code> for DSTU3). Must not be null.
+	 * @param theWriter
+	 *           The writer to encode to. Must not be null.
+	 * @since 2.3
+	 */
+	public void encodeBundleToWriter(IBaseBundle theBundle, Iterator<? extends IBase> theEntries, Writer theWriter) throws IOException, DataFormatException {
+		Validate.notNull(theBundle, "theBundle must not be null");
+		Validate.notNull(theEntries, "theEntries must not be null");
+		myStreamingBundle = theBundle;
+		myStreamingBundleEntries = theEntries;
+		try {
+			encodeResourceToWriter(theBundle, theWriter);
+		} finally {
+			myStreamingBundle = null;
+			myStreamingBundleEntries = null;
+		}
+	}
+
 	@Override
 	public String encodeResourceToString(IBaseResource theResource) throws DataFormatException {
 		Writer stringWriter = new StringWriter();
@@ -707,6 +737,19 @@ public abstract class BaseParser implements IParser {
 		return parseTagList(new StringReader(theString));
 	}
 
+	/**
+	 * If the given child is the <code>entry</code> child of a bundle being encoded by
+	 * {@link #encodeBundleToWriter(IBaseBundle, Iterator, Writer)}, returns the iterator which should supply the
+	 * entries to encode. Otherwise returns <code>null</code>, meaning that the values of the child should be encoded
+	 * normally.
+	 */
+	protected Iterator<? extends IBase> getStreamingBundleEntries(IBase theElement, BaseRuntimeChildDefinition theChild) {
+		if (theElement != null && theElement == myStreamingBundle && "entry".equals(theChild.getElementName())) {
+			return myStreamingBundleEntries;
+		}
+		return null;
+	}
+
 	protected List<? extends IBase> preProcessValues(BaseRuntimeChildDefinition theMetaChildUncast, IBaseResource theResource, List<? extends IBase> theValues,
 			CompositeChildElement theCompositeChildElement) {
 		if (myContext.getVersion().getVersion().isRi()) {
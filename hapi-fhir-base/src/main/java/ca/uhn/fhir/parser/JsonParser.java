@@ -56,6 +56,7 @@ import ca.uhn.fhir.parser.json.JsonLikeValue;
 import ca.uhn.fhir.parser.json.JsonLikeWriter;
 import ca.uhn.fhir.parser.json.JsonLikeValue.ScalarType;
 import ca.uhn.fhir.parser.json.JsonLikeValue.ValueType;
+import ca.uhn.fhir.parser.json.StreamingJsonStructure;
 import ca.uhn.fhir.rest.server.EncodingEnum;
 import ca.uhn.fhir.util.ElementUtil;
 
@@ -206,7 +207,7 @@ public class JsonParser extends BaseParser implements IJsonLikeParser {
 
 	@Override
 	public <T extends IBaseResource> T doParseResource(Class<T> theResourceType, Reader theReader) {
-		JsonLikeStructure jsonStructure = new GsonStructure();
+		JsonLikeStructure jsonStructure = new StreamingJsonStructure();
 		jsonStructure.load(theReader);
 		
 		T retVal = doParseResource(theResourceType, jsonStructure);
@@ -591,6 +592,12 @@ public class JsonParser extends BaseParser implements IJsonLikeParser {
 				continue;
 			}
 
+			Iterator<? extends IBase> streamingEntries = getStreamingBundleEntries(theElement, nextChild);
+			if (streamingEntries != null) {
+				encodeStreamingBundleEntries(theResDef, theResource, theEventWriter, nextChild, nextChildElem, streamingEntries);
+				continue;
+			}
+
 			List<? extends IBase> values = nextChild.getAccessor().getValues(theElement);
 			values = super.preProcessValues(nextChild, theResource, values, nextChildElem);
 
@@ -759,6 +766,29 @@ public class JsonParser extends BaseParser implements IJsonLikeParser {
 		}
 	}
 
+	private void encodeStreamingBundleEntries(RuntimeResourceDefinition theResDef, IBaseResource theResource, JsonLikeWriter theEventWriter, BaseRuntimeChildDefinition theChild, CompositeChildElement theChildElem,
+			Iterator<? extends IBase> theEntries) throws IOException {
+		boolean inArray = false;
+		while (theEntries.hasNext()) {
+			IBase nextValue = theEntries.next();
+			if (nextValue == null || nextValue.isEmpty()) {
+				continue;
+			}
+			BaseParser.ChildNameAndDef childNameAndDef = super.getChildNameAndDef(theChild, nextValue);
+			if (childNameAndDef == null) {
+				continue;
+			}
+			if (!inArray) {
+				beginArray(theEventWriter, childNameAndDef.getChildName());
+				inArray = true;
+			}
+			encodeChildElementToStreamWriter(theResDef, theResource, theEventWriter, nextValue, childNameAndDef.getChildDef(), null, false, theChildElem, false);
+		}
+		if (inArray) {
+			theEventWriter.endArray();
+		}
+	}
+
 	private void encodeCompositeElementToStreamWriter(RuntimeResourceDefinition theResDef, IBaseResource theResource, IBase theNextValue, JsonLikeWriter theEventWriter, boolean theContainedResource, CompositeChildElement theParent) throws IOException, DataFormatException {
 
 		writeCommentsPreAndPost(theNextValue, theEventWriter);
@@ -1136,7 +1166,7 @@ public class JsonParser extends BaseParser implements IJsonLikeParser {
 
 	@Override
 	public <T extends IBaseResource> Bundle parseBundle(Class<T> theResourceType, Reader theReader) {
-		JsonLikeStructure jsonStructure = new GsonStructure();
+		JsonLikeStructure jsonStructure = new StreamingJsonStructure();
 		jsonStructure.load(theReader);
 		
 		Bundle retVal = parseBundle(theResourceType, jsonStructure);
@@ -1514,7 +1544,7 @@ public class JsonParser extends BaseParser implements IJsonLikeParser {
 
 	@Override
 	public TagList parseTagList(Reader theReader) {
-		JsonLikeStructure jsonStructure = new GsonStructure();
+		JsonLikeStructure jsonStructure = new StreamingJsonStructure();
 		jsonStructure.load(theReader);
 		
 		TagList retVal = parseTagList(jsonStructure);
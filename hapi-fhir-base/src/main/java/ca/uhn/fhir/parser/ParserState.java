@@ -174,6 +174,15 @@ class ParserState<T> {
 		return StringUtils.equals(theExpect, theActual);
 	}
 
+	/**
+	 * Returns <code>true</code> if the current state is interested in {@link #xmlEvent(XMLEvent)} callbacks (i.e. it is
+	 * capturing embedded XHTML content). Parsers which do not otherwise need event objects may skip creating them when
+	 * this returns <code>false</code>, since all other states ignore them.
+	 */
+	public boolean isCapturingXmlEvents() {
+		return myState != null && myState.isCapturingXmlEvents();
+	}
+
 	/**
 	 * Invoked after any new XML event is individually processed, containing a copy of the XML event. This is basically
 	 * intended for embedded XHTML content
@@ -856,6 +865,13 @@ class ParserState<T> {
 			// allow an implementor to override
 		}
 
+		/**
+		 * @see ParserState#isCapturingXmlEvents()
+		 */
+		public boolean isCapturingXmlEvents() {
+			return false;
+		}
+
 		/**
 		 * @param theNextEvent
 		 *           The XML event
@@ -2608,6 +2624,11 @@ class ParserState<T> {
 			return myDt;
 		}
 
+		@Override
+		public boolean isCapturingXmlEvents() {
+			return !myJsonMode;
+		}
+
 		@Override
 		public void xmlEvent(XMLEvent theEvent) {
 			if (theEvent.isEndElement()) {
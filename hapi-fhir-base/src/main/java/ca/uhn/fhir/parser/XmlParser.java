@@ -31,11 +31,10 @@ import java.util.ArrayList;
 import java.util.Iterator;
 import java.util.List;
 
-import javax.xml.namespace.QName;
 import javax.xml.stream.FactoryConfigurationError;
-import javax.xml.stream.XMLEventReader;
 import javax.xml.stream.XMLStreamConstants;
 import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
 import javax.xml.stream.XMLStreamWriter;
 import javax.xml.stream.events.Attribute;
 import javax.xml.stream.events.Characters;
@@ -128,9 +127,9 @@ public class XmlParser extends BaseParser implements IParser {
 		myContext = theContext;
 	}
 
-	private XMLEventReader createStreamReader(Reader theReader) {
+	private XMLStreamReader createStreamReader(Reader theReader) {
 		try {
-			return XmlUtil.createXmlReader(theReader);
+			return XmlUtil.createXmlStreamReader(theReader);
 		} catch (FactoryConfigurationError e1) {
 			throw new ConfigurationException("Failed to initialize STaX event factory", e1);
 		} catch (XMLStreamException e1) {
@@ -184,49 +183,48 @@ public class XmlParser extends BaseParser implements IParser {
 
 	@Override
 	public <T extends IBaseResource> T doParseResource(Class<T> theResourceType, Reader theReader) {
-		XMLEventReader streamReader = createStreamReader(theReader);
+		XMLStreamReader streamReader = createStreamReader(theReader);
 		return parseResource(theResourceType, streamReader);
 	}
 
-	private <T> T doXmlLoop(XMLEventReader streamReader, ParserState<T> parserState) {
+	private <T> T doXmlLoop(XMLStreamReader streamReader, ParserState<T> parserState) {
 		ourLog.trace("Entering XML parsing loop with state: {}", parserState);
 
 		try {
 			List<String> heldComments = new ArrayList<String>(1);
 
-			while (streamReader.hasNext()) {
-				XMLEvent nextEvent = streamReader.nextEvent();
+			/*
+			 * Set to true when the reader has already been advanced to the next
+			 * event (which happens when we look past the end of a run of text)
+			 */
+			boolean haveNextEvent = false;
+
+			while (haveNextEvent || streamReader.hasNext()) {
+				int eventType = haveNextEvent ? streamReader.getEventType() : streamReader.next();
+				haveNextEvent = false;
+				String text = null;
 				try {
 
-					switch (nextEvent.getEventType()) {
+					switch (eventType) {
 					case XMLStreamConstants.START_ELEMENT: {
-						StartElement elem = nextEvent.asStartElement();
-
-						String namespaceURI = elem.getName().getNamespaceURI();
-
-						if ("extension".equals(elem.getName().getLocalPart())) {
-							Attribute urlAttr = elem.getAttributeByName(new QName("url"));
-							String url;
-							if (urlAttr == null || isBlank(urlAttr.getValue())) {
+						String localPart = streamReader.getLocalName();
+						if ("extension".equals(localPart)) {
+							String url = getUrlAttribute(streamReader);
+							if (isBlank(url)) {
 								getErrorHandler().missingRequiredElement(new ParseLocation("extension"), "url");
 								url = null;
-							} else {
-								url = urlAttr.getValue();
 							}
-							parserState.enteringNewElementExtension(elem, url, false);
-						} else if ("modifierExtension".equals(elem.getName().getLocalPart())) {
-							Attribute urlAttr = elem.getAttributeByName(new QName("url"));
-							String url;
-							if (urlAttr == null || isBlank(urlAttr.getValue())) {
+							parserState.enteringNewElementExtension(null, url, false);
+						} else if ("modifierExtension".equals(localPart)) {
+							String url = getUrlAttribute(streamReader);
+							if (isBlank(url)) {
 								getErrorHandler().missingRequiredElement(new ParseLocation("modifierExtension"), "url");
 								url = null;
-							} else {
-								url = urlAttr.getValue();
 							}
-							parserState.enteringNewElementExtension(elem, url, true);
+							parserState.enteringNewElementExtension(null, url, true);
 						} else {
-							String elementName = elem.getName().getLocalPart();
-							parserState.enteringNewElement(namespaceURI, elementName);
+							String namespaceURI = StringUtils.defaultString(streamReader.getNamespaceURI());
+							parserState.enteringNewElement(namespaceURI, localPart);
 						}
 
 						if (!heldComments.isEmpty()) {
@@ -236,11 +234,8 @@ public class XmlParser extends BaseParser implements IParser {
 							heldComments.clear();
 						}
 
-						@SuppressWarnings("unchecked")
-						Iterator<Attribute> attributes = elem.getAttributes();
-						for (Iterator<Attribute> iter = attributes; iter.hasNext();) {
-							Attribute next = iter.next();
-							parserState.attributeValue(next.getName().getLocalPart(), next.getValue());
+						for (int i = 0; i < streamReader.getAttributeCount(); i++) {
+							parserState.attributeValue(streamReader.getAttributeLocalName(i), streamReader.getAttributeValue(i));
 						}
 
 						break;
@@ -254,27 +249,49 @@ public class XmlParser extends BaseParser implements IParser {
 							heldComments.clear();
 						}
 						parserState.endingElement();
-//						if (parserState.isComplete()) {
-//							return parserState.getObject();
-//						}
 						break;
 					}
 					case XMLStreamConstants.CHARACTERS: {
-						parserState.string(nextEvent.asCharacters().getData());
+						/*
+						 * The cursor API may split a run of text into several events (e.g. at entity
+						 * references or buffer boundaries) where the event API would report a single
+						 * one, so join them up to give the parser state the same callbacks
+						 */
+						text = streamReader.getText();
+						StringBuilder joined = null;
+						while (streamReader.hasNext()) {
+							if (streamReader.next() != XMLStreamConstants.CHARACTERS) {
+								haveNextEvent = true;
+								break;
+							}
+							if (joined == null) {
+								joined = new StringBuilder(text);
+							}
+							joined.append(streamReader.getText());
+						}
+						if (joined != null) {
+							text = joined.toString();
+						}
+						parserState.string(text);
 						break;
 					}
 					case XMLStreamConstants.COMMENT: {
-						Comment comment = (Comment) nextEvent;
-						String commentText = comment.getText();
-						heldComments.add(commentText);
+						heldComments.add(streamReader.getText());
 						break;
 					}
 					}
 
-					parserState.xmlEvent(nextEvent);
+					/*
+					 * Only XHTML content needs the actual event objects, so we avoid creating
+					 * them for everything else
+					 */
+					if (parserState.isCapturingXmlEvents()) {
+						XMLEvent event = text != null ? XmlUtil.createXmlCharactersEvent(text) : XmlUtil.createXmlEvent(streamReader);
+						parserState.xmlEvent(event);
+					}
 
 				} catch (DataFormatException e) {
-					throw new DataFormatException("DataFormatException at [" + nextEvent.getLocation().toString() + "]: " + e.getMessage(), e);
+					throw new DataFormatException("DataFormatException at [" + streamReader.getLocation().toString() + "]: " + e.getMessage(), e);
 				}
 			}
 			return parserState.getObject();
@@ -633,8 +650,21 @@ public class XmlParser extends BaseParser implements IParser {
 				}
 			}
 
+			Iterator<? extends IBase> streamingEntries = getStreamingBundleEntries(theElement, nextChild);
+
 			if (nextChild instanceof RuntimeChildContainedResources) {
 				encodeChildElementToStreamWriter(theResource, theEventWriter, null, nextChild.getChildNameByDatatype(null), nextChild.getChildElementDefinitionByDatatype(null), null, theContainedResource, nextChildElem);
+			} else if (streamingEntries != null) {
+				while (streamingEntries.hasNext()) {
+					IBase nextValue = streamingEntries.next();
+					if (nextValue == null || nextValue.isEmpty()) {
+						continue;
+					}
+					BaseParser.ChildNameAndDef childNameAndDef = super.getChildNameAndDef(nextChild, nextValue);
+					if (childNameAndDef != null) {
+						encodeChildElementToStreamWriter(theResource, theEventWriter, nextValue, childNameAndDef.getChildName(), childNameAndDef.getChildDef(), null, theContainedResource, nextChildElem);
+					}
+				}
 			} else {
 
 				List<? extends IBase> values = nextChild.getAccessor().getValues(theElement);
@@ -1036,29 +1066,38 @@ public class XmlParser extends BaseParser implements IParser {
 
 	@Override
 	public <T extends IBaseResource> Bundle parseBundle(Class<T> theResourceType, Reader theReader) {
-		XMLEventReader streamReader = createStreamReader(theReader);
+		XMLStreamReader streamReader = createStreamReader(theReader);
 
 		return parseBundle(streamReader, theResourceType);
 	}
 
-	private Bundle parseBundle(XMLEventReader theStreamReader, Class<? extends IBaseResource> theResourceType) {
+	private Bundle parseBundle(XMLStreamReader theStreamReader, Class<? extends IBaseResource> theResourceType) {
 		ParserState<Bundle> parserState = ParserState.getPreAtomInstance(this, myContext, theResourceType, false, getErrorHandler());
 		return doXmlLoop(theStreamReader, parserState);
 	}
 
-	private <T extends IBaseResource> T parseResource(Class<T> theResourceType, XMLEventReader theStreamReader) {
+	private <T extends IBaseResource> T parseResource(Class<T> theResourceType, XMLStreamReader theStreamReader) {
 		ParserState<T> parserState = ParserState.getPreResourceInstance(this, theResourceType, myContext, false, getErrorHandler());
 		return doXmlLoop(theStreamReader, parserState);
 	}
 
 	@Override
 	public TagList parseTagList(Reader theReader) {
-		XMLEventReader streamReader = createStreamReader(theReader);
+		XMLStreamReader streamReader = createStreamReader(theReader);
 
 		ParserState<TagList> parserState = ParserState.getPreTagListInstance(this, myContext, false, getErrorHandler());
 		return doXmlLoop(streamReader, parserState);
 	}
 
+	private static String getUrlAttribute(XMLStreamReader theStreamReader) {
+		for (int i = 0; i < theStreamReader.getAttributeCount(); i++) {
+			if ("url".equals(theStreamReader.getAttributeLocalName(i)) && isBlank(theStreamReader.getAttributeNamespace(i))) {
+				return theStreamReader.getAttributeValue(i);
+			}
+		}
+		return null;
+	}
+
 	@Override
 	public IParser setPrettyPrint(boolean thePrettyPrint) {
 		myPrettyPrint = thePrettyPrint;
@@ -0,0 +1,375 @@
+package ca.uhn.fhir.parser.json;
+/*
+ * #%L
+ * HAPI FHIR - Core Library
+ * %%
+ * Copyright (C) 2014 - 2017 University Health Network
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import java.io.IOException;
+import java.io.PushbackReader;
+import java.io.Reader;
+import java.io.Writer;
+import java.math.BigDecimal;
+import java.util.AbstractSet;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+
+import ca.uhn.fhir.parser.DataFormatException;
+import ca.uhn.fhir.parser.json.JsonLikeValue.ScalarType;
+import ca.uhn.fhir.parser.json.JsonLikeValue.ValueType;
+
+/**
+ * A {@link JsonLikeStructure} which is built directly from a Gson {@link JsonReader}
+ * token stream.
+ * <p>
+ * Unlike {@link GsonStructure}, which first parses the document into a Gson
+ * <code>JsonObject</code> tree and then lazily wraps every node it is asked for in an
+ * adapter (caching the adapters in a map per object), this structure reads each token
+ * exactly once into a compact tree of {@link JsonLikeValue} nodes, so the document only
+ * exists in memory once. Object members are kept in document order in parallel lists, which
+ * supports the order-independent sibling lookups that the parser needs (e.g. finding
+ * <code>resourceType</code> when it is not the first member, or the <code>_element</code>
+ * sibling of a primitive) without any further buffering.
+ * </p>
+ * <p>
+ * The structure accepts the same (lenient) input as {@link GsonStructure} and produces the
+ * same error messages for invalid content. Writing is delegated to {@link GsonWriter}.
+ * </p>
+ */
+public class StreamingJsonStructure implements JsonLikeStructure {
+
+	private JsonLikeValue myRoot;
+	private GsonWriter myJsonLikeWriter;
+
+	public StreamingJsonStructure() {
+		super();
+	}
+
+	@Override
+	public JsonLikeStructure getInstance() {
+		return new StreamingJsonStructure();
+	}
+
+	@Override
+	public JsonLikeWriter getJsonLikeWriter() {
+		if (null == myJsonLikeWriter) {
+			myJsonLikeWriter = new GsonWriter();
+		}
+		return myJsonLikeWriter;
+	}
+
+	@Override
+	public JsonLikeWriter getJsonLikeWriter(Writer theWriter) {
+		if (null == myJsonLikeWriter) {
+			myJsonLikeWriter = new GsonWriter(theWriter);
+		}
+		return myJsonLikeWriter;
+	}
+
+	@Override
+	public JsonLikeArray getRootArray() throws DataFormatException {
+		if (myRoot != null && myRoot.isArray()) {
+			return myRoot.getAsArray();
+		}
+		throw new DataFormatException("Content must be a valid JSON Array. It must start with '['.");
+	}
+
+	@Override
+	public JsonLikeObject getRootObject() throws DataFormatException {
+		if (myRoot != null && myRoot.isObject()) {
+			return myRoot.getAsObject();
+		}
+		throw new DataFormatException("Content must be a valid JSON Object. It must start with '{'.");
+	}
+
+	@Override
+	public void load(Reader theReader) throws DataFormatException {
+		this.load(theReader, false);
+	}
+
+	@Override
+	public void load(Reader theReader, boolean allowArray) throws DataFormatException {
+		PushbackReader pbr = new PushbackReader(theReader);
+		int nextInt;
+		try {
+			while (true) {
+				nextInt = pbr.read();
+				if (nextInt == -1) {
+					throw new DataFormatException("Did not find any content to parse");
+				}
+				if (nextInt == '{') {
+					pbr.unread(nextInt);
+					break;
+				}
+				if (Character.isWhitespace(nextInt)) {
+					continue;
+				}
+				if (allowArray) {
+					if (nextInt == '[') {
+						pbr.unread(nextInt);
+						break;
+					}
+					throw new DataFormatException("Content does not appear to be FHIR JSON, first non-whitespace character was: '" + (char) nextInt + "' (must be '{' or '[')");
+				}
+				throw new DataFormatException("Content does not appear to be FHIR JSON, first non-whitespace character was: '" + (char) nextInt + "' (must be '{')");
+			}
+
+			JsonReader reader = new JsonReader(pbr);
+			reader.setLenient(true);
+			myRoot = readValue(reader);
+			// Like Gson, only whitespace may follow the root value
+			reader.setLenient(false);
+			if (reader.peek() != JsonToken.END_DOCUMENT) {
+				throw new DataFormatException("JSON document was not fully consumed.");
+			}
+		} catch (DataFormatException e) {
+			throw new DataFormatException("Failed to parse JSON content, error was: " + e.getMessage(), e);
+		} catch (IOException e) {
+			throw newSyntaxException(e);
+		} catch (IllegalStateException e) {
+			throw newSyntaxException(e);
+		} catch (NumberFormatException e) {
+			throw newSyntaxException(e);
+		}
+	}
+
+	private static DataFormatException newSyntaxException(Exception theCause) {
+		String message = theCause.toString();
+		if (theCause.getMessage() != null && theCause.getMessage().startsWith("Unexpected char 39")) {
+			return new DataFormatException("Failed to parse JSON encoded FHIR content: " + message + " - This may indicate that single quotes are being used as JSON escapes where double quotes are required", theCause);
+		}
+		return new DataFormatException("Failed to parse JSON encoded FHIR content: " + message, theCause);
+	}
+
+	private static JsonLikeValue readValue(JsonReader theReader) throws IOException {
+		switch (theReader.peek()) {
+		case BEGIN_OBJECT: {
+			StreamingJsonObject retVal = new StreamingJsonObject();
+			theReader.beginObject();
+			while (theReader.hasNext()) {
+				String name = theReader.nextName();
+				retVal.put(name, readValue(theReader));
+			}
+			theReader.endObject();
+			return retVal;
+		}
+		case BEGIN_ARRAY: {
+			StreamingJsonArray retVal = new StreamingJsonArray();
+			theReader.beginArray();
+			while (theReader.hasNext()) {
+				retVal.add(readValue(theReader));
+			}
+			theReader.endArray();
+			return retVal;
+		}
+		case STRING:
+			return new StreamingJsonScalar(ScalarType.STRING, theReader.nextString());
+		case NUMBER:
+			// nextString() returns the literal number text, so precision is preserved
+			return new StreamingJsonScalar(ScalarType.NUMBER, theReader.nextString());
+		case BOOLEAN:
+			return theReader.nextBoolean() ? StreamingJsonScalar.TRUE : StreamingJsonScalar.FALSE;
+		case NULL:
+			theReader.nextNull();
+			return JsonLikeValue.NULL;
+		default:
+			throw new IllegalStateException("Unexpected token " + theReader.peek());
+		}
+	}
+
+	private static class StreamingJsonArray extends JsonLikeArray {
+		private final ArrayList<JsonLikeValue> myValues = new ArrayList<JsonLikeValue>();
+
+		void add(JsonLikeValue theValue) {
+			myValues.add(theValue);
+		}
+
+		@Override
+		public JsonLikeValue get(int index) {
+			return myValues.get(index);
+		}
+
+		@Override
+		public Object getValue() {
+			return null;
+		}
+
+		@Override
+		public int size() {
+			return myValues.size();
+		}
+	}
+
+	private static class StreamingJsonObject extends JsonLikeObject {
+		/**
+		 * Objects with more members than this get a hash index, smaller ones are searched linearly
+		 */
+		private static final int INDEX_THRESHOLD = 12;
+
+		private Map<String, Integer> myIndex;
+		private final ArrayList<String> myKeys = new ArrayList<String>();
+		private final ArrayList<JsonLikeValue> myValues = new ArrayList<JsonLikeValue>();
+
+		@Override
+		public JsonLikeValue get(String key) {
+			int index = indexOf(key);
+			return index != -1 ? myValues.get(index) : null;
+		}
+
+		@Override
+		public Object getValue() {
+			return null;
+		}
+
+		private int indexOf(String theKey) {
+			if (myIndex != null) {
+				Integer retVal = myIndex.get(theKey);
+				return retVal != null ? retVal.intValue() : -1;
+			}
+			for (int i = 0; i < myKeys.size(); i++) {
+				if (myKeys.get(i).equals(theKey)) {
+					return i;
+				}
+			}
+			return -1;
+		}
+
+		@Override
+		public Set<String> keySet() {
+			return new AbstractSet<String>() {
+				@Override
+				public boolean contains(Object theKey) {
+					return theKey instanceof String && indexOf((String) theKey) != -1;
+				}
+
+				@Override
+				public Iterator<String> iterator() {
+					final Iterator<String> iter = myKeys.iterator();
+					return new Iterator<String>() {
+						@Override
+						public boolean hasNext() {
+							return iter.hasNext();
+						}
+
+						@Override
+						public String next() {
+							return iter.next();
+						}
+
+						@Override
+						public void remove() {
+							throw new UnsupportedOperationException();
+						}
+					};
+				}
+
+				@Override
+				public int size() {
+					return myKeys.size();
+				}
+			};
+		}
+
+		/**
+		 * A repeated key replaces the earlier value but keeps its position, which is what
+		 * Gson does too
+		 */
+		void put(String theKey, JsonLikeValue theValue) {
+			int existing = indexOf(theKey);
+			if (existing != -1) {
+				myValues.set(existing, theValue);
+				return;
+			}
+			myKeys.add(theKey);
+			myValues.add(theValue);
+			if (myIndex != null) {
+				myIndex.put(theKey, myKeys.size() - 1);
+			} else if (myKeys.size() > INDEX_THRESHOLD) {
+				myIndex = new HashMap<String, Integer>();
+				for (int i = 0; i < myKeys.size(); i++) {
+					myIndex.put(myKeys.get(i), i);
+				}
+			}
+		}
+	}
+
+	private static class StreamingJsonScalar extends JsonLikeValue {
+		static final StreamingJsonScalar FALSE = new StreamingJsonScalar(ScalarType.BOOLEAN, "false");
+		static final StreamingJsonScalar TRUE = new StreamingJsonScalar(ScalarType.BOOLEAN, "true");
+
+		private final ScalarType myDataType;
+		private final String myText;
+
+		StreamingJsonScalar(ScalarType theDataType, String theText) {
+			myDataType = theDataType;
+			myText = theText;
+		}
+
+		@Override
+		public boolean getAsBoolean() {
+			if (myDataType == ScalarType.BOOLEAN) {
+				return this == TRUE;
+			}
+			return super.getAsBoolean();
+		}
+
+		@Override
+		public Number getAsNumber() {
+			return myDataType == ScalarType.NUMBER ? new BigDecimal(myText) : null;
+		}
+
+		@Override
+		public String getAsString() {
+			return myText;
+		}
+
+		@Override
+		public ScalarType getDataType() {
+			return myDataType;
+		}
+
+		@Override
+		public ValueType getJsonType() {
+			return ValueType.SCALAR;
+		}
+
+		@Override
+		public Object getValue() {
+			switch (myDataType) {
+			case BOOLEAN:
+				return Boolean.valueOf(this == TRUE);
+			case NUMBER:
+				return getAsNumber();
+			case STRING:
+			default:
+				return myText;
+			}
+		}
+
+		@Override
+		public String toString() {
+			return myText;
+		}
+	}
+
+}
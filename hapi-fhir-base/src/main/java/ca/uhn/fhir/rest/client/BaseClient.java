@@ -27,6 +27,7 @@ import java.io.InputStream;
 import java.io.Reader;
 import java.io.StringReader;
 import java.util.*;
+import java.util.concurrent.*;
 
 import org.apache.commons.io.IOUtils;
 import org.apache.commons.lang3.StringUtils;
@@ -37,6 +38,7 @@ import ca.uhn.fhir.context.*;
 import ca.uhn.fhir.parser.DataFormatException;
 import ca.uhn.fhir.parser.IParser;
 import ca.uhn.fhir.rest.api.SummaryEnum;
+import ca.uhn.fhir.rest.client.api.IClientCallback;
 import ca.uhn.fhir.rest.client.api.IHttpClient;
 import ca.uhn.fhir.rest.client.api.IHttpRequest;
 import ca.uhn.fhir.rest.client.api.IHttpResponse;
@@ -341,6 +343,38 @@ public abstract class BaseClient implements IRestfulClient {
 		}
 	}
 
+	/**
+	 * Runs the given request on the factory's asynchronous executor, notifying the callback (if any)
+	 * once it completes
+	 */
+	<T> Future<T> invokeClientAsync(Callable<T> theRequest, final IClientCallback<T> theCallback) {
+		FutureTask<T> retVal = new FutureTask<T>(theRequest) {
+			@Override
+			protected void done() {
+				if (theCallback == null) {
+					return;
+				}
+				T result;
+				try {
+					result = get();
+				} catch (ExecutionException e) {
+					theCallback.onFailure(e.getCause());
+					return;
+				} catch (CancellationException e) {
+					theCallback.onFailure(e);
+					return;
+				} catch (InterruptedException e) {
+					// Can't happen since the task is already complete
+					Thread.currentThread().interrupt();
+					return;
+				}
+				theCallback.onSuccess(result);
+			}
+		};
+		myFactory.getAsyncExecutor().execute(retVal);
+		return retVal;
+	}
+
 	/**
 	 * For now, this is a part of the internal API of HAPI - Use with caution as this method may change!
 	 */
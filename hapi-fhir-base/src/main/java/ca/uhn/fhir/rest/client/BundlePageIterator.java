@@ -0,0 +1,153 @@
+package ca.uhn.fhir.rest.client;
+
+/*
+ * #%L
+ * HAPI FHIR - Core Library
+ * %%
+ * Copyright (C) 2014 - 2017 University Health Network
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+
+import org.apache.commons.lang3.Validate;
+import org.hl7.fhir.instance.model.api.IBaseBundle;
+
+import ca.uhn.fhir.rest.client.exceptions.FhirClientConnectionException;
+import ca.uhn.fhir.util.BundleUtil;
+
+/**
+ * Iterates over the pages of a search result by following the "next" link of each
+ * page returned by the server. Pages are only requested as the iterator is advanced,
+ * so a slow consumer is never handed more than it has asked for.
+ * <p>
+ * If {@link #setPrefetchNextPage(boolean) prefetching} is enabled, the request for the
+ * following page is started (using {@link IGenericClient#executeAsync(ca.uhn.fhir.rest.gclient.IClientExecutable)})
+ * as soon as a page is returned, so that it can be loaded while the current page is being
+ * processed. At most one page is ever fetched ahead of the consumer.
+ * </p>
+ * 
+ * <pre>
+ * Bundle firstPage = client.search().forResource(Patient.class).returnBundle(Bundle.class).execute();
+ * BundlePageIterator&lt;Bundle&gt; iter = new BundlePageIterator&lt;Bundle&gt;(client, firstPage);
+ * while (iter.hasNext()) {
+ *    Bundle nextPage = iter.next();
+ *    // ...
+ * }
+ * </pre>
+ * 
+ * @since 2.3
+ */
+public class BundlePageIterator<T extends IBaseBundle> implements Iterator<T> {
+
+	private static final String LINK_NEXT = "next";
+	private final IGenericClient myClient;
+	private T myLastPage;
+	private T myNextPage;
+	private Future<T> myPendingPage;
+	private boolean myPrefetchNextPage;
+
+	/**
+	 * Constructor
+	 * 
+	 * @param theClient
+	 *           The client to use to load subsequent pages
+	 * @param theFirstPage
+	 *           The first page of results, which will be the first page returned by the iterator
+	 */
+	public BundlePageIterator(IGenericClient theClient, T theFirstPage) {
+		Validate.notNull(theClient, "theClient must not be null");
+		Validate.notNull(theFirstPage, "theFirstPage must not be null");
+		myClient = theClient;
+		myNextPage = theFirstPage;
+	}
+
+	private boolean hasNextLink(T thePage) {
+		return BundleUtil.getLinkUrlOfType(myClient.getFhirContext(), thePage, LINK_NEXT) != null;
+	}
+
+	@Override
+	public boolean hasNext() {
+		if (myNextPage != null || myPendingPage != null) {
+			return true;
+		}
+		return myLastPage != null && hasNextLink(myLastPage);
+	}
+
+	/**
+	 * Should the following page be requested in the background as soon as a page is returned (default is <code>false</code>)
+	 */
+	public boolean isPrefetchNextPage() {
+		return myPrefetchNextPage;
+	}
+
+	@Override
+	public T next() {
+		T retVal;
+		if (myNextPage != null) {
+			retVal = myNextPage;
+			myNextPage = null;
+		} else if (myPendingPage != null) {
+			retVal = waitForPendingPage();
+		} else if (myLastPage != null && hasNextLink(myLastPage)) {
+			retVal = myClient.loadPage().next(myLastPage).execute();
+		} else {
+			throw new NoSuchElementException();
+		}
+
+		myLastPage = retVal;
+		if (myPrefetchNextPage && hasNextLink(retVal)) {
+			myPendingPage = myClient.executeAsync(myClient.loadPage().next(retVal));
+		}
+
+		return retVal;
+	}
+
+	/**
+	 * Not supported
+	 */
+	@Override
+	public void remove() {
+		throw new UnsupportedOperationException();
+	}
+
+	/**
+	 * Should the following page be requested in the background as soon as a page is returned (default is <code>false</code>).
+	 */
+	public void setPrefetchNextPage(boolean thePrefetchNextPage) {
+		myPrefetchNextPage = thePrefetchNextPage;
+	}
+
+	private T waitForPendingPage() {
+		Future<T> pendingPage = myPendingPage;
+		myPendingPage = null;
+		try {
+			return pendingPage.get();
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof RuntimeException) {
+				throw (RuntimeException) e.getCause();
+			}
+			throw new FhirClientConnectionException(e.getCause());
+		} catch (InterruptedException e) {
+			pendingPage.cancel(true);
+			Thread.currentThread().interrupt();
+			throw new FhirClientConnectionException(e);
+		}
+	}
+
+}
@@ -26,6 +26,8 @@ import java.io.IOException;
 import java.io.Reader;
 import java.util.*;
 import java.util.Map.Entry;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Future;
 
 import org.apache.commons.io.IOUtils;
 import org.apache.commons.lang3.StringUtils;
@@ -46,6 +48,7 @@ import ca.uhn.fhir.model.primitive.UriDt;
 import ca.uhn.fhir.parser.DataFormatException;
 import ca.uhn.fhir.parser.IParser;
 import ca.uhn.fhir.rest.api.*;
+import ca.uhn.fhir.rest.client.api.IClientCallback;
 import ca.uhn.fhir.rest.client.api.IHttpClient;
 import ca.uhn.fhir.rest.client.api.IHttpRequest;
 import ca.uhn.fhir.rest.client.exceptions.NonFhirResponseException;
@@ -196,6 +199,22 @@ public class GenericClient extends BaseClient implements IGenericClient {
 
 	}
 
+	@Override
+	public <Y> Future<Y> executeAsync(IClientExecutable<?, Y> theRequest) {
+		return executeAsync(theRequest, null);
+	}
+
+	@Override
+	public <Y> Future<Y> executeAsync(final IClientExecutable<?, Y> theRequest, IClientCallback<Y> theCallback) {
+		Validate.notNull(theRequest, "theRequest must not be null");
+		return invokeClientAsync(new Callable<Y>() {
+			@Override
+			public Y call() throws Exception {
+				return theRequest.execute();
+			}
+		}, theCallback);
+	}
+
 	@Override
 	public IFetchConformanceUntyped fetchConformance() {
 		return new FetchConformanceInternal();
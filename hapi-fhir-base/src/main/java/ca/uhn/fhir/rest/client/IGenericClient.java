@@ -22,6 +22,7 @@ package ca.uhn.fhir.rest.client;
 
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Future;
 
 import org.hl7.fhir.instance.model.api.IBaseConformance;
 import org.hl7.fhir.instance.model.api.IBaseResource;
@@ -33,6 +34,7 @@ import ca.uhn.fhir.model.primitive.DateTimeDt;
 import ca.uhn.fhir.model.primitive.IdDt;
 import ca.uhn.fhir.model.primitive.UriDt;
 import ca.uhn.fhir.rest.api.MethodOutcome;
+import ca.uhn.fhir.rest.client.api.IClientCallback;
 import ca.uhn.fhir.rest.client.api.IRestfulClient;
 import ca.uhn.fhir.rest.client.exceptions.FhirClientConnectionException;
 import ca.uhn.fhir.rest.client.exceptions.FhirClientInappropriateForServerException;
@@ -97,6 +99,46 @@ public interface IGenericClient extends IRestfulClient {
 	@Deprecated
 	MethodOutcome delete(Class<? extends IBaseResource> theType, String theId);
 
+	/**
+	 * Executes the given request on a thread of the executor configured using
+	 * {@link IRestfulClientFactory#setAsyncExecutor(java.util.concurrent.ExecutorService)}, and
+	 * returns without waiting for it to complete.
+	 * <p>
+	 * Note that this is only a way of offloading a blocking request onto another thread, and does
+	 * not use non-blocking I/O. The request is performed using the same blocking HTTP transport as
+	 * {@link IClientExecutable#execute()}, so each request in progress occupies a thread of the
+	 * executor until its response has been received and parsed. The size of the executor therefore
+	 * limits the number of requests in progress at any one time.
+	 * </p>
+	 * <p>
+	 * Any failure which would have been thrown by {@link IClientExecutable#execute()} is instead
+	 * thrown by {@link Future#get()}, wrapped in an {@link java.util.concurrent.ExecutionException}
+	 * </p>
+	 * 
+	 * <pre>
+	 * Future&lt;Patient&gt; future = client.executeAsync(client.read().resource(Patient.class).withId("123"));
+	 * </pre>
+	 * 
+	 * @param theRequest
+	 *           The request to execute, built using this client
+	 * @since 2.3
+	 */
+	<Y> Future<Y> executeAsync(IClientExecutable<?, Y> theRequest);
+
+	/**
+	 * Executes the given request on a thread of the executor configured using
+	 * {@link IRestfulClientFactory#setAsyncExecutor(java.util.concurrent.ExecutorService)}, and
+	 * notifies the given callback when it completes. Like {@link #executeAsync(IClientExecutable)},
+	 * this offloads a blocking request onto another thread rather than using non-blocking I/O.
+	 * 
+	 * @param theRequest
+	 *           The request to execute, built using this client
+	 * @param theCallback
+	 *           The callback to notify, or <code>null</code>
+	 * @since 2.3
+	 */
+	<Y> Future<Y> executeAsync(IClientExecutable<?, Y> theRequest, IClientCallback<Y> theCallback);
+
 	/**
 	 * Retrieves the server's conformance statement
 	 */
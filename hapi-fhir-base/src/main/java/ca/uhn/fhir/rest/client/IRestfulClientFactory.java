@@ -22,6 +22,7 @@ package ca.uhn.fhir.rest.client;
 
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ExecutorService;
 
 import ca.uhn.fhir.context.ConfigurationException;
 import ca.uhn.fhir.rest.api.RequestTypeEnum;
@@ -61,6 +62,15 @@ public interface IRestfulClientFactory {
 	 */
 	public static final int DEFAULT_POOL_MAX_PER_ROUTE = DEFAULT_POOL_MAX;
 	
+	/**
+	 * Returns the executor used to perform requests started using
+	 * {@link IGenericClient#executeAsync(ca.uhn.fhir.rest.gclient.IClientExecutable)}. See
+	 * {@link #setAsyncExecutor(ExecutorService)}
+	 * 
+	 * @since 2.3
+	 */
+	ExecutorService getAsyncExecutor();
+
 	/**
 	 * Gets the connection request timeout, in milliseconds. This is the amount of time that the HTTPClient connection
 	 * pool may wait for an available connection before failing. This setting typically does not need to be adjusted.
@@ -160,6 +170,21 @@ public interface IRestfulClientFactory {
 	 */
 	IGenericClient newGenericClient(String theServerBase);
 
+	/**
+	 * Sets the executor used to perform requests started using
+	 * {@link IGenericClient#executeAsync(ca.uhn.fhir.rest.gclient.IClientExecutable)}. Each request
+	 * occupies one of the executor's threads while it is sent and its response is parsed, so
+	 * the executor's size limits the number of asynchronous requests in progress at any one time.
+	 * <p>
+	 * If no executor is set, a pool of daemon threads is created the first time it is needed.
+	 * The size of this pool always follows the current {@link #setPoolMaxTotal(int) maximum
+	 * connection pool size}. An executor which is set here is never shut down by HAPI.
+	 * </p>
+	 * 
+	 * @since 2.3
+	 */
+	void setAsyncExecutor(ExecutorService theAsyncExecutor);
+
 	/**
 	 * Sets the connection request timeout, in milliseconds. This is the amount of time that the HTTPClient connection
 	 * pool may wait for an available connection before failing. This setting typically does not need to be adjusted.
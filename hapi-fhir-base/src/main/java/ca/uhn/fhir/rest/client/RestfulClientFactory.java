@@ -28,9 +28,14 @@ import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 
 import org.apache.commons.lang3.StringUtils;
 import org.apache.commons.lang3.Validate;
+import org.apache.commons.lang3.concurrent.BasicThreadFactory;
 import org.hl7.fhir.instance.model.api.IBaseResource;
 import org.hl7.fhir.instance.model.api.IPrimitiveType;
 
@@ -52,6 +57,8 @@ import ca.uhn.fhir.util.FhirTerser;
 public abstract class RestfulClientFactory implements IRestfulClientFactory {
 
 	private static final org.slf4j.Logger ourLog = org.slf4j.LoggerFactory.getLogger(RestfulClientFactory.class);
+	private ExecutorService myAsyncExecutor;
+	private ThreadPoolExecutor myDefaultAsyncExecutor;
 	private int myConnectionRequestTimeout = DEFAULT_CONNECTION_REQUEST_TIMEOUT;
 	private int myConnectTimeout = DEFAULT_CONNECT_TIMEOUT;
 	private FhirContext myContext;
@@ -80,6 +87,22 @@ public abstract class RestfulClientFactory implements IRestfulClientFactory {
 		myContext = theFhirContext;
 	}
 
+	@Override
+	public synchronized ExecutorService getAsyncExecutor() {
+		if (myAsyncExecutor != null) {
+			return myAsyncExecutor;
+		}
+		if (myDefaultAsyncExecutor == null) {
+			BasicThreadFactory threadFactory = new BasicThreadFactory.Builder()
+				.namingPattern("hapi-fhir-client-%d")
+				.daemon(true)
+				.build();
+			myDefaultAsyncExecutor = new ThreadPoolExecutor(myPoolMaxTotal, myPoolMaxTotal, 60, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(), threadFactory);
+			myDefaultAsyncExecutor.allowCoreThreadTimeOut(true);
+		}
+		return myDefaultAsyncExecutor;
+	}
+
 	@Override
 	public int getConnectionRequestTimeout() {
 		return myConnectionRequestTimeout;
@@ -215,6 +238,11 @@ public abstract class RestfulClientFactory implements IRestfulClientFactory {
 		return serverBase;
 	}
 
+	@Override
+	public synchronized void setAsyncExecutor(ExecutorService theAsyncExecutor) {
+		myAsyncExecutor = theAsyncExecutor;
+	}
+
 	@Override
 	public synchronized void setConnectionRequestTimeout(int theConnectionRequestTimeout) {
 		myConnectionRequestTimeout = theConnectionRequestTimeout;
@@ -261,6 +289,20 @@ public abstract class RestfulClientFactory implements IRestfulClientFactory {
 	public synchronized void setPoolMaxTotal(int thePoolMaxTotal) {
 		myPoolMaxTotal = thePoolMaxTotal;
 		resetHttpClient();
+
+		/*
+		 * Resize the default asynchronous executor too, growing the maximum before the
+		 * core size (and shrinking it after) so that the core size never exceeds it
+		 */
+		if (myDefaultAsyncExecutor != null) {
+			if (thePoolMaxTotal > myDefaultAsyncExecutor.getMaximumPoolSize()) {
+				myDefaultAsyncExecutor.setMaximumPoolSize(thePoolMaxTotal);
+				myDefaultAsyncExecutor.setCorePoolSize(thePoolMaxTotal);
+			} else {
+				myDefaultAsyncExecutor.setCorePoolSize(thePoolMaxTotal);
+				myDefaultAsyncExecutor.setMaximumPoolSize(thePoolMaxTotal);
+			}
+		}
 	}
 
 	@Override
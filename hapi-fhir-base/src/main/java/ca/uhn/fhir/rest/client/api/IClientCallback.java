@@ -0,0 +1,46 @@
+package ca.uhn.fhir.rest.client.api;
+
+/*
+ * #%L
+ * HAPI FHIR - Core Library
+ * %%
+ * Copyright (C) 2014 - 2017 University Health Network
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+/**
+ * Callback which is notified when a request started using
+ * {@link ca.uhn.fhir.rest.client.IGenericClient#executeAsync(ca.uhn.fhir.rest.gclient.IClientExecutable, IClientCallback)} completes.
+ * Callbacks are invoked on the thread which executed the request, so they should not block
+ * for long periods of time.
+ * 
+ * @since 2.3
+ */
+public interface IClientCallback<T> {
+
+	/**
+	 * Invoked if the request failed, either because the server returned an error status
+	 * (in which case <code>theException</code> will be a
+	 * {@link ca.uhn.fhir.rest.server.exceptions.BaseServerResponseException}) or because
+	 * the request could not be completed
+	 */
+	void onFailure(Throwable theException);
+
+	/**
+	 * Invoked with the parsed response if the request completed successfully
+	 */
+	void onSuccess(T theResult);
+
+}
@@ -48,6 +48,7 @@ import ca.uhn.fhir.model.base.resource.BaseOperationOutcome;
 import ca.uhn.fhir.parser.IParser;
 import ca.uhn.fhir.rest.annotation.*;
 import ca.uhn.fhir.rest.api.MethodOutcome;
+import ca.uhn.fhir.rest.api.RequestTypeEnum;
 import ca.uhn.fhir.rest.api.RestOperationTypeEnum;
 import ca.uhn.fhir.rest.client.BaseHttpClientInvocation;
 import ca.uhn.fhir.rest.client.exceptions.NonFhirResponseException;
@@ -177,6 +178,39 @@ public abstract class BaseMethodBinding<T> implements IClientResponseHandler<T>
 		return myParameters;
 	}
 
+	/**
+	 * Returns the values of {@link RequestDetails#getOperation()} which this binding could possibly match,
+	 * with a blank operation represented by an empty string, or <code>null</code> if this binding may match
+	 * any operation. This is used by {@link ca.uhn.fhir.rest.server.ResourceBinding} to index the bindings
+	 * for a resource so that {@link #incomingServerRequestMatchesMethod(RequestDetails)} is only called for
+	 * bindings which could match a given request, so it may return more values than will actually match
+	 * but must never leave out a value that does.
+	 */
+	public Set<String> getPossibleOperations() {
+		return null;
+	}
+
+	/**
+	 * Returns the value of the <code>_query</code> URL parameter which this binding requires, an empty string
+	 * if it requires that the parameter not be present, or <code>null</code> if this binding does not look at
+	 * the parameter.
+	 * 
+	 * @see #getPossibleOperations()
+	 */
+	public String getPossibleQueryName() {
+		return null;
+	}
+
+	/**
+	 * Returns the request types which this binding could possibly match, or <code>null</code> if this
+	 * binding may match any request type.
+	 * 
+	 * @see #getPossibleOperations()
+	 */
+	public Set<RequestTypeEnum> getPossibleRequestTypes() {
+		return null;
+	}
+
 	public Object getProvider() {
 		return myProvider;
 	}
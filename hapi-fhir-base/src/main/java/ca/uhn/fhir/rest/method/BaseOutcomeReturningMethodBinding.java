@@ -130,6 +130,16 @@ abstract class BaseOutcomeReturningMethodBinding extends BaseMethodBinding<Metho
 		}
 	}
 
+	@Override
+	public Set<String> getPossibleOperations() {
+		return Collections.singleton(StringUtils.defaultString(getMatchingOperation()));
+	}
+
+	@Override
+	public Set<RequestTypeEnum> getPossibleRequestTypes() {
+		return provideAllowableRequestTypes();
+	}
+
 	@Override
 	public boolean incomingServerRequestMatchesMethod(RequestDetails theRequest) {
 		Set<RequestTypeEnum> allowableRequestTypes = provideAllowableRequestTypes();
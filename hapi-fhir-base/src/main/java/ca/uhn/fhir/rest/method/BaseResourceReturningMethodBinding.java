@@ -27,6 +27,7 @@ import java.lang.reflect.Method;
 import java.lang.reflect.Modifier;
 import java.util.*;
 
+import org.hl7.fhir.instance.model.api.IBase;
 import org.hl7.fhir.instance.model.api.IBaseBundle;
 import org.hl7.fhir.instance.model.api.IBaseOperationOutcome;
 import org.hl7.fhir.instance.model.api.IBaseResource;
@@ -49,6 +50,7 @@ import ca.uhn.fhir.rest.server.EncodingEnum;
 import ca.uhn.fhir.rest.server.IBundleProvider;
 import ca.uhn.fhir.rest.server.IRestfulServer;
 import ca.uhn.fhir.rest.server.IVersionSpecificBundleFactory;
+import ca.uhn.fhir.rest.server.RestfulServer;
 import ca.uhn.fhir.rest.server.RestfulServerUtils;
 import ca.uhn.fhir.rest.server.RestfulServerUtils.ResponseEncoding;
 import ca.uhn.fhir.rest.server.exceptions.BaseServerResponseException;
@@ -254,10 +256,20 @@ public abstract class BaseResourceReturningMethodBinding extends BaseMethodBindi
 	@Override
 	public Object invokeServer(IRestfulServer<?> theServer, RequestDetails theRequest) throws BaseServerResponseException, IOException {
 
-		final ResourceOrDstu1Bundle responseObject = doInvokeServer(theServer, theRequest);
+		final ResourceOrDstu1Bundle responseObject = doInvokeServer(theServer, theRequest, determineStreamingBatchSize(theServer));
 
 		Set<SummaryEnum> summaryMode = RestfulServerUtils.determineSummaryMode(theRequest);
-		if (responseObject.getResource() != null) {
+		if (responseObject.getStreamingEntries() != null) {
+
+			/*
+			 * Streaming is only enabled when no interceptors are registered, so there is nobody
+			 * to notify about the outgoing response here
+			 */
+			boolean prettyPrint = RestfulServerUtils.prettyPrintResponse(theServer, theRequest);
+			return theRequest.getResponse().streamResponseAsBundleResource((IBaseBundle) responseObject.getResource(), responseObject.getStreamingEntries(), prettyPrint, summaryMode,
+					theRequest.isRespondGzip());
+
+		} else if (responseObject.getResource() != null) {
 
 			for (int i = theServer.getInterceptors().size() - 1; i >= 0; i--) {
 				IServerInterceptor next = theServer.getInterceptors().get(i);
@@ -293,7 +305,33 @@ public abstract class BaseResourceReturningMethodBinding extends BaseMethodBindi
 		}
 	}
 
+	/**
+	 * Returns the batch size to use if search results should be streamed to the client, or <code>0</code>
+	 * if the complete bundle should be built before it is returned
+	 */
+	private static int determineStreamingBatchSize(IRestfulServer<?> theServer) {
+		if (!(theServer instanceof RestfulServer)) {
+			return 0;
+		}
+		if (!theServer.getInterceptors().isEmpty()) {
+			return 0;
+		}
+		if (theServer.getFhirContext().getVersion().getVersion() == FhirVersionEnum.DSTU1) {
+			return 0;
+		}
+		return ((RestfulServer) theServer).getStreamingBundleBatchSize();
+	}
+
 	public ResourceOrDstu1Bundle doInvokeServer(IRestfulServer<?> theServer, RequestDetails theRequest) {
+		return doInvokeServer(theServer, theRequest, 0);
+	}
+
+	/**
+	 * @param theStreamingBatchSize If greater than <code>0</code>, a bundle returned from an {@link IBundleProvider} will
+	 * not be populated with its entries. The entries are instead loaded in batches of this size by the iterator returned by
+	 * {@link ResourceOrDstu1Bundle#getStreamingEntries()}.
+	 */
+	protected ResourceOrDstu1Bundle doInvokeServer(IRestfulServer<?> theServer, RequestDetails theRequest, int theStreamingBatchSize) {
 		// Method params
 		Object[] params = new Object[getParameters().size()];
 		for (int i = 0; i < getParameters().size(); i++) {
@@ -385,6 +423,17 @@ public abstract class BaseResourceReturningMethodBinding extends BaseMethodBindi
 				EncodingEnum linkEncoding = theRequest.getParameters().containsKey(Constants.PARAM_FORMAT) && responseEncoding != null ? responseEncoding.getEncoding() : null;
 
 				boolean prettyPrint = RestfulServerUtils.prettyPrintResponse(theServer, theRequest);
+				if (theStreamingBatchSize > 0) {
+					Iterator<IBase> entries = bundleFactory.initializeStreamingBundleFromBundleProvider(theServer, result, linkEncoding, theRequest.getFhirServerBase(), linkSelf, prettyPrint, start, count, null,
+							getResponseBundleType(), includes, theStreamingBatchSize);
+					if (bundleFactory.getDstu1Bundle() != null) {
+						responseObject = new ResourceOrDstu1Bundle(bundleFactory.getDstu1Bundle());
+					} else {
+						responseObject = new ResourceOrDstu1Bundle(bundleFactory.getResourceBundle(), entries);
+					}
+					break;
+				}
+
 				bundleFactory.initializeBundleFromBundleProvider(theServer, result, linkEncoding, theRequest.getFhirServerBase(), linkSelf, prettyPrint, start, count, null, getResponseBundleType(),
 						includes);
 				Bundle bundle = bundleFactory.getDstu1Bundle();
@@ -437,15 +486,28 @@ public abstract class BaseResourceReturningMethodBinding extends BaseMethodBindi
 
 		private final Bundle myDstu1Bundle;
 		private final IBaseResource myResource;
+		private final Iterator<IBase> myStreamingEntries;
 
 		public ResourceOrDstu1Bundle(Bundle theBundle) {
 			myDstu1Bundle = theBundle;
 			myResource = null;
+			myStreamingEntries = null;
 		}
 
 		public ResourceOrDstu1Bundle(IBaseResource theResource) {
 			myResource = theResource;
 			myDstu1Bundle = null;
+			myStreamingEntries = null;
+		}
+
+		/**
+		 * @param theBundle The bundle, which has no entries yet
+		 * @param theStreamingEntries The entries, which will be produced while the bundle is encoded
+		 */
+		public ResourceOrDstu1Bundle(IBaseResource theBundle, Iterator<IBase> theStreamingEntries) {
+			myResource = theBundle;
+			myStreamingEntries = theStreamingEntries;
+			myDstu1Bundle = null;
 		}
 
 		public Bundle getDstu1Bundle() {
@@ -456,6 +518,14 @@ public abstract class BaseResourceReturningMethodBinding extends BaseMethodBindi
 			return myResource;
 		}
 
+		/**
+		 * Returns the entries for the bundle returned by {@link #getResource()} if they are to be streamed,
+		 * or <code>null</code> if the bundle is already complete
+		 */
+		public Iterator<IBase> getStreamingEntries() {
+			return myStreamingEntries;
+		}
+
 	}
 
 	public enum ReturnTypeEnum {
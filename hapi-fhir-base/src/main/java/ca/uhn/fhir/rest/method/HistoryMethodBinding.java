@@ -24,8 +24,10 @@ import static org.apache.commons.lang3.StringUtils.isNotBlank;
 
 import java.lang.reflect.Method;
 import java.lang.reflect.Modifier;
+import java.util.Collections;
 import java.util.Date;
 import java.util.List;
+import java.util.Set;
 
 import org.apache.commons.lang3.StringUtils;
 import org.hl7.fhir.instance.model.api.IBaseResource;
@@ -87,6 +89,11 @@ public class HistoryMethodBinding extends BaseResourceReturningMethodBinding {
 
 	}
 
+	@Override
+	public Set<String> getPossibleOperations() {
+		return Collections.singleton(Constants.PARAM_HISTORY);
+	}
+
 	@Override
 	public RestOperationTypeEnum getRestOperationType() {
 		return myResourceOperationType;
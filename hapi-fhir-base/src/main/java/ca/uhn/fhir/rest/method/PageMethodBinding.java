@@ -23,7 +23,9 @@ package ca.uhn.fhir.rest.method;
 import static org.apache.commons.lang3.StringUtils.isBlank;
 
 import java.lang.reflect.Method;
+import java.util.Collections;
 import java.util.HashSet;
+import java.util.Iterator;
 import java.util.Set;
 
 import org.hl7.fhir.instance.model.api.IBase;
@@ -73,20 +75,20 @@ public class PageMethodBinding extends BaseResourceReturningMethodBinding {
 
 	@Override
 	public Object invokeServer(IRestfulServer<?> theServer, RequestDetails theRequest, Object[] theMethodParams) throws InvalidRequestException, InternalErrorException {
-		return handlePagingRequest(theServer, theRequest, theRequest.getParameters().get(Constants.PARAM_PAGINGACTION)[0]);
+		ResourceOrDstu1Bundle bundle = handlePagingRequest(theServer, theRequest, theRequest.getParameters().get(Constants.PARAM_PAGINGACTION)[0], 0);
+		if (bundle.getDstu1Bundle() != null) {
+			return bundle.getDstu1Bundle();
+		} else {
+			return bundle.getResource();
+		}
 	}
 
 	@Override
-	public ResourceOrDstu1Bundle doInvokeServer(IRestfulServer<?> theServer, RequestDetails theRequest) {
-		IBase bundle = handlePagingRequest(theServer, theRequest, theRequest.getParameters().get(Constants.PARAM_PAGINGACTION)[0]);
-		if (bundle instanceof Bundle) {
-			return new ResourceOrDstu1Bundle((Bundle) bundle);
-		} else {
-			return new ResourceOrDstu1Bundle((IBaseResource) bundle);
-		}
+	protected ResourceOrDstu1Bundle doInvokeServer(IRestfulServer<?> theServer, RequestDetails theRequest, int theStreamingBatchSize) {
+		return handlePagingRequest(theServer, theRequest, theRequest.getParameters().get(Constants.PARAM_PAGINGACTION)[0], theStreamingBatchSize);
 	}
 	
-	private IBase handlePagingRequest(IRestfulServer<?> theServer, RequestDetails theRequest, String thePagingAction) {
+	private ResourceOrDstu1Bundle handlePagingRequest(IRestfulServer<?> theServer, RequestDetails theRequest, String thePagingAction, int theStreamingBatchSize) {
 		IPagingProvider pagingProvider = theServer.getPagingProvider();
 		if (pagingProvider == null) {
 			throw new InvalidRequestException("This server does not support paging");
@@ -139,13 +141,22 @@ public class PageMethodBinding extends BaseResourceReturningMethodBinding {
 		if (responseEncoding != null) {
 			encodingEnum = responseEncoding.getEncoding();
 		}
+		if (theStreamingBatchSize > 0) {
+			Iterator<IBase> entries = bundleFactory.initializeStreamingBundleFromBundleProvider(theServer, resultList, encodingEnum, theRequest.getFhirServerBase(), linkSelf, prettyPrint, start, count,
+					thePagingAction, bundleType, includes, theStreamingBatchSize);
+			if (bundleFactory.getDstu1Bundle() != null) {
+				return new ResourceOrDstu1Bundle(bundleFactory.getDstu1Bundle());
+			}
+			return new ResourceOrDstu1Bundle(bundleFactory.getResourceBundle(), entries);
+		}
+
 		bundleFactory.initializeBundleFromBundleProvider(theServer, resultList, encodingEnum, theRequest.getFhirServerBase(), linkSelf, prettyPrint, start, count, thePagingAction, bundleType, includes);
 
 		Bundle bundle = bundleFactory.getDstu1Bundle();
 		if (bundle != null) {
-			return bundle;
+			return new ResourceOrDstu1Bundle(bundle);
 		} else {
-			return bundleFactory.getResourceBundle();
+			return new ResourceOrDstu1Bundle(bundleFactory.getResourceBundle());
 		}
 		// if (bundle != null) {
 		// for (int i = getInterceptors().size() - 1; i >= 0; i--) {
@@ -179,6 +190,11 @@ public class PageMethodBinding extends BaseResourceReturningMethodBinding {
 		return RestOperationTypeEnum.GET_PAGE;
 	}
 
+	@Override
+	public Set<RequestTypeEnum> getPossibleRequestTypes() {
+		return Collections.singleton(RequestTypeEnum.GET);
+	}
+
 	@Override
 	public boolean incomingServerRequestMatchesMethod(RequestDetails theRequest) {
 		String[] pageId = theRequest.getParameters().get(Constants.PARAM_PAGINGACTION);
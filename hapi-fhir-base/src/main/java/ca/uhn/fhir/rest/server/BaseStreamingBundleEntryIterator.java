@@ -0,0 +1,149 @@
+package ca.uhn.fhir.rest.server;
+
+/*
+ * #%L
+ * HAPI FHIR - Core Library
+ * %%
+ * Copyright (C) 2014 - 2017 University Health Network
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+import org.hl7.fhir.instance.model.api.IAnyResource;
+import org.hl7.fhir.instance.model.api.IBase;
+import org.hl7.fhir.instance.model.api.IBaseResource;
+
+import ca.uhn.fhir.model.api.IResource;
+import ca.uhn.fhir.model.api.ResourceMetadataKeyEnum;
+import ca.uhn.fhir.model.valueset.BundleEntrySearchModeEnum;
+
+/**
+ * Iterator over the bundle entries for a range of an {@link IBundleProvider}, which loads the
+ * resources from the provider in batches as it is iterated and converts each batch into bundle
+ * entries using {@link #createEntries(List)}. Only the current batch is referenced by the iterator,
+ * so the entries it has already returned may be garbage collected once they have been encoded.
+ * <p>
+ * Since resources which were included (e.g. because of an <code>_include</code> parameter) are
+ * returned by the provider with each batch, an included resource which has already been returned
+ * in an earlier batch is dropped from later batches.
+ * </p>
+ * 
+ * @see IVersionSpecificBundleFactory#initializeStreamingBundleFromBundleProvider(IRestfulServer, IBundleProvider, EncodingEnum, String, String, boolean, int, Integer, String, ca.uhn.fhir.model.valueset.BundleTypeEnum, Set, int)
+ * @since 2.3
+ */
+public abstract class BaseStreamingBundleEntryIterator implements Iterator<IBase> {
+
+	private final int myBatchSize;
+	private Iterator<? extends IBase> myCurrentBatch = Collections.<IBase> emptyList().iterator();
+	private int myNextIndex;
+	private final IBundleProvider myProvider;
+	private final Set<String> myReturnedResourceIds = new HashSet<String>();
+	private final int myToIndex;
+
+	/**
+	 * Constructor
+	 * 
+	 * @param theProvider
+	 *           The provider to load resources from
+	 * @param theFromIndex
+	 *           The low index (inclusive) to return
+	 * @param theToIndex
+	 *           The high index (exclusive) to return
+	 * @param theBatchSize
+	 *           The number of resources to request from the provider at a time
+	 */
+	public BaseStreamingBundleEntryIterator(IBundleProvider theProvider, int theFromIndex, int theToIndex, int theBatchSize) {
+		if (theBatchSize < 1) {
+			throw new IllegalArgumentException("theBatchSize must be at least 1");
+		}
+		myProvider = theProvider;
+		myNextIndex = theFromIndex;
+		myToIndex = theToIndex;
+		myBatchSize = theBatchSize;
+	}
+
+	/**
+	 * Converts a batch of resources loaded from the provider into bundle entries
+	 */
+	protected abstract List<? extends IBase> createEntries(List<IBaseResource> theResources);
+
+	@Override
+	public boolean hasNext() {
+		while (!myCurrentBatch.hasNext() && myNextIndex < myToIndex) {
+			int toIndex = Math.min(myNextIndex + myBatchSize, myToIndex);
+			List<IBaseResource> resources = myProvider.getResources(myNextIndex, toIndex);
+			RestfulServerUtils.validateResourceListNotNull(resources);
+			myNextIndex = toIndex;
+			myCurrentBatch = createEntries(removeAlreadyReturnedIncludes(resources)).iterator();
+		}
+		return myCurrentBatch.hasNext();
+	}
+
+	@Override
+	public IBase next() {
+		if (!hasNext()) {
+			throw new NoSuchElementException();
+		}
+		return myCurrentBatch.next();
+	}
+
+	/**
+	 * Records that the given resource is being returned by this iterator. Subclasses may use this
+	 * to drop resources which {@link #createEntries(List)} adds to a batch (e.g. resources found
+	 * by following references) and which have already been returned in an earlier batch.
+	 * 
+	 * @return Returns <code>false</code> if a resource with the same ID has already been returned
+	 */
+	protected boolean markReturned(IBaseResource theResource) {
+		String id = theResource.getIdElement() != null ? theResource.getIdElement().toUnqualifiedVersionless().getValue() : null;
+		if (id == null) {
+			return true;
+		}
+		return myReturnedResourceIds.add(id);
+	}
+
+	private List<IBaseResource> removeAlreadyReturnedIncludes(List<IBaseResource> theResources) {
+		List<IBaseResource> retVal = new ArrayList<IBaseResource>(theResources.size());
+		for (IBaseResource next : theResources) {
+			if (markReturned(next) || !isInclude(next)) {
+				retVal.add(next);
+			}
+		}
+		return retVal;
+	}
+
+	@Override
+	public void remove() {
+		throw new UnsupportedOperationException();
+	}
+
+	private static boolean isInclude(IBaseResource theResource) {
+		if (theResource instanceof IResource) {
+			return ResourceMetadataKeyEnum.ENTRY_SEARCH_MODE.get((IResource) theResource) == BundleEntrySearchModeEnum.INCLUDE;
+		}
+		if (theResource instanceof IAnyResource) {
+			return BundleEntrySearchModeEnum.INCLUDE.getCode().equals(ResourceMetadataKeyEnum.ENTRY_SEARCH_MODE.get((IAnyResource) theResource));
+		}
+		return false;
+	}
+
+}
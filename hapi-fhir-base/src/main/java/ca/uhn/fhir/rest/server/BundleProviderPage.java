@@ -0,0 +1,184 @@
+package ca.uhn.fhir.rest.server;
+
+/*
+ * #%L
+ * HAPI FHIR - Core Library
+ * %%
+ * Copyright (C) 2014 - 2017 University Health Network
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+import static org.apache.commons.lang3.StringUtils.isBlank;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+
+import org.hl7.fhir.instance.model.api.IBaseOperationOutcome;
+import org.hl7.fhir.instance.model.api.IBaseResource;
+
+import ca.uhn.fhir.model.api.Include;
+import ca.uhn.fhir.model.valueset.BundleTypeEnum;
+import ca.uhn.fhir.rest.server.exceptions.InternalErrorException;
+
+/**
+ * Works out which resources from an {@link IBundleProvider} make up one page of a search,
+ * history or paging response, and the search ID and paging links for that page. This is
+ * shared by the version specific {@link IVersionSpecificBundleFactory} implementations.
+ * 
+ * @since 2.3
+ */
+public class BundleProviderPage {
+
+	private final int myFromIndex;
+	private final Integer myLimit;
+	private final int myNumToReturn;
+	private final int myOffset;
+	private final IBundleProvider myResult;
+	private String mySearchId;
+	private final IRestfulServer<?> myServer;
+
+	/**
+	 * Constructor
+	 * 
+	 * @param theServer
+	 *           The server
+	 * @param theResult
+	 *           The provider the page is taken from
+	 * @param theOffset
+	 *           The index of the first resource on the page (ignored if the server has no paging provider)
+	 * @param theLimit
+	 *           The page size requested by the client, or <code>null</code>
+	 */
+	public BundleProviderPage(IRestfulServer<?> theServer, IBundleProvider theResult, int theOffset, Integer theLimit) {
+		myServer = theServer;
+		myResult = theResult;
+		myOffset = theOffset;
+		myLimit = theLimit;
+
+		IPagingProvider pagingProvider = theServer.getPagingProvider();
+		if (pagingProvider == null) {
+			myFromIndex = 0;
+			myNumToReturn = theResult.size();
+		} else {
+			int numToReturn;
+			if (theLimit == null) {
+				numToReturn = pagingProvider.getDefaultPageSize();
+			} else {
+				numToReturn = Math.min(pagingProvider.getMaximumPageSize(), theLimit);
+			}
+			myFromIndex = theOffset;
+			myNumToReturn = Math.min(numToReturn, theResult.size() - theOffset);
+		}
+	}
+
+	private String createPagingLink(Set<Include> theIncludes, String theServerBase, int theOffset, int theCount, EncodingEnum theResponseEncoding, boolean thePrettyPrint,
+			BundleTypeEnum theBundleType) {
+		return RestfulServerUtils.createPagingLink(theIncludes, theServerBase, mySearchId, theOffset, theCount, theResponseEncoding, thePrettyPrint, theBundleType);
+	}
+
+	/**
+	 * Returns the URL of the "next" link for this page, or <code>null</code> if there is no next page.
+	 * {@link #determineSearchId(String)} must be called first.
+	 */
+	public String createNextLink(Set<Include> theIncludes, String theServerBase, EncodingEnum theResponseEncoding, boolean thePrettyPrint, BundleTypeEnum theBundleType) {
+		if (mySearchId == null || myOffset + myNumToReturn >= myResult.size()) {
+			return null;
+		}
+		return createPagingLink(theIncludes, theServerBase, myOffset + myNumToReturn, myNumToReturn, theResponseEncoding, thePrettyPrint, theBundleType);
+	}
+
+	/**
+	 * Returns the URL of the "previous" link for this page, or <code>null</code> if there is no previous page.
+	 * {@link #determineSearchId(String)} must be called first.
+	 */
+	public String createPreviousLink(Set<Include> theIncludes, String theServerBase, EncodingEnum theResponseEncoding, boolean thePrettyPrint, BundleTypeEnum theBundleType) {
+		if (mySearchId == null || myOffset <= 0) {
+			return null;
+		}
+		IPagingProvider pagingProvider = myServer.getPagingProvider();
+		int limit = myLimit != null ? myLimit : pagingProvider.getDefaultPageSize();
+		limit = Math.min(limit, pagingProvider.getMaximumPageSize());
+		int start = Math.max(0, myOffset - limit);
+		return createPagingLink(theIncludes, theServerBase, start, limit, theResponseEncoding, thePrettyPrint, theBundleType);
+	}
+
+	/**
+	 * Returns the ID that later pages of the result can be requested with. If the result is not
+	 * already stored in the server's paging provider (i.e. <code>theSearchId</code> is <code>null</code>)
+	 * and it has more resources than fit on this page, it is stored. Returns <code>null</code> if the
+	 * server has no paging provider, if all of the resources fit on this page, or if the paging
+	 * provider could not store the result.
+	 * <p>
+	 * This should be called after resources have been loaded from the provider, since a provider
+	 * may not know its final size until then.
+	 * </p>
+	 */
+	public String determineSearchId(String theSearchId) {
+		IPagingProvider pagingProvider = myServer.getPagingProvider();
+		if (pagingProvider == null) {
+			mySearchId = null;
+		} else if (theSearchId != null) {
+			mySearchId = theSearchId;
+		} else if (myResult.size() > myNumToReturn) {
+			mySearchId = pagingProvider.storeResultList(myResult);
+		} else {
+			mySearchId = null;
+		}
+		return mySearchId;
+	}
+
+	/**
+	 * Returns the index (inclusive) of the first resource on this page
+	 */
+	public int getFromIndex() {
+		return myFromIndex;
+	}
+
+	/**
+	 * Returns the index (exclusive) after the last resource on this page
+	 */
+	public int getToIndex() {
+		return myFromIndex + Math.max(myNumToReturn, 0);
+	}
+
+	/**
+	 * Loads the resources on this page from the provider, and checks that they all have IDs
+	 */
+	public List<IBaseResource> loadResources() {
+		List<IBaseResource> retVal;
+		if (myNumToReturn > 0) {
+			retVal = myResult.getResources(myFromIndex, getToIndex());
+		} else {
+			retVal = Collections.emptyList();
+		}
+		RestfulServerUtils.validateResourceListNotNull(retVal);
+		validateResourceIds(retVal);
+		return retVal;
+	}
+
+	/**
+	 * Throws an {@link InternalErrorException} if any of the given resources (other than an OperationOutcome)
+	 * has no ID
+	 */
+	public static void validateResourceIds(List<IBaseResource> theResources) {
+		for (IBaseResource next : theResources) {
+			if (next.getIdElement() == null || next.getIdElement().isEmpty()) {
+				if (!(next instanceof IBaseOperationOutcome)) {
+					throw new InternalErrorException("Server method returned resource of type[" + next.getClass().getSimpleName() + "] with no ID specified (IResource#setId(IdDt) must be called)");
+				}
+			}
+		}
+	}
+
+}
@@ -0,0 +1,328 @@
+package ca.uhn.fhir.rest.server;
+
+/*
+ * #%L
+ * HAPI FHIR - Core Library
+ * %%
+ * Copyright (C) 2014 - 2017 University Health Network
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import java.util.Queue;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.commons.lang3.Validate;
+
+/**
+ * In-memory {@link IPagingProvider} which can be used concurrently by many requests without
+ * serializing them on a single lock.
+ * <p>
+ * Stored result lists are evicted in the order they were stored when any of the following
+ * limits is exceeded:
+ * </p>
+ * <ul>
+ * <li>The maximum number of result lists (see {@link #setMaximumSize(int)})</li>
+ * <li>The time to live of each result list (see {@link #setTimeToLive(long, TimeUnit)})</li>
+ * <li>The total approximate weight of the stored result lists (see {@link #setMaximumWeight(long)}
+ * and {@link #setWeigher(IWeigher)})</li>
+ * </ul>
+ * <p>
+ * The number of hits, misses and evictions are counted, and may be used to tune these limits.
+ * </p>
+ */
+public class ConcurrentMemoryPagingProvider implements IPagingProvider {
+
+	/**
+	 * Default value for {@link #setTimeToLive(long, TimeUnit)}: 1 hour
+	 */
+	public static final long DEFAULT_TIME_TO_LIVE_MILLIS = TimeUnit.HOURS.toMillis(1);
+
+	private static final IWeigher RESULT_COUNT_WEIGHER = new IWeigher() {
+		@Override
+		public long weigh(IBundleProvider theBundleProvider) {
+			return Math.max(1, theBundleProvider.size());
+		}
+	};
+
+	private static final org.slf4j.Logger ourLog = org.slf4j.LoggerFactory.getLogger(ConcurrentMemoryPagingProvider.class);
+
+	private final ConcurrentHashMap<String, StoredResultList> myBundleProviders = new ConcurrentHashMap<String, StoredResultList>();
+	private int myDefaultPageSize = 10;
+	private final AtomicLong myEvictionCount = new AtomicLong();
+	private final Queue<StoredResultList> myEvictionQueue = new ConcurrentLinkedQueue<StoredResultList>();
+	private final AtomicLong myHitCount = new AtomicLong();
+	private int myMaximumPageSize = 50;
+	private volatile int myMaximumSize;
+	private volatile long myMaximumWeight = Long.MAX_VALUE;
+	private final AtomicLong myMissCount = new AtomicLong();
+	private volatile long myTimeToLiveMillis = DEFAULT_TIME_TO_LIVE_MILLIS;
+	private final AtomicLong myTotalWeight = new AtomicLong();
+	private volatile IWeigher myWeigher = RESULT_COUNT_WEIGHER;
+
+	/**
+	 * Constructor
+	 * 
+	 * @param theMaximumSize
+	 *           The maximum number of result lists to store
+	 */
+	public ConcurrentMemoryPagingProvider(int theMaximumSize) {
+		setMaximumSize(theMaximumSize);
+	}
+
+	/**
+	 * Evicts the oldest result lists until none of the limits are exceeded. Eviction happens only
+	 * when a result list is stored, so this is the only place where the queue is consumed and
+	 * the lock is never held by a thread retrieving a result list.
+	 */
+	private void evict() {
+		long now = now();
+		synchronized (myEvictionQueue) {
+			while (true) {
+				StoredResultList next = myEvictionQueue.peek();
+				if (next == null) {
+					return;
+				}
+				boolean overLimit = myBundleProviders.size() > myMaximumSize || myTotalWeight.get() > myMaximumWeight;
+				if (!overLimit && !next.isExpired(now) && myBundleProviders.get(next.myId) == next) {
+					return;
+				}
+				myEvictionQueue.poll();
+				remove(next);
+			}
+		}
+	}
+
+	@Override
+	public int getDefaultPageSize() {
+		return myDefaultPageSize;
+	}
+
+	/**
+	 * Returns the number of result lists which have been evicted because they expired or because a
+	 * size or weight limit was exceeded
+	 */
+	public long getEvictionCount() {
+		return myEvictionCount.get();
+	}
+
+	/**
+	 * Returns the number of calls to {@link #retrieveResultList(String)} which returned a result list
+	 */
+	public long getHitCount() {
+		return myHitCount.get();
+	}
+
+	@Override
+	public int getMaximumPageSize() {
+		return myMaximumPageSize;
+	}
+
+	/**
+	 * Returns the maximum number of result lists which will be stored
+	 */
+	public int getMaximumSize() {
+		return myMaximumSize;
+	}
+
+	/**
+	 * Returns the maximum total weight of the stored result lists
+	 */
+	public long getMaximumWeight() {
+		return myMaximumWeight;
+	}
+
+	/**
+	 * Returns the number of calls to {@link #retrieveResultList(String)} which did not return a
+	 * result list, because the ID was unknown or the result list had expired or been evicted
+	 */
+	public long getMissCount() {
+		return myMissCount.get();
+	}
+
+	/**
+	 * Returns the number of result lists currently stored
+	 */
+	public int getSize() {
+		return myBundleProviders.size();
+	}
+
+	/**
+	 * Returns the time to live of stored result lists, in milliseconds
+	 */
+	public long getTimeToLiveMillis() {
+		return myTimeToLiveMillis;
+	}
+
+	/**
+	 * Returns the total weight of the result lists currently stored
+	 */
+	public long getTotalWeight() {
+		return myTotalWeight.get();
+	}
+
+	/**
+	 * Returns the current time in milliseconds. May be overridden by subclasses (e.g. for testing).
+	 */
+	protected long now() {
+		return System.currentTimeMillis();
+	}
+
+	private void remove(StoredResultList theResultList) {
+		if (myBundleProviders.remove(theResultList.myId, theResultList)) {
+			myTotalWeight.addAndGet(-theResultList.myWeight);
+			myEvictionCount.incrementAndGet();
+		}
+	}
+
+	@Override
+	public IBundleProvider retrieveResultList(String theId) {
+		StoredResultList retVal = myBundleProviders.get(theId);
+		if (retVal != null && retVal.isExpired(now())) {
+			remove(retVal);
+			retVal = null;
+		}
+		if (retVal == null) {
+			myMissCount.incrementAndGet();
+			return null;
+		}
+		myHitCount.incrementAndGet();
+		return retVal.myBundleProvider;
+	}
+
+	public ConcurrentMemoryPagingProvider setDefaultPageSize(int theDefaultPageSize) {
+		Validate.isTrue(theDefaultPageSize > 0, "size must be greater than 0");
+		myDefaultPageSize = theDefaultPageSize;
+		return this;
+	}
+
+	public ConcurrentMemoryPagingProvider setMaximumPageSize(int theMaximumPageSize) {
+		Validate.isTrue(theMaximumPageSize > 0, "size must be greater than 0");
+		myMaximumPageSize = theMaximumPageSize;
+		return this;
+	}
+
+	/**
+	 * Sets the maximum number of result lists which will be stored. When this number is
+	 * exceeded, the oldest result lists are evicted.
+	 */
+	public ConcurrentMemoryPagingProvider setMaximumSize(int theMaximumSize) {
+		Validate.isTrue(theMaximumSize > 0, "theMaximumSize must be greater than 0");
+		myMaximumSize = theMaximumSize;
+		return this;
+	}
+
+	/**
+	 * Sets the maximum total weight of the stored result lists, as calculated by the
+	 * {@link #setWeigher(IWeigher) weigher}. When this weight is exceeded, the oldest
+	 * result lists are evicted. A single result list which is heavier than this limit
+	 * is not stored at all, and {@link #storeResultList(IBundleProvider)} returns <code>null</code>
+	 * so that it is returned without paging links. By default there is no limit.
+	 */
+	public ConcurrentMemoryPagingProvider setMaximumWeight(long theMaximumWeight) {
+		Validate.isTrue(theMaximumWeight > 0, "theMaximumWeight must be greater than 0");
+		myMaximumWeight = theMaximumWeight;
+		return this;
+	}
+
+	/**
+	 * Sets the time after which a stored result list expires, and may no longer
+	 * be retrieved. Defaults to {@link #DEFAULT_TIME_TO_LIVE_MILLIS 1 hour}.
+	 */
+	public ConcurrentMemoryPagingProvider setTimeToLive(long theTimeToLive, TimeUnit theTimeUnit) {
+		Validate.isTrue(theTimeToLive > 0, "theTimeToLive must be greater than 0");
+		Validate.notNull(theTimeUnit, "theTimeUnit must not be null");
+		myTimeToLiveMillis = theTimeUnit.toMillis(theTimeToLive);
+		return this;
+	}
+
+	/**
+	 * Sets the weigher used to calculate the approximate weight of each stored result list,
+	 * which is compared against the {@link #setMaximumWeight(long) maximum weight}. The default
+	 * weigher uses the number of resources in the result list
+	 * ({@link IBundleProvider#size()}).
+	 */
+	public ConcurrentMemoryPagingProvider setWeigher(IWeigher theWeigher) {
+		Validate.notNull(theWeigher, "theWeigher must not be null");
+		myWeigher = theWeigher;
+		return this;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * <p>
+	 * Returns <code>null</code> if the result list is heavier than the {@link #setMaximumWeight(long) maximum weight}
+	 * on its own, since it can not be stored.
+	 * </p>
+	 */
+	@Override
+	public String storeResultList(IBundleProvider theList) {
+		long weight = myWeigher.weigh(theList);
+		if (weight > myMaximumWeight) {
+			ourLog.warn("Not storing result list with weight {} which exceeds the maximum weight of {}", weight, myMaximumWeight);
+			return null;
+		}
+
+		String key = UUID.randomUUID().toString();
+		StoredResultList resultList = new StoredResultList(key, theList, weight, now() + myTimeToLiveMillis);
+		myBundleProviders.put(key, resultList);
+		myTotalWeight.addAndGet(weight);
+		myEvictionQueue.add(resultList);
+
+		evict();
+
+		return key;
+	}
+
+	/**
+	 * Calculates the approximate weight of a stored result list
+	 * 
+	 * @see ConcurrentMemoryPagingProvider#setWeigher(IWeigher)
+	 */
+	public interface IWeigher {
+
+		/**
+		 * Returns the approximate weight of the given result list. The unit is up to the implementation
+		 * (e.g. a number of resources or an estimated number of bytes) but must be the same as the unit
+		 * used for {@link ConcurrentMemoryPagingProvider#setMaximumWeight(long)}.
+		 */
+		long weigh(IBundleProvider theBundleProvider);
+
+	}
+
+	private static class StoredResultList {
+
+		private final IBundleProvider myBundleProvider;
+		private final long myExpiry;
+		private final String myId;
+		private final long myWeight;
+
+		public StoredResultList(String theId, IBundleProvider theBundleProvider, long theWeight, long theExpiry) {
+			myId = theId;
+			myBundleProvider = theBundleProvider;
+			myWeight = theWeight;
+			myExpiry = theExpiry;
+		}
+
+		public boolean isExpired(long theNow) {
+			return theNow >= myExpiry;
+		}
+
+	}
+
+}
@@ -29,6 +29,9 @@ public interface IPagingProvider {
 	
 	/**
 	 * Stores a result list and returns an ID with which that list can be returned
+	 * 
+	 * @return The ID, or <code>null</code> if the result list could not be stored, in which case
+	 *         the first page is returned without any paging links
 	 */
 	public String storeResultList(IBundleProvider theList);
 	
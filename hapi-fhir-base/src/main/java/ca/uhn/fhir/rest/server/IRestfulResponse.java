@@ -24,9 +24,12 @@ import java.io.IOException;
 import java.io.UnsupportedEncodingException;
 import java.io.Writer;
 import java.util.Date;
+import java.util.Iterator;
 import java.util.Set;
 
+import org.hl7.fhir.instance.model.api.IBase;
 import org.hl7.fhir.instance.model.api.IBaseBinary;
+import org.hl7.fhir.instance.model.api.IBaseBundle;
 import org.hl7.fhir.instance.model.api.IBaseResource;
 import org.hl7.fhir.instance.model.api.IIdType;
 import org.hl7.fhir.instance.model.api.IPrimitiveType;
@@ -40,6 +43,12 @@ public interface IRestfulResponse {
 
 	Object streamResponseAsResource(IBaseResource theActualResourceToReturn, boolean thePrettyPrint, Set<SummaryEnum> theSummaryMode, int theStatusCode, String theStatusMessage, boolean theRespondGzip, boolean theAddContentLocation) throws IOException;
 
+	/**
+	 * Streams a Bundle resource whose entries are supplied by an iterator, so that the entries
+	 * are encoded as they are produced instead of being collected in the bundle first
+	 */
+	Object streamResponseAsBundleResource(IBaseBundle theBundle, Iterator<? extends IBase> theEntries, boolean thePrettyPrint, Set<SummaryEnum> theSummaryMode, boolean theRespondGzip) throws IOException;
+
 	Object streamResponseAsBundle(Bundle bundle, Set<SummaryEnum> summaryMode, boolean respondGzip, boolean requestIsBrowser) throws IOException;
 
 	/**
@@ -21,9 +21,11 @@ package ca.uhn.fhir.rest.server;
  */
 
 import java.util.Date;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Set;
 
+import org.hl7.fhir.instance.model.api.IBase;
 import org.hl7.fhir.instance.model.api.IBaseResource;
 import org.hl7.fhir.instance.model.api.IPrimitiveType;
 
@@ -43,6 +45,25 @@ public interface IVersionSpecificBundleFactory {
 	void initializeBundleFromBundleProvider(IRestfulServer<?> theServer, IBundleProvider theResult, EncodingEnum theResponseEncoding, String theServerBase, String theCompleteUrl, boolean thePrettyPrint,
 			int theOffset, Integer theCount, String theSearchId, BundleTypeEnum theBundleType, Set<Include> theIncludes);
 
+	/**
+	 * Like {@link #initializeBundleFromBundleProvider(IRestfulServer, IBundleProvider, EncodingEnum, String, String, boolean, int, Integer, String, BundleTypeEnum, Set)},
+	 * except that no resources are loaded from the provider. Instead, the bundle returned by {@link #getResourceBundle()}
+	 * is populated with everything except its entries (type, total, links, etc.) and the returned iterator
+	 * loads the resources for the page in batches of <code>theBatchSize</code>, returning the bundle entries for
+	 * each batch as it is loaded. This is intended to be used with
+	 * {@link ca.uhn.fhir.parser.BaseParser#encodeBundleToWriter(org.hl7.fhir.instance.model.api.IBaseBundle, Iterator, java.io.Writer)}
+	 * so that only one batch of resources needs to be held in memory at a time.
+	 * <p>
+	 * Streaming is not supported for DSTU1 bundles. The DSTU1 factory instead populates the bundle returned by
+	 * {@link #getDstu1Bundle()} completely, as {@link #initializeBundleFromBundleProvider(IRestfulServer, IBundleProvider, EncodingEnum, String, String, boolean, int, Integer, String, BundleTypeEnum, Set) initializeBundleFromBundleProvider}
+	 * does, and returns an empty iterator.
+	 * </p>
+	 * 
+	 * @since 2.3
+	 */
+	Iterator<IBase> initializeStreamingBundleFromBundleProvider(IRestfulServer<?> theServer, IBundleProvider theResult, EncodingEnum theResponseEncoding, String theServerBase, String theCompleteUrl,
+			boolean thePrettyPrint, int theOffset, Integer theCount, String theSearchId, BundleTypeEnum theBundleType, Set<Include> theIncludes, int theBatchSize);
+
 	Bundle getDstu1Bundle();
 
 	IBaseResource getResourceBundle();
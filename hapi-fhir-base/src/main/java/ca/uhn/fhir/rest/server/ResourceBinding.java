@@ -20,9 +20,15 @@ package ca.uhn.fhir.rest.server;
  * #L%
  */
 
+import static org.apache.commons.lang3.StringUtils.isNotBlank;
+
 import java.util.ArrayList;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
+import ca.uhn.fhir.rest.api.RequestTypeEnum;
 import ca.uhn.fhir.rest.method.BaseMethodBinding;
 import ca.uhn.fhir.rest.method.RequestDetails;
 
@@ -35,6 +41,7 @@ public class ResourceBinding {
 
 	private String resourceName;
 	private List<BaseMethodBinding<?>> methods = new ArrayList<BaseMethodBinding<?>>();
+	private volatile MethodIndex myMethodIndex;
 
 	public ResourceBinding() {
 	}
@@ -51,7 +58,7 @@ public class ResourceBinding {
 		}
 
 		ourLog.debug("Looking for a handler for {}", theRequest);
-		for (BaseMethodBinding<?> rm : methods) {
+		for (BaseMethodBinding<?> rm : getIndex().getCandidates(theRequest)) {
 			if (rm.incomingServerRequestMatchesMethod(theRequest)) {
 				ourLog.debug("Handler {} matches", rm);
 				return rm;
@@ -76,10 +83,21 @@ public class ResourceBinding {
 
 	public void setMethods(List<BaseMethodBinding<?>> methods) {
 		this.methods = methods;
+		myMethodIndex = null;
 	}
 
 	public void addMethod(BaseMethodBinding<?> method) {
 		this.methods.add(method);
+		myMethodIndex = null;
+	}
+
+	private MethodIndex getIndex() {
+		MethodIndex retVal = myMethodIndex;
+		if (retVal == null || !retVal.isCurrent(methods)) {
+			retVal = new MethodIndex(methods);
+			myMethodIndex = retVal;
+		}
+		return retVal;
 	}
 
 	@Override
@@ -94,4 +112,98 @@ public class ResourceBinding {
 		return 0;
 	}
 
+	/**
+	 * Index of the method bindings for a resource, keyed by the request type, operation and
+	 * <code>_query</code> name of the request. Each key maps to the bindings which could possibly
+	 * match a request with that key (according to {@link BaseMethodBinding#getPossibleRequestTypes()},
+	 * {@link BaseMethodBinding#getPossibleOperations()} and {@link BaseMethodBinding#getPossibleQueryName()}),
+	 * in their original order, so that only those bindings need to be tested against the request.
+	 * <p>
+	 * The candidate list for each key is built the first time a request with that key is seen.
+	 * Operation and query names which no binding declares are all mapped to the same key, so the
+	 * number of keys is bounded by the bindings and not by the requests.
+	 * </p>
+	 */
+	private static class MethodIndex {
+
+		private static final String OTHER = "\u0000other";
+
+		private final ConcurrentHashMap<String, List<BaseMethodBinding<?>>> myCandidates = new ConcurrentHashMap<String, List<BaseMethodBinding<?>>>();
+		private final Set<String> myKnownOperations = new HashSet<String>();
+		private final Set<String> myKnownQueryNames = new HashSet<String>();
+		private final List<BaseMethodBinding<?>> myMethods;
+		private final int mySize;
+
+		public MethodIndex(List<BaseMethodBinding<?>> theMethods) {
+			myMethods = theMethods;
+			mySize = theMethods.size();
+			for (BaseMethodBinding<?> next : theMethods) {
+				if (next.getPossibleOperations() != null) {
+					myKnownOperations.addAll(next.getPossibleOperations());
+				}
+				if (next.getPossibleQueryName() != null) {
+					myKnownQueryNames.add(next.getPossibleQueryName());
+				}
+			}
+		}
+
+		private List<BaseMethodBinding<?>> buildCandidates(RequestTypeEnum theRequestType, String theOperation, String theQueryName) {
+			List<BaseMethodBinding<?>> retVal = new ArrayList<BaseMethodBinding<?>>();
+			for (BaseMethodBinding<?> next : myMethods) {
+				Set<RequestTypeEnum> requestTypes = next.getPossibleRequestTypes();
+				if (requestTypes != null && !requestTypes.contains(theRequestType)) {
+					continue;
+				}
+				Set<String> operations = next.getPossibleOperations();
+				if (operations != null && !operations.contains(theOperation)) {
+					continue;
+				}
+				String queryName = next.getPossibleQueryName();
+				if (queryName != null && !queryName.equals(theQueryName)) {
+					continue;
+				}
+				retVal.add(next);
+			}
+			return retVal;
+		}
+
+		public List<BaseMethodBinding<?>> getCandidates(RequestDetails theRequest) {
+			RequestTypeEnum requestType = theRequest.getRequestType();
+			if (requestType == null) {
+				return myMethods;
+			}
+
+			String operation = isNotBlank(theRequest.getOperation()) ? theRequest.getOperation() : "";
+			if (!myKnownOperations.contains(operation)) {
+				operation = OTHER;
+			}
+
+			String queryName = "";
+			String[] queryNameValues = theRequest.getParameters().get(Constants.PARAM_QUERY);
+			if (queryNameValues != null && queryNameValues.length > 0 && isNotBlank(queryNameValues[0])) {
+				queryName = queryNameValues[0];
+			}
+			if (!myKnownQueryNames.contains(queryName)) {
+				queryName = OTHER;
+			}
+
+			String key = requestType.name() + ' ' + operation + ' ' + queryName;
+			List<BaseMethodBinding<?>> retVal = myCandidates.get(key);
+			if (retVal == null) {
+				retVal = buildCandidates(requestType, operation, queryName);
+				myCandidates.put(key, retVal);
+			}
+			return retVal;
+		}
+
+		/**
+		 * The list of bindings is exposed by {@link ResourceBinding#getMethodBindings()}, so
+		 * check that it hasn't been modified since this index was built
+		 */
+		public boolean isCurrent(List<BaseMethodBinding<?>> theMethods) {
+			return theMethods == myMethods && theMethods.size() == mySize;
+		}
+
+	}
+
 }
@@ -22,9 +22,12 @@ package ca.uhn.fhir.rest.server;
 
 import java.io.IOException;
 import java.util.Date;
+import java.util.Iterator;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 
+import org.hl7.fhir.instance.model.api.IBase;
+import org.hl7.fhir.instance.model.api.IBaseBundle;
 import org.hl7.fhir.instance.model.api.IBaseResource;
 import org.hl7.fhir.instance.model.api.IIdType;
 import org.hl7.fhir.instance.model.api.IPrimitiveType;
@@ -89,6 +92,12 @@ public abstract class RestfulResponse<T extends RequestDetails> implements IRest
 		return RestfulServerUtils.streamResponseAsBundle(theRequestDetails.getServer(), bundle, summaryMode, respondGzip, getRequestDetails());
 	}
 
+	@Override
+	public final Object streamResponseAsBundleResource(IBaseBundle theBundle, Iterator<? extends IBase> theEntries, boolean thePrettyPrint, Set<SummaryEnum> theSummaryMode, boolean theRespondGzip)
+					throws IOException {
+		return RestfulServerUtils.streamResponseAsResource(theRequestDetails.getServer(), theBundle, theEntries, theSummaryMode, Constants.STATUS_HTTP_200_OK, null, false, theRespondGzip, getRequestDetails(), null, null);
+	}
+
 	@Override
 	public final Object streamResponseAsResource(IBaseResource theResource, boolean thePrettyPrint, Set<SummaryEnum> theSummaryMode,
 			int theStatusCode, String theStatusMessage, boolean theRespondGzip, boolean theAddContentLocation)
@@ -129,6 +129,7 @@ public class RestfulServer extends HttpServlet implements IRestfulServer<Servlet
 	/** This is configurable but by default we just use HAPI version */
 	private String myServerVersion = VersionUtil.getVersion();
 	private boolean myStarted;
+	private int myStreamingBundleBatchSize;
 	private Map<String, IResourceProvider> myTypeToProvider = new HashMap<String, IResourceProvider>();
 	private boolean myUncompressIncomingContents = true;
 	private boolean myUseBrowserFriendlyContentTypes;
@@ -527,6 +528,17 @@ public class RestfulServer extends HttpServlet implements IRestfulServer<Servlet
 		return myServerVersion;
 	}
 
+	/**
+	 * Returns the number of resources which will be loaded from the {@link IBundleProvider} at a time
+	 * when streaming search, history and paging responses, or <code>0</code> if streaming is disabled
+	 * (which is the default).
+	 * 
+	 * @see #setStreamingBundleBatchSize(int)
+	 */
+	public int getStreamingBundleBatchSize() {
+		return myStreamingBundleBatchSize;
+	}
+
 	protected void handleRequest(RequestTypeEnum theRequestType, HttpServletRequest theRequest, HttpServletResponse theResponse) throws ServletException, IOException {
 		String fhirServerBase = null;
 		ServletRequestDetails requestDetails = new ServletRequestDetails();
@@ -1479,6 +1491,27 @@ public class RestfulServer extends HttpServlet implements IRestfulServer<Servlet
 		myServerVersion = theServerVersion;
 	}
 
+	/**
+	 * If set to a value greater than <code>0</code>, search, history and paging responses will be written
+	 * to the client as the resources are loaded from the {@link IBundleProvider}, in batches of the
+	 * given size, instead of building the complete Bundle in memory before encoding it. This reduces
+	 * the memory required to serve large pages.
+	 * <p>
+	 * Streaming is only used when no interceptors are registered with the server, since interceptors
+	 * may need to examine or modify the complete response. Note also that because the response has
+	 * already been started, an error which occurs while loading a batch results in a truncated
+	 * response rather than an OperationOutcome.
+	 * </p>
+	 * <p>
+	 * The default is <code>0</code>, meaning that streaming is disabled. Streaming is not supported
+	 * for DSTU1 servers and this setting is ignored for them.
+	 * </p>
+	 */
+	public void setStreamingBundleBatchSize(int theStreamingBundleBatchSize) {
+		Validate.isTrue(theStreamingBundleBatchSize >= 0, "theStreamingBundleBatchSize must not be negative");
+		myStreamingBundleBatchSize = theStreamingBundleBatchSize;
+	}
+
 	/**
 	 * Should the server attempt to decompress incoming request contents (default is <code>true</code>). Typically this
 	 * should be set to <code>true</code> unless the server has other configuration to
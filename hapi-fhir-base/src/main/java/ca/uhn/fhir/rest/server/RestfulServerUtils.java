@@ -43,11 +43,14 @@ import javax.servlet.http.HttpServletRequest;
 
 import org.apache.commons.lang3.StringUtils;
 import org.hl7.fhir.instance.model.api.IAnyResource;
+import org.hl7.fhir.instance.model.api.IBase;
 import org.hl7.fhir.instance.model.api.IBaseBinary;
+import org.hl7.fhir.instance.model.api.IBaseBundle;
 import org.hl7.fhir.instance.model.api.IBaseResource;
 import org.hl7.fhir.instance.model.api.IIdType;
 import org.hl7.fhir.instance.model.api.IPrimitiveType;
 
+import ca.uhn.fhir.context.BaseRuntimeChildDefinition;
 import ca.uhn.fhir.context.FhirContext;
 import ca.uhn.fhir.context.FhirVersionEnum;
 import ca.uhn.fhir.model.api.Bundle;
@@ -58,6 +61,7 @@ import ca.uhn.fhir.model.api.Tag;
 import ca.uhn.fhir.model.api.TagList;
 import ca.uhn.fhir.model.primitive.InstantDt;
 import ca.uhn.fhir.model.valueset.BundleTypeEnum;
+import ca.uhn.fhir.parser.BaseParser;
 import ca.uhn.fhir.parser.IParser;
 import ca.uhn.fhir.rest.api.PreferReturnEnum;
 import ca.uhn.fhir.rest.api.SummaryEnum;
@@ -117,6 +121,17 @@ public class RestfulServerUtils {
 		}
 	}
 
+	/**
+	 * Adds streamed entries to a bundle so that it can be encoded by a parser which can not
+	 * encode the entries as they are produced
+	 */
+	private static void addEntriesToBundle(FhirContext theContext, IBaseResource theBundle, Iterator<? extends IBase> theEntries) {
+		BaseRuntimeChildDefinition entryChild = theContext.getResourceDefinition(theBundle).getChildByName("entry");
+		while (theEntries.hasNext()) {
+			entryChild.getMutator().addValue(theBundle, theEntries.next());
+		}
+	}
+
 	public static String createPagingLink(Set<Include> theIncludes, String theServerBase, String theSearchId, int theOffset, int theCount, EncodingEnum theResponseEncoding, boolean thePrettyPrint,
 			BundleTypeEnum theBundleType) {
 		try {
@@ -589,6 +604,16 @@ public class RestfulServerUtils {
 	public static Object streamResponseAsResource(IRestfulServerDefaults theServer, IBaseResource theResource, Set<SummaryEnum> theSummaryMode, int theStausCode, String theStatusMessage,
 			boolean theAddContentLocationHeader, boolean respondGzip, RequestDetails theRequestDetails, IIdType theOperationResourceId, IPrimitiveType<Date> theOperationResourceLastUpdated)
 			throws IOException {
+		return streamResponseAsResource(theServer, theResource, null, theSummaryMode, theStausCode, theStatusMessage, theAddContentLocationHeader, respondGzip, theRequestDetails, theOperationResourceId, theOperationResourceLastUpdated);
+	}
+
+	/**
+	 * @param theStreamingBundleEntries If not <code>null</code>, <code>theResource</code> must be a Bundle and the entries
+	 * returned by this iterator will be encoded as its <code>Bundle.entry</code> values as they are produced
+	 */
+	public static Object streamResponseAsResource(IRestfulServerDefaults theServer, IBaseResource theResource, Iterator<? extends IBase> theStreamingBundleEntries, Set<SummaryEnum> theSummaryMode, int theStausCode, String theStatusMessage,
+			boolean theAddContentLocationHeader, boolean respondGzip, RequestDetails theRequestDetails, IIdType theOperationResourceId, IPrimitiveType<Date> theOperationResourceLastUpdated)
+			throws IOException {
 		IRestfulResponse restUtil = theRequestDetails.getResponse();
 
 		// Determine response encoding
@@ -699,7 +724,14 @@ public class RestfulServerUtils {
 			writer.append(((IResource) theResource).getText().getDiv().getValueAsString());
 		} else {
 			IParser parser = getNewParser(theServer.getFhirContext(), theRequestDetails);
-			parser.encodeResourceToWriter(theResource, writer);
+			if (theStreamingBundleEntries != null && parser instanceof BaseParser) {
+				((BaseParser) parser).encodeBundleToWriter((IBaseBundle) theResource, theStreamingBundleEntries, writer);
+			} else {
+				if (theStreamingBundleEntries != null) {
+					addEntriesToBundle(theServer.getFhirContext(), theResource, theStreamingBundleEntries);
+				}
+				parser.encodeResourceToWriter(theResource, writer);
+			}
 		}
 
 		return restUtil.sendWriterResponse(theStausCode, contentType, charset, writer);
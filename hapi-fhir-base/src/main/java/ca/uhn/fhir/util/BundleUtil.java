@@ -79,6 +79,38 @@ public class BundleUtil {
 		return retVal;		
 	}
 	
+	/**
+	 * Returns the URL of the first link in the bundle with the given relation (e.g. "next"), or
+	 * <code>null</code> if the bundle has no such link
+	 */
+	public static String getLinkUrlOfType(FhirContext theContext, IBaseBundle theBundle, String theLinkRelation) {
+		RuntimeResourceDefinition def = theContext.getResourceDefinition(theBundle);
+		BaseRuntimeChildDefinition linkChild = def.getChildByName("link");
+		List<IBase> links = linkChild.getAccessor().getValues(theBundle);
+		if (links == null || links.isEmpty()) {
+			return null;
+		}
+
+		BaseRuntimeElementCompositeDefinition<?> linkChildElem = (BaseRuntimeElementCompositeDefinition<?>) linkChild.getChildByName("link");
+		BaseRuntimeChildDefinition relationChild = linkChildElem.getChildByName("relation");
+		BaseRuntimeChildDefinition urlChild = linkChildElem.getChildByName("url");
+		for (IBase nextLink : links) {
+			List<IBase> relations = relationChild.getAccessor().getValues(nextLink);
+			if (relations.isEmpty() || !theLinkRelation.equals(((IPrimitiveType<?>) relations.get(0)).getValueAsString())) {
+				continue;
+			}
+			List<IBase> urls = urlChild.getAccessor().getValues(nextLink);
+			if (!urls.isEmpty()) {
+				String url = ((IPrimitiveType<?>) urls.get(0)).getValueAsString();
+				if (isNotBlank(url)) {
+					return url;
+				}
+			}
+		}
+
+		return null;
+	}
+
 	public static String getBundleType(FhirContext theContext, IBaseBundle theBundle) {
 		RuntimeResourceDefinition def = theContext.getResourceDefinition(theBundle);
 		BaseRuntimeChildDefinition entryChild = def.getChildByName("type");
@@ -20,13 +20,19 @@ package ca.uhn.fhir.util;
  * #L%
  */
 import java.io.*;
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 
 import javax.xml.stream.*;
+import javax.xml.stream.events.Attribute;
+import javax.xml.stream.events.Namespace;
+import javax.xml.stream.events.XMLEvent;
 
 import org.apache.commons.lang3.StringEscapeUtils;
+import org.codehaus.stax2.XMLInputFactory2;
 import org.codehaus.stax2.XMLOutputFactory2;
 import org.codehaus.stax2.io.EscapingWriterFactory;
 
@@ -43,6 +49,7 @@ import ca.uhn.fhir.util.jar.IDependencyLog;
  * This class contains code adapted from the Apache Axiom project.
  */
 public class XmlUtil {
+	private static volatile XMLEventFactory ourEventFactory;
 	private static XMLOutputFactory ourFragmentOutputFactory;
 	private static volatile boolean ourHaveLoggedStaxImplementation;
 	private static volatile XMLInputFactory ourInputFactory;
@@ -1553,6 +1560,86 @@ public class XmlUtil {
 		return er;
 	}
 
+	/**
+	 * Creates a cursor based reader. This is cheaper than {@link #createXmlReader(Reader)} since it does
+	 * not allocate an event object for every node in the document. Note that unlike the event reader,
+	 * the stream reader may report a single run of text as several consecutive
+	 * {@link XMLStreamConstants#CHARACTERS} events.
+	 */
+	public static XMLStreamReader createXmlStreamReader(Reader theReader) throws FactoryConfigurationError, XMLStreamException {
+		throwUnitTestExceptionIfConfiguredToDoSo();
+
+		XMLInputFactory inputFactory = getOrCreateInputFactory();
+		XMLStreamReader retVal = inputFactory.createXMLStreamReader(theReader);
+		return retVal;
+	}
+
+	/**
+	 * Creates an event object for the node the given cursor based reader is currently positioned on. This
+	 * is intended for the places where an event is actually needed (e.g. capturing XHTML narrative content)
+	 * while reading the rest of the document with the cursor API. The reader is not advanced.
+	 */
+	public static XMLEvent createXmlEvent(XMLStreamReader theReader) throws FactoryConfigurationError {
+		XMLEventFactory factory = getOrCreateEventFactory();
+		switch (theReader.getEventType()) {
+		case XMLStreamConstants.START_ELEMENT: {
+			List<Attribute> attributes = new ArrayList<Attribute>(theReader.getAttributeCount());
+			for (int i = 0; i < theReader.getAttributeCount(); i++) {
+				attributes.add(factory.createAttribute(theReader.getAttributeName(i), theReader.getAttributeValue(i)));
+			}
+			return factory.createStartElement(theReader.getName(), attributes.iterator(), createNamespaces(factory, theReader).iterator());
+		}
+		case XMLStreamConstants.END_ELEMENT:
+			return factory.createEndElement(theReader.getName(), createNamespaces(factory, theReader).iterator());
+		case XMLStreamConstants.CHARACTERS:
+			return factory.createCharacters(theReader.getText());
+		case XMLStreamConstants.SPACE:
+			return factory.createIgnorableSpace(theReader.getText());
+		case XMLStreamConstants.CDATA:
+			return factory.createCData(theReader.getText());
+		case XMLStreamConstants.COMMENT:
+			return factory.createComment(theReader.getText());
+		case XMLStreamConstants.PROCESSING_INSTRUCTION:
+			return factory.createProcessingInstruction(theReader.getPITarget(), theReader.getPIData());
+		case XMLStreamConstants.ENTITY_REFERENCE:
+			return factory.createEntityReference(theReader.getLocalName(), null);
+		case XMLStreamConstants.DTD:
+			return factory.createDTD(theReader.getText());
+		case XMLStreamConstants.START_DOCUMENT:
+			return factory.createStartDocument();
+		case XMLStreamConstants.END_DOCUMENT:
+			return factory.createEndDocument();
+		default:
+			throw new IllegalStateException("Unexpected event type: " + theReader.getEventType());
+		}
+	}
+
+	/**
+	 * Creates a text event, for use alongside {@link #createXmlEvent(XMLStreamReader)} when the caller has
+	 * joined several consecutive text events from a cursor based reader
+	 */
+	public static XMLEvent createXmlCharactersEvent(String theText) throws FactoryConfigurationError {
+		return getOrCreateEventFactory().createCharacters(theText);
+	}
+
+	private static List<Namespace> createNamespaces(XMLEventFactory theFactory, XMLStreamReader theReader) {
+		int count = theReader.getNamespaceCount();
+		if (count == 0) {
+			return Collections.emptyList();
+		}
+		List<Namespace> retVal = new ArrayList<Namespace>(count);
+		for (int i = 0; i < count; i++) {
+			String prefix = theReader.getNamespacePrefix(i);
+			String uri = theReader.getNamespaceURI(i);
+			if (prefix == null || prefix.length() == 0) {
+				retVal.add(theFactory.createNamespace(uri));
+			} else {
+				retVal.add(theFactory.createNamespace(prefix, uri));
+			}
+		}
+		return retVal;
+	}
+
 	public static XMLStreamWriter createXmlStreamWriter(Writer theWriter) throws FactoryConfigurationError, XMLStreamException {
 		throwUnitTestExceptionIfConfiguredToDoSo();
 		
@@ -1567,6 +1654,31 @@ public class XmlUtil {
 		return retVal;
 	}
 
+	private static XMLEventFactory getOrCreateEventFactory() throws FactoryConfigurationError {
+		XMLEventFactory retVal = ourEventFactory;
+		if (retVal == null) {
+			try {
+				// Detect if we're running with the Android lib, and force repackaged Woodstox to be used
+				Class.forName("ca.uhn.fhir.repackage.javax.xml.stream.XMLEventFactory");
+				System.setProperty("javax.xml.stream.XMLEventFactory", "com.ctc.wstx.stax.WstxEventFactory");
+			} catch (ClassNotFoundException e) {
+				// ok
+			}
+
+			/*
+			 * We never call setLocation(..) on this factory, so it is safe to share
+			 * between threads
+			 */
+			try {
+				retVal = XMLEventFactory.newInstance();
+			} catch (Throwable e) {
+				throw new ConfigurationException("Unable to initialize StAX - XML processing is disabled", e);
+			}
+			ourEventFactory = retVal;
+		}
+		return retVal;
+	}
+
 	private static XMLOutputFactory getOrCreateFragmentOutputFactory() throws FactoryConfigurationError {
 		XMLOutputFactory retVal = ourFragmentOutputFactory;
 		if (retVal == null) {
@@ -1618,6 +1730,12 @@ public class XmlUtil {
 				if (inputFactory instanceof com.ctc.wstx.stax.WstxInputFactory) {
 					// inputFactory.setProperty(WstxInputFactory.IS_REPLACING_ENTITY_REFERENCES, false);
 					inputFactory.setProperty(WstxInputProperties.P_UNDECLARED_ENTITY_RESOLVER, XML_RESOLVER);
+					/*
+					 * Event readers always parse eagerly, but stream readers default to lazy
+					 * parsing which defers errors (e.g. an undeclared entity) until the text
+					 * is accessed and then reports them as an unchecked WstxLazyException
+					 */
+					inputFactory.setProperty(XMLInputFactory2.P_LAZY_PARSING, false);
 					try {
 						inputFactory.setProperty(WstxInputProperties.P_MAX_ATTRIBUTE_SIZE, "100000000");
 					} catch (IllegalArgumentException e) {
@@ -0,0 +1,212 @@
+package ca.uhn.fhir.parser.json;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.StringReader;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Ignore;
+import org.junit.Test;
+
+import ca.uhn.fhir.parser.DataFormatException;
+
+public class StreamingJsonStructureTest {
+	private static final org.slf4j.Logger ourLog = org.slf4j.LoggerFactory.getLogger(StreamingJsonStructureTest.class);
+
+	private static final String TEST_DATA =
+			"{" +
+			"    \"resourceType\":\"Observation\"," +
+			"    \"id\":\"11111\"," +
+			"    \"_id\":{\"extension\":[{\"url\":\"http://foo\",\"valueString\":\"bar\"}]}," +
+			"    \"scalar-number\":1.00000000000000000001," +
+			"    \"scalar-integer\":11111," +
+			"    \"scalar-boolean\":true," +
+			"    \"scalar-boolean-false\":false," +
+			"    \"null-value\":null," +
+			"    \"array-value\":[12345, {\"value\":\"15250\"}, null, \"\\u00e9\\\"\"]," +
+			"    \"empty-object\":{}," +
+			"    \"empty-array\":[]" +
+			"}";
+
+	private static void assertSameStructure(String thePath, JsonLikeValue theExpected, JsonLikeValue theActual) {
+		assertEquals(thePath, theExpected.getJsonType(), theActual.getJsonType());
+		switch (theExpected.getJsonType()) {
+		case OBJECT: {
+			JsonLikeObject expected = theExpected.getAsObject();
+			JsonLikeObject actual = theActual.getAsObject();
+			assertEquals(thePath, new ArrayList<String>(expected.keySet()), new ArrayList<String>(actual.keySet()));
+			for (String next : expected.keySet()) {
+				assertSameStructure(thePath + "." + next, expected.get(next), actual.get(next));
+			}
+			break;
+		}
+		case ARRAY: {
+			JsonLikeArray expected = theExpected.getAsArray();
+			JsonLikeArray actual = theActual.getAsArray();
+			assertEquals(thePath, expected.size(), actual.size());
+			for (int i = 0; i < expected.size(); i++) {
+				assertSameStructure(thePath + "[" + i + "]", expected.get(i), actual.get(i));
+			}
+			break;
+		}
+		case SCALAR:
+			assertEquals(thePath, theExpected.getDataType(), theActual.getDataType());
+			assertEquals(thePath, theExpected.getAsString(), theActual.getAsString());
+			assertEquals(thePath, theExpected.getAsBoolean(), theActual.getAsBoolean());
+			break;
+		case NULL:
+			break;
+		}
+	}
+
+	private static JsonLikeObject load(JsonLikeStructure theStructure, String theInput) {
+		theStructure.load(new StringReader(theInput));
+		return theStructure.getRootObject();
+	}
+
+	private static String loadAndGetError(JsonLikeStructure theStructure, String theInput, boolean theAllowArray) {
+		try {
+			theStructure.load(new StringReader(theInput), theAllowArray);
+			fail();
+			return null;
+		} catch (DataFormatException e) {
+			return e.getMessage();
+		}
+	}
+
+	@Test
+	public void testDataTypes() {
+		JsonLikeObject root = load(new StreamingJsonStructure(), TEST_DATA);
+
+		assertEquals("Observation", root.getString("resourceType"));
+		assertEquals("1.00000000000000000001", root.get("scalar-number").getAsString());
+		assertEquals(new BigDecimal("1.00000000000000000001"), root.get("scalar-number").getAsNumber());
+		assertTrue(root.get("scalar-number").isNumber());
+		assertTrue(root.get("scalar-boolean").getAsBoolean());
+		assertFalse(root.get("scalar-boolean-false").getAsBoolean());
+		assertEquals(JsonLikeValue.ScalarType.BOOLEAN, root.get("scalar-boolean").getDataType());
+		assertTrue(root.get("null-value").isNull());
+		assertNull(root.get("not-present"));
+		assertEquals("é\"", root.get("array-value").getAsArray().get(3).getAsString());
+		assertEquals(0, root.get("empty-array").getAsArray().size());
+		assertEquals(0, root.get("empty-object").getAsObject().keySet().size());
+	}
+
+	@Test
+	public void testDuplicateKeyKeepsPositionAndLastValue() {
+		JsonLikeObject root = load(new StreamingJsonStructure(), "{\"a\":\"1\",\"b\":\"2\",\"a\":\"3\"}");
+		assertEquals("[a, b]", new ArrayList<String>(root.keySet()).toString());
+		assertEquals("3", root.getString("a"));
+	}
+
+	@Test
+	public void testErrorsMatchGsonStructure() {
+		String[] inputs = { "", "   ", "[]", "  foo", "{\"a\":", "{\"a\":\"b\"} {", "{\"a\":}", "{\"a\" \"b\"}" };
+		for (String next : inputs) {
+			String expected = loadAndGetError(new GsonStructure(), next, false);
+			String actual = loadAndGetError(new StreamingJsonStructure(), next, false);
+			ourLog.info("Input {} gave error: {}", next, actual);
+			assertEquals(next, expected.substring(0, 40), actual.substring(0, 40));
+		}
+		assertEquals(loadAndGetError(new GsonStructure(), "x", true), loadAndGetError(new StreamingJsonStructure(), "x", true));
+		assertEquals("Failed to parse JSON content, error was: Did not find any content to parse", loadAndGetError(new StreamingJsonStructure(), " ", false));
+	}
+
+	@Test
+	public void testLargeObjectLookups() {
+		StringBuilder b = new StringBuilder("{");
+		for (int i = 0; i < 100; i++) {
+			if (i > 0) {
+				b.append(',');
+			}
+			b.append("\"key").append(i).append("\":").append(i);
+		}
+		b.append(",\"key5\":\"replaced\"}");
+		JsonLikeObject root = load(new StreamingJsonStructure(), b.toString());
+		assertEquals(100, root.keySet().size());
+		assertEquals("key0", root.keySet().iterator().next());
+		assertEquals("99", root.get("key99").getAsString());
+		assertEquals("replaced", root.getString("key5"));
+		assertTrue(root.keySet().contains("key42"));
+		assertFalse(root.keySet().contains("key100"));
+	}
+
+	@Test
+	public void testRootArray() {
+		StreamingJsonStructure structure = new StreamingJsonStructure();
+		structure.load(new StringReader(" [ {\"a\":1}, 2 ]"), true);
+		assertEquals(2, structure.getRootArray().size());
+		try {
+			structure.getRootObject();
+			fail();
+		} catch (DataFormatException e) {
+			assertEquals("Content must be a valid JSON Object. It must start with '{'.", e.getMessage());
+		}
+	}
+
+	@Test
+	public void testSameStructureAsGsonStructure() {
+		JsonLikeObject expected = load(new GsonStructure(), TEST_DATA);
+		JsonLikeObject actual = load(new StreamingJsonStructure(), TEST_DATA);
+		assertSameStructure("", expected, actual);
+	}
+
+	/**
+	 * Not really a test, but logs the time taken by both structures to load a large bundle
+	 */
+	@Test
+	@Ignore
+	public void testTimingAgainstGsonStructure() {
+		StringBuilder b = new StringBuilder("{\"resourceType\":\"Bundle\",\"type\":\"searchset\",\"entry\":[");
+		for (int i = 0; i < 5000; i++) {
+			if (i > 0) {
+				b.append(',');
+			}
+			b.append("{\"fullUrl\":\"http://example.com/Observation/").append(i).append("\",\"resource\":{\"resourceType\":\"Observation\",\"id\":\"").append(i);
+			b.append("\",\"status\":\"final\",\"code\":{\"coding\":[{\"system\":\"http://loinc.org\",\"code\":\"8867-4\",\"display\":\"Heart rate\"}]},");
+			b.append("\"valueQuantity\":{\"value\":").append(60 + (i % 40)).append(".5,\"unit\":\"beats/minute\"}}}");
+		}
+		b.append("]}");
+		String input = b.toString();
+
+		List<JsonLikeStructure> structures = new ArrayList<JsonLikeStructure>();
+		structures.add(new GsonStructure());
+		structures.add(new StreamingJsonStructure());
+		for (JsonLikeStructure next : structures) {
+			// Warm up
+			for (int i = 0; i < 3; i++) {
+				walk(load(next.getInstance(), input));
+			}
+			long start = System.currentTimeMillis();
+			int count = 0;
+			for (int i = 0; i < 10; i++) {
+				count += walk(load(next.getInstance(), input));
+			}
+			long millis = System.currentTimeMillis() - start;
+			ourLog.info("{} loaded and walked {} chars 10 times ({} nodes) in {}ms", next.getClass().getSimpleName(), input.length(), count, millis);
+		}
+	}
+
+	private static int walk(JsonLikeValue theValue) {
+		int retVal = 1;
+		if (theValue.isObject()) {
+			JsonLikeObject object = theValue.getAsObject();
+			for (String next : object.keySet()) {
+				retVal += walk(object.get(next));
+			}
+		} else if (theValue.isArray()) {
+			JsonLikeArray array = theValue.getAsArray();
+			for (int i = 0; i < array.size(); i++) {
+				retVal += walk(array.get(i));
+			}
+		}
+		return retVal;
+	}
+
+}
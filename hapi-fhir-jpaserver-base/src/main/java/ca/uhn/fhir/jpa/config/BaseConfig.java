@@ -35,9 +35,16 @@ import org.springframework.scheduling.annotation.EnableScheduling;
 import org.springframework.scheduling.annotation.SchedulingConfigurer;
 import org.springframework.scheduling.concurrent.ConcurrentTaskScheduler;
 import org.springframework.scheduling.concurrent.ScheduledExecutorFactoryBean;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
 import org.springframework.scheduling.config.ScheduledTaskRegistrar;
 
+import ca.uhn.fhir.jpa.dao.DaoConfig;
+import ca.uhn.fhir.jpa.dao.ForcedIdCacheSvc;
+import ca.uhn.fhir.jpa.dao.TagDefinitionCacheSvc;
+import ca.uhn.fhir.jpa.reindex.ResourceReindexingSvc;
 import ca.uhn.fhir.jpa.search.DatabaseBackedPagingProvider;
+import ca.uhn.fhir.jpa.search.FulltextIndexingSvc;
+import ca.uhn.fhir.jpa.search.SearchResultStreamingSvc;
 import ca.uhn.fhir.jpa.search.StaleSearchDeletingSvc;
 
 @Configuration
@@ -45,10 +52,23 @@ import ca.uhn.fhir.jpa.search.StaleSearchDeletingSvc;
 @EnableJpaRepositories(basePackages = "ca.uhn.fhir.jpa.dao.data")
 public class BaseConfig implements SchedulingConfigurer {
 
+	/**
+	 * Bean name of the thread pool used to process the entries of FHIR batch Bundles
+	 * concurrently (see {@link ca.uhn.fhir.jpa.dao.DaoConfig#setBatchEntryConcurrency(int)})
+	 */
+	public static final String JPA_BATCH_ENTRY_TASK_EXECUTOR = "jpaBatchEntryTaskExecutor";
+
+	/**
+	 * Bean name of the thread pool used for background work within the JPA server
+	 */
+	public static final String JPA_TASK_EXECUTOR = "jpaTaskExecutor";
 
 	@Resource
 	private ApplicationContext myAppCtx;
 
+	@Autowired
+	private DaoConfig myDaoConfig;
+
 	@Autowired
 	protected Environment myEnv;
 
@@ -63,11 +83,66 @@ public class BaseConfig implements SchedulingConfigurer {
 		return retVal;
 	}
 
+	@Bean
+	public ForcedIdCacheSvc forcedIdCacheSvc() {
+		return new ForcedIdCacheSvc();
+	}
+
+	@Bean
+	public FulltextIndexingSvc fulltextIndexingSvc() {
+		return new FulltextIndexingSvc();
+	}
+
+	/**
+	 * This pool is sized using {@link DaoConfig#setBatchEntryThreadPoolSize(int)} and has no
+	 * queue, so when all of its threads are busy a batch entry is processed by the thread
+	 * handling the request instead of waiting behind the entries of other batches. The pool
+	 * is shut down along with the application context, after letting any entries in progress
+	 * finish.
+	 */
+	@Bean(name = JPA_BATCH_ENTRY_TASK_EXECUTOR)
+	public ThreadPoolTaskExecutor jpaBatchEntryTaskExecutor() {
+		ThreadPoolTaskExecutor retVal = new ThreadPoolTaskExecutor();
+		retVal.setCorePoolSize(myDaoConfig.getBatchEntryThreadPoolSize());
+		retVal.setMaxPoolSize(myDaoConfig.getBatchEntryThreadPoolSize());
+		retVal.setQueueCapacity(0);
+		retVal.setAllowCoreThreadTimeOut(true);
+		retVal.setWaitForTasksToCompleteOnShutdown(true);
+		retVal.setAwaitTerminationSeconds(60);
+		retVal.setThreadNamePrefix("hapi-fhir-jpa-batch-");
+		return retVal;
+	}
+
+	@Bean(name = JPA_TASK_EXECUTOR)
+	public ThreadPoolTaskExecutor jpaTaskExecutor() {
+		ThreadPoolTaskExecutor retVal = new ThreadPoolTaskExecutor();
+		retVal.setCorePoolSize(10);
+		retVal.setMaxPoolSize(10);
+		retVal.setAllowCoreThreadTimeOut(true);
+		retVal.setThreadNamePrefix("hapi-fhir-jpa-");
+		return retVal;
+	}
+
+	@Bean
+	public ResourceReindexingSvc resourceReindexingSvc() {
+		return new ResourceReindexingSvc();
+	}
+
+	@Bean
+	public SearchResultStreamingSvc searchResultStreamingSvc() {
+		return new SearchResultStreamingSvc();
+	}
+
 	@Bean(autowire=Autowire.BY_TYPE)
 	public StaleSearchDeletingSvc staleSearchDeletingSvc() {
 		return new StaleSearchDeletingSvc();
 	}
 
+	@Bean
+	public TagDefinitionCacheSvc tagDefinitionCacheSvc() {
+		return new TagDefinitionCacheSvc();
+	}
+
 	@Bean()
 	public ScheduledExecutorFactoryBean scheduledExecutorService() {
 		ScheduledExecutorFactoryBean b = new ScheduledExecutorFactoryBean();
@@ -1,7 +1,6 @@
 package ca.uhn.fhir.jpa.config.dstu3;
 
 import org.hl7.fhir.dstu3.hapi.validation.FhirInstanceValidator;
-import org.hl7.fhir.dstu3.hapi.validation.IValidationSupport;
 import org.hl7.fhir.dstu3.validation.IResourceValidator.BestPracticeWarningLevel;
 
 /*
@@ -78,6 +77,7 @@ public class BaseDstu3Config extends BaseConfig {
 		FhirInstanceValidator val = new FhirInstanceValidator();
 		val.setBestPracticeWarningLevel(BestPracticeWarningLevel.Warning);
 		val.setValidationSupport(validationSupportChainDstu3());
+		validationSupportChainDstu3().setInstanceValidator(val);
 		return val;
 	}
 
@@ -109,7 +109,7 @@ public class BaseDstu3Config extends BaseConfig {
 
 	@Primary
 	@Bean(autowire = Autowire.BY_NAME, name = "myJpaValidationSupportChainDstu3")
-	public IValidationSupport validationSupportChainDstu3() {
+	public JpaValidationSupportChainDstu3 validationSupportChainDstu3() {
 		return new JpaValidationSupportChainDstu3();
 	}
 
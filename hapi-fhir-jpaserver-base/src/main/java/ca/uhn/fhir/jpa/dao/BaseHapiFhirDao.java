@@ -23,7 +23,6 @@ import static org.apache.commons.lang3.StringUtils.defaultIfBlank;
 import static org.apache.commons.lang3.StringUtils.isBlank;
 import static org.apache.commons.lang3.StringUtils.isNotBlank;
 
-import java.io.UnsupportedEncodingException;
 import java.text.Normalizer;
 import java.util.ArrayList;
 import java.util.Collection;
@@ -34,11 +33,11 @@ import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.Map.Entry;
 import java.util.Set;
 import java.util.UUID;
 
 import javax.persistence.EntityManager;
-import javax.persistence.NoResultException;
 import javax.persistence.PersistenceContext;
 import javax.persistence.PersistenceContextType;
 import javax.persistence.Tuple;
@@ -71,8 +70,8 @@ import org.hl7.fhir.instance.model.api.IPrimitiveType;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.transaction.PlatformTransactionManager;
 
-import com.google.common.base.Charsets;
 import com.google.common.collect.ArrayListMultimap;
+import com.google.common.collect.Lists;
 
 import ca.uhn.fhir.context.BaseRuntimeChildDefinition;
 import ca.uhn.fhir.context.BaseRuntimeElementCompositeDefinition;
@@ -108,7 +107,9 @@ import ca.uhn.fhir.jpa.entity.Search;
 import ca.uhn.fhir.jpa.entity.SearchTypeEnum;
 import ca.uhn.fhir.jpa.entity.TagDefinition;
 import ca.uhn.fhir.jpa.entity.TagTypeEnum;
+import ca.uhn.fhir.jpa.search.FulltextIndexingSvc;
 import ca.uhn.fhir.jpa.search.PersistedJpaBundleProvider;
+import ca.uhn.fhir.jpa.search.SearchResultStreamingSvc;
 import ca.uhn.fhir.jpa.util.DeleteConflict;
 import ca.uhn.fhir.model.api.IQueryParameterAnd;
 import ca.uhn.fhir.model.api.IQueryParameterType;
@@ -207,6 +208,8 @@ public abstract class BaseHapiFhirDao<T extends IBaseResource> implements IDao {
 
 	private Map<Class<? extends IBaseResource>, IFhirResourceDao<?>> myResourceTypeToDao;
 
+	private IFhirResourceDaoSubscription<?> mySubscriptionDao;
+
 	@Autowired
 	private ISearchDao mySearchDao;
 
@@ -216,6 +219,18 @@ public abstract class BaseHapiFhirDao<T extends IBaseResource> implements IDao {
 	@Autowired
 	private ISearchResultDao mySearchResultDao;
 
+	@Autowired
+	private SearchResultStreamingSvc mySearchResultStreamingSvc;
+
+	@Autowired
+	private TagDefinitionCacheSvc myTagDefinitionCacheSvc;
+
+	@Autowired
+	private ForcedIdCacheSvc myForcedIdCacheSvc;
+
+	@Autowired
+	private FulltextIndexingSvc myFulltextIndexingSvc;
+
 	protected void createForcedIdIfNeeded(ResourceTable theEntity, IIdType theId) {
 		if (theId.isEmpty() == false && theId.hasIdPart()) {
 			if (isValidPid(theId)) {
@@ -227,6 +242,7 @@ public abstract class BaseHapiFhirDao<T extends IBaseResource> implements IDao {
 			fid.setForcedId(theId.getIdPart());
 			fid.setResource(theEntity);
 			theEntity.setForcedId(fid);
+			myForcedIdCacheSvc.forcedIdCreated(fid.getResourceType(), fid.getForcedId());
 		}
 	}
 
@@ -246,6 +262,8 @@ public abstract class BaseHapiFhirDao<T extends IBaseResource> implements IDao {
 			return;
 		}
 
+		List<PendingResourceLink> pendingLinks = new ArrayList<PendingResourceLink>();
+
 		RuntimeResourceDefinition def = getContext().getResourceDefinition(theResource);
 		for (RuntimeSearchParam nextSpDef : def.getSearchParams()) {
 
@@ -339,34 +357,14 @@ public abstract class BaseHapiFhirDao<T extends IBaseResource> implements IDao {
 
 					throw new InvalidRequestException(b.toString());
 				}
-				Long valueOf;
-				try {
-					valueOf = translateForcedIdToPid(typeString, id);
-				} catch (ResourceNotFoundException e) {
-					String resName = getContext().getResourceDefinition(type).getName();
-					throw new InvalidRequestException("Resource " + resName + "/" + id + " not found, specified in path: " + nextPathsUnsplit);
-				}
-				ResourceTable target = myEntityManager.find(ResourceTable.class, valueOf);
-				RuntimeResourceDefinition targetResourceDef = getContext().getResourceDefinition(type);
-				if (target == null) {
-					String resName = targetResourceDef.getName();
-					throw new InvalidRequestException("Resource " + resName + "/" + id + " not found, specified in path: " + nextPathsUnsplit);
-				}
-
-				if (!typeString.equals(target.getResourceType())) {
-					throw new UnprocessableEntityException(
-							"Resource contains reference to " + nextId.getValue() + " but resource with ID " + nextId.getIdPart() + " is actually of type " + target.getResourceType());
-				}
-
-				if (nextSpDef.getTargets() != null && !nextSpDef.getTargets().contains(typeString)) {
-					continue;
-				}
-
-				theLinks.add(new ResourceLink(nextPathAndRef.getPath(), theEntity, target));
+				boolean targetTypeAllowed = nextSpDef.getTargets() == null || nextSpDef.getTargets().contains(typeString);
+				pendingLinks.add(new PendingResourceLink(nextPathAndRef.getPath(), nextPathsUnsplit, nextId, resourceDefinition.getName(), targetTypeAllowed));
 			}
 
 		}
 
+		resolveResourceLinkTargets(theEntity, pendingLinks, theLinks);
+
 		theEntity.setHasLinks(theLinks.size() > 0);
 
 	}
@@ -512,6 +510,10 @@ public abstract class BaseHapiFhirDao<T extends IBaseResource> implements IDao {
 		}
 	}
 
+	protected SearchResultStreamingSvc getSearchResultStreamingSvc() {
+		return mySearchResultStreamingSvc;
+	}
+
 	@SuppressWarnings("unchecked")
 	public <R extends IBaseResource> IFhirResourceDao<R> getDao(Class<R> theType) {
 		if (myResourceTypeToDao == null) {
@@ -530,37 +532,27 @@ public abstract class BaseHapiFhirDao<T extends IBaseResource> implements IDao {
 		return (IFhirResourceDao<R>) myResourceTypeToDao.get(theType);
 	}
 
-	protected TagDefinition getTag(TagTypeEnum theTagType, String theScheme, String theTerm, String theLabel) {
-		CriteriaBuilder builder = myEntityManager.getCriteriaBuilder();
-		CriteriaQuery<TagDefinition> cq = builder.createQuery(TagDefinition.class);
-		Root<TagDefinition> from = cq.from(TagDefinition.class);
-
-		//@formatter:off
-		if (isNotBlank(theScheme)) {
-			cq.where(
-				builder.and(
-					builder.equal(from.get("myTagType"), theTagType), 
-					builder.equal(from.get("mySystem"), theScheme), 
-					builder.equal(from.get("myCode"), theTerm))
-				);
-		} else {
-			cq.where(
-				builder.and(
-					builder.equal(from.get("myTagType"), theTagType), 
-					builder.isNull(from.get("mySystem")), 
-					builder.equal(from.get("myCode"), theTerm))
-				);
+	/**
+	 * Returns the DAO for the Subscription resource type, or <code>null</code> if there isn't one
+	 */
+	private IFhirResourceDaoSubscription<?> getSubscriptionDao() {
+		if (mySubscriptionDao == null) {
+			if (this instanceof IFhirResourceDaoSubscription<?>) {
+				mySubscriptionDao = (IFhirResourceDaoSubscription<?>) this;
+			} else {
+				for (IFhirResourceDao<?> next : myResourceDaos) {
+					if (next instanceof IFhirResourceDaoSubscription<?>) {
+						mySubscriptionDao = (IFhirResourceDaoSubscription<?>) next;
+						break;
+					}
+				}
+			}
 		}
-		//@formatter:on
+		return mySubscriptionDao;
+	}
 
-		TypedQuery<TagDefinition> q = myEntityManager.createQuery(cq);
-		try {
-			return q.getSingleResult();
-		} catch (NoResultException e) {
-			TagDefinition retVal = new TagDefinition(theTagType, theScheme, theTerm, theLabel);
-			myEntityManager.persist(retVal);
-			return retVal;
-		}
+	protected TagDefinition getTag(TagTypeEnum theTagType, String theScheme, String theTerm, String theLabel) {
+		return myTagDefinitionCacheSvc.getTag(theTagType, theScheme, theTerm, theLabel);
 	}
 
 	protected TagList getTags(Class<? extends IBaseResource> theResourceType, IIdType theResourceId) {
@@ -640,6 +632,7 @@ public abstract class BaseHapiFhirDao<T extends IBaseResource> implements IDao {
 	@Override
 	public void injectDependenciesIntoBundleProvider(PersistedJpaBundleProvider theProvider) {
 		theProvider.setContext(getContext());
+		theProvider.setDaoConfig(getConfig());
 		theProvider.setEntityManager(myEntityManager);
 		theProvider.setPlatformTransactionManager(myPlatformTransactionManager);
 		theProvider.setSearchDao(mySearchDao);
@@ -714,6 +707,18 @@ public abstract class BaseHapiFhirDao<T extends IBaseResource> implements IDao {
 		theResource.setId(id);
 	}
 
+	/**
+	 * Loads the body of the given version of a resource from the version table, for resources
+	 * whose body is not stored on the resource row (see {@link DaoConfig#setStoreResourceBodyInHistoryOnly(boolean)})
+	 */
+	private ResourceHistoryTable loadResourceBodyFromHistory(ResourceTable theEntity, long theVersion) {
+		ResourceHistoryTable history = myResourceHistoryTableDao.findForIdAndVersion(theEntity.getId(), theVersion);
+		if (history == null || history.getResource() == null) {
+			throw new InternalErrorException("No stored body found for resource " + theEntity.getIdDt().toUnqualifiedVersionless().getValue() + " version " + theVersion);
+		}
+		return history;
+	}
+
 	protected void populateResourceIntoEntity(IBaseResource theResource, ResourceTable theEntity) {
 		theEntity.setResourceType(toResourceName(theResource));
 
@@ -730,14 +735,7 @@ public abstract class BaseHapiFhirDao<T extends IBaseResource> implements IDao {
 		ResourceEncodingEnum encoding = myConfig.getResourceEncoding();
 		theEntity.setEncoding(encoding);
 		theEntity.setFhirVersion(myContext.getVersion().getVersion());
-		switch (encoding) {
-		case JSON:
-			theEntity.setResource(encoded.getBytes(Charsets.UTF_8));
-			break;
-		case JSONC:
-			theEntity.setResource(GZipUtil.compress(encoded));
-			break;
-		}
+		theEntity.setResource(encoding.getCodec().encode(theEntity.getResourceType(), encoded));
 
 		Set<TagDefinition> allDefs = new HashSet<TagDefinition>();
 
@@ -1037,19 +1035,6 @@ public abstract class BaseHapiFhirDao<T extends IBaseResource> implements IDao {
 	@SuppressWarnings("unchecked")
 	@Override
 	public <R extends IBaseResource> R toResource(Class<R> theResourceType, BaseHasResource theEntity, boolean theForHistoryOperation) {
-		String resourceText = null;
-		switch (theEntity.getEncoding()) {
-		case JSON:
-			try {
-				resourceText = new String(theEntity.getResource(), "UTF-8");
-			} catch (UnsupportedEncodingException e) {
-				throw new Error("Should not happen", e);
-			}
-			break;
-		case JSONC:
-			resourceText = GZipUtil.decompress(theEntity.getResource());
-			break;
-		}
 
 		/*
 		 * Use the appropriate custom type if one is specified in the context
@@ -1070,26 +1055,70 @@ public abstract class BaseHapiFhirDao<T extends IBaseResource> implements IDao {
 				}
 			}
 		}
-		
-		IParser parser = theEntity.getEncoding().newParser(getContext(theEntity.getFhirVersion()));
-		R retVal;
-		try {
-			retVal = parser.parseResource(resourceType, resourceText);
-		} catch (Exception e) {
-			StringBuilder b = new StringBuilder();
-			b.append("Failed to parse database resource[");
-			b.append(resourceType);
-			b.append("/");
-			b.append(theEntity.getIdDt().getIdPart());
-			b.append(" (pid ");
-			b.append(theEntity.getId());
-			b.append(", version ");
-			b.append(myContext.getVersion().getVersion());
-			b.append("): ");
-			b.append(e.getMessage());
-			String msg = b.toString();
-			ourLog.error(msg, e);
-			throw new DataFormatException(msg, e);
+
+		/*
+		 * See if we've already decoded this version of the resource
+		 */
+		R retVal = null;
+		String resourceText = null;
+		ParsedResourceCache cache = getConfig().getParsedResourceCache();
+		ParsedResourceCache.Key cacheKey = null;
+		byte[] resourceBody = theEntity.getResource();
+		ResourceEncodingEnum resourceEncoding = theEntity.getEncoding();
+		if (resourceBody == null && theEntity instanceof ResourceTable) {
+			/*
+			 * The body comes from the version row, so it has to be decoded using that row's
+			 * encoding, which may not match the encoding of the resource row
+			 */
+			ResourceTable table = (ResourceTable) theEntity;
+			resourceBody = table.getResourceFromHistory();
+			if (resourceBody == null) {
+				ResourceHistoryTable history = loadResourceBodyFromHistory(table, table.getVersion());
+				table.setResourceFromHistory(history.getResource(), history.getEncoding());
+				resourceBody = history.getResource();
+			}
+			resourceEncoding = table.getResourceFromHistoryEncoding();
+		}
+		if (cache.isEnabled() && resourceBody != null) {
+			Long resourcePid = theEntity instanceof ResourceHistoryTable ? ((ResourceHistoryTable) theEntity).getResourceId() : theEntity.getId();
+			if (resourcePid != null) {
+				cacheKey = new ParsedResourceCache.Key(resourcePid, theEntity.getVersion(), resourceType, resourceEncoding, resourceBody);
+				ParsedResourceCache.CachedResource cached = cache.get(cacheKey);
+				if (cached != null) {
+					retVal = cached.newResource();
+					resourceText = cached.getText();
+				}
+			}
+		}
+
+		if (retVal == null) {
+			if (resourceText == null) {
+				resourceText = resourceEncoding.getCodec().decode(theEntity.getResourceType(), resourceBody);
+			}
+
+			IParser parser = resourceEncoding.newParser(getContext(theEntity.getFhirVersion()));
+			try {
+				retVal = parser.parseResource(resourceType, resourceText);
+			} catch (Exception e) {
+				StringBuilder b = new StringBuilder();
+				b.append("Failed to parse database resource[");
+				b.append(resourceType);
+				b.append("/");
+				b.append(theEntity.getIdDt().getIdPart());
+				b.append(" (pid ");
+				b.append(theEntity.getId());
+				b.append(", version ");
+				b.append(myContext.getVersion().getVersion());
+				b.append("): ");
+				b.append(e.getMessage());
+				String msg = b.toString();
+				ourLog.error(msg, e);
+				throw new DataFormatException(msg, e);
+			}
+
+			if (cacheKey != null) {
+				cache.put(cacheKey, resourceText, retVal);
+			}
 		}
 
 		if (retVal instanceof IResource) {
@@ -1111,22 +1140,115 @@ public abstract class BaseHapiFhirDao<T extends IBaseResource> implements IDao {
 	}
 
 	protected Long translateForcedIdToPid(String theResourceName, String theResourceId) {
-		return translateForcedIdToPids(new IdDt(theResourceName, theResourceId), myForcedIdDao).get(0);
+		return translateForcedIdToPids(new IdDt(theResourceName, theResourceId), myForcedIdCacheSvc).get(0);
 	}
 
 	protected List<Long> translateForcedIdToPids(IIdType theId) {
-		return translateForcedIdToPids(theId, myForcedIdDao);
+		return translateForcedIdToPids(theId, myForcedIdCacheSvc);
+	}
+
+	/**
+	 * Resolves the forced IDs among the given resource IDs using as few queries as
+	 * possible, so that subsequent calls to {@link #translateForcedIdToPid(String, String)}
+	 * for these IDs don't need to hit the database. IDs without a resource type, absolute
+	 * IDs and numeric IDs are ignored.
+	 */
+	protected void preloadForcedIds(Collection<? extends IIdType> theIds) {
+		Map<String, Set<String>> resourceTypeToForcedIds = new HashMap<String, Set<String>>();
+		for (IIdType next : theIds) {
+			if (next == null || !next.hasResourceType() || !next.hasIdPart() || next.hasBaseUrl() || isValidPid(next)) {
+				continue;
+			}
+			Set<String> forcedIds = resourceTypeToForcedIds.get(next.getResourceType());
+			if (forcedIds == null) {
+				forcedIds = new HashSet<String>();
+				resourceTypeToForcedIds.put(next.getResourceType(), forcedIds);
+			}
+			forcedIds.add(next.getIdPart());
+		}
+		for (Entry<String, Set<String>> next : resourceTypeToForcedIds.entrySet()) {
+			myForcedIdCacheSvc.translateForcedIdsToPids(next.getKey(), next.getValue());
+		}
 	}
 
 	protected String translatePidIdToForcedId(String theResourceType, Long theId) {
-		ForcedId forcedId = myForcedIdDao.findByResourcePid(theId);
+		String forcedId = myForcedIdCacheSvc.translatePidToForcedId(theId);
 		if (forcedId != null) {
-			return forcedId.getResourceType() + '/' + forcedId.getForcedId();
+			return theResourceType + '/' + forcedId;
 		} else {
 			return theResourceType + '/' + theId.toString();
 		}
 	}
 
+	/**
+	 * Verifies that the targets of the given local references exist and are of the
+	 * referenced type, and adds a link for each one. Targets are resolved in bulk (one
+	 * query per resource type for forced IDs and one query for the target resources)
+	 * instead of with a round trip for each reference.
+	 */
+	private void resolveResourceLinkTargets(ResourceTable theEntity, List<PendingResourceLink> thePendingLinks, Set<ResourceLink> theLinks) {
+		if (thePendingLinks.isEmpty()) {
+			return;
+		}
+
+		List<IIdType> targetIds = new ArrayList<IIdType>(thePendingLinks.size());
+		for (PendingResourceLink next : thePendingLinks) {
+			targetIds.add(next.getTargetId());
+		}
+		preloadForcedIds(targetIds);
+
+		boolean trustCachedTargets = getConfig().isTrustForcedIdReferenceTargets();
+		Set<Long> pidsToLoad = new HashSet<Long>();
+		for (PendingResourceLink next : thePendingLinks) {
+			IIdType targetId = next.getTargetId();
+			try {
+				next.setTargetPid(translateForcedIdToPid(targetId.getResourceType(), targetId.getIdPart()));
+			} catch (ResourceNotFoundException e) {
+				throw new InvalidRequestException("Resource " + next.getTargetResourceName() + "/" + targetId.getIdPart() + " not found, specified in path: " + next.getPathsUnsplit());
+			}
+			if (!trustCachedTargets || isValidPid(targetId)) {
+				pidsToLoad.add(next.getTargetPid());
+			}
+		}
+
+		Map<Long, ResourceTable> targets = new HashMap<Long, ResourceTable>();
+		for (List<Long> nextChunk : Lists.partition(new ArrayList<Long>(pidsToLoad), ForcedIdCacheSvc.MAX_IDS_PER_QUERY)) {
+			TypedQuery<ResourceTable> q = myEntityManager.createQuery("SELECT r FROM ResourceTable r WHERE r.myId IN (:pids)", ResourceTable.class);
+			q.setParameter("pids", nextChunk);
+			for (ResourceTable next : q.getResultList()) {
+				targets.put(next.getId(), next);
+			}
+		}
+
+		for (PendingResourceLink next : thePendingLinks) {
+			IIdType targetId = next.getTargetId();
+			String typeString = targetId.getResourceType();
+			ResourceLink link;
+			if (pidsToLoad.contains(next.getTargetPid())) {
+				ResourceTable target = targets.get(next.getTargetPid());
+				if (target == null) {
+					throw new InvalidRequestException("Resource " + next.getTargetResourceName() + "/" + targetId.getIdPart() + " not found, specified in path: " + next.getPathsUnsplit());
+				}
+				if (!typeString.equals(target.getResourceType())) {
+					throw new UnprocessableEntityException(
+							"Resource contains reference to " + targetId.getValue() + " but resource with ID " + targetId.getIdPart() + " is actually of type " + target.getResourceType());
+				}
+				link = new ResourceLink(next.getPath(), theEntity, target);
+			} else {
+				/*
+				 * The forced ID lookup already established that a resource of this type exists
+				 * with this PID, so we don't need to load it
+				 */
+				ResourceTable target = myEntityManager.getReference(ResourceTable.class, next.getTargetPid());
+				link = new ResourceLink(next.getPath(), theEntity, target, next.getTargetPid(), typeString);
+			}
+
+			if (next.isTargetTypeAllowed()) {
+				theLinks.add(link);
+			}
+		}
+	}
+
 	@SuppressWarnings("unchecked")
 	protected ResourceTable updateEntity(final IBaseResource theResource, ResourceTable theEntity, Date theDeletedTimestampOrNull, boolean thePerformIndexing,
 			boolean theUpdateVersion, Date theUpdateTime) {
@@ -1152,6 +1274,8 @@ public abstract class BaseHapiFhirDao<T extends IBaseResource> implements IDao {
 			theEntity.setPublished(theUpdateTime);
 		}
 
+		boolean hadResourceBody = theEntity.getResource() != null;
+		long previousVersion = theEntity.getVersion();
 		if (theUpdateVersion) {
 			theEntity.setVersion(theEntity.getVersion() + 1);
 		}
@@ -1290,17 +1414,6 @@ public abstract class BaseHapiFhirDao<T extends IBaseResource> implements IDao {
 				links = new HashSet<ResourceLink>();
 				extractResourceLinks(theEntity, theResource, links);
 
-				/*
-				 * If the existing resource already has links and those match links we still want, use them instead of removing them and re adding them
-				 */
-				for (Iterator<ResourceLink> existingLinkIter = existingResourceLinks.iterator(); existingLinkIter.hasNext();) {
-					ResourceLink nextExisting = existingLinkIter.next();
-					if (links.remove(nextExisting)) {
-						existingLinkIter.remove();
-						links.add(nextExisting);
-					}
-				}
-
 				populateResourceIntoEntity(theResource, theEntity);
 
 				theEntity.setUpdated(theUpdateTime);
@@ -1339,6 +1452,48 @@ public abstract class BaseHapiFhirDao<T extends IBaseResource> implements IDao {
 
 		}
 
+		/*
+		 * If the existing resource already has index rows and links which match the ones we still want, use them
+		 * instead of removing them and re adding them, so that only the rows which actually changed are written
+		 */
+		SearchParamIndexChanges indexChanges = null;
+		if (thePerformIndexing) {
+			indexChanges = new SearchParamIndexChanges();
+			retainUnchangedIndexes(paramsString, stringParams, indexChanges);
+			retainUnchangedIndexes(paramsToken, tokenParams, indexChanges);
+			retainUnchangedIndexes(paramsNumber, numberParams, indexChanges);
+			retainUnchangedIndexes(paramsQuantity, quantityParams, indexChanges);
+			retainUnchangedIndexes(paramsDate, dateParams, indexChanges);
+			retainUnchangedIndexes(paramsUri, uriParams, indexChanges);
+			retainUnchangedIndexes(paramsCoords, coordsParams, indexChanges);
+			retainUnchangedIndexes(existingResourceLinks, links, indexChanges);
+			ourLog.debug("Index changes for resource {}: {}", theEntity.getId(), indexChanges);
+		}
+
+		/*
+		 * If the body is only stored in the version table, take it off the resource row before saving
+		 * it. A deleted resource keeps the body of its last version, which may only be in the version
+		 * table.
+		 */
+		byte[] resourceBody = theEntity.getResource();
+		ResourceEncodingEnum resourceBodyEncoding = theEntity.getEncoding();
+		if (resourceBody == null && theUpdateVersion && theEntity.getId() != null) {
+			resourceBody = theEntity.getResourceFromHistory();
+			resourceBodyEncoding = theEntity.getResourceFromHistoryEncoding();
+			if (resourceBody == null) {
+				ResourceHistoryTable previous = loadResourceBodyFromHistory(theEntity, previousVersion);
+				resourceBody = previous.getResource();
+				resourceBodyEncoding = previous.getEncoding();
+			}
+		}
+		if (theUpdateVersion ? myConfig.isStoreResourceBodyInHistoryOnly() : !hadResourceBody) {
+			theEntity.setResource(null);
+		}
+		theEntity.setResourceFromHistory(theEntity.getResource() == null ? resourceBody : null, resourceBodyEncoding);
+
+		boolean deferFulltextIndexing = thePerformIndexing && theDeletedTimestampOrNull == null && myConfig.isFulltextIndexingAsync();
+		theEntity.setFulltextIndexingDeferred(deferFulltextIndexing);
+
 		/*
 		 * Save the resource itself
 		 */
@@ -1362,6 +1517,8 @@ public abstract class BaseHapiFhirDao<T extends IBaseResource> implements IDao {
 		 */
 		if (theUpdateVersion) {
 			final ResourceHistoryTable historyEntry = theEntity.toHistory(null);
+			historyEntry.setResource(resourceBody);
+			historyEntry.setEncoding(resourceBodyEncoding);
 
 			ourLog.info("Saving history entry {}", historyEntry.getIdDt());
 			myResourceHistoryTableDao.save(historyEntry);
@@ -1436,7 +1593,24 @@ public abstract class BaseHapiFhirDao<T extends IBaseResource> implements IDao {
 			
 		} // if thePerformIndexing
 
+		/*
+		 * Flag the new version for delivery to any subscriptions it matches
+		 */
+		if (thePerformIndexing && theUpdateVersion && theDeletedTimestampOrNull == null && myConfig.isSubscriptionEnabled()) {
+			IFhirResourceDaoSubscription<?> subscriptionDao = getSubscriptionDao();
+			if (subscriptionDao != null) {
+				ResourceIndexedSearchParams params = new ResourceIndexedSearchParams(stringParams, tokenParams, numberParams, quantityParams, dateParams, uriParams, coordsParams, links);
+				subscriptionDao.flagResourceForMatchingSubscriptions(theEntity, params);
+			}
+		}
+
 		theEntity = myEntityManager.merge(theEntity);
+		theEntity.setIndexChanges(indexChanges);
+		theEntity.setResourceFromHistory(theEntity.getResource() == null ? resourceBody : null, resourceBodyEncoding);
+		if (deferFulltextIndexing) {
+			theEntity.setFulltextIndexingDeferred(true);
+			myFulltextIndexingSvc.queue(theEntity);
+		}
 
 		if (theResource != null) {
 			populateResourceId(theResource, theEntity);
@@ -1445,6 +1619,44 @@ public abstract class BaseHapiFhirDao<T extends IBaseResource> implements IDao {
 		return theEntity;
 	}
 
+	/**
+	 * Swaps any newly extracted index rows which are identical to an existing row for the existing (already
+	 * persisted) row. On return, <code>theExisting</code> holds only the rows which need to be removed, and
+	 * <code>theNew</code> holds the kept rows plus the rows which need to be inserted.
+	 * <p>
+	 * Search parameter rows are only kept if every persisted column matches, not just the ones considered
+	 * by equals, so that a reindex still rewrites rows whose hashes or normalized values are stale.
+	 * </p>
+	 */
+	private static <T> void retainUnchangedIndexes(Collection<T> theExisting, Set<T> theNew, SearchParamIndexChanges theChanges) {
+		Map<T, T> newRows = new HashMap<T, T>();
+		for (T next : theNew) {
+			newRows.put(next, next);
+		}
+
+		int kept = 0;
+		for (Iterator<T> existingIter = theExisting.iterator(); existingIter.hasNext();) {
+			T nextExisting = existingIter.next();
+			T nextNew = newRows.get(nextExisting);
+			if (nextNew == null) {
+				continue;
+			}
+			if (nextExisting instanceof BaseResourceIndexedSearchParam) {
+				BaseResourceIndexedSearchParam newParam = (BaseResourceIndexedSearchParam) nextNew;
+				newParam.calculateHashes();
+				if (!((BaseResourceIndexedSearchParam) nextExisting).hasSamePersistedValues(newParam)) {
+					continue;
+				}
+			}
+			newRows.remove(nextExisting);
+			theNew.remove(nextNew);
+			existingIter.remove();
+			theNew.add(nextExisting);
+			kept++;
+		}
+		theChanges.add(kept, theNew.size() - kept, theExisting.size());
+	}
+
 	protected ResourceTable updateEntity(IBaseResource theResource, ResourceTable entity, Date theDeletedTimestampOrNull, Date theUpdateTime) {
 		return updateEntity(theResource, entity, theDeletedTimestampOrNull, true, true, theUpdateTime);
 	}
@@ -1667,28 +1879,25 @@ public abstract class BaseHapiFhirDao<T extends IBaseResource> implements IDao {
 		return retVal;
 	}
 
-	protected static Long translateForcedIdToPid(String theResourceName, String theResourceId, IForcedIdDao theForcedIdDao) {
-		return translateForcedIdToPids(new IdDt(theResourceName, theResourceId), theForcedIdDao).get(0);
+	protected static Long translateForcedIdToPid(String theResourceName, String theResourceId, ForcedIdCacheSvc theForcedIdCacheSvc) {
+		return translateForcedIdToPids(new IdDt(theResourceName, theResourceId), theForcedIdCacheSvc).get(0);
 	}
 
-	static List<Long> translateForcedIdToPids(IIdType theId, IForcedIdDao theForcedIdDao) {
+	static List<Long> translateForcedIdToPids(IIdType theId, ForcedIdCacheSvc theForcedIdCacheSvc) {
 		Validate.isTrue(theId.hasIdPart());
 
 		if (isValidPid(theId)) {
 			return Collections.singletonList(theId.getIdPartAsLong());
 		} else {
-			List<ForcedId> forcedId;
+			List<Long> retVal;
 			if (theId.hasResourceType()) {
-				forcedId = theForcedIdDao.findByTypeAndForcedId(theId.getResourceType(), theId.getIdPart());
+				Long pid = theForcedIdCacheSvc.translateForcedIdToPid(theId.getResourceType(), theId.getIdPart());
+				retVal = pid != null ? Collections.singletonList(pid) : Collections.<Long> emptyList();
 			} else {
-				forcedId = theForcedIdDao.findByForcedId(theId.getIdPart());
+				retVal = theForcedIdCacheSvc.translateForcedIdToPids(theId.getIdPart());
 			}
 
-			if (forcedId.isEmpty() == false) {
-				List<Long> retVal = new ArrayList<Long>(forcedId.size());
-				for (ForcedId next : forcedId) {
-					retVal.add(next.getResourcePid());
-				}
+			if (retVal.isEmpty() == false) {
 				return retVal;
 			} else {
 				throw new ResourceNotFoundException(theId);
@@ -1805,4 +2014,57 @@ public abstract class BaseHapiFhirDao<T extends IBaseResource> implements IDao {
 		}
 	}
 
+	/**
+	 * A local resource reference found by {@link BaseHapiFhirDao#extractResourceLinks(ResourceTable, IBaseResource, Set)}
+	 * whose target hasn't been resolved yet
+	 */
+	private static class PendingResourceLink {
+		private final String myPath;
+		private final String myPathsUnsplit;
+		private final IIdType myTargetId;
+		private Long myTargetPid;
+		private final String myTargetResourceName;
+		private final boolean myTargetTypeAllowed;
+
+		PendingResourceLink(String thePath, String thePathsUnsplit, IIdType theTargetId, String theTargetResourceName, boolean theTargetTypeAllowed) {
+			myPath = thePath;
+			myPathsUnsplit = thePathsUnsplit;
+			myTargetId = theTargetId;
+			myTargetResourceName = theTargetResourceName;
+			myTargetTypeAllowed = theTargetTypeAllowed;
+		}
+
+		String getPath() {
+			return myPath;
+		}
+
+		String getPathsUnsplit() {
+			return myPathsUnsplit;
+		}
+
+		IIdType getTargetId() {
+			return myTargetId;
+		}
+
+		Long getTargetPid() {
+			return myTargetPid;
+		}
+
+		String getTargetResourceName() {
+			return myTargetResourceName;
+		}
+
+		/**
+		 * Is the target type one of the types allowed by the search parameter? If not, the
+		 * target is still checked but no link is created.
+		 */
+		boolean isTargetTypeAllowed() {
+			return myTargetTypeAllowed;
+		}
+
+		void setTargetPid(Long theTargetPid) {
+			myTargetPid = theTargetPid;
+		}
+	}
+
 }
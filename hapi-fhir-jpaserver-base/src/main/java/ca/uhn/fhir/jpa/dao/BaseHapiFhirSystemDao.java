@@ -22,11 +22,13 @@ import static org.apache.commons.lang3.StringUtils.isBlank;
  * #L%
  */
 
+import java.util.ArrayList;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.Callable;
 
 import javax.persistence.Query;
 import javax.persistence.Tuple;
@@ -37,6 +39,8 @@ import javax.persistence.criteria.Root;
 
 import org.hl7.fhir.instance.model.api.IBaseResource;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.core.task.TaskExecutor;
 import org.springframework.transaction.PlatformTransactionManager;
 import org.springframework.transaction.TransactionStatus;
 import org.springframework.transaction.annotation.Propagation;
@@ -44,12 +48,18 @@ import org.springframework.transaction.annotation.Transactional;
 import org.springframework.transaction.support.TransactionCallback;
 import org.springframework.transaction.support.TransactionTemplate;
 
+import ca.uhn.fhir.jpa.config.BaseConfig;
 import ca.uhn.fhir.jpa.dao.data.IForcedIdDao;
+import ca.uhn.fhir.jpa.dao.data.IResourceHistoryTableDao;
+import ca.uhn.fhir.jpa.dao.data.IResourceReindexJobDao;
 import ca.uhn.fhir.jpa.dao.data.ITermConceptDao;
 import ca.uhn.fhir.jpa.entity.ForcedId;
+import ca.uhn.fhir.jpa.entity.ReindexJobStatusEnum;
+import ca.uhn.fhir.jpa.entity.ResourceHistoryTable;
 import ca.uhn.fhir.jpa.entity.ResourceTable;
 import ca.uhn.fhir.jpa.util.ReindexFailureException;
 import ca.uhn.fhir.jpa.util.StopWatch;
+import ca.uhn.fhir.jpa.util.TaskExecutorUtil;
 import ca.uhn.fhir.model.api.TagList;
 import ca.uhn.fhir.model.primitive.IdDt;
 import ca.uhn.fhir.model.primitive.InstantDt;
@@ -64,12 +74,22 @@ public abstract class BaseHapiFhirSystemDao<T, MT> extends BaseHapiFhirDao<IBase
 
 	private static final org.slf4j.Logger ourLog = org.slf4j.LoggerFactory.getLogger(BaseHapiFhirSystemDao.class);
 
+	@Autowired(required = false)
+	@Qualifier(BaseConfig.JPA_BATCH_ENTRY_TASK_EXECUTOR)
+	private TaskExecutor myBatchEntryTaskExecutor;
+
 	@Autowired
 	private PlatformTransactionManager myTxManager;
 
 	@Autowired
 	private IForcedIdDao myForcedIdDao;
 
+	@Autowired
+	private IResourceHistoryTableDao myResourceHistoryTableDao;
+
+	@Autowired
+	private IResourceReindexJobDao myResourceReindexJobDao;
+
 	@Autowired
 	private ITermConceptDao myTermConceptDao;
 
@@ -83,34 +103,69 @@ public abstract class BaseHapiFhirSystemDao<T, MT> extends BaseHapiFhirDao<IBase
 		myEntityManager.createQuery("DELETE from ResourceTag t").executeUpdate();
 	}
 
-	private int doPerformReindexingPass(final Integer theCount) {
-		TransactionTemplate txTemplate = new TransactionTemplate(myTxManager);
-		txTemplate.setPropagationBehavior(TransactionTemplate.PROPAGATION_REQUIRED);
-		int retVal = doPerformReindexingPassForResources(theCount, txTemplate);
-		return retVal;
+	/**
+	 * Executes the tasks which process the entries of a FHIR batch Bundle and returns their
+	 * results in the same order as the tasks. Up to {@link DaoConfig#getBatchEntryConcurrency()}
+	 * tasks are executed at the same time by the batch entry task executor, and any which it has
+	 * no free thread for are executed in the calling thread. The tasks are expected to handle their
+	 * own failures, so an exception thrown by a task is propagated to the caller.
+	 * 
+	 * @see #newBatchEntryRequestDetails(ServletRequestDetails)
+	 */
+	protected <R> List<R> executeBatchEntries(List<Callable<R>> theTasks) {
+		return TaskExecutorUtil.executeAll(myBatchEntryTaskExecutor, theTasks, getConfig().getBatchEntryConcurrency());
 	}
 
-	private int doPerformReindexingPassForResources(final Integer theCount, TransactionTemplate txTemplate) {
-		return txTemplate.execute(new TransactionCallback<Integer>() {
-			@SuppressWarnings("unchecked")
-			@Override
-			public Integer doInTransaction(TransactionStatus theStatus) {
-				TypedQuery<ResourceTable> q = myEntityManager.createQuery("SELECT t FROM " + ResourceTable.class.getSimpleName() + " t WHERE t.myIndexStatus IS null", ResourceTable.class);
+	/**
+	 * Returns the request details to process a single batch entry with. Request details are not
+	 * thread safe, so when entries are processed concurrently each one gets its own copy of the
+	 * given details, with its own copy of the user data. Otherwise the given details are returned.
+	 * This must be called from the thread handling the request.
+	 */
+	protected ServletRequestDetails newBatchEntryRequestDetails(ServletRequestDetails theRequestDetails) {
+		if (theRequestDetails == null || getConfig().getBatchEntryConcurrency() <= 1) {
+			return theRequestDetails;
+		}
 
-				int maxResult = 500;
-				if (theCount != null) {
-					maxResult = Math.min(theCount, 2000);
-				}
+		ServletRequestDetails retVal = new ServletRequestDetails();
+		retVal.setServer(theRequestDetails.getServer());
+		retVal.setServletRequest(theRequestDetails.getServletRequest());
+		retVal.setServletResponse(theRequestDetails.getServletResponse());
+		retVal.setResponse(theRequestDetails.getResponse());
+		retVal.setFhirServerBase(theRequestDetails.getFhirServerBase());
+		retVal.setCompleteUrl(theRequestDetails.getCompleteUrl());
+		retVal.setRequestType(theRequestDetails.getRequestType());
+		retVal.setRestOperationType(theRequestDetails.getRestOperationType());
+		if (theRequestDetails.getUserData() != null) {
+			retVal.getUserData().putAll(theRequestDetails.getUserData());
+		}
+		return retVal;
+	}
 
-				q.setMaxResults(maxResult);
+	@Override
+	@Transactional(propagation = Propagation.REQUIRED)
+	public long countResourcesRequiringReindexing() {
+		TypedQuery<Long> q = myEntityManager.createQuery("SELECT count(t) FROM " + ResourceTable.class.getSimpleName() + " t WHERE t.myIndexStatus IS null", Long.class);
+		return q.getSingleResult();
+	}
+
+	/**
+	 * Reindexes the given resources in a single transaction, and throws a {@link ReindexFailureException}
+	 * (which rolls the transaction back) if any of them can't be reindexed
+	 */
+	private void doReindex(final List<Long> theResourcePids) {
+		TransactionTemplate txTemplate = new TransactionTemplate(myTxManager);
+		txTemplate.setPropagationBehavior(TransactionTemplate.PROPAGATION_REQUIRES_NEW);
+		txTemplate.execute(new TransactionCallback<Void>() {
+			@Override
+			public Void doInTransaction(TransactionStatus theStatus) {
+				TypedQuery<ResourceTable> q = myEntityManager.createQuery("SELECT t FROM " + ResourceTable.class.getSimpleName() + " t WHERE t.myId IN (:pids) AND t.myIndexStatus IS null", ResourceTable.class);
+				q.setParameter("pids", theResourcePids);
 				List<ResourceTable> resources = q.getResultList();
 				if (resources.isEmpty()) {
-					return 0;
+					return null;
 				}
 
-				ourLog.info("Indexing {} resources", resources.size());
-
-				int count = 0;
 				long start = System.currentTimeMillis();
 
 				for (ResourceTable resourceTable : resources) {
@@ -137,18 +192,26 @@ public abstract class BaseHapiFhirSystemDao<T, MT> extends BaseHapiFhirDao<IBase
 						ourLog.error("Failed to index resource {}: {}", new Object[] { resourceTable.getIdDt(), e.toString(), e });
 						throw new ReindexFailureException(resourceTable.getId());
 					}
-					count++;
 				}
 
 				long delay = System.currentTimeMillis() - start;
 				long avg = (delay / resources.size());
-				ourLog.info("Indexed {} / {} resources in {}ms - Avg {}ms / resource", new Object[] { count, resources.size(), delay, avg });
+				ourLog.info("Indexed {} resources in {}ms - Avg {}ms / resource", new Object[] { resources.size(), delay, avg });
 
-				return resources.size();
+				return null;
 			}
 		});
 	}
 
+	@Override
+	@Transactional(propagation = Propagation.REQUIRED)
+	public List<Long> findResourcePidsRequiringReindexing(long theAfterPid, int theMaxResults) {
+		TypedQuery<Long> q = myEntityManager.createQuery("SELECT t.myId FROM " + ResourceTable.class.getSimpleName() + " t WHERE t.myIndexStatus IS null AND t.myId > :after ORDER BY t.myId", Long.class);
+		q.setParameter("after", theAfterPid);
+		q.setMaxResults(theMaxResults);
+		return q.getResultList();
+	}
+
 	@Override
 	public TagList getAllTags(RequestDetails theRequestDetails) {
 		// Notify interceptors
@@ -207,6 +270,10 @@ public abstract class BaseHapiFhirSystemDao<T, MT> extends BaseHapiFhirDao<IBase
 	public int markAllResourcesForReindexing() {
 		int retVal = myEntityManager.createQuery("UPDATE " + ResourceTable.class.getSimpleName() + " t SET t.myIndexStatus = null").executeUpdate();
 		retVal += myTermConceptDao.markAllForReindexing();
+
+		// Any job in progress would skip resources it has already passed, so start over with a new one
+		myResourceReindexJobDao.updateStatus(ReindexJobStatusEnum.ACTIVE, ReindexJobStatusEnum.CANCELLED);
+
 		return retVal;
 	}
 
@@ -270,13 +337,84 @@ public abstract class BaseHapiFhirSystemDao<T, MT> extends BaseHapiFhirDao<IBase
 	@Override
 	@Transactional(propagation = Propagation.NOT_SUPPORTED)
 	public int performReindexingPass(final Integer theCount) {
-		try {
-			return doPerformReindexingPass(theCount);
-		} catch (ReindexFailureException e) {
-			ourLog.warn("Reindexing failed for resource {}", e.getResourceId());
-			markResourceAsIndexingFailed(e.getResourceId());
-			return -1;
+		int maxResult = 500;
+		if (theCount != null) {
+			maxResult = Math.min(theCount, 2000);
+		}
+
+		List<Long> pids = findResourcePidsRequiringReindexing(-1L, maxResult);
+		if (pids.isEmpty()) {
+			return 0;
+		}
+
+		reindex(pids);
+		return pids.size();
+	}
+
+	@Override
+	@Transactional(propagation = Propagation.REQUIRED)
+	public int performResourceBodyMigrationPass(Integer theCount) {
+		int maxResult = 500;
+		if (theCount != null) {
+			maxResult = Math.min(theCount, 2000);
 		}
+
+		TypedQuery<Long> q = myEntityManager.createQuery("SELECT t.myId FROM ResourceTable t WHERE t.myResource IS NOT NULL ORDER BY t.myId", Long.class);
+		q.setMaxResults(maxResult);
+		List<Long> pids = q.getResultList();
+
+		int created = 0;
+		for (Long nextPid : pids) {
+			ResourceTable entity = myEntityManager.find(ResourceTable.class, nextPid);
+
+			/*
+			 * Resources stored by older versions of HAPI may not have a version table entry
+			 * for their current version yet
+			 */
+			ResourceHistoryTable historyEntry = myResourceHistoryTableDao.findForIdAndVersion(entity.getId(), entity.getVersion());
+			if (historyEntry == null) {
+				historyEntry = entity.toHistory(null);
+				myResourceHistoryTableDao.save(historyEntry);
+				created++;
+			} else if (historyEntry.getResource() == null) {
+				historyEntry.setResource(entity.getResource());
+				historyEntry.setEncoding(entity.getEncoding());
+			}
+
+			/*
+			 * The version row keeps its own encoding, which is what the body is decoded with from now on
+			 */
+			entity.setResourceFromHistory(historyEntry.getResource(), historyEntry.getEncoding());
+			entity.setResource(null);
+		}
+
+		ourLog.info("Moved the bodies of {} resources to the version table, creating {} missing version entries", pids.size(), created);
+		return pids.size();
+	}
+
+	@Override
+	@Transactional(propagation = Propagation.NOT_SUPPORTED)
+	public int reindex(List<Long> theResourcePids) {
+		List<Long> remaining = new ArrayList<Long>(theResourcePids);
+		int retVal = 0;
+		while (!remaining.isEmpty()) {
+			try {
+				doReindex(remaining);
+				break;
+			} catch (ReindexFailureException e) {
+				/*
+				 * The whole chunk was rolled back, so mark the bad resource and try
+				 * the rest of the chunk again without it
+				 */
+				ourLog.warn("Reindexing failed for resource {}", e.getResourceId());
+				markResourceAsIndexingFailed(e.getResourceId());
+				retVal++;
+				if (!remaining.remove(e.getResourceId())) {
+					break;
+				}
+			}
+		}
+		return retVal;
 	}
 
 	public void setTxManager(PlatformTransactionManager theTxManager) {
@@ -2,6 +2,7 @@ package ca.uhn.fhir.jpa.dao;
 
 import java.util.*;
 
+import org.apache.commons.io.FileUtils;
 import org.apache.commons.lang3.ObjectUtils;
 import org.apache.commons.lang3.Validate;
 import org.apache.commons.lang3.time.DateUtils;
@@ -46,13 +47,48 @@ public class DaoConfig {
 	// ***
 	// update setter javadoc if default changes
 	// ***
+	private int myBatchEntryConcurrency = 1;
+	// ***
+	// update setter javadoc if default changes
+	// ***
+	private int myBatchEntryThreadPoolSize = 10;
+	// ***
+	// update setter javadoc if default changes
+	// ***
 	private int myDeferIndexingForCodesystemsOfSize = 2000;
 	private boolean myDeleteStaleSearches = true;
 	// ***
 	// update setter javadoc if default changes
 	// ***
 	private long myExpireSearchResultsAfterMillis = DateUtils.MILLIS_PER_HOUR;
+
+	// ***
+	// update setter javadoc if default changes
+	// ***
+	private int myExpireSearchResultsBatchSize = 500;
+
+	// ***
+	// update setter javadoc if default changes
+	// ***
+	private long myExpireSearchResultsMaxMillisPerPass = 20 * DateUtils.MILLIS_PER_SECOND;
 	
+	private boolean myFulltextIndexingAsync = false;
+
+	// ***
+	// update setter javadoc if default changes
+	// ***
+	private int myFulltextIndexingBatchSize = 100;
+
+	// ***
+	// update setter javadoc if default changes
+	// ***
+	private long myFulltextIndexingMaxWaitMillis = 0;
+
+	// ***
+	// update setter javadoc if default changes
+	// ***
+	private int myFulltextIndexingQueueCapacity = 10000;
+
 	private int myHardSearchLimit = 1000;
 	
 	private int myHardTagListLimit = 1000;
@@ -70,10 +106,48 @@ public class DaoConfig {
 	// update setter javadoc if default changes
 	// ***
 	private int myMaximumExpansionSize = 5000;
+
+	private final ParsedResourceCache myParsedResourceCache = new ParsedResourceCache();
+
+	// ***
+	// update setter javadoc if default changes
+	// ***
+	private long myParsedResourceCacheMaxBytes = 50 * FileUtils.ONE_MB;
+
+	// ***
+	// update setter javadoc if default changes
+	// ***
+	private int myParsedResourceCacheMaxEntries = 0;
+
+	// ***
+	// update setter javadoc if default changes
+	// ***
+	private int myReindexChunkSize = 100;
+	// ***
+	// update setter javadoc if default changes
+	// ***
+	private int myReindexThreadCount = 4;
 	private ResourceEncodingEnum myResourceEncoding = ResourceEncodingEnum.JSONC;
 
 	private boolean mySchedulingDisabled;
 
+	private boolean myStoreResourceBodyInHistoryOnly = false;
+
+	// ***
+	// update setter javadoc if default changes
+	// ***
+	private boolean myStreamSearchResults = false;
+
+	// ***
+	// update setter javadoc if default changes
+	// ***
+	private int myStreamSearchResultsBatchSize = 1000;
+
+	// ***
+	// update setter javadoc if default changes
+	// ***
+	private long myStreamSearchResultsMaxWaitMillis = DateUtils.MILLIS_PER_MINUTE;
+
 	private boolean mySubscriptionEnabled;
 	
 	private long mySubscriptionPollDelay = 1000;
@@ -82,6 +156,24 @@ public class DaoConfig {
 
 	private Set<String> myTreatBaseUrlsAsLocal = new HashSet<String>();
 
+	private boolean myTrustForcedIdReferenceTargets = false;
+
+	private boolean myUseHashColumnsForSearch = false;
+
+	/**
+	 * See {@link #setBatchEntryConcurrency(int)}
+	 */
+	public int getBatchEntryConcurrency() {
+		return myBatchEntryConcurrency;
+	}
+
+	/**
+	 * See {@link #setBatchEntryThreadPoolSize(int)}
+	 */
+	public int getBatchEntryThreadPoolSize() {
+		return myBatchEntryThreadPoolSize;
+	}
+
 	/**
 	 * When a code system is added that contains more than this number of codes,
 	 * the code system will be indexed later in an incremental process in order to
@@ -112,6 +204,41 @@ public class DaoConfig {
 		return myExpireSearchResultsAfterMillis;
 	}
 	
+	/**
+	 * See {@link #setExpireSearchResultsBatchSize(int)}
+	 */
+	public int getExpireSearchResultsBatchSize() {
+		return myExpireSearchResultsBatchSize;
+	}
+
+	/**
+	 * See {@link #setExpireSearchResultsMaxMillisPerPass(long)}
+	 */
+	public long getExpireSearchResultsMaxMillisPerPass() {
+		return myExpireSearchResultsMaxMillisPerPass;
+	}
+
+	/**
+	 * See {@link #setFulltextIndexingBatchSize(int)}
+	 */
+	public int getFulltextIndexingBatchSize() {
+		return myFulltextIndexingBatchSize;
+	}
+
+	/**
+	 * See {@link #setFulltextIndexingMaxWaitMillis(long)}
+	 */
+	public long getFulltextIndexingMaxWaitMillis() {
+		return myFulltextIndexingMaxWaitMillis;
+	}
+
+	/**
+	 * See {@link #setFulltextIndexingQueueCapacity(int)}
+	 */
+	public int getFulltextIndexingQueueCapacity() {
+		return myFulltextIndexingQueueCapacity;
+	}
+
 	/**
 	 * Gets the maximum number of results to return in a GetTags query (DSTU1 only)
 	 */
@@ -144,9 +271,74 @@ public class DaoConfig {
 	public int getMaximumExpansionSize() {
 		return myMaximumExpansionSize;
 	}
+	ParsedResourceCache getParsedResourceCache() {
+		return myParsedResourceCache;
+	}
+
+	/**
+	 * See {@link #setParsedResourceCacheMaxBytes(long)}
+	 */
+	public long getParsedResourceCacheMaxBytes() {
+		return myParsedResourceCacheMaxBytes;
+	}
+
+	/**
+	 * See {@link #setParsedResourceCacheMaxEntries(int)}
+	 */
+	public int getParsedResourceCacheMaxEntries() {
+		return myParsedResourceCacheMaxEntries;
+	}
+
+	/**
+	 * Returns a snapshot of the hit, miss and eviction counts and the current size of
+	 * the parsed resource cache (see {@link #setParsedResourceCacheMaxEntries(int)})
+	 * 
+	 * @since 2.3
+	 */
+	public ParsedResourceCache.Statistics getParsedResourceCacheStatistics() {
+		return myParsedResourceCache.getStatistics();
+	}
+
+	/**
+	 * See {@link #setReindexChunkSize(int)}
+	 */
+	public int getReindexChunkSize() {
+		return myReindexChunkSize;
+	}
+
+	/**
+	 * See {@link #setReindexThreadCount(int)}
+	 */
+	public int getReindexThreadCount() {
+		return myReindexThreadCount;
+	}
+
+	/**
+	 * See {@link #setResourceEncoding(ResourceEncodingEnum)}
+	 */
 	public ResourceEncodingEnum getResourceEncoding() {
 		return myResourceEncoding;
 	}
+	/**
+	 * See {@link #setStreamSearchResultsBatchSize(int)}
+	 */
+	public int getStreamSearchResultsBatchSize() {
+		return myStreamSearchResultsBatchSize;
+	}
+
+	/**
+	 * See {@link #setStreamSearchResultsMaxWaitMillis(long)}
+	 */
+	public long getStreamSearchResultsMaxWaitMillis() {
+		return myStreamSearchResultsMaxWaitMillis;
+	}
+
+	/**
+	 * See {@link #setSubscriptionPollDelay(long)}
+	 * 
+	 * @deprecated Not used since 2.3, resources are matched against subscriptions as they are written
+	 */
+	@Deprecated
 	public long getSubscriptionPollDelay() {
 		return mySubscriptionPollDelay;
 	}
@@ -217,6 +409,13 @@ public class DaoConfig {
 		return myDeleteStaleSearches;
 	}
 
+	/**
+	 * See {@link #setFulltextIndexingAsync(boolean)}
+	 */
+	public boolean isFulltextIndexingAsync() {
+		return myFulltextIndexingAsync;
+	}
+
 	/**
 	 * Should contained IDs be indexed the same way that non-contained IDs are (default is
 	 * <code>true</code>) 
@@ -229,6 +428,20 @@ public class DaoConfig {
 		return mySchedulingDisabled;
 	}
 
+	/**
+	 * See {@link #setStoreResourceBodyInHistoryOnly(boolean)}
+	 */
+	public boolean isStoreResourceBodyInHistoryOnly() {
+		return myStoreResourceBodyInHistoryOnly;
+	}
+
+	/**
+	 * See {@link #setStreamSearchResults(boolean)}
+	 */
+	public boolean isStreamSearchResults() {
+		return myStreamSearchResults;
+	}
+
 	/**
 	 * See {@link #setSubscriptionEnabled(boolean)}
 	 */
@@ -236,6 +449,20 @@ public class DaoConfig {
 		return mySubscriptionEnabled;
 	}
 
+	/**
+	 * See {@link #setTrustForcedIdReferenceTargets(boolean)}
+	 */
+	public boolean isTrustForcedIdReferenceTargets() {
+		return myTrustForcedIdReferenceTargets;
+	}
+
+	/**
+	 * See {@link #setUseHashColumnsForSearch(boolean)}
+	 */
+	public boolean isUseHashColumnsForSearch() {
+		return myUseHashColumnsForSearch;
+	}
+
 	/**
 	 * If set to <code>true</code> (default is <code>false</code>) the server will allow
 	 * resources to have references to external servers. For example if this server is
@@ -283,6 +510,50 @@ public class DaoConfig {
 		myAllowMultipleDelete = theAllowMultipleDelete;
 	}
 
+	/**
+	 * Sets the maximum number of entries from a single FHIR <code>batch</code> Bundle
+	 * which will be processed concurrently. Batch entries are independent of each other
+	 * and each one is processed in its own database transaction, so processing them
+	 * concurrently can greatly reduce the time taken for a large batch. The entries are
+	 * processed by a dedicated thread pool (see {@link #setBatchEntryThreadPoolSize(int)}),
+	 * or by the thread handling the request when that pool is busy, and the entries in the
+	 * response Bundle are always in the same order as the entries in the request.
+	 * <p>
+	 * Note that when this is greater than 1, entries which modify the same resource may
+	 * be processed in any order, and any server interceptors must be thread safe. Each entry
+	 * is processed with its own copy of the request details, so user data stored on the
+	 * request details while processing an entry is not visible to the other entries.
+	 * </p>
+	 * <p>
+	 * Defaults to 1, meaning that entries are processed one after another
+	 * </p>
+	 * 
+	 * @since 2.3
+	 */
+	public void setBatchEntryConcurrency(int theBatchEntryConcurrency) {
+		Validate.isTrue(theBatchEntryConcurrency > 0, "theBatchEntryConcurrency must be > 0");
+		myBatchEntryConcurrency = theBatchEntryConcurrency;
+	}
+
+	/**
+	 * Sets the number of threads in the pool used to process the entries of FHIR <code>batch</code>
+	 * Bundles (see {@link #setBatchEntryConcurrency(int)}). The pool is shared by all batch requests,
+	 * so this limits the total number of batch entries processed in the background at any one time.
+	 * When all of the threads are busy, entries are processed by the thread handling the request.
+	 * <p>
+	 * The pool is created when the server starts, so changing this afterwards has no effect.
+	 * </p>
+	 * <p>
+	 * Defaults to 10
+	 * </p>
+	 * 
+	 * @since 2.3
+	 */
+	public void setBatchEntryThreadPoolSize(int theBatchEntryThreadPoolSize) {
+		Validate.isTrue(theBatchEntryThreadPoolSize > 0, "theBatchEntryThreadPoolSize must be > 0");
+		myBatchEntryThreadPoolSize = theBatchEntryThreadPoolSize;
+	}
+
 	/**
 	 * When a code system is added that contains more than this number of codes,
 	 * the code system will be indexed later in an incremental process in order to
@@ -325,6 +596,86 @@ public class DaoConfig {
 		myExpireSearchResultsAfterMillis = theExpireSearchResultsAfterMillis;
 	}
 
+	/**
+	 * Sets the number of stale searches which will be deleted by the stale search
+	 * deletion task in a single transaction. Defaults to 500.
+	 * 
+	 * @since 2.3
+	 */
+	public void setExpireSearchResultsBatchSize(int theExpireSearchResultsBatchSize) {
+		Validate.isTrue(theExpireSearchResultsBatchSize > 0, "theExpireSearchResultsBatchSize must be > 0");
+		myExpireSearchResultsBatchSize = theExpireSearchResultsBatchSize;
+	}
+
+	/**
+	 * Sets the maximum number of milliseconds that a single pass of the stale search
+	 * deletion task will spend deleting searches. Any stale searches which remain once
+	 * this time has elapsed will be deleted by the next pass. Defaults to 20 seconds.
+	 * 
+	 * @since 2.3
+	 */
+	public void setExpireSearchResultsMaxMillisPerPass(long theExpireSearchResultsMaxMillisPerPass) {
+		Validate.isTrue(theExpireSearchResultsMaxMillisPerPass > 0, "theExpireSearchResultsMaxMillisPerPass must be > 0");
+		myExpireSearchResultsMaxMillisPerPass = theExpireSearchResultsMaxMillisPerPass;
+	}
+
+	/**
+	 * If set to <code>true</code> (default is <code>false</code>) the fulltext index documents
+	 * used by the <code>_content</code> and <code>_text</code> search parameters are written by
+	 * a background task after the transaction which stores a resource has committed, instead of
+	 * as part of that transaction. This removes the cost of analyzing the resource text from the
+	 * time taken to store a resource, but means that a resource may not be found by a fulltext
+	 * search until shortly after it has been stored (see {@link #setFulltextIndexingMaxWaitMillis(long)}).
+	 * <p>
+	 * This setting has no effect if Hibernate Search is not enabled.
+	 * </p>
+	 * 
+	 * @since 2.3
+	 */
+	public void setFulltextIndexingAsync(boolean theFulltextIndexingAsync) {
+		myFulltextIndexingAsync = theFulltextIndexingAsync;
+	}
+
+	/**
+	 * Sets the maximum number of fulltext index documents which are written in a single
+	 * transaction when {@link #setFulltextIndexingAsync(boolean) asynchronous fulltext indexing}
+	 * is enabled. Defaults to 100.
+	 * 
+	 * @since 2.3
+	 */
+	public void setFulltextIndexingBatchSize(int theFulltextIndexingBatchSize) {
+		Validate.isTrue(theFulltextIndexingBatchSize > 0, "theFulltextIndexingBatchSize must be > 0");
+		myFulltextIndexingBatchSize = theFulltextIndexingBatchSize;
+	}
+
+	/**
+	 * Sets the maximum number of milliseconds that a fulltext search will wait for resources which
+	 * have already been stored to be written to the fulltext index, when
+	 * {@link #setFulltextIndexingAsync(boolean) asynchronous fulltext indexing} is enabled. Defaults
+	 * to 0, meaning that searches do not wait. This can be overridden for individual searches using
+	 * {@link SearchParameterMap#setFulltextIndexingMaxWaitMillis(Long)}.
+	 * 
+	 * @since 2.3
+	 */
+	public void setFulltextIndexingMaxWaitMillis(long theFulltextIndexingMaxWaitMillis) {
+		Validate.isTrue(theFulltextIndexingMaxWaitMillis >= 0, "theFulltextIndexingMaxWaitMillis must be >= 0");
+		myFulltextIndexingMaxWaitMillis = theFulltextIndexingMaxWaitMillis;
+	}
+
+	/**
+	 * Sets the maximum number of fulltext index documents which may be waiting to be written when
+	 * {@link #setFulltextIndexingAsync(boolean) asynchronous fulltext indexing} is enabled. Once the
+	 * queue is full, threads storing resources write queued documents themselves until there is room
+	 * again, which limits both the memory used by the queue and how far the index can fall behind.
+	 * Defaults to 10000.
+	 * 
+	 * @since 2.3
+	 */
+	public void setFulltextIndexingQueueCapacity(int theFulltextIndexingQueueCapacity) {
+		Validate.isTrue(theFulltextIndexingQueueCapacity > 0, "theFulltextIndexingQueueCapacity must be > 0");
+		myFulltextIndexingQueueCapacity = theFulltextIndexingQueueCapacity;
+	}
+
 	public void setHardSearchLimit(int theHardSearchLimit) {
 		myHardSearchLimit = theHardSearchLimit;
 	}
@@ -385,6 +736,74 @@ public class DaoConfig {
 		myMaximumExpansionSize = theMaximumExpansionSize;
 	}
 
+	/**
+	 * Sets the approximate maximum number of bytes of memory that the parsed resource
+	 * cache (see {@link #setParsedResourceCacheMaxEntries(int)}) may use. When this limit
+	 * is exceeded, the least recently used entries are evicted. Defaults to 50 MB.
+	 * 
+	 * @since 2.3
+	 */
+	public void setParsedResourceCacheMaxBytes(long theParsedResourceCacheMaxBytes) {
+		Validate.isTrue(theParsedResourceCacheMaxBytes > 0, "theParsedResourceCacheMaxBytes must be > 0");
+		myParsedResourceCacheMaxBytes = theParsedResourceCacheMaxBytes;
+		myParsedResourceCache.setLimits(myParsedResourceCacheMaxEntries, myParsedResourceCacheMaxBytes);
+	}
+
+	/**
+	 * If set to a value greater than zero (default is <code>0</code>, meaning disabled), the
+	 * server will keep a cache of up to this many decoded resource versions in memory, so that
+	 * frequently read resources do not need to be decompressed and parsed from the database
+	 * every time they are returned. Because resource versions never change once they are
+	 * written, cached entries never need to be invalidated.
+	 * <p>
+	 * The memory used by the cache is also limited by {@link #setParsedResourceCacheMaxBytes(long)},
+	 * and its effectiveness can be monitored using {@link #getParsedResourceCacheStatistics()}.
+	 * </p>
+	 * 
+	 * @since 2.3
+	 */
+	public void setParsedResourceCacheMaxEntries(int theParsedResourceCacheMaxEntries) {
+		Validate.isTrue(theParsedResourceCacheMaxEntries >= 0, "theParsedResourceCacheMaxEntries must be >= 0");
+		myParsedResourceCacheMaxEntries = theParsedResourceCacheMaxEntries;
+		myParsedResourceCache.setLimits(myParsedResourceCacheMaxEntries, myParsedResourceCacheMaxBytes);
+	}
+
+	/**
+	 * Sets the number of resources which are reindexed in a single database transaction
+	 * when resources are marked for reindexing (e.g. after a search parameter changes).
+	 * A resource which can't be reindexed causes the rest of its chunk to be retried
+	 * without it. Defaults to 100.
+	 * 
+	 * @since 2.3
+	 */
+	public void setReindexChunkSize(int theReindexChunkSize) {
+		Validate.isTrue(theReindexChunkSize > 0, "theReindexChunkSize must be > 0");
+		myReindexChunkSize = theReindexChunkSize;
+	}
+
+	/**
+	 * Sets the maximum number of chunks of resources (see {@link #setReindexChunkSize(int)})
+	 * which are reindexed at the same time. The chunks are processed by the shared JPA server
+	 * thread pool (see {@link ca.uhn.fhir.jpa.config.BaseConfig#JPA_TASK_EXECUTOR}).
+	 * Defaults to 4.
+	 * 
+	 * @since 2.3
+	 */
+	public void setReindexThreadCount(int theReindexThreadCount) {
+		Validate.isTrue(theReindexThreadCount > 0, "theReindexThreadCount must be > 0");
+		myReindexThreadCount = theReindexThreadCount;
+	}
+
+	/**
+	 * Sets the encoding used to store the bodies of new resource versions (default is
+	 * {@link ResourceEncodingEnum#JSONC}). The encoding is stored with each version, so
+	 * versions which were stored using a different encoding can still be read.
+	 * <p>
+	 * {@link ResourceEncodingEnum#JSOND} is faster to encode and decode than the default,
+	 * and produces smaller bodies for typical resources, but can not be read by versions
+	 * of HAPI FHIR before 2.3.
+	 * </p>
+	 */
 	public void setResourceEncoding(ResourceEncodingEnum theResourceEncoding) {
 		myResourceEncoding = theResourceEncoding;
 	}
@@ -394,14 +813,85 @@ public class DaoConfig {
 	}
 
 	/**
-	 * If set to true, the server will enable support for subscriptions. Subscriptions
-	 * will by default be handled via a polling task. Note that if this is enabled, you must also include Spring task scanning to your XML
+	 * If set to <code>true</code> (default is <code>false</code>) the encoded body of a resource
+	 * is only stored in the resource version table (HFJ_RES_VER), and the RES_TEXT column of the
+	 * resource table (HFJ_RESOURCE) is left empty. The body of the current version is read from the
+	 * version table instead, which halves the space used to store resource bodies and the amount
+	 * of data written when a resource is created or updated.
+	 * <p>
+	 * Note that the RES_TEXT column of HFJ_RESOURCE must be nullable before this setting is enabled
+	 * on an existing database. The bodies already stored in HFJ_RESOURCE will still be used, and may
+	 * be moved to the version table using
+	 * {@link IFhirSystemDao#performResourceBodyMigrationPass(Integer)}.
+	 * </p>
+	 * 
+	 * @since 2.3
+	 */
+	public void setStoreResourceBodyInHistoryOnly(boolean theStoreResourceBodyInHistoryOnly) {
+		myStoreResourceBodyInHistoryOnly = theStoreResourceBodyInHistoryOnly;
+	}
+
+	/**
+	 * If set to <code>true</code> (default is <code>false</code>) search results will be
+	 * written to the database incrementally by a background task instead of being written
+	 * in their entirety before the first page is returned. The first page is returned as soon as
+	 * it is available, and requests for later pages will block until the background task has
+	 * written the requested results (see {@link #setStreamSearchResultsMaxWaitMillis(long)}).
+	 * <p>
+	 * This is useful on servers with very large amounts of data, where broad searches
+	 * can match millions of resources.
+	 * </p>
+	 * 
+	 * @since 2.3
+	 */
+	public void setStreamSearchResults(boolean theStreamSearchResults) {
+		myStreamSearchResults = theStreamSearchResults;
+	}
+
+	/**
+	 * When search results are being streamed (see {@link #setStreamSearchResults(boolean)})
+	 * this is the number of results which will be written to the database in a single
+	 * transaction. Defaults to 1000.
+	 * 
+	 * @since 2.3
+	 */
+	public void setStreamSearchResultsBatchSize(int theStreamSearchResultsBatchSize) {
+		Validate.isTrue(theStreamSearchResultsBatchSize > 0, "theStreamSearchResultsBatchSize must be > 0");
+		myStreamSearchResultsBatchSize = theStreamSearchResultsBatchSize;
+	}
+
+	/**
+	 * When search results are being streamed (see {@link #setStreamSearchResults(boolean)})
+	 * this is the maximum number of milliseconds that a request for a page of results will
+	 * wait for those results to be written to the database before failing. Defaults to one minute.
+	 * <p>
+	 * A search which has had no results written for longer than this (e.g. because the server
+	 * which was streaming its results was stopped) is considered abandoned, and is marked as
+	 * failed when its results are next requested or when the server starts.
+	 * </p>
+	 * 
+	 * @since 2.3
+	 */
+	public void setStreamSearchResultsMaxWaitMillis(long theStreamSearchResultsMaxWaitMillis) {
+		Validate.isTrue(theStreamSearchResultsMaxWaitMillis > 0, "theStreamSearchResultsMaxWaitMillis must be > 0");
+		myStreamSearchResultsMaxWaitMillis = theStreamSearchResultsMaxWaitMillis;
+	}
+
+	/**
+	 * If set to true, the server will enable support for subscriptions. Each resource is tested against
+	 * the criteria of the active subscriptions as it is written. Note that if this is enabled, you must also include Spring task scanning to your XML
 	 * config for the scheduled tasks used by the subscription module.
 	 */
 	public void setSubscriptionEnabled(boolean theSubscriptionEnabled) {
 		mySubscriptionEnabled = theSubscriptionEnabled;
 	}
 
+	/**
+	 * This setting has no effect.
+	 * 
+	 * @deprecated Not used since 2.3, resources are matched against subscriptions as they are written
+	 */
+	@Deprecated
 	public void setSubscriptionPollDelay(long theSubscriptionPollDelay) {
 		mySubscriptionPollDelay = theSubscriptionPollDelay;
 	}
@@ -442,4 +932,42 @@ public class DaoConfig {
 		myTreatBaseUrlsAsLocal = treatBaseUrlsAsLocal;
 	}
 
+	/**
+	 * If set to <code>true</code> (default is <code>false</code>) the server will not load
+	 * the target of a reference to a client assigned ID (e.g. <code>Patient/ABC</code>)
+	 * in order to check that it exists when a resource is stored, since resolving the
+	 * forced ID has already established that a resource of that type exists with that ID.
+	 * References to server assigned numeric IDs are always checked by loading their target.
+	 * <p>
+	 * This saves loading the targets of such references, but means that a reference to a
+	 * target which has been removed from the database by some means other than the FHIR
+	 * API will only be detected by the database when the transaction is committed.
+	 * </p>
+	 * 
+	 * @since 2.3
+	 */
+	public void setTrustForcedIdReferenceTargets(boolean theTrustForcedIdReferenceTargets) {
+		myTrustForcedIdReferenceTargets = theTrustForcedIdReferenceTargets;
+	}
+
+	/**
+	 * If set to <code>true</code> (default is <code>false</code>) searches will match on the
+	 * precomputed hash columns of the search parameter index tables (e.g. the hash of the
+	 * resource type, parameter name, system and value of a token) instead of comparing
+	 * each of the underlying string columns.
+	 * <p>
+	 * The hash columns are populated whenever a resource is indexed. A database which was
+	 * created by an earlier version of HAPI FHIR will have index rows without hashes, and
+	 * searches using the hashes will not find those rows. On such a database, mark all
+	 * resources for reindexing (see {@link IFhirSystemDao#markAllResourcesForReindexing()})
+	 * and only enable this setting once the reindexing has finished, since reindexing
+	 * backfills the hashes. A new database may enable it immediately.
+	 * </p>
+	 * 
+	 * @since 2.3
+	 */
+	public void setUseHashColumnsForSearch(boolean theUseHashColumnsForSearch) {
+		myUseHashColumnsForSearch = theUseHashColumnsForSearch;
+	}
+
 }
@@ -23,6 +23,7 @@ package ca.uhn.fhir.jpa.dao;
 import static org.apache.commons.lang3.StringUtils.isBlank;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Date;
 import java.util.List;
@@ -50,20 +51,16 @@ import ca.uhn.fhir.jpa.dao.data.ISubscriptionTableDao;
 import ca.uhn.fhir.jpa.entity.ResourceTable;
 import ca.uhn.fhir.jpa.entity.SubscriptionFlaggedResource;
 import ca.uhn.fhir.jpa.entity.SubscriptionTable;
-import ca.uhn.fhir.model.api.IResource;
-import ca.uhn.fhir.model.api.ResourceMetadataKeyEnum;
+import ca.uhn.fhir.jpa.subscription.SubscriptionMatcher;
+import ca.uhn.fhir.jpa.subscription.SubscriptionMatcherRegistry;
+import ca.uhn.fhir.model.dstu.resource.BaseResource;
 import ca.uhn.fhir.model.dstu2.resource.Subscription;
 import ca.uhn.fhir.model.dstu2.valueset.SubscriptionStatusEnum;
 import ca.uhn.fhir.model.primitive.IdDt;
-import ca.uhn.fhir.model.primitive.InstantDt;
 import ca.uhn.fhir.parser.DataFormatException;
-import ca.uhn.fhir.rest.api.SortOrderEnum;
-import ca.uhn.fhir.rest.api.SortSpec;
-import ca.uhn.fhir.rest.param.DateParam;
-import ca.uhn.fhir.rest.param.DateRangeParam;
-import ca.uhn.fhir.rest.param.ParamPrefixEnum;
-import ca.uhn.fhir.rest.server.Constants;
-import ca.uhn.fhir.rest.server.IBundleProvider;
+import ca.uhn.fhir.rest.param.StringParam;
+import ca.uhn.fhir.rest.server.exceptions.BaseServerResponseException;
+import ca.uhn.fhir.rest.server.exceptions.InvalidRequestException;
 import ca.uhn.fhir.rest.server.exceptions.UnprocessableEntityException;
 
 public class FhirResourceDaoSubscriptionDstu2 extends FhirResourceDaoDstu2<Subscription> implements IFhirResourceDaoSubscription<Subscription> {
@@ -76,6 +73,12 @@ public class FhirResourceDaoSubscriptionDstu2 extends FhirResourceDaoDstu2<Subsc
 	@Autowired
 	private ISubscriptionTableDao mySubscriptionTableDao;
 
+	private final SubscriptionMatcherRegistry myMatchers = new SubscriptionMatcherRegistry();
+
+	private volatile boolean myMatchersLoaded;
+
+	private volatile String myMatchersVersion;
+
 	@Autowired
 	private PlatformTransactionManager myTxManager;
 
@@ -115,102 +118,106 @@ public class FhirResourceDaoSubscriptionDstu2 extends FhirResourceDaoDstu2<Subsc
 		return retVal;
 	}
 
-	@Override
-	@Transactional(propagation = Propagation.NOT_SUPPORTED)
-	public synchronized int pollForNewUndeliveredResources() {
-		if (getConfig().isSubscriptionEnabled() == false) {
-			return 0;
-		}
-		ourLog.trace("Beginning pollForNewUndeliveredResources()");
-
-		// SubscriptionCandidateResource
-
-		TransactionTemplate txTemplate = new TransactionTemplate(myTxManager);
-		txTemplate.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+	private SubscriptionMatcher createMatcher(Long theSubscriptionTablePid, Subscription theSubscription) {
+		RuntimeResourceDefinition resourceDef = validateCriteriaAndReturnResourceDefinition(theSubscription);
+		SearchParameterMap params = translateMatchUrl(getContext(), theSubscription.getCriteria(), resourceDef);
+		return new SubscriptionMatcher(theSubscriptionTablePid, theSubscription.getCriteria(), resourceDef, params);
+	}
 
-		Collection<Long> subscriptions = txTemplate.execute(new TransactionCallback<Collection<Long>>() {
-			@Override
-			public Collection<Long> doInTransaction(TransactionStatus theStatus) {
-				return mySubscriptionTableDao.findSubscriptionsWhichNeedToBeChecked(SubscriptionStatusEnum.ACTIVE.getCode(), new Date());
+	/**
+	 * The matchers are loaded from the database the first time a resource is written, and
+	 * are kept up to date from then on as subscriptions are created, updated and deleted
+	 * (see also {@link #refreshMatchersScheduler()})
+	 */
+	private void ensureMatchersLoaded() {
+		if (myMatchersLoaded) {
+			return;
+		}
+		synchronized (myMatchers) {
+			if (myMatchersLoaded) {
+				return;
 			}
-		});
-
-		int retVal = 0;
-		for (final Long nextSubscriptionTablePid : subscriptions) {
-			retVal += txTemplate.execute(new TransactionCallback<Integer>() {
-				@Override
-				public Integer doInTransaction(TransactionStatus theStatus) {
-					SubscriptionTable nextSubscriptionTable = mySubscriptionTableDao.findOne(nextSubscriptionTablePid);
-					return pollForNewUndeliveredResources(nextSubscriptionTable);
-				}
-			});
+			loadMatchers();
+			myMatchersLoaded = true;
 		}
-
-		return retVal;
 	}
 
-	private int pollForNewUndeliveredResources(SubscriptionTable theSubscriptionTable) {
-		Subscription subscription = toResource(Subscription.class, theSubscriptionTable.getSubscriptionResource(), false);
-		RuntimeResourceDefinition resourceDef = validateCriteriaAndReturnResourceDefinition(subscription);
-		SearchParameterMap criteriaUrl = translateMatchUrl(getContext(), subscription.getCriteria(), resourceDef);
-
-		criteriaUrl = new SearchParameterMap();
-		long start = theSubscriptionTable.getMostRecentMatch().getTime();
-		long end = System.currentTimeMillis() - getConfig().getSubscriptionPollDelay();
-		if (end <= start) {
-			ourLog.trace("Skipping search for subscription");
-			return 0;
-		}
-
-		ourLog.debug("Subscription {} search from {} to {}", new Object[] { subscription.getId().getIdPart(), new InstantDt(new Date(start)), new InstantDt(new Date(end)) });
+	private String findSubscriptionsVersion() {
+		return Arrays.toString(mySubscriptionTableDao.findSubscriptionsVersion().get(0));
+	}
 
-		DateRangeParam range = new DateRangeParam();
-		range.setLowerBound(new DateParam(ParamPrefixEnum.GREATERTHAN, start));
-		range.setUpperBound(new DateParam(ParamPrefixEnum.LESSTHAN, end));
-		criteriaUrl.setLastUpdated(range);
-		criteriaUrl.setSort(new SortSpec(Constants.PARAM_LASTUPDATED, SortOrderEnum.ASC));
-		IFhirResourceDao<? extends IBaseResource> dao = getDao(resourceDef.getImplementingClass());
-		IBundleProvider results = dao.search(criteriaUrl);
-		if (results.size() == 0) {
-			return 0;
+	/**
+	 * Loads the matchers for all active subscriptions. The caller must hold the lock on the
+	 * registry and have an open transaction.
+	 */
+	private void loadMatchers() {
+		String version = findSubscriptionsVersion();
+		List<SubscriptionMatcher> matchers = new ArrayList<SubscriptionMatcher>();
+		for (SubscriptionTable next : mySubscriptionTableDao.findByStatus(SubscriptionStatusEnum.ACTIVE.getCode())) {
+			Subscription subscription = toResource(Subscription.class, next.getSubscriptionResource(), false);
+			try {
+				matchers.add(createMatcher(next.getId(), subscription));
+			} catch (BaseServerResponseException e) {
+				ourLog.warn("Ignoring subscription {} with invalid criteria: {}", subscription.getId().getIdPart(), e.getMessage());
+			}
 		}
+		myMatchers.replaceAll(matchers);
+		myMatchersVersion = version;
+		ourLog.info("Loaded {} active subscription(s)", myMatchers.size());
+	}
 
-		ourLog.info("Found {} new results for Subscription {}", results.size(), subscription.getId().getIdPart());
+	@Override
+	public void flagResourceForMatchingSubscriptions(ResourceTable theEntity, ResourceIndexedSearchParams theParams) {
+		ensureMatchersLoaded();
 
 		List<SubscriptionFlaggedResource> flags = new ArrayList<SubscriptionFlaggedResource>();
-		Date mostRecentMatch = null;
-		for (IBaseResource next : results.getResources(0, results.size())) {
-
-			Date updated = ResourceMetadataKeyEnum.UPDATED.get((IResource) next).getValue();
-			if (mostRecentMatch == null) {
-				mostRecentMatch = updated;
-			} else {
-				long mostRecentMatchTime = mostRecentMatch.getTime();
-				long updatedTime = updated.getTime();
-				if (mostRecentMatchTime < updatedTime) {
-					mostRecentMatch = updated;
-				}
+		for (SubscriptionMatcher next : myMatchers.getMatchers(theEntity.getResourceType())) {
+			if (!matches(next, theEntity, theParams)) {
+				continue;
 			}
 
-			SubscriptionFlaggedResource nextFlag = new SubscriptionFlaggedResource();
-			Long pid = IDao.RESOURCE_PID.get((IResource) next);
+			SubscriptionTable subscriptionTable = mySubscriptionTableDao.findOne(next.getSubscriptionTablePid());
+			if (subscriptionTable == null) {
+				myMatchers.unregister(next.getSubscriptionTablePid());
+				continue;
+			}
 
-			ourLog.info("New resource for subscription: {}", pid);
+			ourLog.debug("Resource {} matches subscription {}", theEntity.getIdDt().toUnqualified().getValue(), next.getCriteria());
 
-			nextFlag.setResource(myEntityManager.find(ResourceTable.class, pid));
-			nextFlag.setSubscription(theSubscriptionTable);
-			nextFlag.setVersion(next.getIdElement().getVersionIdPartAsLong());
+			SubscriptionFlaggedResource nextFlag = new SubscriptionFlaggedResource();
+			nextFlag.setResource(theEntity);
+			nextFlag.setSubscription(subscriptionTable);
+			nextFlag.setVersion(theEntity.getVersion());
 			flags.add(nextFlag);
 		}
 
-		mySubscriptionFlaggedResourceDataDao.save(flags);
+		if (!flags.isEmpty()) {
+			mySubscriptionFlaggedResourceDataDao.save(flags);
+			myMatchers.addFlaggedCountAfterCommit(flags.size());
+		}
+	}
 
-		ourLog.debug("Updating most recent match for subcription {} to {}", subscription.getId().getIdPart(), new InstantDt(mostRecentMatch));
+	private boolean matches(SubscriptionMatcher theMatcher, ResourceTable theEntity, ResourceIndexedSearchParams theParams) {
+		if (theMatcher.isMatchableInMemory()) {
+			return theMatcher.matches(theEntity, theParams);
+		}
 
-		theSubscriptionTable.setMostRecentMatch(mostRecentMatch);
-		mySubscriptionTableDao.save(theSubscriptionTable);
+		/*
+		 * The criteria use something that can't be tested in memory, so search for
+		 * the resource using the criteria plus its own ID
+		 */
+		RuntimeResourceDefinition resourceDef = getContext().getResourceDefinition(theEntity.getResourceType());
+		SearchParameterMap params = translateMatchUrl(getContext(), theMatcher.getCriteria(), resourceDef);
+		params.add(BaseResource.SP_RES_ID, new StringParam(theEntity.getIdDt().getIdPart()));
+		return getDao(resourceDef.getImplementingClass()).searchForIdsWithAndOr(params).contains(theEntity.getId());
+	}
 
-		return results.size();
+	@Override
+	public int pollForNewUndeliveredResources() {
+		if (getConfig().isSubscriptionEnabled() == false) {
+			return 0;
+		}
+		return myMatchers.getAndResetFlaggedCount();
 	}
 
 	@Scheduled(fixedDelay = 10 * DateUtils.MILLIS_PER_SECOND)
@@ -223,6 +230,32 @@ public class FhirResourceDaoSubscriptionDstu2 extends FhirResourceDaoDstu2<Subsc
 		pollForNewUndeliveredResources();
 	}
 
+	@Scheduled(fixedDelay = 10 * DateUtils.MILLIS_PER_SECOND)
+	@Transactional(propagation = Propagation.NOT_SUPPORTED)
+	@Override
+	public void refreshMatchersScheduler() {
+		if (getConfig().isSchedulingDisabled() || !myMatchersLoaded) {
+			return;
+		}
+
+		TransactionTemplate txTemplate = new TransactionTemplate(myTxManager);
+		txTemplate.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+		txTemplate.setReadOnly(true);
+		txTemplate.execute(new TransactionCallback<Void>() {
+			@Override
+			public Void doInTransaction(TransactionStatus theStatus) {
+				if (findSubscriptionsVersion().equals(myMatchersVersion)) {
+					return null;
+				}
+				synchronized (myMatchers) {
+					ourLog.info("Subscriptions have changed, reloading the subscription matchers");
+					loadMatchers();
+				}
+				return null;
+			}
+		});
+	}
+
 	@Override
 	protected void postPersist(ResourceTable theEntity, Subscription theSubscription) {
 		super.postPersist(theEntity, theSubscription);
@@ -283,6 +316,7 @@ public class FhirResourceDaoSubscriptionDstu2 extends FhirResourceDaoDstu2<Subsc
 			if (subscriptionId != null) {
 				mySubscriptionFlaggedResourceDataDao.deleteAllForSubscription(subscriptionId);
 				mySubscriptionTableDao.deleteAllForSubscription(subscriptionId);
+				myMatchers.unregisterAfterCommit(subscriptionId);
 			}
 		} else {
 			Query q = myEntityManager.createNamedQuery("Q_HFJ_SUBSCRIPTION_SET_STATUS");
@@ -293,6 +327,15 @@ public class FhirResourceDaoSubscriptionDstu2 extends FhirResourceDaoDstu2<Subsc
 			} else {
 				createSubscriptionTable(retVal, resource);
 			}
+
+			SubscriptionTable subscriptionTable = mySubscriptionTableDao.findOneByResourcePid(resourceId);
+			if (subscriptionTable != null) {
+				if (resource.getStatusElement().getValueAsEnum() == SubscriptionStatusEnum.ACTIVE) {
+					myMatchers.registerAfterCommit(createMatcher(subscriptionTable.getId(), resource));
+				} else {
+					myMatchers.unregisterAfterCommit(subscriptionTable.getId());
+				}
+			}
 		}
 		return retVal;
 	}
@@ -333,6 +376,12 @@ public class FhirResourceDaoSubscriptionDstu2 extends FhirResourceDaoDstu2<Subsc
 			throw new UnprocessableEntityException("Subscription.criteria contains invalid/unsupported resource type: " + resDef);
 		}
 
+		try {
+			translateMatchUrl(getContext(), theResource.getCriteria(), resDef);
+		} catch (InvalidRequestException e) {
+			throw new UnprocessableEntityException("Subscription.criteria is invalid: " + e.getMessage());
+		}
+
 		if (theResource.getChannel().getType() == null) {
 			throw new UnprocessableEntityException("Subscription.channel.type must be populated on this server");
 		}
@@ -36,11 +36,13 @@ import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.Callable;
 
 import javax.persistence.TypedQuery;
 
 import org.apache.http.NameValuePair;
 import org.hl7.fhir.dstu3.model.Bundle.BundleEntryComponent;
+import org.hl7.fhir.instance.model.api.IBaseReference;
 import org.hl7.fhir.instance.model.api.IBaseResource;
 import org.hl7.fhir.instance.model.api.IIdType;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -102,7 +104,7 @@ public class FhirSystemDaoDstu2 extends BaseHapiFhirSystemDao<Bundle, MetaDt> {
 		ourLog.info("Beginning batch with {} resources", theRequest.getEntry().size());
 		long start = System.currentTimeMillis();
 
-		TransactionTemplate txTemplate = new TransactionTemplate(myTxManager);
+		final TransactionTemplate txTemplate = new TransactionTemplate(myTxManager);
 		txTemplate.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
 
 		Bundle resp = new Bundle();
@@ -111,62 +113,78 @@ public class FhirSystemDaoDstu2 extends BaseHapiFhirSystemDao<Bundle, MetaDt> {
 		resp.addEntry().setResource(ooResp);
 
 		/*
-		 * For batch, we handle each entry as a mini-transaction in its own database transaction so that if one fails, it doesn't prevent others
+		 * For batch, we handle each entry as a mini-transaction in its own database transaction so that if one fails, it doesn't prevent others.
+		 * Because the entries are independent, several of them may be processed at the same time (see DaoConfig#setBatchEntryConcurrency)
 		 */
 
+		List<Callable<Entry>> tasks = new ArrayList<Callable<Entry>>(theRequest.getEntry().size());
 		for (final Entry nextRequestEntry : theRequest.getEntry()) {
-
-			TransactionCallback<Bundle> callback = new TransactionCallback<Bundle>() {
+			final ServletRequestDetails entryRequestDetails = newBatchEntryRequestDetails((ServletRequestDetails) theRequestDetails);
+			tasks.add(new Callable<Entry>() {
 				@Override
-				public Bundle doInTransaction(TransactionStatus theStatus) {
-					Bundle subRequestBundle = new Bundle();
-					subRequestBundle.setType(BundleTypeEnum.TRANSACTION);
-					subRequestBundle.addEntry(nextRequestEntry);
-
-					Bundle subResponseBundle = transaction((ServletRequestDetails) theRequestDetails, subRequestBundle, "Batch sub-request");
-					return subResponseBundle;
+				public Entry call() {
+					return batchEntry(entryRequestDetails, txTemplate, nextRequestEntry);
 				}
-			};
-
-			BaseServerResponseException caughtEx;
-			try {
-				Bundle nextResponseBundle = txTemplate.execute(callback);
-				caughtEx = null;
+			});
+		}
 
-				Entry subResponseEntry = nextResponseBundle.getEntry().get(0);
-				resp.addEntry(subResponseEntry);
-				/*
-				 * If the individual entry didn't have a resource in its response, bring the sub-transaction's OperationOutcome across so the client can see it
-				 */
-				if (subResponseEntry.getResource() == null) {
-					subResponseEntry.setResource(nextResponseBundle.getEntry().get(0).getResource());
-				}
+		for (Entry nextResponseEntry : executeBatchEntries(tasks)) {
+			resp.addEntry(nextResponseEntry);
+		}
 
-			} catch (BaseServerResponseException e) {
-				caughtEx = e;
-			} catch (Throwable t) {
-				ourLog.error("Failure during BATCH sub transaction processing", t);
-				caughtEx = new InternalErrorException(t);
-			}
+		long delay = System.currentTimeMillis() - start;
+		ourLog.info("Batch completed in {}ms", new Object[] { delay });
+		ooResp.addIssue().setSeverity(IssueSeverityEnum.INFORMATION).setDiagnostics("Batch completed in " + delay + "ms");
 
-			if (caughtEx != null) {
-				Entry nextEntry = resp.addEntry();
+		return resp;
+	}
 
-				OperationOutcome oo = new OperationOutcome();
-				oo.addIssue().setSeverity(IssueSeverityEnum.ERROR).setDiagnostics(caughtEx.getMessage());
-				nextEntry.setResource(oo);
+	/**
+	 * Processes a single entry of a batch Bundle in its own database transaction and returns the response entry
+	 */
+	private Entry batchEntry(final RequestDetails theRequestDetails, TransactionTemplate theTxTemplate, final Entry theRequestEntry) {
+		TransactionCallback<Bundle> callback = new TransactionCallback<Bundle>() {
+			@Override
+			public Bundle doInTransaction(TransactionStatus theStatus) {
+				Bundle subRequestBundle = new Bundle();
+				subRequestBundle.setType(BundleTypeEnum.TRANSACTION);
+				subRequestBundle.addEntry(theRequestEntry);
+
+				Bundle subResponseBundle = doTransaction((ServletRequestDetails) theRequestDetails, subRequestBundle, "Batch sub-request");
+				return subResponseBundle;
+			}
+		};
 
-				EntryResponse nextEntryResp = nextEntry.getResponse();
-				nextEntryResp.setStatus(toStatusString(caughtEx.getStatusCode()));
+		BaseServerResponseException caughtEx;
+		try {
+			Bundle nextResponseBundle = theTxTemplate.execute(callback);
+
+			Entry subResponseEntry = nextResponseBundle.getEntry().get(0);
+			/*
+			 * If the individual entry didn't have a resource in its response, bring the sub-transaction's OperationOutcome across so the client can see it
+			 */
+			if (subResponseEntry.getResource() == null) {
+				subResponseEntry.setResource(nextResponseBundle.getEntry().get(0).getResource());
 			}
+			return subResponseEntry;
 
+		} catch (BaseServerResponseException e) {
+			caughtEx = e;
+		} catch (Throwable t) {
+			ourLog.error("Failure during BATCH sub transaction processing", t);
+			caughtEx = new InternalErrorException(t);
 		}
 
-		long delay = System.currentTimeMillis() - start;
-		ourLog.info("Batch completed in {}ms", new Object[] { delay });
-		ooResp.addIssue().setSeverity(IssueSeverityEnum.INFORMATION).setDiagnostics("Batch completed in " + delay + "ms");
+		Entry nextEntry = new Entry();
 
-		return resp;
+		OperationOutcome oo = new OperationOutcome();
+		oo.addIssue().setSeverity(IssueSeverityEnum.ERROR).setDiagnostics(caughtEx.getMessage());
+		nextEntry.setResource(oo);
+
+		EntryResponse nextEntryResp = nextEntry.getResponse();
+		nextEntryResp.setStatus(toStatusString(caughtEx.getStatusCode()));
+
+		return nextEntry;
 	}
 
 	private String extractTransactionUrlOrThrowException(Entry nextEntry, HTTPVerbEnum verb) {
@@ -268,6 +286,28 @@ public class FhirSystemDaoDstu2 extends BaseHapiFhirSystemDao<Bundle, MetaDt> {
 		return transaction((ServletRequestDetails) theRequestDetails, theRequest, actionName);
 	}
 
+	private void preloadForcedIds(Bundle theRequest) {
+		List<IIdType> ids = new ArrayList<IIdType>();
+		for (Entry nextEntry : theRequest.getEntry()) {
+			HTTPVerbEnum verb = nextEntry.getRequest().getMethodElement().getValueAsEnum();
+			if (verb == HTTPVerbEnum.GET) {
+				continue;
+			}
+			if ((verb == HTTPVerbEnum.PUT || verb == HTTPVerbEnum.DELETE) && isNotBlank(nextEntry.getRequest().getUrl())) {
+				UrlParts parts = UrlUtil.parseUrl(nextEntry.getRequest().getUrl());
+				if (isNotBlank(parts.getResourceType()) && isNotBlank(parts.getResourceId())) {
+					ids.add(new IdDt(parts.getResourceType(), parts.getResourceId()));
+				}
+			}
+			if (nextEntry.getResource() != null) {
+				for (IBaseReference nextRef : getContext().newTerser().getAllPopulatedChildElementsOfType(nextEntry.getResource(), IBaseReference.class)) {
+					ids.add(nextRef.getReferenceElement());
+				}
+			}
+		}
+		preloadForcedIds(ids);
+	}
+
 	private Bundle transaction(ServletRequestDetails theRequestDetails, Bundle theRequest, String theActionName) {
 		super.markRequestAsProcessingSubRequest(theRequestDetails);
 		try {
@@ -323,6 +363,12 @@ public class FhirSystemDaoDstu2 extends BaseHapiFhirSystemDao<Bundle, MetaDt> {
 			}
 		}
 		Collections.sort(theRequest.getEntry(), new TransactionSorter());
+
+		/*
+		 * Resolve the client assigned IDs which are updated, deleted or referenced by this
+		 * transaction in bulk, instead of one at a time as each entry is processed
+		 */
+		preloadForcedIds(theRequest);
 		
 		List<IIdType> deletedResources = new ArrayList<IIdType>();
 		List<DeleteConflict> deleteConflicts = new ArrayList<DeleteConflict>();
@@ -0,0 +1,190 @@
+package ca.uhn.fhir.jpa.dao;
+
+
+/*
+ * #%L
+ * HAPI FHIR JPA Server
+ * %%
+ * Copyright (C) 2014 - 2017 University Health Network
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.collect.Lists;
+
+import ca.uhn.fhir.jpa.dao.data.IForcedIdDao;
+import ca.uhn.fhir.jpa.entity.ForcedId;
+
+/**
+ * Process-wide cache of {@link ForcedId forced IDs} (client assigned resource IDs) and
+ * the resource PIDs they map to, in both directions.
+ * <p>
+ * A forced ID is assigned when a resource is created and is never changed or removed
+ * afterwards, so cached entries don't go stale. A forced ID which is created within a
+ * transaction that is rolled back is evicted when the rollback happens. Lookups which
+ * don't find a forced ID are not cached (except for PIDs which have no forced ID), since
+ * the ID may be created later.
+ * </p>
+ */
+public class ForcedIdCacheSvc {
+
+	/**
+	 * The maximum number of forced IDs (and PIDs) which will be cached
+	 */
+	static final int MAX_CACHED_IDS = 100000;
+
+	/**
+	 * The maximum number of forced IDs which will be resolved in a single query
+	 */
+	static final int MAX_IDS_PER_QUERY = 500;
+
+	/**
+	 * Cached as the forced ID of a PID which doesn't have one
+	 */
+	private static final String NO_FORCED_ID = "";
+
+	private static final org.slf4j.Logger ourLog = org.slf4j.LoggerFactory.getLogger(ForcedIdCacheSvc.class);
+
+	@Autowired
+	private IForcedIdDao myForcedIdDao;
+
+	private final Cache<String, Long> myForcedIdToPid = CacheBuilder.newBuilder().maximumSize(MAX_CACHED_IDS).build();
+	private final Cache<Long, String> myPidToForcedId = CacheBuilder.newBuilder().maximumSize(MAX_CACHED_IDS).build();
+
+	private void cache(ForcedId theForcedId) {
+		Long pid = theForcedId.getResourcePid();
+		myForcedIdToPid.put(toKey(theForcedId.getResourceType(), theForcedId.getForcedId()), pid);
+		myPidToForcedId.put(pid, theForcedId.getForcedId());
+	}
+
+	/**
+	 * Removes all cached IDs. This only needs to be called if forced IDs have
+	 * been deleted from the database directly.
+	 */
+	public void clearCache() {
+		myForcedIdToPid.invalidateAll();
+		myPidToForcedId.invalidateAll();
+	}
+
+	/**
+	 * Must be called when a new forced ID is being created so that it can be
+	 * evicted from the cache if the transaction creating it is rolled back
+	 */
+	public void forcedIdCreated(String theResourceType, String theForcedId) {
+		if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+			return;
+		}
+		final String key = toKey(theResourceType, theForcedId);
+		TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+			@Override
+			public void afterCompletion(int theStatus) {
+				if (theStatus != TransactionSynchronization.STATUS_COMMITTED) {
+					myForcedIdToPid.invalidate(key);
+				}
+			}
+		});
+	}
+
+	/**
+	 * Returns the PIDs of all resources of any type with the given forced ID. These
+	 * lookups are not cached.
+	 */
+	public List<Long> translateForcedIdToPids(String theForcedId) {
+		List<ForcedId> forcedIds = myForcedIdDao.findByForcedId(theForcedId);
+		List<Long> retVal = new ArrayList<Long>(forcedIds.size());
+		for (ForcedId next : forcedIds) {
+			retVal.add(next.getResourcePid());
+		}
+		return retVal;
+	}
+
+	/**
+	 * Returns the PID of the resource with the given type and forced ID, or <code>null</code>
+	 * if none exists
+	 */
+	public Long translateForcedIdToPid(String theResourceType, String theForcedId) {
+		return translateForcedIdsToPids(theResourceType, Collections.singleton(theForcedId)).get(theForcedId);
+	}
+
+	/**
+	 * Returns the PIDs of the resources with the given type and forced IDs, keyed by forced ID.
+	 * IDs which are not cached are loaded using as few queries as possible, and forced IDs
+	 * which don't exist are not included in the returned map.
+	 */
+	public Map<String, Long> translateForcedIdsToPids(String theResourceType, Collection<String> theForcedIds) {
+		Map<String, Long> retVal = new HashMap<String, Long>();
+		LinkedHashSet<String> toLoad = new LinkedHashSet<String>();
+		for (String next : theForcedIds) {
+			Long pid = myForcedIdToPid.getIfPresent(toKey(theResourceType, next));
+			if (pid != null) {
+				retVal.put(next, pid);
+			} else {
+				toLoad.add(next);
+			}
+		}
+
+		if (!toLoad.isEmpty()) {
+			int loaded = 0;
+			for (List<String> nextChunk : Lists.partition(new ArrayList<String>(toLoad), MAX_IDS_PER_QUERY)) {
+				for (ForcedId next : myForcedIdDao.findByTypeAndForcedIds(theResourceType, nextChunk)) {
+					retVal.put(next.getForcedId(), next.getResourcePid());
+					cache(next);
+					loaded++;
+				}
+			}
+			ourLog.debug("Loaded {} of {} uncached {} forced IDs", new Object[] { loaded, toLoad.size(), theResourceType });
+		}
+
+		return retVal;
+	}
+
+	/**
+	 * Returns the forced ID of the resource with the given PID, or <code>null</code> if
+	 * the resource does not have a forced ID
+	 */
+	public String translatePidToForcedId(Long thePid) {
+		String retVal = myPidToForcedId.getIfPresent(thePid);
+		if (retVal == null) {
+			ForcedId forcedId = myForcedIdDao.findByResourcePid(thePid);
+			if (forcedId != null) {
+				cache(forcedId);
+				retVal = forcedId.getForcedId();
+			} else {
+				myPidToForcedId.put(thePid, NO_FORCED_ID);
+				retVal = NO_FORCED_ID;
+			}
+		}
+		return NO_FORCED_ID.equals(retVal) ? null : retVal;
+	}
+
+	private static String toKey(String theResourceType, String theForcedId) {
+		return theResourceType + '/' + theForcedId;
+	}
+
+}
@@ -47,12 +47,14 @@ import org.hibernate.search.jpa.FullTextQuery;
 import org.hibernate.search.query.dsl.BooleanJunction;
 import org.hibernate.search.query.dsl.QueryBuilder;
 import org.hl7.fhir.instance.model.api.IBaseResource;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.transaction.annotation.Transactional;
 
 import com.google.common.collect.Lists;
 import com.google.common.collect.Sets;
 
 import ca.uhn.fhir.jpa.entity.ResourceTable;
+import ca.uhn.fhir.jpa.search.FulltextIndexingSvc;
 import ca.uhn.fhir.model.api.IQueryParameterType;
 import ca.uhn.fhir.model.dstu.resource.BaseResource;
 import ca.uhn.fhir.rest.param.StringParam;
@@ -66,6 +68,9 @@ public class FulltextSearchSvcImpl extends BaseHapiFhirDao<IBaseResource> implem
 	@PersistenceContext(type = PersistenceContextType.TRANSACTION)
 	private EntityManager myEntityManager;
 
+	@Autowired
+	private FulltextIndexingSvc myFulltextIndexingSvc;
+
 	private void addTextSearch(QueryBuilder theQueryBuilder, BooleanJunction<?> theBoolean, List<List<? extends IQueryParameterType>> theTerms, String theFieldName, String theFieldNameEdgeNGram, String theFieldNameNGram) {
 		if (theTerms == null) {
 			return;
@@ -99,9 +104,28 @@ public class FulltextSearchSvcImpl extends BaseHapiFhirDao<IBaseResource> implem
 		}
 	}
 
+	/**
+	 * If fulltext indexing is asynchronous, gives the resources which have already been stored
+	 * a chance to be indexed before searching
+	 */
+	private void awaitIndexing(SearchParameterMap theParams) {
+		if (!getConfig().isFulltextIndexingAsync()) {
+			return;
+		}
+		Long maxWait = theParams.getFulltextIndexingMaxWaitMillis();
+		if (maxWait == null) {
+			maxWait = getConfig().getFulltextIndexingMaxWaitMillis();
+		}
+		if (maxWait > 0 && !myFulltextIndexingSvc.awaitIndexing(maxWait)) {
+			ourLog.info("Fulltext index is still not up to date after waiting {}ms, searching anyway", maxWait);
+		}
+	}
+
 	private List<Long> doSearch(String theResourceName, SearchParameterMap theParams, Long theReferencingPid) {
 		FullTextEntityManager em = org.hibernate.search.jpa.Search.getFullTextEntityManager(myEntityManager);
 
+		awaitIndexing(theParams);
+
 		List<Long> pids = null;
 		
 		/*
@@ -205,7 +229,7 @@ public class FulltextSearchSvcImpl extends BaseHapiFhirDao<IBaseResource> implem
 		Long pid = null;
 		if (theParams.get(BaseResource.SP_RES_ID) != null) {
 			StringParam idParm = (StringParam) theParams.get(BaseResource.SP_RES_ID).get(0).get(0);
-			pid = BaseHapiFhirDao.translateForcedIdToPid(theResourceName, idParm.getValue(), myForcedIdDao);
+			pid = translateForcedIdToPid(theResourceName, idParm.getValue());
 		}
 
 		Long referencingPid = pid;
@@ -234,7 +258,7 @@ public class FulltextSearchSvcImpl extends BaseHapiFhirDao<IBaseResource> implem
 		if (contextParts.length != 3 || "Patient".equals(contextParts[0]) == false || "$everything".equals(contextParts[2]) == false) {
 			throw new InvalidRequestException("Invalid context: " + theContext);
 		}
-		Long pid = BaseHapiFhirDao.translateForcedIdToPid(contextParts[0], contextParts[1], myForcedIdDao);
+		Long pid = translateForcedIdToPid(contextParts[0], contextParts[1]);
 
 		FullTextEntityManager em = org.hibernate.search.jpa.Search.getFullTextEntityManager(myEntityManager);
 
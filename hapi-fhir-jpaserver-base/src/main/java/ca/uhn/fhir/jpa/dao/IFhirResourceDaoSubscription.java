@@ -25,8 +25,28 @@ import java.util.List;
 import org.hl7.fhir.instance.model.api.IBaseResource;
 import org.hl7.fhir.instance.model.api.IIdType;
 
+import ca.uhn.fhir.jpa.entity.ResourceTable;
+
 public interface IFhirResourceDaoSubscription<T extends IBaseResource> extends IFhirResourceDao<T> {
 
+	/**
+	 * Called by the resource DAOs whenever a new version of a resource is stored. Flags the
+	 * resource for delivery to every active subscription whose criteria it matches.
+	 * 
+	 * @param theEntity
+	 *           The entity for the resource being stored
+	 * @param theParams
+	 *           The indexes which were extracted from the new version of the resource
+	 */
+	void flagResourceForMatchingSubscriptions(ResourceTable theEntity, ResourceIndexedSearchParams theParams);
+
+	/**
+	 * Resources are flagged for subscriptions as they are written (see
+	 * {@link #flagResourceForMatchingSubscriptions(ResourceTable, ResourceIndexedSearchParams)}),
+	 * so this method no longer searches for anything.
+	 * 
+	 * @return Returns the number of resources which have been flagged for delivery since the last time this method was called
+	 */
 	int pollForNewUndeliveredResources();
 
 	List<IBaseResource> getUndeliveredResourcesAndPurge(Long theSubscriptionPid);
@@ -37,4 +57,11 @@ public interface IFhirResourceDaoSubscription<T extends IBaseResource> extends I
 
 	void pollForNewUndeliveredResourcesScheduler();
 
+	/**
+	 * Reloads the subscription matchers if the subscriptions in the database have changed since
+	 * they were loaded, e.g. because another server sharing the database has created, updated or
+	 * deleted a subscription. This is called periodically by the scheduler.
+	 */
+	void refreshMatchersScheduler();
+
 }
@@ -21,6 +21,7 @@ package ca.uhn.fhir.jpa.dao;
  */
 
 import java.util.Date;
+import java.util.List;
 import java.util.Map;
 
 import org.hl7.fhir.instance.model.api.IBaseResource;
@@ -41,6 +42,20 @@ public interface IFhirSystemDao<T, MT> extends IDao {
 	 */
 	void deleteAllTagsOnServer(RequestDetails theRequestDetails);
 
+	/**
+	 * Returns the number of resources which are marked as needing fresh indexing
+	 */
+	long countResourcesRequiringReindexing();
+
+	/**
+	 * Returns the PIDs of resources which are marked as needing fresh indexing, in
+	 * ascending order
+	 * 
+	 * @param theAfterPid Only PIDs greater than this value are returned
+	 * @param theMaxResults The maximum number of PIDs to return
+	 */
+	List<Long> findResourcePidsRequiringReindexing(long theAfterPid, int theMaxResults);
+
 	TagList getAllTags(RequestDetails theRequestDetails);
 
 	public <R extends IBaseResource> IFhirResourceDao<R> getDao(Class<R> theType);
@@ -64,6 +79,26 @@ public interface IFhirSystemDao<T, MT> extends IDao {
 
 	int performReindexingPass(Integer theCount);
 
+	/**
+	 * Moves the encoded bodies of up to the given number of resources out of the resource table
+	 * (HFJ_RESOURCE), leaving them stored only in the resource version table (HFJ_RES_VER). This
+	 * is used to migrate existing data when {@link DaoConfig#setStoreResourceBodyInHistoryOnly(boolean)}
+	 * is enabled, and should be called repeatedly until it returns 0.
+	 * 
+	 * @param theCount The maximum number of resources to migrate, or <code>null</code> for the default (500)
+	 * @return Returns the number of resources which were migrated
+	 */
+	int performResourceBodyMigrationPass(Integer theCount);
+
+	/**
+	 * Reindexes the given resources (those which are still marked as needing fresh indexing)
+	 * in a single transaction. A resource which can not be reindexed is marked as failed, and
+	 * the remaining resources are reindexed without it.
+	 * 
+	 * @return Returns the number of resources which could not be reindexed
+	 */
+	int reindex(List<Long> theResourcePids);
+
 	T transaction(RequestDetails theRequestDetails, T theResources);
 
 }
@@ -0,0 +1,318 @@
+package ca.uhn.fhir.jpa.dao;
+
+
+/*
+ * #%L
+ * HAPI FHIR JPA Server
+ * %%
+ * Copyright (C) 2014 - 2017 University Health Network
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.commons.lang3.Validate;
+import org.hl7.fhir.instance.model.api.IBaseResource;
+
+import ca.uhn.fhir.jpa.entity.ResourceEncodingEnum;
+
+/**
+ * A bounded, least-recently-used cache of resource bodies which have already been
+ * decoded by {@link BaseHapiFhirDao#toResource(Class, ca.uhn.fhir.jpa.entity.BaseHasResource, boolean)},
+ * keyed on the resource PID and version.
+ * <p>
+ * Because resource versions are immutable once committed, entries never need to be
+ * invalidated. As an extra safeguard (e.g. against a version which was written by a
+ * transaction that later rolled back), each entry also keeps the raw encoded bytes it
+ * was decoded from and is only used if those bytes match the entity being loaded.
+ * </p>
+ * <p>
+ * Where the structure model supports a deep copy (DSTU3), the parsed resource itself is
+ * cached and every caller receives its own copy, so callers are free to modify the
+ * returned resource. For other models only the decoded (decompressed) resource text is
+ * cached, and the resource is parsed again on every hit.
+ * </p>
+ * <p>
+ * The cache is configured and its statistics are exposed through
+ * {@link DaoConfig#setParsedResourceCacheMaxEntries(int)},
+ * {@link DaoConfig#setParsedResourceCacheMaxBytes(long)} and
+ * {@link DaoConfig#getParsedResourceCacheStatistics()}.
+ * </p>
+ */
+public class ParsedResourceCache {
+
+	private final Map<Key, CachedResource> myEntries = new LinkedHashMap<Key, CachedResource>(16, 0.75f, true);
+	private final AtomicLong myEvictions = new AtomicLong();
+	private final AtomicLong myHits = new AtomicLong();
+	private long myMaxBytes;
+	private int myMaxEntries;
+	private final AtomicLong myMisses = new AtomicLong();
+	private long myTotalBytes;
+
+	/**
+	 * Constructor
+	 */
+	ParsedResourceCache() {
+		super();
+	}
+
+	public synchronized void clear() {
+		myEntries.clear();
+		myTotalBytes = 0;
+	}
+
+	private void evictIfNeeded() {
+		Iterator<CachedResource> iter = myEntries.values().iterator();
+		while (iter.hasNext() && (myEntries.size() > myMaxEntries || myTotalBytes > myMaxBytes)) {
+			CachedResource next = iter.next();
+			iter.remove();
+			myTotalBytes -= next.myBytes;
+			myEvictions.incrementAndGet();
+		}
+	}
+
+	/**
+	 * Returns the cached entry for the given key, or <code>null</code> if there is no
+	 * usable entry
+	 */
+	public synchronized CachedResource get(Key theKey) {
+		if (!isEnabled()) {
+			return null;
+		}
+		CachedResource retVal = myEntries.get(theKey);
+		if (retVal != null && !Arrays.equals(retVal.myEncoded, theKey.myEncoded)) {
+			retVal = null;
+		}
+		if (retVal != null) {
+			myHits.incrementAndGet();
+		} else {
+			myMisses.incrementAndGet();
+		}
+		return retVal;
+	}
+
+	synchronized Statistics getStatistics() {
+		return new Statistics(myHits.get(), myMisses.get(), myEvictions.get(), myEntries.size(), myTotalBytes);
+	}
+
+	public boolean isEnabled() {
+		return myMaxEntries > 0 && myMaxBytes > 0;
+	}
+
+	/**
+	 * Stores a freshly decoded resource. The given resource is not retained (a copy is
+	 * stored instead), so the caller may continue to modify it.
+	 */
+	public void put(Key theKey, String theText, IBaseResource theResource) {
+		if (!isEnabled()) {
+			return;
+		}
+
+		IBaseResource prototype = copy(theResource);
+		CachedResource entry;
+		if (prototype != null) {
+			entry = new CachedResource(theKey.myEncoded, null, prototype, theKey.myEncoded.length + (theText.length() * 2L));
+		} else {
+			entry = new CachedResource(theKey.myEncoded, theText, null, theKey.myEncoded.length + (theText.length() * 2L));
+		}
+
+		synchronized (this) {
+			if (entry.myBytes > myMaxBytes) {
+				return;
+			}
+			CachedResource previous = myEntries.put(theKey, entry);
+			if (previous != null) {
+				myTotalBytes -= previous.myBytes;
+			}
+			myTotalBytes += entry.myBytes;
+			evictIfNeeded();
+		}
+	}
+
+	synchronized void setLimits(int theMaxEntries, long theMaxBytes) {
+		myMaxEntries = theMaxEntries;
+		myMaxBytes = theMaxBytes;
+		evictIfNeeded();
+	}
+
+	/**
+	 * Returns a deep copy of the given resource, or <code>null</code> if the resource's
+	 * structure model doesn't support copying it
+	 */
+	private static IBaseResource copy(IBaseResource theResource) {
+		if (theResource instanceof org.hl7.fhir.dstu3.model.Resource) {
+			IBaseResource retVal = ((org.hl7.fhir.dstu3.model.Resource) theResource).copy();
+			// Custom types don't override copy() so we can't copy them
+			if (retVal.getClass() == theResource.getClass()) {
+				return retVal;
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * A single cache entry, holding either a parsed resource or its decoded text
+	 */
+	public static class CachedResource {
+		private final long myBytes;
+		private final byte[] myEncoded;
+		private final IBaseResource myPrototype;
+		private final String myText;
+
+		private CachedResource(byte[] theEncoded, String theText, IBaseResource thePrototype, long theBytes) {
+			myEncoded = theEncoded;
+			myText = theText;
+			myPrototype = thePrototype;
+			myBytes = theBytes;
+		}
+
+		/**
+		 * Returns the decoded resource text, or <code>null</code> if this entry holds a parsed resource
+		 */
+		public String getText() {
+			return myText;
+		}
+
+		/**
+		 * Returns a new copy of the cached resource, or <code>null</code> if this entry only
+		 * holds the decoded text
+		 */
+		@SuppressWarnings("unchecked")
+		public <R extends IBaseResource> R newResource() {
+			if (myPrototype == null) {
+				return null;
+			}
+			return (R) copy(myPrototype);
+		}
+	}
+
+	/**
+	 * Identifies a single version of a resource, decoded as a given type
+	 */
+	public static class Key {
+		private final ResourceEncodingEnum myEncoding;
+		private final byte[] myEncoded;
+		private final long myResourcePid;
+		private final Class<? extends IBaseResource> myResourceType;
+		private final long myVersion;
+
+		/**
+		 * Constructor
+		 * 
+		 * @param theResourcePid
+		 *           The PID of the resource (not the PID of the history entry)
+		 * @param theVersion
+		 *           The resource version
+		 * @param theResourceType
+		 *           The type the resource is being parsed as
+		 * @param theEncoding
+		 *           The encoding of the stored resource body
+		 * @param theEncoded
+		 *           The stored resource body
+		 */
+		public Key(long theResourcePid, long theVersion, Class<? extends IBaseResource> theResourceType, ResourceEncodingEnum theEncoding, byte[] theEncoded) {
+			myResourcePid = theResourcePid;
+			myVersion = theVersion;
+			myResourceType = Validate.notNull(theResourceType);
+			myEncoding = Validate.notNull(theEncoding);
+			myEncoded = Validate.notNull(theEncoded);
+		}
+
+		@Override
+		public boolean equals(Object theObj) {
+			if (this == theObj) {
+				return true;
+			}
+			if (!(theObj instanceof Key)) {
+				return false;
+			}
+			Key obj = (Key) theObj;
+			return myResourcePid == obj.myResourcePid && myVersion == obj.myVersion && myResourceType == obj.myResourceType && myEncoding == obj.myEncoding;
+		}
+
+		@Override
+		public int hashCode() {
+			int retVal = (int) (myResourcePid ^ (myResourcePid >>> 32));
+			retVal = 31 * retVal + (int) (myVersion ^ (myVersion >>> 32));
+			retVal = 31 * retVal + myResourceType.hashCode();
+			retVal = 31 * retVal + myEncoding.hashCode();
+			return retVal;
+		}
+	}
+
+	/**
+	 * A point-in-time snapshot of the cache's statistics
+	 */
+	public static class Statistics {
+		private final long myEntries;
+		private final long myEvictions;
+		private final long myHits;
+		private final long myMisses;
+		private final long myTotalBytes;
+
+		Statistics(long theHits, long theMisses, long theEvictions, long theEntries, long theTotalBytes) {
+			myHits = theHits;
+			myMisses = theMisses;
+			myEvictions = theEvictions;
+			myEntries = theEntries;
+			myTotalBytes = theTotalBytes;
+		}
+
+		/**
+		 * Returns the number of entries currently in the cache
+		 */
+		public long getEntries() {
+			return myEntries;
+		}
+
+		/**
+		 * Returns the number of entries which have been evicted in order to stay within the configured limits
+		 */
+		public long getEvictions() {
+			return myEvictions;
+		}
+
+		/**
+		 * Returns the number of lookups which found a usable entry
+		 */
+		public long getHits() {
+			return myHits;
+		}
+
+		/**
+		 * Returns the number of lookups which did not find a usable entry
+		 */
+		public long getMisses() {
+			return myMisses;
+		}
+
+		/**
+		 * Returns the approximate number of bytes held by the cache
+		 */
+		public long getTotalBytes() {
+			return myTotalBytes;
+		}
+
+		@Override
+		public String toString() {
+			return "hits=" + myHits + ", misses=" + myMisses + ", evictions=" + myEvictions + ", entries=" + myEntries + ", bytes=" + myTotalBytes;
+		}
+	}
+
+}
@@ -0,0 +1,95 @@
+package ca.uhn.fhir.jpa.dao;
+
+
+/*
+ * #%L
+ * HAPI FHIR JPA Server
+ * %%
+ * Copyright (C) 2014 - 2017 University Health Network
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import java.util.Collection;
+
+import ca.uhn.fhir.jpa.entity.ResourceIndexedSearchParamCoords;
+import ca.uhn.fhir.jpa.entity.ResourceIndexedSearchParamDate;
+import ca.uhn.fhir.jpa.entity.ResourceIndexedSearchParamNumber;
+import ca.uhn.fhir.jpa.entity.ResourceIndexedSearchParamQuantity;
+import ca.uhn.fhir.jpa.entity.ResourceIndexedSearchParamString;
+import ca.uhn.fhir.jpa.entity.ResourceIndexedSearchParamToken;
+import ca.uhn.fhir.jpa.entity.ResourceIndexedSearchParamUri;
+import ca.uhn.fhir.jpa.entity.ResourceLink;
+
+/**
+ * The search parameter indexes and resource links which were extracted from
+ * a single resource while it was being stored
+ */
+public class ResourceIndexedSearchParams {
+
+	private final Collection<ResourceIndexedSearchParamCoords> myCoordsParams;
+	private final Collection<ResourceIndexedSearchParamDate> myDateParams;
+	private final Collection<ResourceLink> myLinks;
+	private final Collection<ResourceIndexedSearchParamNumber> myNumberParams;
+	private final Collection<ResourceIndexedSearchParamQuantity> myQuantityParams;
+	private final Collection<ResourceIndexedSearchParamString> myStringParams;
+	private final Collection<ResourceIndexedSearchParamToken> myTokenParams;
+	private final Collection<ResourceIndexedSearchParamUri> myUriParams;
+
+	public ResourceIndexedSearchParams(Collection<ResourceIndexedSearchParamString> theStringParams, Collection<ResourceIndexedSearchParamToken> theTokenParams,
+			Collection<ResourceIndexedSearchParamNumber> theNumberParams, Collection<ResourceIndexedSearchParamQuantity> theQuantityParams, Collection<ResourceIndexedSearchParamDate> theDateParams,
+			Collection<ResourceIndexedSearchParamUri> theUriParams, Collection<ResourceIndexedSearchParamCoords> theCoordsParams, Collection<ResourceLink> theLinks) {
+		myStringParams = theStringParams;
+		myTokenParams = theTokenParams;
+		myNumberParams = theNumberParams;
+		myQuantityParams = theQuantityParams;
+		myDateParams = theDateParams;
+		myUriParams = theUriParams;
+		myCoordsParams = theCoordsParams;
+		myLinks = theLinks;
+	}
+
+	public Collection<ResourceIndexedSearchParamCoords> getCoordsParams() {
+		return myCoordsParams;
+	}
+
+	public Collection<ResourceIndexedSearchParamDate> getDateParams() {
+		return myDateParams;
+	}
+
+	public Collection<ResourceLink> getLinks() {
+		return myLinks;
+	}
+
+	public Collection<ResourceIndexedSearchParamNumber> getNumberParams() {
+		return myNumberParams;
+	}
+
+	public Collection<ResourceIndexedSearchParamQuantity> getQuantityParams() {
+		return myQuantityParams;
+	}
+
+	public Collection<ResourceIndexedSearchParamString> getStringParams() {
+		return myStringParams;
+	}
+
+	public Collection<ResourceIndexedSearchParamToken> getTokenParams() {
+		return myTokenParams;
+	}
+
+	public Collection<ResourceIndexedSearchParamUri> getUriParams() {
+		return myUriParams;
+	}
+
+}
@@ -50,13 +50,15 @@ import com.google.common.collect.Lists;
 import com.google.common.collect.Sets;
 
 import ca.uhn.fhir.context.*;
-import ca.uhn.fhir.jpa.dao.data.IForcedIdDao;
 import ca.uhn.fhir.jpa.dao.data.IResourceIndexedSearchParamUriDao;
 import ca.uhn.fhir.jpa.dao.data.ISearchResultDao;
 import ca.uhn.fhir.jpa.entity.*;
 import ca.uhn.fhir.jpa.search.PersistedJpaBundleProvider;
+import ca.uhn.fhir.jpa.search.SearchResultStreamingSvc;
 import ca.uhn.fhir.jpa.term.IHapiTerminologySvc;
 import ca.uhn.fhir.jpa.term.VersionIndependentConcept;
+import ca.uhn.fhir.jpa.util.LongList;
+import ca.uhn.fhir.jpa.util.SortedLongSet;
 import ca.uhn.fhir.jpa.util.StopWatch;
 import ca.uhn.fhir.model.api.*;
 import ca.uhn.fhir.model.base.composite.BaseCodingDt;
@@ -84,9 +86,10 @@ public class SearchBuilder {
 
 	private BaseHapiFhirDao<?> myCallingDao;
 	private FhirContext myContext;
+	private boolean myDeferPidQueries;
 	private EntityManager myEntityManager;
-	private IForcedIdDao myForcedIdDao;
 	private SearchParameterMap myParams;
+	private CriteriaQuery<Long> myPendingPidQuery;
 	private Collection<Long> myPids;
 	private PlatformTransactionManager myPlatformTransactionManager;
 	private IResourceIndexedSearchParamUriDao myResourceIndexedSearchParamUriDao;
@@ -95,10 +98,11 @@ public class SearchBuilder {
 	private IFulltextSearchSvc mySearchDao;
 	private Search mySearchEntity;
 	private ISearchResultDao mySearchResultDao;
+	private boolean myStreamResults;
 	private IHapiTerminologySvc myTerminologySvc;
 
 	public SearchBuilder(FhirContext theFhirContext, EntityManager theEntityManager, PlatformTransactionManager thePlatformTransactionManager, IFulltextSearchSvc theSearchDao, ISearchResultDao theSearchResultDao, BaseHapiFhirDao<?> theDao,
-			IResourceIndexedSearchParamUriDao theResourceIndexedSearchParamUriDao, IForcedIdDao theForcedIdDao, IHapiTerminologySvc theTerminologySvc) {
+			IResourceIndexedSearchParamUriDao theResourceIndexedSearchParamUriDao, IHapiTerminologySvc theTerminologySvc) {
 		myContext = theFhirContext;
 		myEntityManager = theEntityManager;
 		myPlatformTransactionManager = thePlatformTransactionManager;
@@ -106,7 +110,6 @@ public class SearchBuilder {
 		mySearchResultDao = theSearchResultDao;
 		myCallingDao = theDao;
 		myResourceIndexedSearchParamUriDao = theResourceIndexedSearchParamUriDao;
-		myForcedIdDao = theForcedIdDao;
 		myTerminologySvc = theTerminologySvc;
 	}
 
@@ -169,14 +172,16 @@ public class SearchBuilder {
 		Predicate masterCodePredicate = builder.or(toArray(codePredicates));
 
 		List<Predicate> predicates = new ArrayList<Predicate>();
-		predicates.add(builder.equal(from.get("myResourceType"), myResourceName));
-		predicates.add(builder.equal(from.get("myParamName"), theParamName));
+		predicates.add(createPredicateParamIdentity(builder, from, theParamName));
 		createPredicateResourceId(builder, cq, predicates, from.get("myResourcePid").as(Long.class));
 		createPredicateLastUpdatedForIndexedSearchParam(builder, from, predicates);
 		predicates.add(masterCodePredicate);
 
 		cq.where(builder.and(toArray(predicates)));
 
+		if (deferPidQuery(cq)) {
+			return;
+		}
 		TypedQuery<Long> q = myEntityManager.createQuery(cq);
 		doSetPids(q.getResultList());
 	}
@@ -259,6 +264,23 @@ public class SearchBuilder {
 			return;
 		}
 
+		/*
+		 * If the PIDs matched so far are held in memory, intersect them with the requested
+		 * PIDs here, so that the query only needs a single list of PIDs (and isn't needed
+		 * at all if none of them match)
+		 */
+		Collection<Long> pids = thePids;
+		boolean restrictToMatchedPids = true;
+		resolvePendingPidQuery();
+		if (!isPersistIntermediateResults() && myPids != null) {
+			pids = SortedLongSet.of(thePids).intersect(SortedLongSet.of(myPids));
+			if (pids.isEmpty()) {
+				doSetPids(SortedLongSet.empty());
+				return;
+			}
+			restrictToMatchedPids = false;
+		}
+
 		CriteriaBuilder builder = myEntityManager.getCriteriaBuilder();
 		CriteriaQuery<Long> cq = builder.createQuery(Long.class);
 		Root<ResourceTable> from = cq.from(ResourceTable.class);
@@ -266,8 +288,10 @@ public class SearchBuilder {
 
 		List<Predicate> predicates = new ArrayList<Predicate>();
 		predicates.add(builder.equal(from.get("myResourceType"), myResourceName));
-		predicates.add(from.get("myId").in(thePids));
-		createPredicateResourceId(builder, cq, predicates, from.get("myId").as(Long.class));
+		predicates.add(from.get("myId").in(pids));
+		if (restrictToMatchedPids) {
+			createPredicateResourceId(builder, cq, predicates, from.get("myId").as(Long.class));
+		}
 		createPredicateLastUpdatedForResourceTable(builder, from, predicates);
 
 		cq.where(toArray(predicates));
@@ -392,14 +416,16 @@ public class SearchBuilder {
 		}
 
 		List<Predicate> predicates = new ArrayList<Predicate>();
-		predicates.add(builder.equal(from.get("myResourceType"), myResourceName));
-		predicates.add(builder.equal(from.get("myParamName"), theParamName));
+		predicates.add(createPredicateParamIdentity(builder, from, theParamName));
 		predicates.add(builder.or(toArray(codePredicates)));
 		createPredicateResourceId(builder, cq, predicates, from.get("myResourcePid").as(Long.class));
 		createPredicateLastUpdatedForIndexedSearchParam(builder, from, predicates);
 
 		cq.where(builder.and(toArray(predicates)));
 
+		if (deferPidQuery(cq)) {
+			return;
+		}
 		TypedQuery<Long> q = myEntityManager.createQuery(cq);
 		doSetPids(q.getResultList());
 	}
@@ -413,9 +439,7 @@ public class SearchBuilder {
 		Subquery<Long> subQ = cq.subquery(Long.class);
 		Root<? extends BaseResourceIndexedSearchParam> subQfrom = subQ.from(theParamTable);
 		subQ.select(subQfrom.get("myResourcePid").as(Long.class));
-		Predicate subQname = builder.equal(subQfrom.get("myParamName"), theParamName);
-		Predicate subQtype = builder.equal(subQfrom.get("myResourceType"), myResourceName);
-		subQ.where(builder.and(subQtype, subQname));
+		subQ.where(createPredicateParamIdentity(builder, subQfrom, theParamName));
 
 		List<Predicate> predicates = new ArrayList<Predicate>();
 		predicates.add(builder.not(builder.in(from.get("myId")).value(subQ)));
@@ -454,7 +478,7 @@ public class SearchBuilder {
 
 		TypedQuery<Long> q = myEntityManager.createQuery(cq);
 		List<Long> resultList = q.getResultList();
-		doSetPids(new HashSet<Long>(resultList));
+		doSetPids(SortedLongSet.of(resultList));
 	}
 
 	private void addPredicateQuantity(String theParamName, List<? extends IQueryParameterType> theList) {
@@ -474,21 +498,23 @@ public class SearchBuilder {
 				continue;
 			}
 
-			Predicate singleCode = createPredicateQuantity(builder, from, nextOr);
+			Predicate singleCode = createPredicateQuantity(builder, from, nextOr, theParamName);
 			codePredicates.add(singleCode);
 		}
 
 		List<Predicate> predicates = new ArrayList<Predicate>();
-		predicates.add(builder.equal(from.get("myResourceType"), myResourceName));
-		predicates.add(builder.equal(from.get("myParamName"), theParamName));
+		predicates.add(createPredicateParamIdentity(builder, from, theParamName));
 		predicates.add(builder.or(toArray(codePredicates)));
 		createPredicateResourceId(builder, cq, predicates, from.get("myResourcePid").as(Long.class));
 		createPredicateLastUpdatedForIndexedSearchParam(builder, from, predicates);
 
 		cq.where(builder.and(toArray(predicates)));
 
+		if (deferPidQuery(cq)) {
+			return;
+		}
 		TypedQuery<Long> q = myEntityManager.createQuery(cq);
-		doSetPids(new HashSet<Long>(q.getResultList()));
+		doSetPids(SortedLongSet.of(q.getResultList()));
 	}
 
 	private void addPredicateReference(String theParamName, List<? extends IQueryParameterType> theList) {
@@ -658,8 +684,11 @@ public class SearchBuilder {
 
 		cq.where(builder.and(toArray(predicates)));
 
+		if (deferPidQuery(cq)) {
+			return;
+		}
 		TypedQuery<Long> q = myEntityManager.createQuery(cq);
-		doSetPids(new HashSet<Long>(q.getResultList()));
+		doSetPids(SortedLongSet.of(q.getResultList()));
 	}
 
 	private void addPredicateString(String theParamName, List<? extends IQueryParameterType> theList) {
@@ -685,8 +714,7 @@ public class SearchBuilder {
 		}
 
 		List<Predicate> predicates = new ArrayList<Predicate>();
-		predicates.add(builder.equal(from.get("myResourceType"), myResourceName));
-		predicates.add(builder.equal(from.get("myParamName"), theParamName));
+		predicates.add(createPredicateParamIdentity(builder, from, theParamName));
 		predicates.add(builder.or(toArray(codePredicates)));
 
 		createPredicateResourceId(builder, cq, predicates, from.get("myResourcePid").as(Long.class));
@@ -694,8 +722,11 @@ public class SearchBuilder {
 
 		cq.where(builder.and(toArray(predicates)));
 
+		if (deferPidQuery(cq)) {
+			return;
+		}
 		TypedQuery<Long> q = myEntityManager.createQuery(cq);
-		doSetPids(new HashSet<Long>(q.getResultList()));
+		doSetPids(SortedLongSet.of(q.getResultList()));
 	}
 
 	private void addPredicateTag(List<List<? extends IQueryParameterType>> theList, String theParamName, DateRangeParam theLastUpdated) {
@@ -844,8 +875,7 @@ public class SearchBuilder {
 				cq.where(toArray(andPredicates));
 
 				TypedQuery<Long> q = myEntityManager.createQuery(cq);
-				Set<Long> pids = new HashSet<Long>(q.getResultList());
-				doSetPids(pids);
+				doSetPids(SortedLongSet.of(q.getResultList()));
 				continue;
 			}
 
@@ -874,8 +904,7 @@ public class SearchBuilder {
 			cq.where(masterCodePredicate);
 
 			TypedQuery<Long> q = myEntityManager.createQuery(cq);
-			Set<Long> pids = new HashSet<Long>(q.getResultList());
-			doSetPids(pids);
+			doSetPids(SortedLongSet.of(q.getResultList()));
 		}
 
 	}
@@ -919,15 +948,17 @@ public class SearchBuilder {
 		}
 
 		List<Predicate> predicates = new ArrayList<Predicate>();
-		predicates.add(builder.equal(from.get("myResourceType"), myResourceName));
-		predicates.add(builder.equal(from.get("myParamName"), theParamName));
+		predicates.add(createPredicateParamIdentity(builder, from, theParamName));
 		predicates.add(builder.or(toArray(codePredicates)));
 		createPredicateResourceId(builder, cq, predicates, from.get("myResourcePid").as(Long.class));
 
 		cq.where(builder.and(toArray(predicates)));
 
+		if (deferPidQuery(cq)) {
+			return;
+		}
 		TypedQuery<Long> q = myEntityManager.createQuery(cq);
-		doSetPids(new HashSet<Long>(q.getResultList()));
+		doSetPids(SortedLongSet.of(q.getResultList()));
 	}
 
 	private void addPredicateUri(String theParamName, List<? extends IQueryParameterType> theList) {
@@ -991,6 +1022,8 @@ public class SearchBuilder {
 
 				} else if (param.getQualifier() == UriParamQualifierEnum.BELOW) {
 					predicate = builder.like(fromObj.as(String.class), createLeftMatchLikeExpression(value));
+				} else if (isUseHashColumns()) {
+					predicate = builder.equal(from.get("myHashUri"), ResourceIndexedSearchParamUri.calculateHashUri(myResourceName, theParamName, value));
 				} else {
 					predicate = builder.equal(fromObj.as(String.class), value);
 				}
@@ -1002,20 +1035,22 @@ public class SearchBuilder {
 		}
 
 		if (codePredicates.isEmpty()) {
-			doSetPids(new HashSet<Long>());
+			doSetPids(SortedLongSet.empty());
 			return;
 		}
 
 		List<Predicate> predicates = new ArrayList<Predicate>();
-		predicates.add(builder.equal(from.get("myResourceType"), myResourceName));
-		predicates.add(builder.equal(from.get("myParamName"), theParamName));
+		predicates.add(createPredicateParamIdentity(builder, from, theParamName));
 		predicates.add(builder.or(toArray(codePredicates)));
 		createPredicateResourceId(builder, cq, predicates, from.get("myResourcePid").as(Long.class));
 
 		cq.where(builder.and(toArray(predicates)));
 
+		if (deferPidQuery(cq)) {
+			return;
+		}
 		TypedQuery<Long> q = myEntityManager.createQuery(cq);
-		doSetPids(new HashSet<Long>(q.getResultList()));
+		doSetPids(SortedLongSet.of(q.getResultList()));
 	}
 
 	private Predicate createCompositeParamPart(CriteriaBuilder builder, Root<ResourceTable> from, RuntimeSearchParam left, IQueryParameterType leftValue) {
@@ -1038,7 +1073,7 @@ public class SearchBuilder {
 		}
 		case QUANTITY: {
 			From<ResourceIndexedSearchParamQuantity, ResourceIndexedSearchParamQuantity> dateJoin = from.join("myParamsQuantity", JoinType.INNER);
-			retVal = createPredicateQuantity(builder, dateJoin, leftValue);
+			retVal = createPredicateQuantity(builder, dateJoin, leftValue, left.getName());
 			break;
 		}
 		}
@@ -1169,7 +1204,24 @@ public class SearchBuilder {
 		return num;
 	}
 
-	private Predicate createPredicateQuantity(CriteriaBuilder theBuilder, From<ResourceIndexedSearchParamQuantity, ResourceIndexedSearchParamQuantity> theFrom, IQueryParameterType theParam) {
+	private boolean isUseHashColumns() {
+		return myCallingDao.getConfig().isUseHashColumnsForSearch();
+	}
+
+	/**
+	 * Creates a predicate matching index rows for the given parameter of the resource type being searched
+	 */
+	private Predicate createPredicateParamIdentity(CriteriaBuilder theBuilder, From<?, ? extends BaseResourceIndexedSearchParam> theFrom, String theParamName) {
+		if (isUseHashColumns()) {
+			long hashIdentity = BaseResourceIndexedSearchParam.calculateHashIdentity(myResourceName, theParamName);
+			return theBuilder.equal(theFrom.get("myHashIdentity"), hashIdentity);
+		}
+		Predicate type = theBuilder.equal(theFrom.get("myResourceType"), myResourceName);
+		Predicate name = theBuilder.equal(theFrom.get("myParamName"), theParamName);
+		return theBuilder.and(type, name);
+	}
+
+	private Predicate createPredicateQuantity(CriteriaBuilder theBuilder, From<ResourceIndexedSearchParamQuantity, ResourceIndexedSearchParamQuantity> theFrom, IQueryParameterType theParam, String theParamName) {
 		String systemValue;
 		String unitsValue;
 		ParamPrefixEnum cmpValue;
@@ -1195,13 +1247,22 @@ public class SearchBuilder {
 		}
 
 		Predicate system = null;
-		if (!isBlank(systemValue)) {
-			system = theBuilder.equal(theFrom.get("mySystem"), systemValue);
-		}
-
 		Predicate code = null;
-		if (!isBlank(unitsValue)) {
-			code = theBuilder.equal(theFrom.get("myUnits"), unitsValue);
+		if (isUseHashColumns() && !isBlank(unitsValue)) {
+			if (!isBlank(systemValue)) {
+				long hash = ResourceIndexedSearchParamQuantity.calculateHashSystemAndUnits(myResourceName, theParamName, systemValue, unitsValue);
+				code = theBuilder.equal(theFrom.get("myHashIdentitySystemAndUnits"), hash);
+			} else {
+				long hash = ResourceIndexedSearchParamQuantity.calculateHashUnits(myResourceName, theParamName, unitsValue);
+				code = theBuilder.equal(theFrom.get("myHashIdentityAndUnits"), hash);
+			}
+		} else {
+			if (!isBlank(systemValue)) {
+				system = theBuilder.equal(theFrom.get("mySystem"), systemValue);
+			}
+			if (!isBlank(unitsValue)) {
+				code = theBuilder.equal(theFrom.get("myUnits"), unitsValue);
+			}
 		}
 
 		cmpValue = ObjectUtils.defaultIfNull(cmpValue, ParamPrefixEnum.EQUAL);
@@ -1225,7 +1286,7 @@ public class SearchBuilder {
 	}
 
 	private void createPredicateResourceId(CriteriaBuilder builder, CriteriaQuery<?> cq, List<Predicate> thePredicates, Expression<Long> theExpression) {
-		if (myParams.isPersistResults()) {
+		if (isPersistIntermediateResults()) {
 			if (mySearchEntity.getTotalCount() > -1) {
 				Subquery<Long> subQ = cq.subquery(Long.class);
 				Root<SearchResult> subQfrom = subQ.from(SearchResult.class);
@@ -1236,7 +1297,10 @@ public class SearchBuilder {
 				thePredicates.add(theExpression.in(subQ));
 			}
 		} else {
-			if (myPids != null) {
+			resolvePendingPidQuery();
+			if (myPids != null && myPids.isEmpty()) {
+				thePredicates.add(builder.disjunction());
+			} else if (myPids != null) {
 				thePredicates.add(theExpression.in(myPids));
 			}
 		}
@@ -1268,6 +1332,11 @@ public class SearchBuilder {
 		String likeExpression = BaseHapiFhirDao.normalizeString(rawSearchTerm);
 		likeExpression = createLeftMatchLikeExpression(likeExpression);
 
+		if (theParameter instanceof StringParam && ((StringParam) theParameter).isExact() && isUseHashColumns()) {
+			long hash = ResourceIndexedSearchParamString.calculateHashExact(myResourceName, theParamName, rawSearchTerm);
+			return theBuilder.equal(theFrom.get("myHashExact"), hash);
+		}
+
 		Predicate singleCode = theBuilder.like(theFrom.get("myValueNormalized").as(String.class), likeExpression);
 		if (theParameter instanceof StringParam && ((StringParam) theParameter).isExact()) {
 			Predicate exactCode = theBuilder.equal(theFrom.get("myValueExact"), rawSearchTerm);
@@ -1340,6 +1409,14 @@ public class SearchBuilder {
 			if (codes.isEmpty()) {
 				return null;
 			}
+			if (isUseHashColumns()) {
+				List<Long> hashes = new ArrayList<Long>(codes.size());
+				for (VersionIndependentConcept nextCode : codes) {
+					hashes.add(ResourceIndexedSearchParamToken.calculateHashSystemAndValue(myResourceName, theParamName, nextCode.getSystem(), nextCode.getCode()));
+				}
+				return theFrom.get("myHashSystemAndValue").in(hashes);
+			}
+
 			List<Predicate> orPredicates = new ArrayList<Predicate>();
 			for (VersionIndependentConcept nextCode : codes) {
 				Predicate systemPredicate = theBuilder.equal(theFrom.get("mySystem"), nextCode.getSystem());
@@ -1354,6 +1431,20 @@ public class SearchBuilder {
 		 * Ok, this is a normal query
 		 */
 
+		if (isUseHashColumns()) {
+			// A blank system (i.e. "") only matches tokens with no system, which hash the same way
+			if (system == null) {
+				if (StringUtils.isNotBlank(code)) {
+					return theBuilder.equal(theFrom.get("myHashValue"), ResourceIndexedSearchParamToken.calculateHashValue(myResourceName, theParamName, code));
+				}
+				return theBuilder.and();
+			} else if (StringUtils.isNotBlank(code)) {
+				return theBuilder.equal(theFrom.get("myHashSystemAndValue"), ResourceIndexedSearchParamToken.calculateHashSystemAndValue(myResourceName, theParamName, system, code));
+			} else {
+				return theBuilder.equal(theFrom.get("myHashSystem"), ResourceIndexedSearchParamToken.calculateHashSystem(myResourceName, theParamName, system));
+			}
+		}
+
 		ArrayList<Predicate> singleCodePredicates = (new ArrayList<Predicate>());
 		if (StringUtils.isNotBlank(system)) {
 			singleCodePredicates.add(theBuilder.equal(theFrom.get("mySystem"), system));
@@ -1419,7 +1510,7 @@ public class SearchBuilder {
 		return type;
 	}
 
-	private TypedQuery<Long> createSearchAllByTypeQuery(DateRangeParam theLastUpdated) {
+	private CriteriaQuery<Long> createSearchAllByTypeQuery(DateRangeParam theLastUpdated) {
 		CriteriaBuilder builder = myEntityManager.getCriteriaBuilder();
 		CriteriaQuery<Long> cq = builder.createQuery(Long.class);
 		Root<ResourceTable> from = cq.from(ResourceTable.class);
@@ -1433,9 +1524,7 @@ public class SearchBuilder {
 		}
 
 		cq.where(toArray(predicates));
-
-		TypedQuery<Long> query = myEntityManager.createQuery(cq);
-		return query;
+		return cq;
 	}
 
 	private void createSort(CriteriaBuilder theBuilder, Root<ResourceTable> theFrom, SortSpec theSort, List<Order> theOrders, List<Predicate> thePredicates) {
@@ -1539,22 +1628,27 @@ public class SearchBuilder {
 	}
 
 	public Set<Long> doGetPids() {
-		if (myParams.isPersistResults()) {
-			HashSet<Long> retVal = new HashSet<Long>();
+		resolvePendingPidQuery();
+		if (isPersistIntermediateResults()) {
+			LongList retVal = new LongList();
 
 			for (SearchResult next : mySearchResultDao.findWithSearchUuid(mySearchEntity)) {
 				retVal.add(next.getResourcePid());
 			}
-			return retVal;
+			return SortedLongSet.of(retVal);
 
+		} else if (myPids == null) {
+			return SortedLongSet.empty();
 		} else {
-			return new HashSet<Long>(myPids);
+			return SortedLongSet.of(myPids);
 		}
 	}
 
 	private boolean doHaveNoResults() {
-		if (myParams.isPersistResults()) {
+		if (isPersistIntermediateResults()) {
 			return mySearchEntity.getTotalCount() == 0;
+		} else if (myPendingPidQuery != null) {
+			return false;
 		} else {
 			return myPids != null && myPids.isEmpty();
 		}
@@ -1567,7 +1661,10 @@ public class SearchBuilder {
 	}
 
 	private IBundleProvider doReturnProvider() {
-		if (myParams.isPersistResults()) {
+		if (myStreamResults) {
+			return doReturnStreamingProvider();
+		}
+		if (isPersistIntermediateResults()) {
 			return new PersistedJpaBundleProvider(mySearchEntity.getUuid(), myCallingDao);
 		} else {
 			if (myPids == null) {
@@ -1578,8 +1675,114 @@ public class SearchBuilder {
 		}
 	}
 
+	/**
+	 * Persists the first batch of results in the current transaction and hands
+	 * the remainder to a background task
+	 */
+	private IBundleProvider doReturnStreamingProvider() {
+		LongList pids;
+		if (myPids == null) {
+			pids = new LongList(0);
+		} else {
+			pids = new LongList(myPids);
+			pids.removeDuplicates();
+		}
+
+		int firstBatchSize = Math.min(pids.size(), myCallingDao.getConfig().getStreamSearchResultsBatchSize());
+		persistSearchEntityForStreaming(pids.size(), firstBatchSize);
+
+		List<SearchResult> results = new ArrayList<SearchResult>(firstBatchSize);
+		for (int i = 0; i < firstBatchSize; i++) {
+			SearchResult nextResult = new SearchResult(mySearchEntity);
+			nextResult.setResourcePid(pids.getLong(i));
+			nextResult.setOrder(i);
+			results.add(nextResult);
+		}
+		mySearchResultDao.save(results);
+		myEntityManager.flush();
+
+		if (firstBatchSize < pids.size()) {
+			List<Long> remaining = pids.copyOfRange(firstBatchSize, pids.size());
+			myCallingDao.getSearchResultStreamingSvc().streamResultsAfterCommit(mySearchEntity.getId(), firstBatchSize, new SearchResultStreamingSvc.ListPidSource(remaining));
+		}
+
+		return new PersistedJpaBundleProvider(mySearchEntity.getUuid(), myCallingDao);
+	}
+
+	/**
+	 * Streams the results of the given query to the search results on a background thread,
+	 * without loading the PIDs in the current thread. The query is read in batches ordered
+	 * by PID, each batch starting after the last PID of the previous one, so that no cursor
+	 * needs to be held open between batches. Every batch is bounded by the highest PID which
+	 * matched when the search started, so resources created while the results are being
+	 * streamed are not added to the results (and the results match the total count).
+	 */
+	@SuppressWarnings("unchecked")
+	private IBundleProvider doReturnStreamingProviderForQuery(final CriteriaQuery<Long> theQuery) {
+		final CriteriaBuilder builder = myEntityManager.getCriteriaBuilder();
+		final Expression<Long> pid = (Expression<Long>) theQuery.getSelection();
+		Predicate restriction = theQuery.getRestriction();
+
+		theQuery.select(builder.max(pid));
+		Long maxPid = myEntityManager.createQuery(theQuery).getSingleResult();
+
+		int count = 0;
+		if (maxPid != null) {
+			if (restriction != null) {
+				restriction = builder.and(restriction, builder.lessThanOrEqualTo(pid, maxPid));
+			} else {
+				restriction = builder.lessThanOrEqualTo(pid, maxPid);
+			}
+			theQuery.where(restriction);
+			theQuery.select(builder.countDistinct(pid));
+			count = myEntityManager.createQuery(theQuery).getSingleResult().intValue();
+		}
+		persistSearchEntityForStreaming(count, 0);
+		myEntityManager.flush();
+
+		if (count > 0) {
+			final ParameterExpression<Long> lastPid = builder.parameter(Long.class);
+			theQuery.select(pid).distinct(true);
+			theQuery.where(restriction, builder.greaterThan(pid, lastPid));
+			theQuery.orderBy(builder.asc(pid));
+
+			myCallingDao.getSearchResultStreamingSvc().streamResultsAfterCommit(mySearchEntity.getId(), 0, new SearchResultStreamingSvc.BasePidSource() {
+				private Long myLastPid = Long.valueOf(-1L);
+
+				@Override
+				public List<Long> nextBatch(int theMaxSize) {
+					TypedQuery<Long> query = myEntityManager.createQuery(theQuery);
+					query.setParameter(lastPid, myLastPid);
+					query.setMaxResults(theMaxSize);
+					List<Long> retVal = query.getResultList();
+					if (retVal.size() > 0) {
+						myLastPid = retVal.get(retVal.size() - 1);
+					}
+					return retVal;
+				}
+			});
+		}
+
+		return new PersistedJpaBundleProvider(mySearchEntity.getUuid(), myCallingDao);
+	}
+
+	/**
+	 * When streaming, the query for a search parameter is not run straight away, since if it turns
+	 * out to be the last parameter its results can be streamed instead of being loaded into memory.
+	 * 
+	 * @return <code>true</code> if the query was deferred, in which case the caller should not run it
+	 */
+	private boolean deferPidQuery(CriteriaQuery<Long> theQuery) {
+		if (!myDeferPidQueries) {
+			return false;
+		}
+		resolvePendingPidQuery();
+		myPendingPidQuery = theQuery;
+		return true;
+	}
+
 	private void doSetPids(Collection<Long> thePids) {
-		if (myParams.isPersistResults()) {
+		if (isPersistIntermediateResults()) {
 			if (mySearchEntity.getTotalCount() != null) {
 				reinitializeSearch();
 			}
@@ -1601,10 +1804,22 @@ public class SearchBuilder {
 			myEntityManager.flush();
 
 		} else {
+			myPendingPidQuery = null;
 			myPids = thePids;
 		}
 	}
 
+	/**
+	 * Runs the query deferred by {@link #deferPidQuery(CriteriaQuery)}, if any
+	 */
+	private void resolvePendingPidQuery() {
+		if (myPendingPidQuery != null) {
+			CriteriaQuery<Long> pendingQuery = myPendingPidQuery;
+			myPendingPidQuery = null;
+			doSetPids(SortedLongSet.of(myEntityManager.createQuery(pendingQuery).getResultList()));
+		}
+	}
+
 	private void filterResourceIdsByLastUpdated(final DateRangeParam theLastUpdated) {
 		CriteriaBuilder builder = myEntityManager.getCriteriaBuilder();
 		CriteriaQuery<Long> cq = builder.createQuery(Long.class);
@@ -1648,7 +1863,7 @@ public class SearchBuilder {
 				// TODO: why do we need the existing list for this join to work?
 				Collection<Long> originalPids = doGetPids();
 
-				LinkedHashSet<Long> loadPids = new LinkedHashSet<Long>();
+				LongList pids = new LongList();
 				cq.multiselect(from.get("myId").as(Long.class));
 				cq.where(toArray(predicates));
 				cq.orderBy(orders);
@@ -1656,16 +1871,16 @@ public class SearchBuilder {
 				TypedQuery<Tuple> query = myEntityManager.createQuery(cq);
 
 				for (Tuple next : query.getResultList()) {
-					loadPids.add(next.get(0, Long.class));
+					pids.add(next.get(0, Long.class));
 				}
+				pids.removeDuplicates();
 
-				ourLog.debug("Sort PID order is now: {}", loadPids);
-
-				ArrayList<Long> pids = new ArrayList<Long>(loadPids);
+				ourLog.debug("Sort PID order is now: {}", pids);
 
 				// Any ressources which weren't matched by the sort get added to the bottom
+				SortedLongSet loadPids = SortedLongSet.of(pids);
 				for (Long next : originalPids) {
-					if (loadPids.contains(next) == false) {
+					if (loadPids.containsLong(next) == false) {
 						pids.add(next);
 					}
 				}
@@ -1676,6 +1891,23 @@ public class SearchBuilder {
 
 	}
 
+	private boolean isPersistIntermediateResults() {
+		return myParams.isPersistResults() && !myStreamResults;
+	}
+
+	private void persistSearchEntityForStreaming(int theTotalCount, int theNumFound) {
+		mySearchEntity.setTotalCount(theTotalCount);
+		mySearchEntity.setNumFound(theNumFound);
+		mySearchEntity.setStatus(theNumFound < theTotalCount ? SearchStatusEnum.LOADING : SearchStatusEnum.FINISHED);
+		if (mySearchEntity.getStatus() == SearchStatusEnum.LOADING) {
+			mySearchEntity.setLastProgress(new Date());
+		}
+		myEntityManager.persist(mySearchEntity);
+		for (SearchInclude next : mySearchEntity.getIncludes()) {
+			myEntityManager.persist(next);
+		}
+	}
+
 	private void reinitializeSearch() {
 		mySearchEntity = new Search();
 		mySearchEntity.setUuid(UUID.randomUUID().toString());
@@ -1692,7 +1924,7 @@ public class SearchBuilder {
 			mySearchEntity.getIncludes().add(new SearchInclude(mySearchEntity, next.getValue(), true, next.isRecurse()));
 		}
 
-		if (myParams.isPersistResults()) {
+		if (isPersistIntermediateResults()) {
 			myEntityManager.persist(mySearchEntity);
 			for (SearchInclude next : mySearchEntity.getIncludes()) {
 				myEntityManager.persist(next);
@@ -1702,6 +1934,7 @@ public class SearchBuilder {
 
 	public IBundleProvider search(final SearchParameterMap theParams) {
 		myParams = theParams;
+		myStreamResults = theParams.isPersistResults() && myCallingDao.getConfig().isStreamSearchResults();
 		StopWatch w = new StopWatch();
 
 		doInitializeSearch();
@@ -1714,7 +1947,7 @@ public class SearchBuilder {
 			Long pid = null;
 			if (theParams.get(BaseResource.SP_RES_ID) != null) {
 				StringParam idParm = (StringParam) theParams.get(BaseResource.SP_RES_ID).get(0).get(0);
-				pid = BaseHapiFhirDao.translateForcedIdToPid(myResourceName, idParm.getValue(), myForcedIdDao);
+				pid = myCallingDao.translateForcedIdToPid(myResourceName, idParm.getValue());
 			}
 
 			if (theParams.containsKey(Constants.PARAM_CONTENT) || theParams.containsKey(Constants.PARAM_TEXT)) {
@@ -1741,7 +1974,7 @@ public class SearchBuilder {
 				cq.multiselect(from.get("myId").as(Long.class), join.get("mySourceResourcePid").as(Long.class));
 
 				TypedQuery<Tuple> query = myEntityManager.createQuery(cq);
-				Set<Long> pids = new HashSet<Long>();
+				LongList pids = new LongList();
 				for (Tuple next : query.getResultList()) {
 					pids.add(next.get(0, Long.class));
 					Long nextLong = next.get(1, Long.class);
@@ -1749,13 +1982,17 @@ public class SearchBuilder {
 						pids.add(nextLong);
 					}
 				}
-				doSetPids(pids);
+				doSetPids(SortedLongSet.of(pids));
 
 			}
 
 		} else if (theParams.isEmpty()) {
 
-			TypedQuery<Long> query = createSearchAllByTypeQuery(lu);
+			if (myStreamResults && (theParams.getSort() == null || isBlank(theParams.getSort().getParamName()))) {
+				return doReturnStreamingProviderForQuery(createSearchAllByTypeQuery(lu));
+			}
+
+			TypedQuery<Long> query = myEntityManager.createQuery(createSearchAllByTypeQuery(lu));
 			doSetPids(query.getResultList());
 
 		} else {
@@ -1777,7 +2014,19 @@ public class SearchBuilder {
 			}
 
 			if (!theParams.isEmpty()) {
+				myDeferPidQueries = myStreamResults && lu == null && (theParams.getSort() == null || isBlank(theParams.getSort().getParamName()));
 				searchForIdsWithAndOr(theParams, lu);
+				myDeferPidQueries = false;
+			}
+
+			/*
+			 * If the last parameter's query has not been run yet, stream its results
+			 * instead of loading them all here
+			 */
+			if (myPendingPidQuery != null) {
+				CriteriaQuery<Long> pendingQuery = myPendingPidQuery;
+				myPendingPidQuery = null;
+				return doReturnStreamingProviderForQuery(pendingQuery);
 			}
 
 		}
@@ -1834,10 +2083,16 @@ public class SearchBuilder {
 						if (nextValue == null || nextValue.size() == 0) {
 							continue;
 						} else {
+							List<IdDt> valueIds = new ArrayList<IdDt>(nextValue.size());
+							List<IdDt> typedValueIds = new ArrayList<IdDt>(nextValue.size());
 							for (IQueryParameterType next : nextValue) {
-								String value = next.getValueAsQueryToken(myContext);
-								IIdType valueId = new IdDt(value);
+								IdDt valueId = new IdDt(next.getValueAsQueryToken(myContext));
+								valueIds.add(valueId);
+								typedValueIds.add(valueId.hasResourceType() ? valueId : valueId.withResourceType(myResourceName));
+							}
+							myCallingDao.preloadForcedIds(typedValueIds);
 
+							for (IdDt valueId : valueIds) {
 								try {
 									BaseHasResource entity = myCallingDao.readEntity(valueId);
 									if (entity.getDeleted() != null) {
@@ -1849,7 +2104,7 @@ public class SearchBuilder {
 								}
 							}
 							if (joinPids.isEmpty()) {
-								doSetPids(new HashSet<Long>());
+								doSetPids(SortedLongSet.empty());
 								return;
 							}
 						}
@@ -2065,26 +2320,34 @@ public class SearchBuilder {
 			return;
 		}
 
-		Map<Long, Integer> position = new HashMap<Long, Integer>();
+		/*
+		 * Position of each PID in the output list, indexed by the PID's position in
+		 * the sorted set of PIDs so that no boxed map is needed
+		 */
+		SortedLongSet pids = SortedLongSet.of(theIncludePids);
+		int[] position = new int[pids.size()];
 		for (Long next : theIncludePids) {
-			position.put(next, theResourceListToPopulate.size());
+			position[pids.indexOf(next)] = theResourceListToPopulate.size();
 			theResourceListToPopulate.add(null);
 		}
 
 		CriteriaBuilder builder = entityManager.getCriteriaBuilder();
 		CriteriaQuery<ResourceTable> cq = builder.createQuery(ResourceTable.class);
 		Root<ResourceTable> from = cq.from(ResourceTable.class);
-		cq.where(from.get("myId").in(theIncludePids));
+		cq.where(from.get("myId").in(pids));
 		TypedQuery<ResourceTable> q = entityManager.createQuery(cq);
+		List<ResourceTable> resultList = q.getResultList();
+		loadResourceBodiesFromHistory(resultList, entityManager);
 
-		for (ResourceTable next : q.getResultList()) {
+		for (ResourceTable next : resultList) {
 			Class<? extends IBaseResource> resourceType = context.getResourceDefinition(next.getResourceType()).getImplementingClass();
 			IBaseResource resource = (IBaseResource) theDao.toResource(resourceType, next, theForHistoryOperation);
-			Integer index = position.get(next.getId());
-			if (index == null) {
+			int pidIndex = pids.indexOf(next.getId());
+			if (pidIndex == -1) {
 				ourLog.warn("Got back unexpected resource PID {}", next.getId());
 				continue;
 			}
+			int index = position[pidIndex];
 
 			if (resource instanceof IResource) {
 				if (theRevIncludedPids.contains(next.getId())) {
@@ -2105,22 +2368,46 @@ public class SearchBuilder {
 	}
 
 	/**
-	 * THIS SHOULD RETURN HASHSET and not jsut Set because we add to it later (so it can't be Collections.emptySet())
+	 * Loads the bodies of any of the given resources which are only stored in the version table
+	 * (see {@link DaoConfig#setStoreResourceBodyInHistoryOnly(boolean)}) using a single query, instead of
+	 * letting each one be loaded separately when it is parsed
+	 */
+	private static void loadResourceBodiesFromHistory(List<ResourceTable> theResources, EntityManager theEntityManager) {
+		Map<Long, ResourceTable> needBodies = new HashMap<Long, ResourceTable>();
+		for (ResourceTable next : theResources) {
+			if (next.getResource() == null && next.getResourceFromHistory() == null) {
+				needBodies.put(next.getId(), next);
+			}
+		}
+		if (needBodies.isEmpty()) {
+			return;
+		}
+
+		TypedQuery<Object[]> q = theEntityManager.createQuery("SELECT h.myResourceId, h.myResource, h.myEncoding FROM ResourceHistoryTable h, ResourceTable r WHERE r.myId IN (:pids) AND h.myResourceId = r.myId AND h.myResourceVersion = r.myVersion", Object[].class);
+		q.setParameter("pids", needBodies.keySet());
+		for (Object[] next : q.getResultList()) {
+			needBodies.get(next[0]).setResourceFromHistory((byte[]) next[1], (ResourceEncodingEnum) next[2]);
+		}
+	}
+
+	/**
+	 * Loads the PIDs of any resources included (or reverse included) by the given matches. Any
+	 * newly found PIDs are also appended to <code>theMatches</code>, which must be modifiable.
 	 * 
 	 * @param theLastUpdated
 	 */
-	public static HashSet<Long> loadReverseIncludes(FhirContext theContext, EntityManager theEntityManager, Collection<Long> theMatches, Set<Include> theRevIncludes, boolean theReverseMode, DateRangeParam theLastUpdated) {
+	public static SortedLongSet loadReverseIncludes(FhirContext theContext, EntityManager theEntityManager, Collection<Long> theMatches, Set<Include> theRevIncludes, boolean theReverseMode, DateRangeParam theLastUpdated) {
 		if (theMatches.size() == 0) {
-			return new HashSet<Long>();
+			return SortedLongSet.empty();
 		}
 		if (theRevIncludes == null || theRevIncludes.isEmpty()) {
-			return new HashSet<Long>();
+			return SortedLongSet.empty();
 		}
 		String searchFieldName = theReverseMode ? "myTargetResourcePid" : "mySourceResourcePid";
 
 		Collection<Long> nextRoundMatches = theMatches;
-		HashSet<Long> allAdded = new HashSet<Long>();
-		HashSet<Long> original = new HashSet<Long>(theMatches);
+		SortedLongSet allAdded = SortedLongSet.empty();
+		SortedLongSet original = SortedLongSet.of(theMatches);
 		ArrayList<Include> includes = new ArrayList<Include>(theRevIncludes);
 
 		int roundCounts = 0;
@@ -2130,8 +2417,7 @@ public class SearchBuilder {
 		do {
 			roundCounts++;
 
-			HashSet<Long> pidsToInclude = new HashSet<Long>();
-			Set<Long> nextRoundOmit = new HashSet<Long>();
+			LongList pidsToInclude = new LongList();
 
 			for (Iterator<Include> iter = includes.iterator(); iter.hasNext();) {
 				Include nextInclude = iter.next();
@@ -2155,7 +2441,7 @@ public class SearchBuilder {
 							// }
 							// }
 							pidsToInclude.add(resourceLink.getSourceResourcePid());
-						} else {
+						} else if (resourceLink.getTargetResourcePid() != null) {
 							pidsToInclude.add(resourceLink.getTargetResourcePid());
 						}
 					}
@@ -2223,19 +2509,18 @@ public class SearchBuilder {
 				}
 			}
 
+			SortedLongSet foundThisRound = SortedLongSet.of(pidsToInclude);
 			if (theLastUpdated != null && (theLastUpdated.getLowerBoundAsInstant() != null || theLastUpdated.getUpperBoundAsInstant() != null)) {
-				pidsToInclude = new HashSet<Long>(filterResourceIdsByLastUpdated(theEntityManager, theLastUpdated, pidsToInclude));
-			}
-			for (Long next : pidsToInclude) {
-				if (original.contains(next) == false && allAdded.contains(next) == false) {
-					theMatches.add(next);
+				if (foundThisRound.isEmpty() == false) {
+					foundThisRound = SortedLongSet.of(filterResourceIdsByLastUpdated(theEntityManager, theLastUpdated, foundThisRound));
 				}
 			}
+			theMatches.addAll(foundThisRound.difference(original).difference(allAdded));
 
-			pidsToInclude.removeAll(nextRoundOmit);
-
-			addedSomeThisRound = allAdded.addAll(pidsToInclude);
-			nextRoundMatches = pidsToInclude;
+			SortedLongSet newAllAdded = allAdded.union(foundThisRound);
+			addedSomeThisRound = newAllAdded.size() > allAdded.size();
+			allAdded = newAllAdded;
+			nextRoundMatches = foundThisRound;
 		} while (includes.size() > 0 && nextRoundMatches.size() > 0 && addedSomeThisRound);
 
 		ourLog.info("Loaded {} {} in {} rounds and {} ms", new Object[] { allAdded.size(), theReverseMode ? "_revincludes" : "_includes", roundCounts, w.getMillisAndRestart() });
@@ -2248,16 +2533,14 @@ public class SearchBuilder {
 	}
 
 	private final class BundleProviderInMemory implements IBundleProvider {
-		private final ArrayList<Long> myPids;
+		private final LongList myPids;
 
 		private BundleProviderInMemory(Collection<Long> thePids) {
-			final ArrayList<Long> pids;
-			if (!(thePids instanceof List)) {
-				pids = new ArrayList<Long>(thePids);
+			if (thePids instanceof LongList) {
+				myPids = (LongList) thePids;
 			} else {
-				pids = (ArrayList<Long>) thePids;
+				myPids = new LongList(thePids);
 			}
-			myPids = pids;
 		}
 
 		@Override
@@ -2271,16 +2554,14 @@ public class SearchBuilder {
 			return template.execute(new TransactionCallback<List<IBaseResource>>() {
 				@Override
 				public List<IBaseResource> doInTransaction(TransactionStatus theStatus) {
-					List<Long> pidsSubList = myPids.subList(theFromIndex, theToIndex);
-
 					// Load includes
-					pidsSubList = new ArrayList<Long>(pidsSubList);
+					LongList pidsSubList = myPids.copyOfRange(theFromIndex, theToIndex);
 
-					Set<Long> revIncludedPids = new HashSet<Long>();
+					SortedLongSet revIncludedPids = SortedLongSet.empty();
 					if (myParams.getEverythingMode() == null) {
-						revIncludedPids.addAll(loadReverseIncludes(myContext, myEntityManager, pidsSubList, myParams.getRevIncludes(), true, myParams.getLastUpdated()));
+						revIncludedPids = loadReverseIncludes(myContext, myEntityManager, pidsSubList, myParams.getRevIncludes(), true, myParams.getLastUpdated());
 					}
-					revIncludedPids.addAll(loadReverseIncludes(myContext, myEntityManager, pidsSubList, myParams.getIncludes(), false, myParams.getLastUpdated()));
+					revIncludedPids = revIncludedPids.union(loadReverseIncludes(myContext, myEntityManager, pidsSubList, myParams.getIncludes(), false, myParams.getLastUpdated()));
 
 					// Execute the query and make sure we return distinct results
 					List<IBaseResource> resources = new ArrayList<IBaseResource>();
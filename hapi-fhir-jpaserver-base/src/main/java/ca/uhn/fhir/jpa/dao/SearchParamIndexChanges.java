@@ -0,0 +1,73 @@
+package ca.uhn.fhir.jpa.dao;
+
+
+/*
+ * #%L
+ * HAPI FHIR JPA Server
+ * %%
+ * Copyright (C) 2014 - 2017 University Health Network
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import org.apache.commons.lang3.builder.ToStringBuilder;
+import org.apache.commons.lang3.builder.ToStringStyle;
+
+/**
+ * Counts of the search parameter index rows and resource links which were kept,
+ * added and removed while a single resource version was being stored
+ */
+public class SearchParamIndexChanges {
+
+	private int myAdded;
+	private int myKept;
+	private int myRemoved;
+
+	void add(int theKept, int theAdded, int theRemoved) {
+		myKept += theKept;
+		myAdded += theAdded;
+		myRemoved += theRemoved;
+	}
+
+	/**
+	 * Returns the number of rows which were inserted
+	 */
+	public int getAdded() {
+		return myAdded;
+	}
+
+	/**
+	 * Returns the number of existing rows which were unchanged, and were therefore left alone
+	 */
+	public int getKept() {
+		return myKept;
+	}
+
+	/**
+	 * Returns the number of existing rows which were deleted
+	 */
+	public int getRemoved() {
+		return myRemoved;
+	}
+
+	@Override
+	public String toString() {
+		ToStringBuilder b = new ToStringBuilder(this, ToStringStyle.SHORT_PREFIX_STYLE);
+		b.append("kept", myKept);
+		b.append("added", myAdded);
+		b.append("removed", myRemoved);
+		return b.toString();
+	}
+
+}
@@ -44,6 +44,7 @@ public class SearchParameterMap extends LinkedHashMap<String, List<List<? extend
 
 	private Integer myCount;
 	private EverythingModeEnum myEverythingMode = null;
+	private Long myFulltextIndexingMaxWaitMillis;
 	private Set<Include> myIncludes;
 	private DateRangeParam myLastUpdated;
 	private boolean myPersistResults = true;
@@ -108,6 +109,13 @@ public class SearchParameterMap extends LinkedHashMap<String, List<List<? extend
 		return myEverythingMode;
 	}
 
+	/**
+	 * See {@link #setFulltextIndexingMaxWaitMillis(Long)}
+	 */
+	public Long getFulltextIndexingMaxWaitMillis() {
+		return myFulltextIndexingMaxWaitMillis;
+	}
+
 	public Set<Include> getIncludes() {
 		if (myIncludes == null) {
 			myIncludes = new HashSet<Include>();
@@ -164,6 +172,15 @@ public class SearchParameterMap extends LinkedHashMap<String, List<List<? extend
 		myEverythingMode = theConsolidateMatches;
 	}
 
+	/**
+	 * Sets the maximum number of milliseconds that this search will wait for resources which
+	 * have already been stored to be written to the fulltext index, if it uses the fulltext index.
+	 * If not set, {@link DaoConfig#setFulltextIndexingMaxWaitMillis(long) the server default} is used.
+	 */
+	public void setFulltextIndexingMaxWaitMillis(Long theFulltextIndexingMaxWaitMillis) {
+		myFulltextIndexingMaxWaitMillis = theFulltextIndexingMaxWaitMillis;
+	}
+
 	public void setIncludes(Set<Include> theIncludes) {
 		myIncludes = theIncludes;
 	}
@@ -0,0 +1,246 @@
+package ca.uhn.fhir.jpa.dao;
+
+
+/*
+ * #%L
+ * HAPI FHIR JPA Server
+ * %%
+ * Copyright (C) 2014 - 2017 University Health Network
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import static org.apache.commons.lang3.StringUtils.isNotBlank;
+
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import javax.annotation.PostConstruct;
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
+import javax.persistence.PersistenceContextType;
+import javax.persistence.PersistenceException;
+import javax.persistence.TypedQuery;
+import javax.persistence.criteria.CriteriaBuilder;
+import javax.persistence.criteria.CriteriaQuery;
+import javax.persistence.criteria.Root;
+
+import org.apache.commons.lang3.builder.EqualsBuilder;
+import org.apache.commons.lang3.builder.HashCodeBuilder;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.dao.DataAccessException;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.support.TransactionCallback;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import ca.uhn.fhir.jpa.entity.TagDefinition;
+import ca.uhn.fhir.jpa.entity.TagTypeEnum;
+
+/**
+ * Process-wide cache of {@link TagDefinition tag definitions} (tags, security labels
+ * and profiles), keyed on tag type, system and code, so that writing a resource with
+ * tags doesn't need a database round trip for every tag.
+ * <p>
+ * Tag definitions are never modified once they have been created, so cached entries
+ * never go stale. New definitions are created in their own transaction, so a definition
+ * is only cached once it has been committed, and if two writers try to create the same
+ * definition at the same time the one which loses simply reuses the winner's row. The
+ * cache is pre-warmed with existing definitions at startup.
+ * </p>
+ * <p>
+ * The cached instances are detached from any persistence context, and must only be
+ * used as the target of associations (i.e. they must not be modified).
+ * </p>
+ */
+public class TagDefinitionCacheSvc {
+
+	/**
+	 * The maximum number of definitions which will be cached. Servers with more distinct
+	 * tags than this will still work, but will look up the uncached tags each time
+	 */
+	static final int MAX_CACHED_TAGS = 10000;
+
+	private static final org.slf4j.Logger ourLog = org.slf4j.LoggerFactory.getLogger(TagDefinitionCacheSvc.class);
+
+	@PersistenceContext(type = PersistenceContextType.TRANSACTION)
+	private EntityManager myEntityManager;
+
+	private final ConcurrentMap<TagKey, TagDefinition> myTags = new ConcurrentHashMap<TagKey, TagDefinition>();
+
+	@Autowired
+	private PlatformTransactionManager myTxManager;
+
+	private void cache(TagDefinition theTag) {
+		if (myTags.size() < MAX_CACHED_TAGS) {
+			myTags.putIfAbsent(new TagKey(theTag.getTagType(), theTag.getSystem(), theTag.getCode()), theTag);
+		}
+	}
+
+	/**
+	 * Removes all cached definitions. This only needs to be called if tag definitions have
+	 * been deleted from the database directly.
+	 */
+	public void clearCache() {
+		myTags.clear();
+	}
+
+	private TagDefinition find(TagTypeEnum theTagType, String theScheme, String theTerm) {
+		CriteriaBuilder builder = myEntityManager.getCriteriaBuilder();
+		CriteriaQuery<TagDefinition> cq = builder.createQuery(TagDefinition.class);
+		Root<TagDefinition> from = cq.from(TagDefinition.class);
+
+		//@formatter:off
+		if (isNotBlank(theScheme)) {
+			cq.where(
+				builder.and(
+					builder.equal(from.get("myTagType"), theTagType), 
+					builder.equal(from.get("mySystem"), theScheme), 
+					builder.equal(from.get("myCode"), theTerm))
+				);
+		} else {
+			cq.where(
+				builder.and(
+					builder.equal(from.get("myTagType"), theTagType), 
+					builder.isNull(from.get("mySystem")), 
+					builder.equal(from.get("myCode"), theTerm))
+				);
+		}
+		//@formatter:on
+
+		TypedQuery<TagDefinition> q = myEntityManager.createQuery(cq);
+		List<TagDefinition> results = q.getResultList();
+		return results.isEmpty() ? null : results.get(0);
+	}
+
+	private TagDefinition findInNewTransaction(final TagTypeEnum theTagType, final String theScheme, final String theTerm) {
+		return newTransactionTemplate().execute(new TransactionCallback<TagDefinition>() {
+			@Override
+			public TagDefinition doInTransaction(TransactionStatus theStatus) {
+				return find(theTagType, theScheme, theTerm);
+			}
+		});
+	}
+
+	private TagDefinition findOrCreateInNewTransaction(final TagTypeEnum theTagType, final String theScheme, final String theTerm, final String theLabel) {
+		try {
+			return newTransactionTemplate().execute(new TransactionCallback<TagDefinition>() {
+				@Override
+				public TagDefinition doInTransaction(TransactionStatus theStatus) {
+					TagDefinition retVal = find(theTagType, theScheme, theTerm);
+					if (retVal == null) {
+						retVal = new TagDefinition(theTagType, theScheme, theTerm, theLabel);
+						myEntityManager.persist(retVal);
+					}
+					return retVal;
+				}
+			});
+		} catch (DataAccessException e) {
+			return handleConcurrentCreate(theTagType, theScheme, theTerm, e);
+		} catch (PersistenceException e) {
+			return handleConcurrentCreate(theTagType, theScheme, theTerm, e);
+		}
+	}
+
+	/**
+	 * Returns the definition for the given tag, creating it if it doesn't already exist
+	 */
+	public TagDefinition getTag(TagTypeEnum theTagType, String theScheme, String theTerm, String theLabel) {
+		String scheme = isNotBlank(theScheme) ? theScheme : null;
+		TagDefinition retVal = myTags.get(new TagKey(theTagType, scheme, theTerm));
+		if (retVal == null) {
+			retVal = findOrCreateInNewTransaction(theTagType, scheme, theTerm, theLabel);
+			cache(retVal);
+		}
+		return retVal;
+	}
+
+	/**
+	 * Another thread (or server) created the same definition at the same time, so
+	 * use that one
+	 */
+	private TagDefinition handleConcurrentCreate(TagTypeEnum theTagType, String theScheme, String theTerm, RuntimeException theException) {
+		TagDefinition retVal = findInNewTransaction(theTagType, theScheme, theTerm);
+		if (retVal == null) {
+			throw theException;
+		}
+		ourLog.debug("Tag definition {}|{} was created concurrently, using existing definition {}", new Object[] { theScheme, theTerm, retVal.getId() });
+		return retVal;
+	}
+
+	private TransactionTemplate newTransactionTemplate() {
+		TransactionTemplate retVal = new TransactionTemplate(myTxManager);
+		retVal.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+		return retVal;
+	}
+
+	/**
+	 * Loads existing tag definitions into the cache
+	 */
+	@PostConstruct
+	public void start() {
+		TransactionTemplate tt = new TransactionTemplate(myTxManager);
+		tt.setReadOnly(true);
+		int count = tt.execute(new TransactionCallback<Integer>() {
+			@Override
+			public Integer doInTransaction(TransactionStatus theStatus) {
+				TypedQuery<TagDefinition> q = myEntityManager.createQuery("SELECT t FROM TagDefinition t ORDER BY t.myId", TagDefinition.class);
+				q.setMaxResults(MAX_CACHED_TAGS);
+				List<TagDefinition> results = q.getResultList();
+				for (TagDefinition next : results) {
+					cache(next);
+				}
+				return results.size();
+			}
+		});
+		ourLog.info("Pre-loaded {} tag definitions", count);
+	}
+
+	private static class TagKey {
+		private final String myCode;
+		private final String mySystem;
+		private final TagTypeEnum myTagType;
+
+		TagKey(TagTypeEnum theTagType, String theSystem, String theCode) {
+			myTagType = theTagType;
+			mySystem = isNotBlank(theSystem) ? theSystem : null;
+			myCode = theCode;
+		}
+
+		@Override
+		public boolean equals(Object theObj) {
+			if (!(theObj instanceof TagKey)) {
+				return false;
+			}
+			TagKey obj = (TagKey) theObj;
+			EqualsBuilder b = new EqualsBuilder();
+			b.append(myTagType, obj.myTagType);
+			b.append(mySystem, obj.mySystem);
+			b.append(myCode, obj.myCode);
+			return b.isEquals();
+		}
+
+		@Override
+		public int hashCode() {
+			HashCodeBuilder b = new HashCodeBuilder();
+			b.append(myTagType);
+			b.append(mySystem);
+			b.append(myCode);
+			return b.toHashCode();
+		}
+	}
+
+}
@@ -0,0 +1,47 @@
+package ca.uhn.fhir.jpa.dao.data;
+
+
+/*
+ * #%L
+ * HAPI FHIR JPA Server
+ * %%
+ * Copyright (C) 2014 - 2017 University Health Network
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import java.util.List;
+
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+
+import ca.uhn.fhir.jpa.entity.ReindexJobStatusEnum;
+import ca.uhn.fhir.jpa.entity.ResourceReindexJobEntity;
+
+public interface IResourceReindexJobDao extends JpaRepository<ResourceReindexJobEntity, Long> {
+
+	@Query("SELECT j FROM ResourceReindexJobEntity j WHERE j.myStatus = :status ORDER BY j.myId DESC")
+	public List<ResourceReindexJobEntity> findByStatus(@Param("status") ReindexJobStatusEnum theStatus, Pageable thePage);
+
+	@Query("SELECT j FROM ResourceReindexJobEntity j ORDER BY j.myId DESC")
+	public List<ResourceReindexJobEntity> findMostRecent(Pageable thePage);
+
+	@Modifying
+	@Query("UPDATE ResourceReindexJobEntity j SET j.myStatus = :newStatus WHERE j.myStatus = :oldStatus")
+	public int updateStatus(@Param("oldStatus") ReindexJobStatusEnum theOldStatus, @Param("newStatus") ReindexJobStatusEnum theNewStatus);
+
+}
@@ -20,10 +20,19 @@ package ca.uhn.fhir.jpa.dao.data;
  * #L%
  */
 
+import java.util.Collection;
+
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 
 import ca.uhn.fhir.jpa.entity.ResourceTable;
 
 public interface IResourceTableDao extends JpaRepository<ResourceTable, Long> {
-	// nothing yet
+
+	@Query("UPDATE ResourceTable t SET t.myIndexStatus = null WHERE t.myId IN (:pids)")
+	@Modifying
+	int markForReindexing(@Param("pids") Collection<Long> thePids);
+
 }
@@ -2,6 +2,10 @@ package ca.uhn.fhir.jpa.dao.data;
 
 import java.util.Collection;
 import java.util.Date;
+import java.util.List;
+
+import javax.persistence.LockModeType;
+import javax.persistence.QueryHint;
 
 /*
  * #%L
@@ -23,11 +27,16 @@ import java.util.Date;
  * #L%
  */
 
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
 import org.springframework.data.repository.query.Param;
 
 import ca.uhn.fhir.jpa.entity.Search;
+import ca.uhn.fhir.jpa.entity.SearchStatusEnum;
 
 public interface ISearchDao extends JpaRepository<Search, Long> {
 
@@ -37,4 +46,23 @@ public interface ISearchDao extends JpaRepository<Search, Long> {
 	@Query("SELECT s FROM Search s WHERE s.myCreated < :cutoff")
 	public Collection<Search> findWhereCreatedBefore(@Param("cutoff") Date theCutoff);
 
+	/**
+	 * Locks the returned rows, skipping any rows which are already locked (i.e. which a
+	 * process on another node is already deleting), so that several nodes can delete
+	 * different stale searches at the same time. The timeout value of -2 is Hibernate's
+	 * <code>LockOptions.SKIP_LOCKED</code>.
+	 */
+	@Lock(LockModeType.PESSIMISTIC_WRITE)
+	@QueryHints(@QueryHint(name = "javax.persistence.lock.timeout", value = "-2"))
+	@Query("SELECT s FROM Search s WHERE s.myCreated < :cutoff")
+	public List<Search> findWhereCreatedBeforeForUpdate(@Param("cutoff") Date theCutoff, Pageable thePage);
+
+	@Modifying
+	@Query("UPDATE Search s SET s.mySearchStatus = :newStatus WHERE s.mySearchStatus = :status AND (s.myLastProgress IS NULL OR s.myLastProgress < :cutoff)")
+	public int updateStatusWhereNoProgressSince(@Param("status") SearchStatusEnum theStatus, @Param("cutoff") Date theCutoff, @Param("newStatus") SearchStatusEnum theNewStatus);
+
+	@Modifying
+	@Query("DELETE FROM Search s WHERE s.myId IN (:pids)")
+	public int deleteByPids(@Param("pids") Collection<Long> thePids);
+
 }
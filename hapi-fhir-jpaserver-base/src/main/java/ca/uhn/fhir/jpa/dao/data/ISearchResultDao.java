@@ -44,4 +44,8 @@ public interface ISearchResultDao  extends JpaRepository<SearchResult, Long> {
 	@Modifying
 	@Query(value="DELETE FROM SearchResult r WHERE r.mySearchPid = :search")
 	void deleteForSearch(@Param("search") Long theSearchPid);
+
+	@Modifying
+	@Query(value="DELETE FROM SearchResult r WHERE r.mySearchPid IN (:searches)")
+	int deleteForSearches(@Param("searches") Collection<Long> theSearchPids);
 }
@@ -22,6 +22,7 @@ package ca.uhn.fhir.jpa.dao.data;
 
 import java.util.Collection;
 import java.util.Date;
+import java.util.List;
 
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.Modifying;
@@ -46,6 +47,15 @@ public interface ISubscriptionTableDao extends JpaRepository<SubscriptionTable,
 	@Query("SELECT t FROM SubscriptionTable t WHERE t.myLastClientPoll < :cutoff OR (t.myLastClientPoll IS NULL AND t.myCreated < :cutoff)")
 	public Collection<SubscriptionTable> findInactiveBeforeCutoff(@Param("cutoff") Date theCutoff);
 
-	@Query("SELECT t.myId FROM SubscriptionTable t WHERE t.myStatus = :status AND t.myNextCheck <= :next_check")
-	public Collection<Long> findSubscriptionsWhichNeedToBeChecked(@Param("status") String theStatus, @Param("next_check") Date theNextCheck);
+	@Query("SELECT t FROM SubscriptionTable t WHERE t.myStatus = :status")
+	public Collection<SubscriptionTable> findByStatus(@Param("status") String theStatus);
+
+	/**
+	 * Returns a single row holding the number of subscriptions, the highest subscription PID and
+	 * the sum of the subscription resource versions. Any change to a subscription changes at least
+	 * one of these, so they can be compared to tell whether the subscriptions have changed.
+	 */
+	@Query("SELECT COUNT(t), MAX(t.myId), SUM(r.myVersion) FROM SubscriptionTable t, ResourceTable r WHERE r.myId = t.myResId")
+	public List<Object[]> findSubscriptionsVersion();
+
 }
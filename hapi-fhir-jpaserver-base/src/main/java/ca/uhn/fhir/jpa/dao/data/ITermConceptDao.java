@@ -45,6 +45,12 @@ public interface ITermConceptDao extends JpaRepository<TermConcept, Long> {
 	@Modifying
 	void deleteByCodeSystemVersion(@Param("cs_pid") Long thePid);
 
+	@Query("SELECT c FROM TermConcept c, TermConceptClosure cl WHERE cl.myAncestorPid = :pid AND c.myId = cl.myDescendantPid")
+	List<TermConcept> findDescendants(@Param("pid") Long theConceptPid);
+
+	@Query("SELECT c FROM TermConcept c, TermConceptClosure cl WHERE cl.myDescendantPid = :pid AND c.myId = cl.myAncestorPid")
+	List<TermConcept> findAncestors(@Param("pid") Long theConceptPid);
+
 	@Query("UPDATE TermConcept t SET t.myIndexStatus = null")
 	@Modifying
 	int markAllForReindexing();
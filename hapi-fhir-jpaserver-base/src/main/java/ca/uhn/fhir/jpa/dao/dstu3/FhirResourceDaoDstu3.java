@@ -24,6 +24,7 @@ import static org.apache.commons.lang3.StringUtils.isNotBlank;
 
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.Date;
 import java.util.List;
 
 import org.hl7.fhir.dstu3.model.IdType;
@@ -44,6 +45,7 @@ import ca.uhn.fhir.jpa.dao.BaseHapiFhirResourceDao;
 import ca.uhn.fhir.jpa.dao.IFhirResourceDao;
 import ca.uhn.fhir.jpa.entity.ResourceTable;
 import ca.uhn.fhir.jpa.util.DeleteConflict;
+import ca.uhn.fhir.jpa.validation.JpaValidationSupportChainDstu3;
 import ca.uhn.fhir.model.api.Bundle;
 import ca.uhn.fhir.model.api.Include;
 import ca.uhn.fhir.model.base.composite.BaseResourceReferenceDt;
@@ -70,6 +72,10 @@ public class FhirResourceDaoDstu3<T extends IAnyResource> extends BaseHapiFhirRe
 	@Qualifier("myInstanceValidatorDstu3")
 	private IValidatorModule myInstanceValidator;
 
+	@Autowired
+	@Qualifier("myJpaValidationSupportChainDstu3")
+	private JpaValidationSupportChainDstu3 myValidationSupportChain;
+
 	@Override
 	protected IBaseOperationOutcome createOperationOutcome(String theSeverity, String theMessage, String theCode) {
 		OperationOutcome oo = new OperationOutcome();
@@ -102,6 +108,19 @@ public class FhirResourceDaoDstu3<T extends IAnyResource> extends BaseHapiFhirRe
 		return values;
 	}
 
+	@Override
+	protected ResourceTable updateEntity(IBaseResource theResource, ResourceTable theEntity, Date theDeletedTimestampOrNull, boolean thePerformIndexing,
+			boolean theUpdateVersion, Date theUpdateTime) {
+		ResourceTable retVal = super.updateEntity(theResource, theEntity, theDeletedTimestampOrNull, thePerformIndexing, theUpdateVersion, theUpdateTime);
+
+		// The instance validator caches the structure definitions it has fetched
+		if (theUpdateVersion && "StructureDefinition".equals(getResourceName())) {
+			myValidationSupportChain.invalidateCachesAfterCommit();
+		}
+
+		return retVal;
+	}
+
 	@Override
 	public MethodOutcome validate(T theResource, IIdType theId, String theRawResource, EncodingEnum theEncoding, ValidationModeEnum theMode, String theProfile, RequestDetails theRequestDetails) {
 		ActionRequestDetails requestDetails = new ActionRequestDetails(theRequestDetails, theResource, null, theId);
@@ -21,25 +21,24 @@ package ca.uhn.fhir.jpa.dao.dstu3;
  */
 
 import org.apache.commons.lang3.time.DateUtils;
-import org.hl7.fhir.dstu3.model.Bundle;
-import org.hl7.fhir.dstu3.model.Meta;
 import org.hl7.fhir.dstu3.model.SearchParameter;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.scheduling.annotation.Scheduled;
 
 import ca.uhn.fhir.jpa.dao.IFhirResourceDaoSearchParameter;
-import ca.uhn.fhir.jpa.dao.IFhirSystemDao;
+import ca.uhn.fhir.jpa.reindex.ResourceReindexingSvc;
 
 public class FhirResourceDaoSearchParameterDstu3 extends FhirResourceDaoDstu3<SearchParameter>implements IFhirResourceDaoSearchParameter<SearchParameter> {
 
 	@Autowired
-	private IFhirSystemDao<Bundle, Meta> mySystemDao;
+	private ResourceReindexingSvc myResourceReindexingSvc;
 	
 	/**
 	 * This method is called once per minute to perform any required re-indexing. During most passes this will
 	 * just check and find that there are no resources requiring re-indexing. In that case the method just returns
-	 * immediately. If the search finds that some resources require reindexing, the system will do a bunch of
-	 * reindexing and then return.
+	 * immediately. If the search finds that some resources require reindexing, the system will reindex a bounded
+	 * number of them (see {@link ResourceReindexingSvc#runReindexingPass(int)}) and then return. The rest are
+	 * picked up by the following passes.
 	 */
 	@Override
 	@Scheduled(fixedDelay=DateUtils.MILLIS_PER_MINUTE)
@@ -48,16 +47,7 @@ public class FhirResourceDaoSearchParameterDstu3 extends FhirResourceDaoDstu3<Se
 			return;
 		}
 
-		int count = mySystemDao.performReindexingPass(100);
-		for (int i = 0; i < 50 && count != 0; i++) {
-			count = mySystemDao.performReindexingPass(100);
-			try {
-				Thread.sleep(DateUtils.MILLIS_PER_SECOND);
-			} catch (InterruptedException e) {
-				break;
-			}
-		}
-		
+		myResourceReindexingSvc.runReindexingPass(ResourceReindexingSvc.SCHEDULED_PASS_MAX_ROUNDS);
 	}
 	
 }
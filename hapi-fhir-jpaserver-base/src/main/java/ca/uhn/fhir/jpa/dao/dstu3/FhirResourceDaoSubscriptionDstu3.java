@@ -23,6 +23,7 @@ package ca.uhn.fhir.jpa.dao.dstu3;
 import static org.apache.commons.lang3.StringUtils.isBlank;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Date;
 import java.util.List;
@@ -32,7 +33,6 @@ import javax.persistence.Query;
 import org.apache.commons.lang3.time.DateUtils;
 import org.hl7.fhir.dstu3.model.Subscription;
 import org.hl7.fhir.dstu3.model.Subscription.SubscriptionStatus;
-import org.hl7.fhir.instance.model.api.IAnyResource;
 import org.hl7.fhir.instance.model.api.IBaseResource;
 import org.hl7.fhir.instance.model.api.IIdType;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -48,28 +48,24 @@ import org.springframework.transaction.support.TransactionCallback;
 import org.springframework.transaction.support.TransactionTemplate;
 
 import ca.uhn.fhir.context.RuntimeResourceDefinition;
-import ca.uhn.fhir.jpa.dao.IDao;
 import ca.uhn.fhir.jpa.dao.IFhirResourceDao;
 import ca.uhn.fhir.jpa.dao.IFhirResourceDaoSubscription;
+import ca.uhn.fhir.jpa.dao.ResourceIndexedSearchParams;
 import ca.uhn.fhir.jpa.dao.SearchParameterMap;
 import ca.uhn.fhir.jpa.dao.data.ISubscriptionFlaggedResourceDataDao;
 import ca.uhn.fhir.jpa.dao.data.ISubscriptionTableDao;
 import ca.uhn.fhir.jpa.entity.ResourceTable;
 import ca.uhn.fhir.jpa.entity.SubscriptionFlaggedResource;
 import ca.uhn.fhir.jpa.entity.SubscriptionTable;
-import ca.uhn.fhir.model.dstu.valueset.QuantityCompararatorEnum;
-import ca.uhn.fhir.model.dstu2.valueset.SubscriptionStatusEnum;
+import ca.uhn.fhir.jpa.subscription.SubscriptionMatcher;
+import ca.uhn.fhir.jpa.subscription.SubscriptionMatcherRegistry;
+import ca.uhn.fhir.model.dstu.resource.BaseResource;
 import ca.uhn.fhir.model.primitive.IdDt;
-import ca.uhn.fhir.model.primitive.InstantDt;
 import ca.uhn.fhir.parser.DataFormatException;
-import ca.uhn.fhir.rest.api.SortOrderEnum;
-import ca.uhn.fhir.rest.api.SortSpec;
-import ca.uhn.fhir.rest.param.DateParam;
-import ca.uhn.fhir.rest.param.DateRangeParam;
-import ca.uhn.fhir.rest.server.Constants;
-import ca.uhn.fhir.rest.server.IBundleProvider;
+import ca.uhn.fhir.rest.param.StringParam;
+import ca.uhn.fhir.rest.server.exceptions.BaseServerResponseException;
+import ca.uhn.fhir.rest.server.exceptions.InvalidRequestException;
 import ca.uhn.fhir.rest.server.exceptions.UnprocessableEntityException;
-import ca.uhn.fhir.rest.server.servlet.ServletRequestDetails;
 
 public class FhirResourceDaoSubscriptionDstu3 extends FhirResourceDaoDstu3<Subscription>implements IFhirResourceDaoSubscription<Subscription> {
 
@@ -81,6 +77,12 @@ public class FhirResourceDaoSubscriptionDstu3 extends FhirResourceDaoDstu3<Subsc
 	@Autowired
 	private ISubscriptionTableDao mySubscriptionTableDao;
 
+	private final SubscriptionMatcherRegistry myMatchers = new SubscriptionMatcherRegistry();
+
+	private volatile boolean myMatchersLoaded;
+
+	private volatile String myMatchersVersion;
+
 	@Autowired
 	private PlatformTransactionManager myTxManager;
 
@@ -120,103 +122,106 @@ public class FhirResourceDaoSubscriptionDstu3 extends FhirResourceDaoDstu3<Subsc
 		return retVal;
 	}
 
-	@Override
-	@Transactional(propagation = Propagation.NOT_SUPPORTED)
-	public synchronized int pollForNewUndeliveredResources() {
-		if (getConfig().isSubscriptionEnabled() == false) {
-			return 0;
-		}
-		ourLog.trace("Beginning pollForNewUndeliveredResources()");
-
-		// SubscriptionCandidateResource
+	private SubscriptionMatcher createMatcher(Long theSubscriptionTablePid, Subscription theSubscription) {
+		RuntimeResourceDefinition resourceDef = validateCriteriaAndReturnResourceDefinition(theSubscription);
+		SearchParameterMap params = translateMatchUrl(getContext(), theSubscription.getCriteria(), resourceDef);
+		return new SubscriptionMatcher(theSubscriptionTablePid, theSubscription.getCriteria(), resourceDef, params);
+	}
 
-		TransactionTemplate txTemplate = new TransactionTemplate(myTxManager);
-		txTemplate.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
-		
-		Collection<Long> subscriptions = txTemplate.execute(new TransactionCallback<Collection<Long>>() {
-			@Override
-			public Collection<Long> doInTransaction(TransactionStatus theStatus) {
-				return mySubscriptionTableDao.findSubscriptionsWhichNeedToBeChecked(SubscriptionStatusEnum.ACTIVE.getCode(), new Date());
+	/**
+	 * The matchers are loaded from the database the first time a resource is written, and
+	 * are kept up to date from then on as subscriptions are created, updated and deleted
+	 * (see also {@link #refreshMatchersScheduler()})
+	 */
+	private void ensureMatchersLoaded() {
+		if (myMatchersLoaded) {
+			return;
+		}
+		synchronized (myMatchers) {
+			if (myMatchersLoaded) {
+				return;
 			}
-		});
-
-		int retVal = 0;
-		for (final Long nextSubscriptionTablePid : subscriptions) {
-			retVal += txTemplate.execute(new TransactionCallback<Integer>() {
-				@Override
-				public Integer doInTransaction(TransactionStatus theStatus) {
-					SubscriptionTable nextSubscriptionTable = mySubscriptionTableDao.findOne(nextSubscriptionTablePid);
-					return pollForNewUndeliveredResources(nextSubscriptionTable);
-				}
-			});
+			loadMatchers();
+			myMatchersLoaded = true;
 		}
-		
-		return retVal;
 	}
 
-	private int pollForNewUndeliveredResources(SubscriptionTable theSubscriptionTable) {
-		Subscription subscription = toResource(Subscription.class, theSubscriptionTable.getSubscriptionResource(), false);
-		RuntimeResourceDefinition resourceDef = validateCriteriaAndReturnResourceDefinition(subscription);
-		SearchParameterMap criteriaUrl = translateMatchUrl(getContext(), subscription.getCriteria(), resourceDef);
-
-		criteriaUrl = new SearchParameterMap();
-		long start = theSubscriptionTable.getMostRecentMatch().getTime();
-		long end = System.currentTimeMillis() - getConfig().getSubscriptionPollDelay();
-		if (end <= start) {
-			ourLog.trace("Skipping search for subscription");
-			return 0;
-		}
-
-		ourLog.debug("Subscription {} search from {} to {}", new Object[] { subscription.getIdElement().getIdPart(), new InstantDt(new Date(start)), new InstantDt(new Date(end)) });
+	private String findSubscriptionsVersion() {
+		return Arrays.toString(mySubscriptionTableDao.findSubscriptionsVersion().get(0));
+	}
 
-		DateRangeParam range = new DateRangeParam();
-		range.setLowerBound(new DateParam(QuantityCompararatorEnum.GREATERTHAN, start));
-		range.setUpperBound(new DateParam(QuantityCompararatorEnum.LESSTHAN, end));
-		criteriaUrl.setLastUpdated(range);
-		criteriaUrl.setSort(new SortSpec(Constants.PARAM_LASTUPDATED, SortOrderEnum.ASC));
-		IFhirResourceDao<? extends IBaseResource> dao = getDao(resourceDef.getImplementingClass());
-		IBundleProvider results = dao.search(criteriaUrl);
-		if (results.size() == 0) {
-			return 0;
+	/**
+	 * Loads the matchers for all active subscriptions. The caller must hold the lock on the
+	 * registry and have an open transaction.
+	 */
+	private void loadMatchers() {
+		String version = findSubscriptionsVersion();
+		List<SubscriptionMatcher> matchers = new ArrayList<SubscriptionMatcher>();
+		for (SubscriptionTable next : mySubscriptionTableDao.findByStatus(SubscriptionStatus.ACTIVE.toCode())) {
+			Subscription subscription = toResource(Subscription.class, next.getSubscriptionResource(), false);
+			try {
+				matchers.add(createMatcher(next.getId(), subscription));
+			} catch (BaseServerResponseException e) {
+				ourLog.warn("Ignoring subscription {} with invalid criteria: {}", subscription.getIdElement().getIdPart(), e.getMessage());
+			}
 		}
+		myMatchers.replaceAll(matchers);
+		myMatchersVersion = version;
+		ourLog.info("Loaded {} active subscription(s)", myMatchers.size());
+	}
 
-		ourLog.info("Found {} new results for Subscription {}", results.size(), subscription.getIdElement().getIdPart());
+	@Override
+	public void flagResourceForMatchingSubscriptions(ResourceTable theEntity, ResourceIndexedSearchParams theParams) {
+		ensureMatchersLoaded();
 
 		List<SubscriptionFlaggedResource> flags = new ArrayList<SubscriptionFlaggedResource>();
-		Date mostRecentMatch = null;
-		for (IBaseResource nextBase : results.getResources(0, results.size())) {
-			IAnyResource next = (IAnyResource)nextBase;
+		for (SubscriptionMatcher next : myMatchers.getMatchers(theEntity.getResourceType())) {
+			if (!matches(next, theEntity, theParams)) {
+				continue;
+			}
 
-			Date updated = next.getMeta().getLastUpdated();
-			if (mostRecentMatch == null) {
-				mostRecentMatch = updated;
-			} else {
-				long mostRecentMatchTime = mostRecentMatch.getTime();
-				long updatedTime = updated.getTime();
-				if (mostRecentMatchTime < updatedTime) {
-					mostRecentMatch = updated;
-				}
+			SubscriptionTable subscriptionTable = mySubscriptionTableDao.findOne(next.getSubscriptionTablePid());
+			if (subscriptionTable == null) {
+				myMatchers.unregister(next.getSubscriptionTablePid());
+				continue;
 			}
 
+			ourLog.debug("Resource {} matches subscription {}", theEntity.getIdDt().toUnqualified().getValue(), next.getCriteria());
+
 			SubscriptionFlaggedResource nextFlag = new SubscriptionFlaggedResource();
-			Long pid = IDao.RESOURCE_PID.get(next);
-			
-			ourLog.info("New resource for subscription: {}", pid);
-			
-			nextFlag.setResource(myEntityManager.find(ResourceTable.class, pid));
-			nextFlag.setSubscription(theSubscriptionTable);
-			nextFlag.setVersion(next.getIdElement().getVersionIdPartAsLong());
+			nextFlag.setResource(theEntity);
+			nextFlag.setSubscription(subscriptionTable);
+			nextFlag.setVersion(theEntity.getVersion());
 			flags.add(nextFlag);
 		}
 
-		mySubscriptionFlaggedResourceDataDao.save(flags);
+		if (!flags.isEmpty()) {
+			mySubscriptionFlaggedResourceDataDao.save(flags);
+			myMatchers.addFlaggedCountAfterCommit(flags.size());
+		}
+	}
 
-		ourLog.debug("Updating most recent match for subcription {} to {}", subscription.getIdElement().getIdPart(), new InstantDt(mostRecentMatch));
-		
-		theSubscriptionTable.setMostRecentMatch(mostRecentMatch);
-		mySubscriptionTableDao.save(theSubscriptionTable);
-		
-		return results.size();
+	private boolean matches(SubscriptionMatcher theMatcher, ResourceTable theEntity, ResourceIndexedSearchParams theParams) {
+		if (theMatcher.isMatchableInMemory()) {
+			return theMatcher.matches(theEntity, theParams);
+		}
+
+		/*
+		 * The criteria use something that can't be tested in memory, so search for
+		 * the resource using the criteria plus its own ID
+		 */
+		RuntimeResourceDefinition resourceDef = getContext().getResourceDefinition(theEntity.getResourceType());
+		SearchParameterMap params = translateMatchUrl(getContext(), theMatcher.getCriteria(), resourceDef);
+		params.add(BaseResource.SP_RES_ID, new StringParam(theEntity.getIdDt().getIdPart()));
+		return getDao(resourceDef.getImplementingClass()).searchForIdsWithAndOr(params).contains(theEntity.getId());
+	}
+
+	@Override
+	public int pollForNewUndeliveredResources() {
+		if (getConfig().isSubscriptionEnabled() == false) {
+			return 0;
+		}
+		return myMatchers.getAndResetFlaggedCount();
 	}
 
 	@Scheduled(fixedDelay = 10 * DateUtils.MILLIS_PER_SECOND)
@@ -229,6 +234,32 @@ public class FhirResourceDaoSubscriptionDstu3 extends FhirResourceDaoDstu3<Subsc
 		pollForNewUndeliveredResources();
 	}
 
+	@Scheduled(fixedDelay = 10 * DateUtils.MILLIS_PER_SECOND)
+	@Transactional(propagation = Propagation.NOT_SUPPORTED)
+	@Override
+	public void refreshMatchersScheduler() {
+		if (getConfig().isSchedulingDisabled() || !myMatchersLoaded) {
+			return;
+		}
+
+		TransactionTemplate txTemplate = new TransactionTemplate(myTxManager);
+		txTemplate.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+		txTemplate.setReadOnly(true);
+		txTemplate.execute(new TransactionCallback<Void>() {
+			@Override
+			public Void doInTransaction(TransactionStatus theStatus) {
+				if (findSubscriptionsVersion().equals(myMatchersVersion)) {
+					return null;
+				}
+				synchronized (myMatchers) {
+					ourLog.info("Subscriptions have changed, reloading the subscription matchers");
+					loadMatchers();
+				}
+				return null;
+			}
+		});
+	}
+
 	@Override
 	protected void postPersist(ResourceTable theEntity, Subscription theSubscription) {
 		super.postPersist(theEntity, theSubscription);
@@ -289,6 +320,7 @@ public class FhirResourceDaoSubscriptionDstu3 extends FhirResourceDaoDstu3<Subsc
 			if (subscriptionId != null) {
 				mySubscriptionFlaggedResourceDataDao.deleteAllForSubscription(subscriptionId);
 				mySubscriptionTableDao.deleteAllForSubscription(subscriptionId);
+				myMatchers.unregisterAfterCommit(subscriptionId);
 			}
 		} else {
 			Query q = myEntityManager.createNamedQuery("Q_HFJ_SUBSCRIPTION_SET_STATUS");
@@ -299,6 +331,15 @@ public class FhirResourceDaoSubscriptionDstu3 extends FhirResourceDaoDstu3<Subsc
 			} else {
 				createSubscriptionTable(retVal, resource);
 			}
+
+			SubscriptionTable subscriptionTable = mySubscriptionTableDao.findOneByResourcePid(resourceId);
+			if (subscriptionTable != null) {
+				if (resource.getStatus() == SubscriptionStatus.ACTIVE) {
+					myMatchers.registerAfterCommit(createMatcher(subscriptionTable.getId(), resource));
+				} else {
+					myMatchers.unregisterAfterCommit(subscriptionTable.getId());
+				}
+			}
 		}
 		return retVal;
 	}
@@ -339,6 +380,12 @@ public class FhirResourceDaoSubscriptionDstu3 extends FhirResourceDaoDstu3<Subsc
 			throw new UnprocessableEntityException("Subscription.criteria contains invalid/unsupported resource type: " + resDef);
 		}
 
+		try {
+			translateMatchUrl(getContext(), theResource.getCriteria(), resDef);
+		} catch (InvalidRequestException e) {
+			throw new UnprocessableEntityException("Subscription.criteria is invalid: " + e.getMessage());
+		}
+
 		if (theResource.getChannel().getType() == null) {
 			throw new UnprocessableEntityException("Subscription.channel.type must be populated on this server");
 		}
@@ -25,6 +25,7 @@ import static org.apache.commons.lang3.StringUtils.isNotBlank;
 
 import java.util.*;
 import java.util.Map.Entry;
+import java.util.concurrent.Callable;
 
 import javax.persistence.TypedQuery;
 
@@ -86,7 +87,7 @@ public class FhirSystemDaoDstu3 extends BaseHapiFhirSystemDao<Bundle, Meta> {
 		ourLog.info("Beginning batch with {} resources", theRequest.getEntry().size());
 		long start = System.currentTimeMillis();
 
-		TransactionTemplate txTemplate = new TransactionTemplate(myTxManager);
+		final TransactionTemplate txTemplate = new TransactionTemplate(myTxManager);
 		txTemplate.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
 
 		Bundle resp = new Bundle();
@@ -95,62 +96,78 @@ public class FhirSystemDaoDstu3 extends BaseHapiFhirSystemDao<Bundle, Meta> {
 		resp.addEntry().setResource(ooResp);
 
 		/*
-		 * For batch, we handle each entry as a mini-transaction in its own database transaction so that if one fails, it doesn't prevent others
+		 * For batch, we handle each entry as a mini-transaction in its own database transaction so that if one fails, it doesn't prevent others.
+		 * Because the entries are independent, several of them may be processed at the same time (see DaoConfig#setBatchEntryConcurrency)
 		 */
 
+		List<Callable<BundleEntryComponent>> tasks = new ArrayList<Callable<BundleEntryComponent>>(theRequest.getEntry().size());
 		for (final BundleEntryComponent nextRequestEntry : theRequest.getEntry()) {
-
-			TransactionCallback<Bundle> callback = new TransactionCallback<Bundle>() {
+			final ServletRequestDetails entryRequestDetails = newBatchEntryRequestDetails((ServletRequestDetails) theRequestDetails);
+			tasks.add(new Callable<BundleEntryComponent>() {
 				@Override
-				public Bundle doInTransaction(TransactionStatus theStatus) {
-					Bundle subRequestBundle = new Bundle();
-					subRequestBundle.setType(BundleType.TRANSACTION);
-					subRequestBundle.addEntry(nextRequestEntry);
-
-					Bundle subResponseBundle = transaction((ServletRequestDetails) theRequestDetails, subRequestBundle, "Batch sub-request");
-					return subResponseBundle;
+				public BundleEntryComponent call() {
+					return batchEntry(entryRequestDetails, txTemplate, nextRequestEntry);
 				}
-			};
-
-			BaseServerResponseException caughtEx;
-			try {
-				Bundle nextResponseBundle = txTemplate.execute(callback);
-				caughtEx = null;
+			});
+		}
 
-				BundleEntryComponent subResponseEntry = nextResponseBundle.getEntry().get(0);
-				resp.addEntry(subResponseEntry);
-				/*
-				 * If the individual entry didn't have a resource in its response, bring the sub-transaction's OperationOutcome across so the client can see it
-				 */
-				if (subResponseEntry.getResource() == null) {
-					subResponseEntry.setResource(nextResponseBundle.getEntry().get(0).getResource());
-				}
+		for (BundleEntryComponent nextResponseEntry : executeBatchEntries(tasks)) {
+			resp.addEntry(nextResponseEntry);
+		}
 
-			} catch (BaseServerResponseException e) {
-				caughtEx = e;
-			} catch (Throwable t) {
-				ourLog.error("Failure during BATCH sub transaction processing", t);
-				caughtEx = new InternalErrorException(t);
-			}
+		long delay = System.currentTimeMillis() - start;
+		ourLog.info("Batch completed in {}ms", new Object[] { delay });
+		ooResp.addIssue().setSeverity(IssueSeverity.INFORMATION).setDiagnostics("Batch completed in " + delay + "ms");
 
-			if (caughtEx != null) {
-				BundleEntryComponent nextEntry = resp.addEntry();
+		return resp;
+	}
 
-				OperationOutcome oo = new OperationOutcome();
-				oo.addIssue().setSeverity(IssueSeverity.ERROR).setDiagnostics(caughtEx.getMessage());
-				nextEntry.setResource(oo);
+	/**
+	 * Processes a single entry of a batch Bundle in its own database transaction and returns the response entry
+	 */
+	private BundleEntryComponent batchEntry(final RequestDetails theRequestDetails, TransactionTemplate theTxTemplate, final BundleEntryComponent theRequestEntry) {
+		TransactionCallback<Bundle> callback = new TransactionCallback<Bundle>() {
+			@Override
+			public Bundle doInTransaction(TransactionStatus theStatus) {
+				Bundle subRequestBundle = new Bundle();
+				subRequestBundle.setType(BundleType.TRANSACTION);
+				subRequestBundle.addEntry(theRequestEntry);
+
+				Bundle subResponseBundle = doTransaction((ServletRequestDetails) theRequestDetails, subRequestBundle, "Batch sub-request");
+				return subResponseBundle;
+			}
+		};
 
-				BundleEntryResponseComponent nextEntryResp = nextEntry.getResponse();
-				nextEntryResp.setStatus(toStatusString(caughtEx.getStatusCode()));
+		BaseServerResponseException caughtEx;
+		try {
+			Bundle nextResponseBundle = theTxTemplate.execute(callback);
+
+			BundleEntryComponent subResponseEntry = nextResponseBundle.getEntry().get(0);
+			/*
+			 * If the individual entry didn't have a resource in its response, bring the sub-transaction's OperationOutcome across so the client can see it
+			 */
+			if (subResponseEntry.getResource() == null) {
+				subResponseEntry.setResource(nextResponseBundle.getEntry().get(0).getResource());
 			}
+			return subResponseEntry;
 
+		} catch (BaseServerResponseException e) {
+			caughtEx = e;
+		} catch (Throwable t) {
+			ourLog.error("Failure during BATCH sub transaction processing", t);
+			caughtEx = new InternalErrorException(t);
 		}
 
-		long delay = System.currentTimeMillis() - start;
-		ourLog.info("Batch completed in {}ms", new Object[] { delay });
-		ooResp.addIssue().setSeverity(IssueSeverity.INFORMATION).setDiagnostics("Batch completed in " + delay + "ms");
+		BundleEntryComponent nextEntry = new BundleEntryComponent();
 
-		return resp;
+		OperationOutcome oo = new OperationOutcome();
+		oo.addIssue().setSeverity(IssueSeverity.ERROR).setDiagnostics(caughtEx.getMessage());
+		nextEntry.setResource(oo);
+
+		BundleEntryResponseComponent nextEntryResp = nextEntry.getResponse();
+		nextEntryResp.setStatus(toStatusString(caughtEx.getStatusCode()));
+
+		return nextEntry;
 	}
 
 	private String extractTransactionUrlOrThrowException(BundleEntryComponent nextEntry, HTTPVerb verb) {
@@ -253,6 +270,28 @@ public class FhirSystemDaoDstu3 extends BaseHapiFhirSystemDao<Bundle, Meta> {
 		return transaction((ServletRequestDetails) theRequestDetails, theRequest, actionName);
 	}
 
+	private void preloadForcedIds(Bundle theRequest) {
+		List<IIdType> ids = new ArrayList<IIdType>();
+		for (BundleEntryComponent nextEntry : theRequest.getEntry()) {
+			HTTPVerb verb = nextEntry.getRequest().getMethodElement().getValue();
+			if (verb == HTTPVerb.GET) {
+				continue;
+			}
+			if ((verb == HTTPVerb.PUT || verb == HTTPVerb.DELETE) && isNotBlank(nextEntry.getRequest().getUrl())) {
+				UrlParts parts = UrlUtil.parseUrl(nextEntry.getRequest().getUrl());
+				if (isNotBlank(parts.getResourceType()) && isNotBlank(parts.getResourceId())) {
+					ids.add(new IdType(parts.getResourceType(), parts.getResourceId()));
+				}
+			}
+			if (nextEntry.getResource() != null) {
+				for (IBaseReference nextRef : getContext().newTerser().getAllPopulatedChildElementsOfType(nextEntry.getResource(), IBaseReference.class)) {
+					ids.add(nextRef.getReferenceElement());
+				}
+			}
+		}
+		preloadForcedIds(ids);
+	}
+
 	private Bundle transaction(ServletRequestDetails theRequestDetails, Bundle theRequest, String theActionName) {
 		super.markRequestAsProcessingSubRequest(theRequestDetails);
 		try {
@@ -318,6 +357,12 @@ public class FhirSystemDaoDstu3 extends BaseHapiFhirSystemDao<Bundle, Meta> {
 		}
 		Collections.sort(theRequest.getEntry(), new TransactionSorter());
 
+		/*
+		 * Resolve the client assigned IDs which are updated, deleted or referenced by this
+		 * transaction in bulk, instead of one at a time as each entry is processed
+		 */
+		preloadForcedIds(theRequest);
+
 		Set<String> deletedResources = new HashSet<String>();
 		List<DeleteConflict> deleteConflicts = new ArrayList<DeleteConflict>();
 		Map<BundleEntryComponent, ResourceTable> entriesToProcess = new IdentityHashMap<BundleEntryComponent, ResourceTable>();
@@ -30,6 +30,7 @@ import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
 import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
 
 import javax.measure.unit.NonSI;
 import javax.measure.unit.Unit;
@@ -49,6 +50,7 @@ import org.hl7.fhir.dstu3.model.ContactPoint;
 import org.hl7.fhir.dstu3.model.DateTimeType;
 import org.hl7.fhir.dstu3.model.Duration;
 import org.hl7.fhir.dstu3.model.Enumeration;
+import org.hl7.fhir.dstu3.model.ExpressionNode;
 import org.hl7.fhir.dstu3.model.HumanName;
 import org.hl7.fhir.dstu3.model.Identifier;
 import org.hl7.fhir.dstu3.model.IntegerType;
@@ -95,6 +97,9 @@ public class SearchParamExtractorDstu3 extends BaseSearchParamExtractor implemen
 
 	private static final org.slf4j.Logger ourLog = org.slf4j.LoggerFactory.getLogger(SearchParamExtractorDstu3.class);
 
+	private volatile FHIRPathEngine myFhirPathEngine;
+	private final ConcurrentHashMap<String, ExpressionNode> myParsedExpressions = new ConcurrentHashMap<String, ExpressionNode>();
+
 	@Autowired
 	private org.hl7.fhir.dstu3.hapi.validation.IValidationSupport myValidationSupport;
 
@@ -710,14 +715,13 @@ public class SearchParamExtractorDstu3 extends BaseSearchParamExtractor implemen
 	 */
 	@Override
 	protected List<Object> extractValues(String thePaths, IBaseResource theResource) {
-		IWorkerContext worker = new org.hl7.fhir.dstu3.hapi.validation.HapiWorkerContext(getContext(), myValidationSupport);
-		FHIRPathEngine fp = new FHIRPathEngine(worker);
+		FHIRPathEngine fp = getFhirPathEngine();
 
 		List<Object> values = new ArrayList<Object>();
 		try {
 			String[] nextPathsSplit = SPLIT.split(thePaths);
 			for (String nextPath : nextPathsSplit) {
-				List<Base> allValues = fp.evaluate((Base) theResource, nextPath);
+				List<Base> allValues = fp.evaluate((Base) theResource, parseExpression(fp, nextPath));
 				if (allValues.isEmpty() == false) {
 					values.addAll(allValues);
 				}
@@ -728,6 +732,31 @@ public class SearchParamExtractorDstu3 extends BaseSearchParamExtractor implemen
 		return values;
 	}
 
+	/**
+	 * Creating an engine loads every structure definition from the validation
+	 * support, so a single instance is shared. Evaluating a pre-parsed
+	 * expression does not modify the engine (other than the log used by the
+	 * FHIRPath trace() function) so this is safe across threads.
+	 */
+	private FHIRPathEngine getFhirPathEngine() {
+		FHIRPathEngine retVal = myFhirPathEngine;
+		if (retVal == null) {
+			IWorkerContext worker = new org.hl7.fhir.dstu3.hapi.validation.HapiWorkerContext(getContext(), myValidationSupport);
+			retVal = new FHIRPathEngine(worker);
+			myFhirPathEngine = retVal;
+		}
+		return retVal;
+	}
+
+	private ExpressionNode parseExpression(FHIRPathEngine theEngine, String thePath) throws FHIRException {
+		ExpressionNode retVal = myParsedExpressions.get(thePath);
+		if (retVal == null) {
+			retVal = theEngine.parse(thePath);
+			myParsedExpressions.put(thePath, retVal);
+		}
+		return retVal;
+	}
+
 	@Override
 	public List<PathAndRef> extractResourceLinks(IBaseResource theResource, RuntimeSearchParam theNextSpDef) {
 		ArrayList<PathAndRef> retVal = new ArrayList<PathAndRef>();
@@ -748,6 +777,7 @@ public class SearchParamExtractorDstu3 extends BaseSearchParamExtractor implemen
 	@VisibleForTesting
 	void setValidationSupportForTesting(org.hl7.fhir.dstu3.hapi.validation.IValidationSupport theValidationSupport) {
 		myValidationSupport = theValidationSupport;
+		myFhirPathEngine = null;
 	}
 
 	private static <T extends Enum<?>> String extractSystem(Enumeration<T> theBoundCode) {
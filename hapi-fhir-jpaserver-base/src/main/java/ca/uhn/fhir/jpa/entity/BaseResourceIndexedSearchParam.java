@@ -21,6 +21,7 @@ package ca.uhn.fhir.jpa.entity;
  */
 
 import java.io.Serializable;
+import java.math.BigDecimal;
 
 import javax.persistence.Column;
 import javax.persistence.GeneratedValue;
@@ -29,17 +30,33 @@ import javax.persistence.Id;
 import javax.persistence.JoinColumn;
 import javax.persistence.ManyToOne;
 import javax.persistence.MappedSuperclass;
+import javax.persistence.PrePersist;
+import javax.persistence.PreUpdate;
 
+import org.apache.commons.lang3.builder.EqualsBuilder;
 import org.hibernate.search.annotations.ContainedIn;
 import org.hibernate.search.annotations.Field;
 
+import com.google.common.base.Charsets;
+import com.google.common.hash.HashFunction;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+
 @MappedSuperclass
 public abstract class BaseResourceIndexedSearchParam implements Serializable {
 
 	static final int MAX_SP_NAME = 100;
 
+	private static final HashFunction HASH_FUNCTION = Hashing.murmur3_128(0);
+
 	private static final long serialVersionUID = 1L;
 
+	/**
+	 * Hash of the resource type and parameter name
+	 */
+	@Column(name = "HASH_IDENTITY", nullable = true)
+	private Long myHashIdentity;
+
 	@Field
 	@Column(name = "SP_NAME", length = MAX_SP_NAME, nullable = false)
 	private String myParamName;
@@ -56,8 +73,68 @@ public abstract class BaseResourceIndexedSearchParam implements Serializable {
 	@Column(name = "RES_TYPE", nullable = false)
 	private String myResourceType;
 
+	/**
+	 * Populates the hash columns from the values they are calculated from. This is called
+	 * automatically before the row is inserted or updated, and may also be called directly
+	 * in order to backfill the hashes on a row which was stored before they existed.
+	 */
+	@PrePersist
+	@PreUpdate
+	public void calculateHashes() {
+		myHashIdentity = calculateHashIdentity(myResourceType, myParamName);
+		calculateValueHashes();
+	}
+
+	/**
+	 * Subclasses should override this method to populate any hash columns of their own
+	 */
+	protected void calculateValueHashes() {
+		// nothing by default
+	}
+
+	/**
+	 * Returns <code>true</code> if the given row is {@link #equals(Object) equal} to this one and
+	 * also holds the same value in every other persisted column, including the hashes and any other
+	 * values which are derived from the indexed value and are therefore not considered by equals
+	 */
+	public boolean hasSamePersistedValues(BaseResourceIndexedSearchParam theOther) {
+		if (!equals(theOther)) {
+			return false;
+		}
+		EqualsBuilder b = new EqualsBuilder();
+		b.append(getHashIdentity(), theOther.getHashIdentity());
+		appendDerivedValues(b, theOther);
+		return b.isEquals();
+	}
+
+	/**
+	 * Subclasses should override this method to append any persisted columns of their own which
+	 * are not considered by equals (the other row is always of the same type as this one)
+	 */
+	protected void appendDerivedValues(EqualsBuilder theBuilder, BaseResourceIndexedSearchParam theOther) {
+		// nothing by default
+	}
+
+	public Long getHashIdentity() {
+		return myHashIdentity;
+	}
+
 	protected abstract Long getId();
 
+	/**
+	 * Values loaded from the database carry the column's scale (e.g. 120.00 instead of 120),
+	 * so strip it before comparing values in equals/hashCode
+	 */
+	static BigDecimal normalizeForEquals(BigDecimal theValue) {
+		if (theValue == null) {
+			return null;
+		}
+		if (theValue.signum() == 0) {
+			return BigDecimal.ZERO;
+		}
+		return theValue.stripTrailingZeros();
+	}
+
 	public String getParamName() {
 		return myParamName;
 	}
@@ -70,6 +147,10 @@ public abstract class BaseResourceIndexedSearchParam implements Serializable {
 		return myResourcePid;
 	}
 
+	public String getResourceType() {
+		return myResourceType;
+	}
+
 	public void setParamName(String theName) {
 		myParamName = theName;
 	}
@@ -79,4 +160,28 @@ public abstract class BaseResourceIndexedSearchParam implements Serializable {
 		myResourceType = theResource.getResourceType();
 	}
 
+	/**
+	 * Returns the hash of the given resource type and parameter name, as stored in the
+	 * <code>HASH_IDENTITY</code> column
+	 */
+	public static long calculateHashIdentity(String theResourceType, String theParamName) {
+		return hash(theResourceType, theParamName);
+	}
+
+	/**
+	 * Returns a 64 bit hash of the given values. A <code>null</code> value hashes the same as
+	 * an empty string.
+	 */
+	static long hash(String... theValues) {
+		Hasher hasher = HASH_FUNCTION.newHasher();
+		for (String next : theValues) {
+			if (next != null) {
+				hasher.putString(next, Charsets.UTF_8);
+			}
+			// Separator, so that ("ab", "c") and ("a", "bc") don't hash the same
+			hasher.putByte((byte) 0);
+		}
+		return hasher.hash().asLong();
+	}
+
 }
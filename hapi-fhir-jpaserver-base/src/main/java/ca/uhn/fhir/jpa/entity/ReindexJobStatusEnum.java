@@ -0,0 +1,42 @@
+package ca.uhn.fhir.jpa.entity;
+
+
+/*
+ * #%L
+ * HAPI FHIR JPA Server
+ * %%
+ * Copyright (C) 2014 - 2017 University Health Network
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+public enum ReindexJobStatusEnum {
+
+	/**
+	 * The job is reindexing resources, or will resume the next time reindexing runs
+	 */
+	ACTIVE,
+
+	/**
+	 * All resources which required reindexing when the job was active have been processed
+	 */
+	COMPLETE,
+
+	/**
+	 * The job was replaced by a newer job before it completed (e.g. because all
+	 * resources were marked for reindexing again)
+	 */
+	CANCELLED
+
+}
@@ -20,16 +20,72 @@ package ca.uhn.fhir.jpa.entity;
  * #L%
  */
 
+import com.google.common.base.Charsets;
+
 import ca.uhn.fhir.context.FhirContext;
+import ca.uhn.fhir.jpa.dao.GZipUtil;
+import ca.uhn.fhir.jpa.util.DictionaryDeflateResourceBodyCodec;
+import ca.uhn.fhir.jpa.util.IResourceBodyCodec;
 import ca.uhn.fhir.parser.IParser;
 
+/**
+ * The encoding used to store a resource body. The encoding is stored with each resource
+ * version, so changing the encoding used for new versions (see
+ * {@link ca.uhn.fhir.jpa.dao.DaoConfig#setResourceEncoding(ResourceEncodingEnum)}) does not affect
+ * reading the versions which are already stored.
+ * <p>
+ * Names are stored in the database, so they must not be longer than 5 characters and
+ * existing values must not be renamed.
+ * </p>
+ */
 public enum ResourceEncodingEnum {
 
 	/** Json */
-	JSON,
-	
+	JSON(new IResourceBodyCodec() {
+		@Override
+		public String decode(String theResourceType, byte[] theBody) {
+			return new String(theBody, Charsets.UTF_8);
+		}
+
+		@Override
+		public byte[] encode(String theResourceType, String theEncodedResource) {
+			return theEncodedResource.getBytes(Charsets.UTF_8);
+		}
+	}),
+
 	/** Json Compressed */
-	JSONC;
+	JSONC(new IResourceBodyCodec() {
+		@Override
+		public String decode(String theResourceType, byte[] theBody) {
+			return GZipUtil.decompress(theBody);
+		}
+
+		@Override
+		public byte[] encode(String theResourceType, String theEncodedResource) {
+			return GZipUtil.compress(theEncodedResource);
+		}
+	}),
+
+	/**
+	 * Json compressed using a preset dictionary for the resource type, which is smaller than
+	 * {@link #JSONC} for small resources and faster to encode and decode
+	 * 
+	 * @see DictionaryDeflateResourceBodyCodec
+	 */
+	JSOND(new DictionaryDeflateResourceBodyCodec());
+
+	private final IResourceBodyCodec myCodec;
+
+	private ResourceEncodingEnum(IResourceBodyCodec theCodec) {
+		myCodec = theCodec;
+	}
+
+	/**
+	 * Returns the codec used to convert bodies stored with this encoding
+	 */
+	public IResourceBodyCodec getCodec() {
+		return myCodec;
+	}
 
 	public IParser newParser(FhirContext theContext) {
 		return theContext.newJsonParser();
@@ -41,7 +41,8 @@ import org.hibernate.search.annotations.Field;
 @Entity
 @Table(name = "HFJ_SPIDX_COORDS", indexes = { 
 	@Index(name = "IDX_SP_COORDS", columnList = "RES_TYPE,SP_NAME,SP_LATITUDE,SP_LONGITUDE"), 
-	@Index(name = "IDX_SP_COORDS_RESID", columnList = "RES_ID") 
+	@Index(name = "IDX_SP_COORDS_RESID", columnList = "RES_ID"),
+	@Index(name = "IDX_SP_COORDS_HASH", columnList = "HASH_IDENTITY,SP_LATITUDE,SP_LONGITUDE")
 })
 //@formatter:on
 public class ResourceIndexedSearchParamCoords extends BaseResourceIndexedSearchParam {
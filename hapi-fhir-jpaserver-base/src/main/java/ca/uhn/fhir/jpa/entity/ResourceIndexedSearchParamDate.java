@@ -47,7 +47,8 @@ import ca.uhn.fhir.model.primitive.InstantDt;
 @Entity
 @Table(name = "HFJ_SPIDX_DATE", indexes= {
 	@Index(name = "IDX_SP_DATE", columnList = "RES_TYPE,SP_NAME,SP_VALUE_LOW,SP_VALUE_HIGH"),
-	@Index(name = "IDX_SP_DATE_RESID", columnList = "RES_ID") 
+	@Index(name = "IDX_SP_DATE_RESID", columnList = "RES_ID"),
+	@Index(name = "IDX_SP_DATE_HASH", columnList = "HASH_IDENTITY,SP_VALUE_LOW,SP_VALUE_HIGH")
 })
 //@formatter:on
 public class ResourceIndexedSearchParamDate extends BaseResourceIndexedSearchParam {
@@ -100,8 +101,8 @@ public class ResourceIndexedSearchParamDate extends BaseResourceIndexedSearchPar
 		EqualsBuilder b = new EqualsBuilder();
 		b.append(getParamName(), obj.getParamName());
 		b.append(getResource(), obj.getResource());
-		b.append(getValueHigh(), obj.getValueHigh());
-		b.append(getValueLow(), obj.getValueLow());
+		b.append(toMillis(getValueHigh()), toMillis(obj.getValueHigh()));
+		b.append(toMillis(getValueLow()), toMillis(obj.getValueLow()));
 		return b.isEquals();
 	}
 
@@ -123,11 +124,19 @@ public class ResourceIndexedSearchParamDate extends BaseResourceIndexedSearchPar
 		HashCodeBuilder b = new HashCodeBuilder();
 		b.append(getParamName());
 		b.append(getResource());
-		b.append(getValueHigh());
-		b.append(getValueLow());
+		b.append(toMillis(getValueHigh()));
+		b.append(toMillis(getValueLow()));
 		return b.toHashCode();
 	}
 
+	/**
+	 * Dates loaded from the database are {@link java.sql.Timestamp}s, which never
+	 * equal a plain {@link Date}, so compare them by instant instead
+	 */
+	private static Long toMillis(Date theDate) {
+		return theDate != null ? theDate.getTime() : null;
+	}
+
 	public void setValueHigh(Date theValueHigh) {
 		myValueHigh = theValueHigh;
 	}
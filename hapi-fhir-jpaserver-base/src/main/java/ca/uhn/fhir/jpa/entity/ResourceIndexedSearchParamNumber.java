@@ -47,7 +47,8 @@ import ca.uhn.fhir.jpa.util.BigDecimalNumericFieldBridge;
 @Entity
 @Table(name = "HFJ_SPIDX_NUMBER", indexes= {
 	@Index(name = "IDX_SP_NUMBER", columnList = "RES_TYPE,SP_NAME,SP_VALUE"),
-	@Index(name = "IDX_SP_NUMBER_RESID", columnList = "RES_ID") 
+	@Index(name = "IDX_SP_NUMBER_RESID", columnList = "RES_ID"),
+	@Index(name = "IDX_SP_NUMBER_HASH_VAL", columnList = "HASH_IDENTITY,SP_VALUE")
 })
 //@formatter:on
 public class ResourceIndexedSearchParamNumber extends BaseResourceIndexedSearchParam {
@@ -89,7 +90,7 @@ public class ResourceIndexedSearchParamNumber extends BaseResourceIndexedSearchP
 		EqualsBuilder b = new EqualsBuilder();
 		b.append(getParamName(), obj.getParamName());
 		b.append(getResource(), obj.getResource());
-		b.append(getValue(), obj.getValue());
+		b.append(normalizeForEquals(getValue()), normalizeForEquals(obj.getValue()));
 		return b.isEquals();
 	}
 
@@ -107,7 +108,7 @@ public class ResourceIndexedSearchParamNumber extends BaseResourceIndexedSearchP
 		HashCodeBuilder b = new HashCodeBuilder();
 		b.append(getParamName());
 		b.append(getResource());
-		b.append(getValue());
+		b.append(normalizeForEquals(getValue()));
 		return b.toHashCode();
 	}
 
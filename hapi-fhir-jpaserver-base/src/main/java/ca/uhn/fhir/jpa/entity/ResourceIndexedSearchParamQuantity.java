@@ -47,7 +47,10 @@ import ca.uhn.fhir.jpa.util.BigDecimalNumericFieldBridge;
 @Entity
 @Table(name = "HFJ_SPIDX_QUANTITY", indexes = {
 	@Index(name = "IDX_SP_QUANTITY", columnList = "RES_TYPE,SP_NAME,SP_SYSTEM,SP_UNITS,SP_VALUE"),
-	@Index(name = "IDX_SP_QUANTITY_RESID", columnList = "RES_ID") 
+	@Index(name = "IDX_SP_QUANTITY_RESID", columnList = "RES_ID"),
+	@Index(name = "IDX_SP_QUANTITY_HASH", columnList = "HASH_IDENTITY,SP_VALUE"),
+	@Index(name = "IDX_SP_QUANTITY_HASH_UN", columnList = "HASH_IDENTITY_AND_UNITS,SP_VALUE"),
+	@Index(name = "IDX_SP_QUANTITY_HASH_SYSUN", columnList = "HASH_IDENTITY_SYS_UNITS,SP_VALUE")
 })
 //@formatter:on
 public class ResourceIndexedSearchParamQuantity extends BaseResourceIndexedSearchParam {
@@ -56,6 +59,18 @@ public class ResourceIndexedSearchParamQuantity extends BaseResourceIndexedSearc
 
 	private static final long serialVersionUID = 1L;
 
+	/**
+	 * Hash of the resource type, parameter name and units
+	 */
+	@Column(name = "HASH_IDENTITY_AND_UNITS", nullable = true)
+	private Long myHashIdentityAndUnits;
+
+	/**
+	 * Hash of the resource type, parameter name, system and units
+	 */
+	@Column(name = "HASH_IDENTITY_SYS_UNITS", nullable = true)
+	private Long myHashIdentitySystemAndUnits;
+
 	@Id
 	@SequenceGenerator(name = "SEQ_SPIDX_QUANTITY", sequenceName = "SEQ_SPIDX_QUANTITY")
 	@GeneratedValue(strategy = GenerationType.AUTO, generator = "SEQ_SPIDX_QUANTITY")
@@ -104,7 +119,7 @@ public class ResourceIndexedSearchParamQuantity extends BaseResourceIndexedSearc
 		b.append(getResource(), obj.getResource());
 		b.append(getSystem(), obj.getSystem());
 		b.append(getUnits(), obj.getUnits());
-		b.append(getValue(), obj.getValue());
+		b.append(normalizeForEquals(getValue()), normalizeForEquals(obj.getValue()));
 		return b.isEquals();
 	}
 
@@ -113,6 +128,27 @@ public class ResourceIndexedSearchParamQuantity extends BaseResourceIndexedSearc
 		return myId;
 	}
 
+	@Override
+	protected void calculateValueHashes() {
+		myHashIdentityAndUnits = calculateHashUnits(getResourceType(), getParamName(), getUnits());
+		myHashIdentitySystemAndUnits = calculateHashSystemAndUnits(getResourceType(), getParamName(), getSystem(), getUnits());
+	}
+
+	@Override
+	protected void appendDerivedValues(EqualsBuilder theBuilder, BaseResourceIndexedSearchParam theOther) {
+		ResourceIndexedSearchParamQuantity obj = (ResourceIndexedSearchParamQuantity) theOther;
+		theBuilder.append(getHashIdentityAndUnits(), obj.getHashIdentityAndUnits());
+		theBuilder.append(getHashIdentitySystemAndUnits(), obj.getHashIdentitySystemAndUnits());
+	}
+
+	public Long getHashIdentityAndUnits() {
+		return myHashIdentityAndUnits;
+	}
+
+	public Long getHashIdentitySystemAndUnits() {
+		return myHashIdentitySystemAndUnits;
+	}
+
 	public String getSystem() {
 		return mySystem;
 	}
@@ -132,7 +168,7 @@ public class ResourceIndexedSearchParamQuantity extends BaseResourceIndexedSearc
 		b.append(getResource());
 		b.append(getSystem());
 		b.append(getUnits());
-		b.append(getValue());
+		b.append(normalizeForEquals(getValue()));
 		return b.toHashCode();
 	}
 
@@ -159,4 +195,11 @@ public class ResourceIndexedSearchParamQuantity extends BaseResourceIndexedSearc
 		return b.build();
 	}
 
+	public static long calculateHashSystemAndUnits(String theResourceType, String theParamName, String theSystem, String theUnits) {
+		return hash(theResourceType, theParamName, theSystem, theUnits);
+	}
+
+	public static long calculateHashUnits(String theResourceType, String theParamName, String theUnits) {
+		return hash(theResourceType, theParamName, theUnits);
+	}
 }
@@ -50,7 +50,9 @@ import org.hibernate.search.annotations.Store;
 @Entity
 @Table(name = "HFJ_SPIDX_STRING", indexes = { 
 	@Index(name = "IDX_SP_STRING", columnList = "RES_TYPE,SP_NAME,SP_VALUE_NORMALIZED"), 
-	@Index(name = "IDX_SP_STRING_RESID", columnList = "RES_ID") 
+	@Index(name = "IDX_SP_STRING_RESID", columnList = "RES_ID"),
+	@Index(name = "IDX_SP_STRING_HASH_NRM", columnList = "HASH_IDENTITY,SP_VALUE_NORMALIZED"),
+	@Index(name = "IDX_SP_STRING_HASH_EXCT", columnList = "HASH_EXACT")
 })
 @Indexed()
 //@AnalyzerDefs({
@@ -106,6 +108,12 @@ public class ResourceIndexedSearchParamString extends BaseResourceIndexedSearchP
 
 	private static final long serialVersionUID = 1L;
 
+	/**
+	 * Hash of the resource type, parameter name and exact value
+	 */
+	@Column(name = "HASH_EXACT", nullable = true)
+	private Long myHashExact;
+
 	@Id
 	@SequenceGenerator(name="SEQ_SPIDX_STRING", sequenceName="SEQ_SPIDX_STRING")
 	@GeneratedValue(strategy = GenerationType.AUTO, generator = "SEQ_SPIDX_STRING")
@@ -163,6 +171,22 @@ public class ResourceIndexedSearchParamString extends BaseResourceIndexedSearchP
 		return myId;
 	}
 
+	@Override
+	protected void calculateValueHashes() {
+		myHashExact = calculateHashExact(getResourceType(), getParamName(), getValueExact());
+	}
+
+	@Override
+	protected void appendDerivedValues(EqualsBuilder theBuilder, BaseResourceIndexedSearchParam theOther) {
+		ResourceIndexedSearchParamString obj = (ResourceIndexedSearchParamString) theOther;
+		theBuilder.append(getHashExact(), obj.getHashExact());
+		theBuilder.append(getValueNormalized(), obj.getValueNormalized());
+	}
+
+	public Long getHashExact() {
+		return myHashExact;
+	}
+
 	public String getValueExact() {
 		return myValueExact;
 	}
@@ -203,4 +227,7 @@ public class ResourceIndexedSearchParamString extends BaseResourceIndexedSearchP
 		return b.build();
 	}
 
+	public static long calculateHashExact(String theResourceType, String theParamName, String theValueExact) {
+		return hash(theResourceType, theParamName, theValueExact);
+	}
 }
@@ -43,7 +43,11 @@ import org.hibernate.search.annotations.Field;
 @Table(name = "HFJ_SPIDX_TOKEN", indexes = {
 	@Index(name = "IDX_SP_TOKEN", columnList = "RES_TYPE,SP_NAME,SP_SYSTEM,SP_VALUE"),
 	@Index(name = "IDX_SP_TOKEN_UNQUAL", columnList = "RES_TYPE,SP_NAME,SP_VALUE"),
-	@Index(name = "IDX_SP_TOKEN_RESID", columnList = "RES_ID") 
+	@Index(name = "IDX_SP_TOKEN_RESID", columnList = "RES_ID"),
+	@Index(name = "IDX_SP_TOKEN_HASH", columnList = "HASH_IDENTITY"),
+	@Index(name = "IDX_SP_TOKEN_HASH_S", columnList = "HASH_SYS"),
+	@Index(name = "IDX_SP_TOKEN_HASH_SV", columnList = "HASH_SYS_AND_VALUE"),
+	@Index(name = "IDX_SP_TOKEN_HASH_V", columnList = "HASH_VALUE")
 })
 //@formatter:on
 public class ResourceIndexedSearchParamToken extends BaseResourceIndexedSearchParam {
@@ -51,6 +55,24 @@ public class ResourceIndexedSearchParamToken extends BaseResourceIndexedSearchPa
 	public static final int MAX_LENGTH = 200;
 
 	private static final long serialVersionUID = 1L;
+
+	/**
+	 * Hash of the resource type, parameter name and system
+	 */
+	@Column(name = "HASH_SYS", nullable = true)
+	private Long myHashSystem;
+
+	/**
+	 * Hash of the resource type, parameter name, system and value
+	 */
+	@Column(name = "HASH_SYS_AND_VALUE", nullable = true)
+	private Long myHashSystemAndValue;
+
+	/**
+	 * Hash of the resource type, parameter name and value
+	 */
+	@Column(name = "HASH_VALUE", nullable = true)
+	private Long myHashValue;
 	
 	@Id
 	@SequenceGenerator(name = "SEQ_SPIDX_TOKEN", sequenceName = "SEQ_SPIDX_TOKEN")
@@ -75,6 +97,21 @@ public class ResourceIndexedSearchParamToken extends BaseResourceIndexedSearchPa
 		setValue(theValue);
 	}
 
+	@Override
+	protected void calculateValueHashes() {
+		myHashSystem = calculateHashSystem(getResourceType(), getParamName(), getSystem());
+		myHashSystemAndValue = calculateHashSystemAndValue(getResourceType(), getParamName(), getSystem(), getValue());
+		myHashValue = calculateHashValue(getResourceType(), getParamName(), getValue());
+	}
+
+	@Override
+	protected void appendDerivedValues(EqualsBuilder theBuilder, BaseResourceIndexedSearchParam theOther) {
+		ResourceIndexedSearchParamToken obj = (ResourceIndexedSearchParamToken) theOther;
+		theBuilder.append(getHashSystem(), obj.getHashSystem());
+		theBuilder.append(getHashSystemAndValue(), obj.getHashSystemAndValue());
+		theBuilder.append(getHashValue(), obj.getHashValue());
+	}
+
 	@Override
 	public boolean equals(Object theObj) {
 		if (this == theObj) {
@@ -100,6 +137,18 @@ public class ResourceIndexedSearchParamToken extends BaseResourceIndexedSearchPa
 		return myId;
 	}
 
+	public Long getHashSystem() {
+		return myHashSystem;
+	}
+
+	public Long getHashSystemAndValue() {
+		return myHashSystemAndValue;
+	}
+
+	public Long getHashValue() {
+		return myHashValue;
+	}
+
 	public String getSystem() {
 		return mySystem;
 	}
@@ -135,4 +184,17 @@ public class ResourceIndexedSearchParamToken extends BaseResourceIndexedSearchPa
 		b.append("value", getValue());
 		return b.build();
 	}
+
+	public static long calculateHashSystem(String theResourceType, String theParamName, String theSystem) {
+		return hash(theResourceType, theParamName, theSystem);
+	}
+
+	public static long calculateHashSystemAndValue(String theResourceType, String theParamName, String theSystem, String theValue) {
+		return hash(theResourceType, theParamName, theSystem, theValue);
+	}
+
+	public static long calculateHashValue(String theResourceType, String theParamName, String theValue) {
+		return hash(theResourceType, theParamName, theValue);
+	}
+
 }
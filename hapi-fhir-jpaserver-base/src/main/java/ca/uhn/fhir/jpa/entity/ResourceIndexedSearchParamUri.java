@@ -42,7 +42,9 @@ import org.hibernate.search.annotations.Field;
 @Table(name = "HFJ_SPIDX_URI", indexes = { 
 	@Index(name = "IDX_SP_URI", columnList = "RES_TYPE,SP_NAME,SP_URI"), 
 	@Index(name = "IDX_SP_URI_RESTYPE_NAME", columnList = "RES_TYPE,SP_NAME"), 
-	@Index(name = "IDX_SP_URI_COORDS", columnList = "RES_ID") 
+	@Index(name = "IDX_SP_URI_COORDS", columnList = "RES_ID"),
+	@Index(name = "IDX_SP_URI_HASH_IDENTITY", columnList = "HASH_IDENTITY,SP_URI"),
+	@Index(name = "IDX_SP_URI_HASH_URI", columnList = "HASH_URI")
 })
 //@formatter:on
 public class ResourceIndexedSearchParamUri extends BaseResourceIndexedSearchParam {
@@ -54,6 +56,12 @@ public class ResourceIndexedSearchParamUri extends BaseResourceIndexedSearchPara
 
 	private static final long serialVersionUID = 1L;
 
+	/**
+	 * Hash of the resource type, parameter name and URI
+	 */
+	@Column(name = "HASH_URI", nullable = true)
+	private Long myHashUri;
+
 	@Id
 	@SequenceGenerator(name="SEQ_SPIDX_URI", sequenceName="SEQ_SPIDX_URI")
 	@GeneratedValue(strategy = GenerationType.AUTO, generator="SEQ_SPIDX_URI")
@@ -96,6 +104,21 @@ public class ResourceIndexedSearchParamUri extends BaseResourceIndexedSearchPara
 		return myId;
 	}
 
+	@Override
+	protected void calculateValueHashes() {
+		myHashUri = calculateHashUri(getResourceType(), getParamName(), getUri());
+	}
+
+	@Override
+	protected void appendDerivedValues(EqualsBuilder theBuilder, BaseResourceIndexedSearchParam theOther) {
+		ResourceIndexedSearchParamUri obj = (ResourceIndexedSearchParamUri) theOther;
+		theBuilder.append(getHashUri(), obj.getHashUri());
+	}
+
+	public Long getHashUri() {
+		return myHashUri;
+	}
+
 	public String getUri() {
 		return myUri;
 	}
@@ -122,4 +145,7 @@ public class ResourceIndexedSearchParamUri extends BaseResourceIndexedSearchPara
 		return builder.toString();
 	}
 
+	public static long calculateHashUri(String theResourceType, String theParamName, String theUri) {
+		return hash(theResourceType, theParamName, theUri);
+	}
 }
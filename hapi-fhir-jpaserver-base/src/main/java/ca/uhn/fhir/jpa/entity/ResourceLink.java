@@ -99,6 +99,21 @@ public class ResourceLink implements Serializable {
 		setTargetResource(theTargetResource);
 	}
 
+	/**
+	 * Constructor for a link to a target resource which is known to exist, where
+	 * <code>theTargetResource</code> may be an uninitialized reference to the
+	 * target (so its properties must not be read here)
+	 */
+	public ResourceLink(String theSourcePath, ResourceTable theSourceResource, ResourceTable theTargetResource, Long theTargetResourcePid, String theTargetResourceType) {
+		super();
+		Validate.notNull(theTargetResource);
+		setSourcePath(theSourcePath);
+		setSourceResource(theSourceResource);
+		myTargetResource = theTargetResource;
+		myTargetResourcePid = theTargetResourcePid;
+		myTargetResourceType = theTargetResourceType;
+	}
+
 	public ResourceLink(String theSourcePath, ResourceTable theSourceResource, IIdType theTargetResourceUrl) {
 		super();
 		setSourcePath(theSourcePath);
@@ -0,0 +1,152 @@
+package ca.uhn.fhir.jpa.entity;
+
+
+/*
+ * #%L
+ * HAPI FHIR JPA Server
+ * %%
+ * Copyright (C) 2014 - 2017 University Health Network
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import java.io.Serializable;
+import java.util.Date;
+
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.EnumType;
+import javax.persistence.Enumerated;
+import javax.persistence.GeneratedValue;
+import javax.persistence.GenerationType;
+import javax.persistence.Id;
+import javax.persistence.Index;
+import javax.persistence.SequenceGenerator;
+import javax.persistence.Table;
+import javax.persistence.Temporal;
+import javax.persistence.TemporalType;
+
+/**
+ * Tracks the progress of reindexing the resources whose index status has been cleared. The
+ * resources are processed in order of their PID, and the highest PID processed so far is
+ * stored here after each round of chunks so that reindexing can resume after a restart.
+ */
+//@formatter:off
+@Entity
+@Table(name = "HFJ_RES_REINDEX_JOB", indexes= {
+	@Index(name="IDX_REINDEX_JOB_STATUS", columnList="JOB_STATUS")
+})
+//@formatter:on
+public class ResourceReindexJobEntity implements Serializable {
+
+	private static final long serialVersionUID = 1L;
+
+	@Temporal(TemporalType.TIMESTAMP)
+	@Column(name = "CREATED", nullable = false, updatable = false)
+	private Date myCreated;
+
+	@Column(name = "FAILED_COUNT", nullable = false)
+	private long myFailedCount;
+
+	@Id
+	@GeneratedValue(strategy = GenerationType.AUTO, generator = "SEQ_RES_REINDEX_JOB")
+	@SequenceGenerator(name = "SEQ_RES_REINDEX_JOB", sequenceName = "SEQ_RES_REINDEX_JOB")
+	@Column(name = "PID")
+	private Long myId;
+
+	@Column(name = "LAST_PID", nullable = false)
+	private long myLastPid;
+
+	@Column(name = "PROCESSED_COUNT", nullable = false)
+	private long myProcessedCount;
+
+	@Enumerated(EnumType.STRING)
+	@Column(name = "JOB_STATUS", length = 10, nullable = false)
+	private ReindexJobStatusEnum myStatus;
+
+	@Column(name = "TOTAL_COUNT", nullable = false)
+	private long myTotalCount;
+
+	@Temporal(TemporalType.TIMESTAMP)
+	@Column(name = "UPDATED", nullable = false)
+	private Date myUpdated;
+
+	public Date getCreated() {
+		return myCreated;
+	}
+
+	public long getFailedCount() {
+		return myFailedCount;
+	}
+
+	public Long getId() {
+		return myId;
+	}
+
+	/**
+	 * Returns the highest resource PID which has been processed by this job. Resources
+	 * with a PID up to and including this one will not be processed again by this job.
+	 */
+	public long getLastPid() {
+		return myLastPid;
+	}
+
+	public long getProcessedCount() {
+		return myProcessedCount;
+	}
+
+	public ReindexJobStatusEnum getStatus() {
+		return myStatus;
+	}
+
+	/**
+	 * Returns the number of resources which required reindexing when this job was created
+	 */
+	public long getTotalCount() {
+		return myTotalCount;
+	}
+
+	public Date getUpdated() {
+		return myUpdated;
+	}
+
+	public void setCreated(Date theCreated) {
+		myCreated = theCreated;
+	}
+
+	public void setFailedCount(long theFailedCount) {
+		myFailedCount = theFailedCount;
+	}
+
+	public void setLastPid(long theLastPid) {
+		myLastPid = theLastPid;
+	}
+
+	public void setProcessedCount(long theProcessedCount) {
+		myProcessedCount = theProcessedCount;
+	}
+
+	public void setStatus(ReindexJobStatusEnum theStatus) {
+		myStatus = theStatus;
+	}
+
+	public void setTotalCount(long theTotalCount) {
+		myTotalCount = theTotalCount;
+	}
+
+	public void setUpdated(Date theUpdated) {
+		myUpdated = theUpdated;
+	}
+
+}
@@ -27,6 +27,7 @@ import java.util.Collection;
 import java.util.HashSet;
 import java.util.Set;
 
+import javax.persistence.AttributeOverride;
 import javax.persistence.CascadeType;
 import javax.persistence.Column;
 import javax.persistence.Entity;
@@ -65,6 +66,7 @@ import org.hibernate.search.annotations.Store;
 import org.hibernate.search.annotations.TokenFilterDef;
 import org.hibernate.search.annotations.TokenizerDef;
 
+import ca.uhn.fhir.jpa.dao.SearchParamIndexChanges;
 import ca.uhn.fhir.jpa.search.IndexNonDeletedInterceptor;
 import ca.uhn.fhir.model.primitive.IdDt;
 import ca.uhn.fhir.rest.server.Constants;
@@ -73,6 +75,7 @@ import ca.uhn.fhir.rest.server.exceptions.UnprocessableEntityException;
 //@formatter:off
 @Indexed(interceptor=IndexNonDeletedInterceptor.class)	
 @Entity
+@AttributeOverride(name = "myResource", column = @Column(name = "RES_TEXT", length = Integer.MAX_VALUE - 1, nullable = true))
 @Table(name = "HFJ_RESOURCE", uniqueConstraints = {}, indexes= {
 	@Index(name = "IDX_RES_DATE", columnList="RES_UPDATED"), 
 	@Index(name = "IDX_RES_LANG", columnList="RES_TYPE,RES_LANGUAGE"), 
@@ -149,6 +152,13 @@ public class ResourceTable extends BaseHasResource implements Serializable {
 	//@formatter:on
 	private String myContentText;
 
+	/**
+	 * If set, the fulltext index document for this entity is written by a background task
+	 * instead of when the transaction commits - Not stored in the DB
+	 */
+	@Transient()
+	private transient boolean myFulltextIndexingDeferred;
+
 	@Column(name = "SP_HAS_LINKS")
 	private boolean myHasLinks;
 
@@ -161,9 +171,28 @@ public class ResourceTable extends BaseHasResource implements Serializable {
 	@OneToMany(mappedBy = "myTargetResource", cascade = {}, fetch = FetchType.LAZY, orphanRemoval = false)
 	private Collection<ResourceLink> myIncomingResourceLinks;
 
+	/**
+	 * Counts of the index rows changed by the most recent update of this entity - Not stored in the DB
+	 */
+	@Transient()
+	private transient SearchParamIndexChanges myIndexChanges;
+
 	@Column(name = "SP_INDEX_STATUS", nullable = true)
 	private Long myIndexStatus;
 
+	/**
+	 * Body of the current version, when it is only stored in the version table - Not stored in the DB
+	 */
+	@Transient()
+	private transient byte[] myResourceFromHistory;
+
+	/**
+	 * Encoding of {@link #myResourceFromHistory}, which is the encoding of the version row it was read
+	 * from and may differ from the encoding of this row - Not stored in the DB
+	 */
+	@Transient()
+	private transient ResourceEncodingEnum myResourceFromHistoryEncoding;
+
 	@Column(name = "RES_LANGUAGE", length = MAX_LANGUAGE_LENGTH, nullable = true)
 	private String myLanguage;
 
@@ -245,6 +274,10 @@ public class ResourceTable extends BaseHasResource implements Serializable {
 		return tag;
 	}
 
+	public String getContentTextParsedIntoWords() {
+		return myContentText;
+	}
+
 	@Override
 	public Long getId() {
 		return myId;
@@ -260,14 +293,43 @@ public class ResourceTable extends BaseHasResource implements Serializable {
 		}
 	}
 
+	/**
+	 * Returns the counts of index rows which were kept, added and removed when this
+	 * entity was last stored, or <code>null</code> if it has not been indexed in
+	 * the current session
+	 */
+	public SearchParamIndexChanges getIndexChanges() {
+		return myIndexChanges;
+	}
+
 	public Long getIndexStatus() {
 		return myIndexStatus;
 	}
 
+	/**
+	 * Returns the body of the current version if it has been loaded from the
+	 * version table (see {@link ca.uhn.fhir.jpa.dao.DaoConfig#setStoreResourceBodyInHistoryOnly(boolean)}),
+	 * or <code>null</code> if it has not been loaded in the current session
+	 */
+	public byte[] getResourceFromHistory() {
+		return myResourceFromHistory;
+	}
+
+	/**
+	 * Returns the encoding of the body returned by {@link #getResourceFromHistory()}
+	 */
+	public ResourceEncodingEnum getResourceFromHistoryEncoding() {
+		return myResourceFromHistoryEncoding;
+	}
+
 	public String getLanguage() {
 		return myLanguage;
 	}
 
+	public String getNarrativeTextParsedIntoWords() {
+		return myNarrativeText;
+	}
+
 	public Collection<ResourceIndexedSearchParamCoords> getParamsCoords() {
 		if (myParamsCoords == null) {
 			myParamsCoords = new ArrayList<ResourceIndexedSearchParamCoords>();
@@ -355,6 +417,13 @@ public class ResourceTable extends BaseHasResource implements Serializable {
 		return false;
 	}
 
+	/**
+	 * See {@link #setFulltextIndexingDeferred(boolean)}
+	 */
+	public boolean isFulltextIndexingDeferred() {
+		return myFulltextIndexingDeferred;
+	}
+
 	public boolean isHasLinks() {
 		return myHasLinks;
 	}
@@ -391,6 +460,16 @@ public class ResourceTable extends BaseHasResource implements Serializable {
 		myContentText = theContentText;
 	}
 
+	/**
+	 * If set to <code>true</code>, the fulltext index is not updated for this entity when
+	 * the current transaction commits, since a background task will do it instead
+	 * 
+	 * @see ca.uhn.fhir.jpa.search.FulltextIndexingSvc
+	 */
+	public void setFulltextIndexingDeferred(boolean theFulltextIndexingDeferred) {
+		myFulltextIndexingDeferred = theFulltextIndexingDeferred;
+	}
+
 	public void setHasLinks(boolean theHasLinks) {
 		myHasLinks = theHasLinks;
 	}
@@ -399,10 +478,19 @@ public class ResourceTable extends BaseHasResource implements Serializable {
 		myId = theId;
 	}
 
+	public void setIndexChanges(SearchParamIndexChanges theIndexChanges) {
+		myIndexChanges = theIndexChanges;
+	}
+
 	public void setIndexStatus(Long theIndexStatus) {
 		myIndexStatus = theIndexStatus;
 	}
 
+	public void setResourceFromHistory(byte[] theResourceFromHistory, ResourceEncodingEnum theEncoding) {
+		myResourceFromHistory = theResourceFromHistory;
+		myResourceFromHistoryEncoding = theResourceFromHistory != null ? theEncoding : null;
+	}
+
 	public void setLanguage(String theLanguage) {
 		if (defaultString(theLanguage).length() > MAX_LANGUAGE_LENGTH) {
 			throw new UnprocessableEntityException("Language exceeds maximum length of " + MAX_LANGUAGE_LENGTH + " chars: " + theLanguage);
@@ -79,6 +79,13 @@ public class Search implements Serializable {
 	@Column(name="LAST_UPDATED_LOW", nullable=true, insertable=true, updatable=false)
 	private Date myLastUpdatedLow;
 
+	@Temporal(TemporalType.TIMESTAMP)
+	@Column(name="LAST_PROGRESS", nullable=true)
+	private Date myLastProgress;
+
+	@Column(name="NUM_FOUND", nullable=true)
+	private Integer myNumFound;
+
 	@Column(name="PREFERRED_PAGE_SIZE", nullable=true)
 	private Integer myPreferredPageSize;
 	
@@ -91,6 +98,10 @@ public class Search implements Serializable {
 	@OneToMany(mappedBy="mySearch")
 	private Collection<SearchResult> myResults;
 
+	@Enumerated(EnumType.STRING)
+	@Column(name="SEARCH_STATUS", length=10, nullable=true)
+	private SearchStatusEnum mySearchStatus;
+
 	@Enumerated(EnumType.ORDINAL)
 	@Column(name="SEARCH_TYPE", nullable=false)
 	private SearchTypeEnum mySearchType;
@@ -132,6 +143,26 @@ public class Search implements Serializable {
 		}
 	}
 
+	/**
+	 * Returns the time at which results were last written for a search which is being loaded
+	 * in the background, or <code>null</code> for other searches
+	 */
+	public Date getLastProgress() {
+		return myLastProgress;
+	}
+
+	/**
+	 * Returns the number of results which have been written to the database so far. For
+	 * searches which are not being loaded in the background this is the same as
+	 * {@link #getTotalCount()}
+	 */
+	public Integer getNumFound() {
+		if (myNumFound == null) {
+			return myTotalCount;
+		}
+		return myNumFound;
+	}
+
 	public Integer getPreferredPageSize() {
 		return myPreferredPageSize;
 	}
@@ -144,6 +175,17 @@ public class Search implements Serializable {
 		return myResourceType;
 	}
 
+	/**
+	 * Searches created before the search status was tracked are
+	 * always {@link SearchStatusEnum#FINISHED}
+	 */
+	public SearchStatusEnum getStatus() {
+		if (mySearchStatus == null) {
+			return SearchStatusEnum.FINISHED;
+		}
+		return mySearchStatus;
+	}
+
 	public SearchTypeEnum getSearchType() {
 		return mySearchType;
 	}
@@ -175,6 +217,10 @@ public class Search implements Serializable {
 		}
 	}
 
+	public void setNumFound(Integer theNumFound) {
+		myNumFound = theNumFound;
+	}
+
 	public void setPreferredPageSize(Integer thePreferredPageSize) {
 		myPreferredPageSize = thePreferredPageSize;
 	}
@@ -188,6 +234,14 @@ public class Search implements Serializable {
 		myResourceType = theResourceType;
 	}
 
+	public void setLastProgress(Date theLastProgress) {
+		myLastProgress = theLastProgress;
+	}
+
+	public void setStatus(SearchStatusEnum theStatus) {
+		mySearchStatus = theStatus;
+	}
+
 	public void setSearchType(SearchTypeEnum theSearchType) {
 		mySearchType = theSearchType;
 	}
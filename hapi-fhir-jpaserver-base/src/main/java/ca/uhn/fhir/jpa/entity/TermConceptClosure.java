@@ -0,0 +1,94 @@
+package ca.uhn.fhir.jpa.entity;
+
+
+/*
+ * #%L
+ * HAPI FHIR JPA Server
+ * %%
+ * Copyright (C) 2014 - 2017 University Health Network
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import java.io.Serializable;
+
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.GeneratedValue;
+import javax.persistence.GenerationType;
+import javax.persistence.Id;
+import javax.persistence.Index;
+import javax.persistence.SequenceGenerator;
+import javax.persistence.Table;
+
+/**
+ * Precomputed ancestor/descendant pair for a concept hierarchy. One row exists
+ * for every (ancestor, descendant) pair reachable through parent/child links
+ * within a single code system version (a concept is not its own ancestor), so
+ * that subsumption lookups are a single indexed query instead of a recursive
+ * walk through {@link TermConceptParentChildLink} collections.
+ */
+//@formatter:off
+@Entity
+@Table(name="TRM_CONCEPT_CLOSURE", indexes= {
+	@Index(name="IDX_CONCEPT_CLOSURE_ANC", columnList="ANCESTOR_PID"),
+	@Index(name="IDX_CONCEPT_CLOSURE_DESC", columnList="DESCENDANT_PID"),
+	@Index(name="IDX_CONCEPT_CLOSURE_CS", columnList="CODESYSTEM_PID")
+})
+//@formatter:on
+public class TermConceptClosure implements Serializable {
+	private static final long serialVersionUID = 1L;
+
+	@Column(name = "ANCESTOR_PID", nullable = false)
+	private Long myAncestorPid;
+
+	@Column(name = "CODESYSTEM_PID", nullable = false)
+	private Long myCodeSystemVersionPid;
+
+	@Column(name = "DESCENDANT_PID", nullable = false)
+	private Long myDescendantPid;
+
+	@Id()
+	@SequenceGenerator(name = "SEQ_CONCEPT_CLOSURE_PID", sequenceName = "SEQ_CONCEPT_CLOSURE_PID")
+	@GeneratedValue(strategy = GenerationType.AUTO, generator = "SEQ_CONCEPT_CLOSURE_PID")
+	@Column(name = "PID")
+	private Long myPid;
+
+	public TermConceptClosure() {
+		super();
+	}
+
+	public TermConceptClosure(Long theCodeSystemVersionPid, Long theAncestorPid, Long theDescendantPid) {
+		myCodeSystemVersionPid = theCodeSystemVersionPid;
+		myAncestorPid = theAncestorPid;
+		myDescendantPid = theDescendantPid;
+	}
+
+	public Long getAncestorPid() {
+		return myAncestorPid;
+	}
+
+	public Long getCodeSystemVersionPid() {
+		return myCodeSystemVersionPid;
+	}
+
+	public Long getDescendantPid() {
+		return myDescendantPid;
+	}
+
+	public Long getId() {
+		return myPid;
+	}
+
+}
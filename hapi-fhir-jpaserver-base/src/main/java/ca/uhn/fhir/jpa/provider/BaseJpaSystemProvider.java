@@ -45,6 +45,7 @@ import ca.uhn.fhir.util.ParametersUtil;
 public class BaseJpaSystemProvider<T, MT> extends BaseJpaProvider {
 
 	public static final String MARK_ALL_RESOURCES_FOR_REINDEXING = "$mark-all-resources-for-reindexing";
+	public static final String REINDEX_STATUS = "$reindex-status";
 	
 	private IFhirSystemDao<T, MT> myDao;
 
@@ -20,16 +20,25 @@ package ca.uhn.fhir.jpa.provider;
  * #L%
  */
 
+import java.util.Locale;
+
+import org.apache.commons.lang3.time.DateUtils;
 import org.hl7.fhir.instance.model.api.IBaseParameters;
 import org.hl7.fhir.instance.model.api.IBaseResource;
 import org.hl7.fhir.instance.model.api.IPrimitiveType;
+import org.springframework.beans.factory.annotation.Autowired;
 
+import ca.uhn.fhir.jpa.reindex.ReindexJobStatus;
+import ca.uhn.fhir.jpa.reindex.ResourceReindexingSvc;
 import ca.uhn.fhir.rest.annotation.Operation;
 import ca.uhn.fhir.rest.annotation.OperationParam;
 import ca.uhn.fhir.util.ParametersUtil;
 
 public abstract class BaseJpaSystemProviderDstu2Plus<T, MT> extends BaseJpaSystemProvider<T, MT> {
 
+	@Autowired
+	private ResourceReindexingSvc myResourceReindexingSvc;
+
 	//@formatter:off
 	@Operation(name=MARK_ALL_RESOURCES_FOR_REINDEXING, idempotent=true, returnParameters= {
 		@OperationParam(name="status")
@@ -46,5 +55,48 @@ public abstract class BaseJpaSystemProviderDstu2Plus<T, MT> extends BaseJpaSyste
 		return retVal;
 	}
 
+	/**
+	 * Reports the progress of the current (or most recent) reindexing job. The counts are
+	 * returned as <code>decimal</code> values rather than <code>integer</code>, since FHIR
+	 * integers are limited to 32 bits.
+	 */
+	//@formatter:off
+	@Operation(name=REINDEX_STATUS, idempotent=true, returnParameters= {
+		@OperationParam(name="status", min=1, max=1),
+		@OperationParam(name="total", min=0, max=1),
+		@OperationParam(name="processed", min=0, max=1),
+		@OperationParam(name="failed", min=0, max=1),
+		@OperationParam(name="resourcesPerSecond", min=0, max=1),
+		@OperationParam(name="estimatedSecondsRemaining", min=0, max=1)
+	})
+	//@formatter:on
+	public IBaseResource reindexStatus() {
+		IBaseParameters retVal = ParametersUtil.newInstance(getContext());
+
+		ReindexJobStatus status = myResourceReindexingSvc.getStatus();
+		if (status == null) {
+			ParametersUtil.addParameterToParameters(getContext(), retVal, ParametersUtil.createString(getContext(), "NONE"), "status");
+			return retVal;
+		}
+
+		ParametersUtil.addParameterToParameters(getContext(), retVal, ParametersUtil.createString(getContext(), status.getStatus().name()), "status");
+		ParametersUtil.addParameterToParameters(getContext(), retVal, createPrimitive("decimal", Long.toString(status.getTotalCount())), "total");
+		ParametersUtil.addParameterToParameters(getContext(), retVal, createPrimitive("decimal", Long.toString(status.getProcessedCount())), "processed");
+		ParametersUtil.addParameterToParameters(getContext(), retVal, createPrimitive("decimal", Long.toString(status.getFailedCount())), "failed");
+		ParametersUtil.addParameterToParameters(getContext(), retVal, createPrimitive("decimal", String.format(Locale.US, "%.1f", status.getResourcesPerSecond())), "resourcesPerSecond");
+		if (status.getEstimatedMillisRemaining() != null) {
+			long seconds = status.getEstimatedMillisRemaining() / DateUtils.MILLIS_PER_SECOND;
+			ParametersUtil.addParameterToParameters(getContext(), retVal, createPrimitive("decimal", Long.toString(seconds)), "estimatedSecondsRemaining");
+		}
+
+		return retVal;
+	}
+
+	private IPrimitiveType<?> createPrimitive(String theType, String theValue) {
+		IPrimitiveType<?> retVal = (IPrimitiveType<?>) getContext().getElementDefinition(theType).newInstance();
+		retVal.setValueAsString(theValue);
+		return retVal;
+	}
+
 	
 }
@@ -0,0 +1,116 @@
+package ca.uhn.fhir.jpa.reindex;
+
+
+/*
+ * #%L
+ * HAPI FHIR JPA Server
+ * %%
+ * Copyright (C) 2014 - 2017 University Health Network
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import java.util.Date;
+
+import ca.uhn.fhir.jpa.entity.ReindexJobStatusEnum;
+import ca.uhn.fhir.jpa.entity.ResourceReindexJobEntity;
+
+/**
+ * A snapshot of the progress of a reindexing job
+ * 
+ * @see ResourceReindexingSvc#getStatus()
+ */
+public class ReindexJobStatus {
+
+	private final Date myCreated;
+	private final long myFailedCount;
+	private final Long myJobId;
+	private final long myProcessedCount;
+	private final ReindexJobStatusEnum myStatus;
+	private final long myTotalCount;
+	private final Date myUpdated;
+
+	public ReindexJobStatus(ResourceReindexJobEntity theJob) {
+		myJobId = theJob.getId();
+		myStatus = theJob.getStatus();
+		myCreated = theJob.getCreated();
+		myUpdated = theJob.getUpdated();
+		myTotalCount = theJob.getTotalCount();
+		myProcessedCount = theJob.getProcessedCount();
+		myFailedCount = theJob.getFailedCount();
+	}
+
+	public Date getCreated() {
+		return myCreated;
+	}
+
+	/**
+	 * Returns the estimated time until the job completes, based on the average throughput
+	 * so far, or <code>null</code> if the job is not active or has not processed anything yet
+	 */
+	public Long getEstimatedMillisRemaining() {
+		double resourcesPerSecond = getResourcesPerSecond();
+		if (myStatus != ReindexJobStatusEnum.ACTIVE || resourcesPerSecond <= 0) {
+			return null;
+		}
+		long remaining = Math.max(0, myTotalCount - myProcessedCount);
+		return (long) (remaining / resourcesPerSecond * 1000);
+	}
+
+	/**
+	 * Returns the number of resources which could not be reindexed
+	 */
+	public long getFailedCount() {
+		return myFailedCount;
+	}
+
+	public Long getJobId() {
+		return myJobId;
+	}
+
+	/**
+	 * Returns the number of resources processed so far, including those which failed
+	 */
+	public long getProcessedCount() {
+		return myProcessedCount;
+	}
+
+	/**
+	 * Returns the average number of resources processed per second between the time the
+	 * job was created and the time it last recorded its progress
+	 */
+	public double getResourcesPerSecond() {
+		long millis = myUpdated.getTime() - myCreated.getTime();
+		if (millis <= 0) {
+			return 0;
+		}
+		return myProcessedCount * 1000.0 / millis;
+	}
+
+	public ReindexJobStatusEnum getStatus() {
+		return myStatus;
+	}
+
+	/**
+	 * Returns the number of resources which required reindexing when the job was created
+	 */
+	public long getTotalCount() {
+		return myTotalCount;
+	}
+
+	public Date getUpdated() {
+		return myUpdated;
+	}
+
+}
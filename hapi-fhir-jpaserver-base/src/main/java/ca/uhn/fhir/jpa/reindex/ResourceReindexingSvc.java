@@ -0,0 +1,280 @@
+package ca.uhn.fhir.jpa.reindex;
+
+
+/*
+ * #%L
+ * HAPI FHIR JPA Server
+ * %%
+ * Copyright (C) 2014 - 2017 University Health Network
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import javax.annotation.PreDestroy;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.core.task.TaskExecutor;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.support.TransactionCallback;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import ca.uhn.fhir.jpa.config.BaseConfig;
+import ca.uhn.fhir.jpa.dao.DaoConfig;
+import ca.uhn.fhir.jpa.dao.IFhirSystemDao;
+import ca.uhn.fhir.jpa.dao.data.IResourceReindexJobDao;
+import ca.uhn.fhir.jpa.entity.ReindexJobStatusEnum;
+import ca.uhn.fhir.jpa.entity.ResourceReindexJobEntity;
+import ca.uhn.fhir.jpa.util.StopWatch;
+import ca.uhn.fhir.jpa.util.TaskExecutorUtil;
+
+/**
+ * Reindexes resources which have been marked as needing fresh indexing (e.g. by
+ * {@link IFhirSystemDao#markAllResourcesForReindexing()}).
+ * <p>
+ * The work is tracked by a job (see {@link ResourceReindexJobEntity}). The resources are
+ * processed in ascending PID order, in rounds of up to {@link DaoConfig#getReindexThreadCount()}
+ * chunks of {@link DaoConfig#getReindexChunkSize()} resources. The chunks in a round are reindexed
+ * concurrently on the shared JPA task executor, each in its own transaction, so a resource
+ * which can't be reindexed only affects its own chunk. After each round the job records the
+ * highest PID processed, so if the server is restarted the job resumes where it left off.
+ * </p>
+ * <p>
+ * Only one pass runs at a time within a server. This class does not coordinate several
+ * servers sharing a database.
+ * </p>
+ */
+public class ResourceReindexingSvc {
+	private static final org.slf4j.Logger ourLog = org.slf4j.LoggerFactory.getLogger(ResourceReindexingSvc.class);
+
+	/**
+	 * The maximum number of rounds processed by each scheduled reindexing pass
+	 */
+	public static final int SCHEDULED_PASS_MAX_ROUNDS = 10;
+
+	@Autowired
+	private DaoConfig myDaoConfig;
+
+	@Autowired
+	private IResourceReindexJobDao myResourceReindexJobDao;
+
+	private final AtomicBoolean myRunning = new AtomicBoolean();
+
+	private volatile boolean myStopped;
+
+	@Autowired
+	private IFhirSystemDao<?, ?> mySystemDao;
+
+	@Autowired
+	@Qualifier(BaseConfig.JPA_TASK_EXECUTOR)
+	private TaskExecutor myTaskExecutor;
+
+	@Autowired
+	private PlatformTransactionManager myTxManager;
+
+	private void checkpoint(final Long theJobId, final long theLastPid, final int theProcessed, final int theFailed) {
+		newTxTemplate().execute(new TransactionCallback<Void>() {
+			@Override
+			public Void doInTransaction(TransactionStatus theStatus) {
+				ResourceReindexJobEntity job = myResourceReindexJobDao.findOne(theJobId);
+				job.setLastPid(theLastPid);
+				job.setProcessedCount(job.getProcessedCount() + theProcessed);
+				job.setFailedCount(job.getFailedCount() + theFailed);
+				job.setUpdated(new Date());
+				myResourceReindexJobDao.save(job);
+				return null;
+			}
+		});
+	}
+
+	private int doRunReindexingPass(int theMaxRounds) {
+		Long jobId = findOrCreateActiveJob();
+		if (jobId == null) {
+			return 0;
+		}
+
+		int retVal = 0;
+		StopWatch sw = new StopWatch();
+		for (int round = 0; round < theMaxRounds && !myStopped; round++) {
+			ResourceReindexJobEntity job = loadJob(jobId);
+			if (job.getStatus() != ReindexJobStatusEnum.ACTIVE) {
+				ourLog.info("Reindexing job {} is no longer active", jobId);
+				break;
+			}
+
+			int chunkSize = myDaoConfig.getReindexChunkSize();
+			int threadCount = myDaoConfig.getReindexThreadCount();
+			List<Long> pids = mySystemDao.findResourcePidsRequiringReindexing(job.getLastPid(), chunkSize * threadCount);
+			if (pids.isEmpty()) {
+				markComplete(jobId);
+				ourLog.info("Reindexing job {} is complete", jobId);
+				break;
+			}
+
+			List<Callable<Integer>> tasks = new ArrayList<Callable<Integer>>();
+			for (int from = 0; from < pids.size(); from += chunkSize) {
+				final List<Long> chunk = new ArrayList<Long>(pids.subList(from, Math.min(from + chunkSize, pids.size())));
+				tasks.add(new Callable<Integer>() {
+					@Override
+					public Integer call() {
+						return mySystemDao.reindex(chunk);
+					}
+				});
+			}
+
+			int failed = 0;
+			for (Integer next : TaskExecutorUtil.executeAll(myTaskExecutor, tasks, threadCount)) {
+				failed += next;
+			}
+
+			checkpoint(jobId, pids.get(pids.size() - 1), pids.size(), failed);
+			retVal += pids.size();
+		}
+
+		if (retVal > 0) {
+			ourLog.info("Reindexing pass processed {} resources in {}ms", retVal, sw.getMillis());
+		}
+		return retVal;
+	}
+
+	/**
+	 * Returns the ID of the active job, creating one if there is none and some resources
+	 * require reindexing
+	 */
+	private Long findOrCreateActiveJob() {
+		return newTxTemplate().execute(new TransactionCallback<Long>() {
+			@Override
+			public Long doInTransaction(TransactionStatus theStatus) {
+				List<ResourceReindexJobEntity> active = myResourceReindexJobDao.findByStatus(ReindexJobStatusEnum.ACTIVE, new PageRequest(0, 1));
+				if (!active.isEmpty()) {
+					return active.get(0).getId();
+				}
+
+				if (mySystemDao.findResourcePidsRequiringReindexing(-1L, 1).isEmpty()) {
+					return null;
+				}
+
+				Date now = new Date();
+				ResourceReindexJobEntity job = new ResourceReindexJobEntity();
+				job.setStatus(ReindexJobStatusEnum.ACTIVE);
+				job.setCreated(now);
+				job.setUpdated(now);
+				job.setLastPid(-1L);
+				job.setTotalCount(mySystemDao.countResourcesRequiringReindexing());
+				job = myResourceReindexJobDao.save(job);
+
+				ourLog.info("Created reindexing job {} for {} resources", job.getId(), job.getTotalCount());
+				return job.getId();
+			}
+		});
+	}
+
+	/**
+	 * Returns the status of the active reindexing job, or of the most recent one if none
+	 * is active. Returns <code>null</code> if no reindexing job has ever been created.
+	 */
+	public ReindexJobStatus getStatus() {
+		return newTxTemplate().execute(new TransactionCallback<ReindexJobStatus>() {
+			@Override
+			public ReindexJobStatus doInTransaction(TransactionStatus theStatus) {
+				List<ResourceReindexJobEntity> jobs = myResourceReindexJobDao.findByStatus(ReindexJobStatusEnum.ACTIVE, new PageRequest(0, 1));
+				if (jobs.isEmpty()) {
+					jobs = myResourceReindexJobDao.findMostRecent(new PageRequest(0, 1));
+				}
+				if (jobs.isEmpty()) {
+					return null;
+				}
+				return new ReindexJobStatus(jobs.get(0));
+			}
+		});
+	}
+
+	private ResourceReindexJobEntity loadJob(final Long theJobId) {
+		return newTxTemplate().execute(new TransactionCallback<ResourceReindexJobEntity>() {
+			@Override
+			public ResourceReindexJobEntity doInTransaction(TransactionStatus theStatus) {
+				return myResourceReindexJobDao.findOne(theJobId);
+			}
+		});
+	}
+
+	private void markComplete(final Long theJobId) {
+		newTxTemplate().execute(new TransactionCallback<Void>() {
+			@Override
+			public Void doInTransaction(TransactionStatus theStatus) {
+				ResourceReindexJobEntity job = myResourceReindexJobDao.findOne(theJobId);
+				if (job.getStatus() == ReindexJobStatusEnum.ACTIVE) {
+					job.setStatus(ReindexJobStatusEnum.COMPLETE);
+					job.setUpdated(new Date());
+					myResourceReindexJobDao.save(job);
+				}
+				return null;
+			}
+		});
+	}
+
+	private TransactionTemplate newTxTemplate() {
+		TransactionTemplate retVal = new TransactionTemplate(myTxManager);
+		retVal.setPropagationBehavior(TransactionTemplate.PROPAGATION_REQUIRES_NEW);
+		return retVal;
+	}
+
+	/**
+	 * Reindexes resources until none are left which require it (or the server is shutting
+	 * down). If a pass is already running, returns immediately.
+	 * 
+	 * @return Returns the number of resources processed
+	 */
+	public int runReindexingPass() {
+		return runReindexingPass(Integer.MAX_VALUE);
+	}
+
+	/**
+	 * Reindexes at most the given number of rounds, where a round is up to
+	 * {@link DaoConfig#getReindexThreadCount()} chunks of {@link DaoConfig#getReindexChunkSize()}
+	 * resources, and then returns even if some resources still require reindexing. The job's
+	 * progress is checkpointed after each round, so the next pass carries on from there. If
+	 * a pass is already running, returns immediately.
+	 * 
+	 * @param theMaxRounds
+	 *           The maximum number of rounds to process
+	 * @return Returns the number of resources processed
+	 * @see #SCHEDULED_PASS_MAX_ROUNDS
+	 */
+	public int runReindexingPass(int theMaxRounds) {
+		if (!myRunning.compareAndSet(false, true)) {
+			ourLog.debug("Reindexing pass is already running");
+			return 0;
+		}
+		try {
+			return doRunReindexingPass(theMaxRounds);
+		} finally {
+			myRunning.set(false);
+		}
+	}
+
+	@PreDestroy
+	public void stop() {
+		myStopped = true;
+	}
+
+}
@@ -0,0 +1,273 @@
+package ca.uhn.fhir.jpa.search;
+
+
+/*
+ * #%L
+ * HAPI FHIR JPA Server
+ * %%
+ * Copyright (C) 2014 - 2017 University Health Network
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
+import javax.persistence.PersistenceContextType;
+
+import org.hibernate.search.jpa.FullTextEntityManager;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionCallbackWithoutResult;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import ca.uhn.fhir.jpa.dao.DaoConfig;
+import ca.uhn.fhir.jpa.dao.data.IResourceTableDao;
+import ca.uhn.fhir.jpa.entity.ResourceTable;
+import ca.uhn.fhir.jpa.util.StopWatch;
+
+/**
+ * Writes the fulltext index documents for resources using a background task, so that the
+ * text analysis is not part of the transaction which stores the resource. The text to index
+ * is captured when the resource is stored, and is queued once the transaction commits. If the
+ * queue is full, the thread which is adding to it applies queued documents itself until there
+ * is room again.
+ * <p>
+ * If a batch of documents can't be applied, the resources in it are marked for reindexing
+ * so that the next reindexing pass indexes them again.
+ * </p>
+ * 
+ * @see DaoConfig#setFulltextIndexingAsync(boolean)
+ */
+public class FulltextIndexingSvc {
+	private static final org.slf4j.Logger ourLog = org.slf4j.LoggerFactory.getLogger(FulltextIndexingSvc.class);
+
+	private final AtomicLong myAppliedCount = new AtomicLong();
+
+	private final AtomicLong myFailedCount = new AtomicLong();
+
+	@Autowired
+	private DaoConfig myDaoConfig;
+
+	@PersistenceContext(type = PersistenceContextType.TRANSACTION)
+	private EntityManager myEntityManager;
+
+	private final ReentrantLock myProcessingLock = new ReentrantLock();
+	private final LinkedBlockingQueue<PendingDocument> myQueue = new LinkedBlockingQueue<PendingDocument>();
+	private final AtomicLong myQueuedCount = new AtomicLong();
+
+	@Autowired
+	private IResourceTableDao myResourceTableDao;
+
+	@Autowired
+	private PlatformTransactionManager myTxManager;
+
+	/**
+	 * Applies a batch of queued documents. The caller must hold the processing lock.
+	 * 
+	 * @return Returns the number of documents taken from the queue
+	 */
+	private int applyBatch() {
+		final List<PendingDocument> batch = new ArrayList<PendingDocument>();
+		myQueue.drainTo(batch, myDaoConfig.getFulltextIndexingBatchSize());
+		if (batch.isEmpty()) {
+			return 0;
+		}
+
+		StopWatch sw = new StopWatch();
+		try {
+			TransactionTemplate txTemplate = new TransactionTemplate(myTxManager);
+			txTemplate.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+			txTemplate.execute(new TransactionCallbackWithoutResult() {
+				@Override
+				protected void doInTransactionWithoutResult(TransactionStatus theStatus) {
+					FullTextEntityManager em = org.hibernate.search.jpa.Search.getFullTextEntityManager(myEntityManager);
+					for (PendingDocument next : batch) {
+						ResourceTable entity = myEntityManager.find(ResourceTable.class, next.myResourcePid);
+
+						/*
+						 * If the resource has been deleted its document has already been removed, and
+						 * if it has been updated again the newer version is further along the queue
+						 */
+						if (entity == null || entity.getDeleted() != null || entity.getIndexStatus() == null || entity.getVersion() != next.myVersion) {
+							continue;
+						}
+
+						entity.setContentTextParsedIntoWords(next.myContentText);
+						entity.setNarrativeTextParsedIntoWords(next.myNarrativeText);
+						em.index(entity);
+					}
+				}
+			});
+			ourLog.debug("Applied {} fulltext index documents in {}ms", batch.size(), sw.getMillis());
+			myAppliedCount.addAndGet(batch.size());
+		} catch (RuntimeException e) {
+			ourLog.error("Failed to apply " + batch.size() + " fulltext index documents, marking the resources for reindexing", e);
+			markForReindexing(batch);
+			myFailedCount.addAndGet(batch.size());
+		}
+		return batch.size();
+	}
+
+	/**
+	 * Waits until every document which was queued before this method was called has been applied,
+	 * applying queued documents on the calling thread if the background task is not already doing so.
+	 * Resources which were stored in a transaction that committed before this call are therefore
+	 * searchable when it returns <code>true</code>.
+	 * 
+	 * @param theMaxWaitMillis The maximum time to wait
+	 * @return Returns <code>true</code> if the documents were applied, or <code>false</code> if the maximum time was reached first
+	 *         or if some of the documents could not be applied (those resources are marked for reindexing instead)
+	 */
+	public boolean awaitIndexing(long theMaxWaitMillis) {
+		long target = myQueuedCount.get();
+		long failedBefore = myFailedCount.get();
+		long deadline = System.currentTimeMillis() + theMaxWaitMillis;
+		while (myAppliedCount.get() + myFailedCount.get() < target) {
+			long remaining = deadline - System.currentTimeMillis();
+			if (remaining <= 0) {
+				return false;
+			}
+			try {
+				if (myProcessingLock.tryLock(remaining, TimeUnit.MILLISECONDS)) {
+					try {
+						applyBatch();
+					} finally {
+						myProcessingLock.unlock();
+					}
+				}
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				return false;
+			}
+		}
+		return myFailedCount.get() == failedBefore;
+	}
+
+	private void enqueue(PendingDocument theDocument) {
+		while (myQueue.size() >= myDaoConfig.getFulltextIndexingQueueCapacity()) {
+			ourLog.debug("Fulltext indexing queue is full, applying queued documents on the calling thread");
+			myProcessingLock.lock();
+			try {
+				applyBatch();
+			} finally {
+				myProcessingLock.unlock();
+			}
+		}
+		myQueue.add(theDocument);
+		myQueuedCount.incrementAndGet();
+	}
+
+	/**
+	 * Returns the number of documents which could not be applied since the server started. The
+	 * resources they belong to are marked for reindexing, so that they are indexed by the next
+	 * reindexing pass.
+	 */
+	public long getFailedCount() {
+		return myFailedCount.get();
+	}
+
+	/**
+	 * Returns the number of documents waiting to be applied
+	 */
+	public int getQueueSize() {
+		return myQueue.size();
+	}
+
+	private void markForReindexing(List<PendingDocument> theBatch) {
+		final List<Long> pids = new ArrayList<Long>();
+		for (PendingDocument next : theBatch) {
+			pids.add(next.myResourcePid);
+		}
+		try {
+			TransactionTemplate txTemplate = new TransactionTemplate(myTxManager);
+			txTemplate.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+			txTemplate.execute(new TransactionCallbackWithoutResult() {
+				@Override
+				protected void doInTransactionWithoutResult(TransactionStatus theStatus) {
+					myResourceTableDao.markForReindexing(pids);
+				}
+			});
+		} catch (RuntimeException e) {
+			ourLog.error("Failed to mark resources " + pids + " for reindexing", e);
+		}
+	}
+
+	/**
+	 * Applies all queued documents
+	 */
+	@Scheduled(fixedDelay = 100)
+	@Transactional(propagation = Propagation.NOT_SUPPORTED)
+	public void processQueue() {
+		if (myDaoConfig.isSchedulingDisabled() || myQueue.isEmpty()) {
+			return;
+		}
+		myProcessingLock.lock();
+		try {
+			while (applyBatch() > 0) {
+				// keep going
+			}
+		} finally {
+			myProcessingLock.unlock();
+		}
+	}
+
+	/**
+	 * Queues the fulltext index document for the given entity, using the text which is currently
+	 * populated on it. The document is only queued once the current transaction commits.
+	 */
+	public void queue(ResourceTable theEntity) {
+		final PendingDocument document = new PendingDocument(theEntity);
+		if (TransactionSynchronizationManager.isSynchronizationActive()) {
+			TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+				@Override
+				public void afterCommit() {
+					enqueue(document);
+				}
+			});
+		} else {
+			enqueue(document);
+		}
+	}
+
+	private static class PendingDocument {
+
+		private final String myContentText;
+		private final String myNarrativeText;
+		private final Long myResourcePid;
+		private final long myVersion;
+
+		public PendingDocument(ResourceTable theEntity) {
+			myResourcePid = theEntity.getId();
+			myVersion = theEntity.getVersion();
+			myContentText = theEntity.getContentTextParsedIntoWords();
+			myNarrativeText = theEntity.getNarrativeTextParsedIntoWords();
+		}
+
+	}
+
+}
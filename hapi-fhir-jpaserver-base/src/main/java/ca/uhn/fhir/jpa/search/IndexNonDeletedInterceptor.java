@@ -26,12 +26,16 @@ import org.hibernate.search.indexes.interceptor.IndexingOverride;
 import ca.uhn.fhir.jpa.entity.ResourceTable;
 
 /**
- * Only store non-deleted resources
+ * Only store non-deleted resources, and skip resources which will be indexed by
+ * the {@link FulltextIndexingSvc} instead
  */
 public class IndexNonDeletedInterceptor implements EntityIndexingInterceptor<ResourceTable> {
 
 	@Override
 	public IndexingOverride onAdd(ResourceTable entity) {
+		if (entity.isFulltextIndexingDeferred()) {
+			return IndexingOverride.SKIP;
+		}
 		if (entity.getDeleted() == null) {
 			if (entity.getIndexStatus() != null) {
 				return IndexingOverride.APPLY_DEFAULT;
@@ -42,7 +46,7 @@ public class IndexNonDeletedInterceptor implements EntityIndexingInterceptor<Res
 
 	@Override
 	public IndexingOverride onUpdate(ResourceTable entity) {
-		if (entity.getIndexStatus() == null) {
+		if (entity.getIndexStatus() == null || entity.isFulltextIndexingDeferred()) {
 			return IndexingOverride.SKIP;
 		}
 		if (entity.getDeleted() == null) {
@@ -58,6 +62,9 @@ public class IndexNonDeletedInterceptor implements EntityIndexingInterceptor<Res
 
 	@Override
 	public IndexingOverride onCollectionUpdate(ResourceTable entity) {
+		if (entity.isFulltextIndexingDeferred()) {
+			return IndexingOverride.SKIP;
+		}
 		return IndexingOverride.APPLY_DEFAULT;
 	}
 }
@@ -23,9 +23,7 @@ package ca.uhn.fhir.jpa.search;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Date;
-import java.util.HashSet;
 import java.util.List;
-import java.util.Set;
 
 import javax.persistence.EntityManager;
 import javax.persistence.NoResultException;
@@ -40,11 +38,14 @@ import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
 import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
 import org.springframework.transaction.TransactionStatus;
 import org.springframework.transaction.support.TransactionCallback;
+import org.springframework.transaction.support.TransactionCallbackWithoutResult;
 import org.springframework.transaction.support.TransactionTemplate;
 
 import ca.uhn.fhir.context.FhirContext;
+import ca.uhn.fhir.jpa.dao.DaoConfig;
 import ca.uhn.fhir.jpa.dao.IDao;
 import ca.uhn.fhir.jpa.dao.SearchBuilder;
 import ca.uhn.fhir.jpa.dao.data.ISearchDao;
@@ -53,14 +54,23 @@ import ca.uhn.fhir.jpa.entity.BaseHasResource;
 import ca.uhn.fhir.jpa.entity.ResourceHistoryTable;
 import ca.uhn.fhir.jpa.entity.Search;
 import ca.uhn.fhir.jpa.entity.SearchResult;
+import ca.uhn.fhir.jpa.entity.SearchStatusEnum;
 import ca.uhn.fhir.jpa.entity.SearchTypeEnum;
+import ca.uhn.fhir.jpa.util.LongList;
+import ca.uhn.fhir.jpa.util.SortedLongSet;
+import ca.uhn.fhir.jpa.util.StopWatch;
 import ca.uhn.fhir.model.primitive.InstantDt;
 import ca.uhn.fhir.rest.server.IBundleProvider;
+import ca.uhn.fhir.rest.server.exceptions.InternalErrorException;
+import ca.uhn.fhir.rest.server.exceptions.ResourceGoneException;
 
 public final class PersistedJpaBundleProvider implements IBundleProvider {
 
+	private static final long LOADING_POLL_MILLIS = 50;
+
 	private FhirContext myContext;
 	private IDao myDao;
+	private DaoConfig myDaoConfig;
 	private EntityManager myEntityManager;
 	private PlatformTransactionManager myPlatformTransactionManager;
 	private ISearchDao mySearchDao;
@@ -131,19 +141,17 @@ public final class PersistedJpaBundleProvider implements IBundleProvider {
 
 		Page<SearchResult> search = mySearchResultDao.findWithSearchUuid(mySearchEntity, page);
 
-		List<Long> pidsSubList = new ArrayList<Long>();
+		LongList pidsSubList = new LongList();
 		for (SearchResult next : search) {
 			pidsSubList.add(next.getResourcePid());
 		}
 
 		// Load includes
-		pidsSubList = new ArrayList<Long>(pidsSubList);
-
-		Set<Long> revIncludedPids = new HashSet<Long>();
+		SortedLongSet revIncludedPids = SortedLongSet.empty();
 		if (mySearchEntity.getSearchType() == SearchTypeEnum.SEARCH) {
-			revIncludedPids.addAll(SearchBuilder.loadReverseIncludes(myContext, myEntityManager, pidsSubList, mySearchEntity.toRevIncludesList(), true, mySearchEntity.getLastUpdated()));
+			revIncludedPids = SearchBuilder.loadReverseIncludes(myContext, myEntityManager, pidsSubList, mySearchEntity.toRevIncludesList(), true, mySearchEntity.getLastUpdated());
 		}
-		revIncludedPids.addAll(SearchBuilder.loadReverseIncludes(myContext, myEntityManager, pidsSubList, mySearchEntity.toIncludesList(), false, mySearchEntity.getLastUpdated()));
+		revIncludedPids = revIncludedPids.union(SearchBuilder.loadReverseIncludes(myContext, myEntityManager, pidsSubList, mySearchEntity.toIncludesList(), false, mySearchEntity.getLastUpdated()));
 
 		// Execute the query and make sure we return distinct results
 		List<IBaseResource> resources = new ArrayList<IBaseResource>();
@@ -200,6 +208,10 @@ public final class PersistedJpaBundleProvider implements IBundleProvider {
 	public List<IBaseResource> getResources(final int theFromIndex, final int theToIndex) {
 		ensureDependenciesInjected();
 
+		if (ensureSearchEntityLoaded()) {
+			waitForResultsIfLoading(theToIndex);
+		}
+
 		TransactionTemplate template = new TransactionTemplate(myPlatformTransactionManager);
 
 		return template.execute(new TransactionCallback<List<IBaseResource>>() {
@@ -234,6 +246,10 @@ public final class PersistedJpaBundleProvider implements IBundleProvider {
 		myContext = theContext;
 	}
 
+	public void setDaoConfig(DaoConfig theDaoConfig) {
+		myDaoConfig = theDaoConfig;
+	}
+
 	public void setEntityManager(EntityManager theEntityManager) {
 		myEntityManager = theEntityManager;
 	}
@@ -256,6 +272,91 @@ public final class PersistedJpaBundleProvider implements IBundleProvider {
 		return Math.max(0, mySearchEntity.getTotalCount());
 	}
 
+	/**
+	 * If the results for this search are still being written by a background task
+	 * (see {@link DaoConfig#setStreamSearchResults(boolean)}) this method blocks until
+	 * the results up to the given index are available
+	 */
+	private void waitForResultsIfLoading(int theToIndex) {
+		if (mySearchEntity.getStatus() != SearchStatusEnum.LOADING) {
+			return;
+		}
+
+		TransactionTemplate template = new TransactionTemplate(myPlatformTransactionManager);
+		template.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+		template.setReadOnly(true);
+
+		StopWatch sw = new StopWatch();
+		while (true) {
+			Search search = template.execute(new TransactionCallback<Search>() {
+				@Override
+				public Search doInTransaction(TransactionStatus theStatus) {
+					return mySearchDao.findOne(mySearchEntity.getId());
+				}
+			});
+			if (search == null) {
+				throw new ResourceGoneException("Search " + myUuid + " no longer exists");
+			}
+
+			mySearchEntity.setStatus(search.getStatus());
+			mySearchEntity.setNumFound(search.getNumFound());
+			mySearchEntity.setTotalCount(search.getTotalCount());
+
+			switch (search.getStatus()) {
+			case FAILED:
+				throw new InternalErrorException("Failed to load results for search " + myUuid);
+			case FINISHED:
+				return;
+			case LOADING:
+			default:
+				if (search.getNumFound() >= Math.min(theToIndex, search.getTotalCount())) {
+					return;
+				}
+				if (isAbandoned(search)) {
+					markAbandonedSearchFailed();
+					throw new InternalErrorException("Failed to load results for search " + myUuid + ": no results have been written for " + myDaoConfig.getStreamSearchResultsMaxWaitMillis() + "ms");
+				}
+			}
+
+			if (sw.getMillis() > myDaoConfig.getStreamSearchResultsMaxWaitMillis()) {
+				throw new InternalErrorException("Timed out waiting for results for search " + myUuid);
+			}
+
+			try {
+				Thread.sleep(LOADING_POLL_MILLIS);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new InternalErrorException(e);
+			}
+		}
+	}
+
+	/**
+	 * A search is abandoned if it is still loading but no results have been written for longer
+	 * than a page request would wait for them, e.g. because the server which was streaming the
+	 * results was stopped
+	 */
+	private boolean isAbandoned(Search theSearch) {
+		Date lastProgress = theSearch.getLastProgress();
+		return lastProgress == null || System.currentTimeMillis() - lastProgress.getTime() > myDaoConfig.getStreamSearchResultsMaxWaitMillis();
+	}
+
+	private void markAbandonedSearchFailed() {
+		TransactionTemplate template = new TransactionTemplate(myPlatformTransactionManager);
+		template.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+		template.execute(new TransactionCallbackWithoutResult() {
+			@Override
+			protected void doInTransactionWithoutResult(TransactionStatus theStatus) {
+				Search search = mySearchDao.findOne(mySearchEntity.getId());
+				if (search != null && search.getStatus() == SearchStatusEnum.LOADING && isAbandoned(search)) {
+					search.setStatus(SearchStatusEnum.FAILED);
+					mySearchDao.save(search);
+				}
+			}
+		});
+		mySearchEntity.setStatus(SearchStatusEnum.FAILED);
+	}
+
 	public static Pageable toPage(final int theFromIndex, int theToIndex) {
 		int pageSize = theToIndex - theFromIndex;
 		if (pageSize < 1) {
@@ -0,0 +1,259 @@
+package ca.uhn.fhir.jpa.search;
+
+
+/*
+ * #%L
+ * HAPI FHIR JPA Server
+ * %%
+ * Copyright (C) 2014 - 2017 University Health Network
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+import javax.annotation.PostConstruct;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.core.task.TaskExecutor;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.support.TransactionCallback;
+import org.springframework.transaction.support.TransactionCallbackWithoutResult;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import ca.uhn.fhir.jpa.config.BaseConfig;
+import ca.uhn.fhir.jpa.dao.DaoConfig;
+import ca.uhn.fhir.jpa.dao.data.ISearchDao;
+import ca.uhn.fhir.jpa.dao.data.ISearchResultDao;
+import ca.uhn.fhir.jpa.entity.Search;
+import ca.uhn.fhir.jpa.entity.SearchResult;
+import ca.uhn.fhir.jpa.entity.SearchStatusEnum;
+import ca.uhn.fhir.jpa.util.StopWatch;
+
+/**
+ * Writes search results to the database in batches using a background task, so that
+ * the first page of a large search can be returned before all of the results have
+ * been persisted.
+ * <p>
+ * Each batch is read from its {@link BasePidSource source} and written in a single short
+ * transaction, so a stream only ever holds one database connection, and only while a
+ * batch is being processed.
+ * </p>
+ * 
+ * @see DaoConfig#setStreamSearchResults(boolean)
+ */
+public class SearchResultStreamingSvc {
+	private static final org.slf4j.Logger ourLog = org.slf4j.LoggerFactory.getLogger(SearchResultStreamingSvc.class);
+
+	@Autowired
+	private DaoConfig myDaoConfig;
+
+	@Autowired
+	private ISearchDao mySearchDao;
+
+	@Autowired
+	private ISearchResultDao mySearchResultDao;
+
+	@Autowired
+	@Qualifier(BaseConfig.JPA_TASK_EXECUTOR)
+	private TaskExecutor myTaskExecutor;
+
+	@Autowired
+	private PlatformTransactionManager myTransactionManager;
+
+	/**
+	 * Marks any searches which are still {@link SearchStatusEnum#LOADING loading} but have not had any
+	 * results written for longer than {@link DaoConfig#getStreamSearchResultsMaxWaitMillis()} as
+	 * {@link SearchStatusEnum#FAILED failed}. This happens if the server which was streaming their
+	 * results was stopped before it finished. Called automatically when this service starts.
+	 * 
+	 * @return The number of searches which were marked as failed
+	 */
+	@PostConstruct
+	public int failAbandonedSearches() {
+		final Date cutoff = new Date(System.currentTimeMillis() - myDaoConfig.getStreamSearchResultsMaxWaitMillis());
+		TransactionTemplate tt = newRequiresNewTxTemplate();
+		int retVal = tt.execute(new TransactionCallback<Integer>() {
+			@Override
+			public Integer doInTransaction(TransactionStatus theStatus) {
+				return mySearchDao.updateStatusWhereNoProgressSince(SearchStatusEnum.LOADING, cutoff, SearchStatusEnum.FAILED);
+			}
+		});
+		if (retVal > 0) {
+			ourLog.info("Marked {} searches with no progress since {} as failed", retVal, cutoff);
+		}
+		return retVal;
+	}
+
+	private void markFailed(final Long theSearchPid) {
+		TransactionTemplate tt = newRequiresNewTxTemplate();
+		tt.execute(new TransactionCallbackWithoutResult() {
+			@Override
+			protected void doInTransactionWithoutResult(TransactionStatus theStatus) {
+				Search search = mySearchDao.findOne(theSearchPid);
+				if (search != null) {
+					search.setStatus(SearchStatusEnum.FAILED);
+					mySearchDao.save(search);
+				}
+			}
+		});
+	}
+
+	private TransactionTemplate newRequiresNewTxTemplate() {
+		TransactionTemplate retVal = new TransactionTemplate(myTransactionManager);
+		retVal.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+		return retVal;
+	}
+
+	private void streamResults(final Long theSearchPid, final int theFirstOrder, final BasePidSource theSource) {
+		StopWatch sw = new StopWatch();
+		int batchSize = myDaoConfig.getStreamSearchResultsBatchSize();
+
+		int order = theFirstOrder;
+		try {
+			while (true) {
+				int next = writeNextBatch(theSearchPid, theSource, order, batchSize);
+				if (next == -1) {
+					ourLog.info("Search {} was deleted or failed while its results were being streamed", theSearchPid);
+					return;
+				}
+				if (next - order < batchSize) {
+					ourLog.info("Finished streaming {} results for search {} in {}ms", new Object[] { next, theSearchPid, sw.getMillis() });
+					return;
+				}
+				order = next;
+			}
+		} catch (RuntimeException e) {
+			ourLog.error("Failed to stream results for search " + theSearchPid, e);
+			markFailed(theSearchPid);
+		}
+	}
+
+	/**
+	 * Starts writing the PIDs from the given source to the database as soon as the current transaction
+	 * (which is expected to have saved the {@link Search} entity) commits.
+	 * 
+	 * @param theSearchPid
+	 *           The PID of the search entity
+	 * @param theFirstOrder
+	 *           The order (index) of the first result produced by the source
+	 * @param theSource
+	 *           The source of the results. This will be read from a background thread.
+	 */
+	public void streamResultsAfterCommit(final Long theSearchPid, final int theFirstOrder, final BasePidSource theSource) {
+		final Runnable task = new Runnable() {
+			@Override
+			public void run() {
+				streamResults(theSearchPid, theFirstOrder, theSource);
+			}
+		};
+
+		if (TransactionSynchronizationManager.isSynchronizationActive()) {
+			TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+				@Override
+				public void afterCommit() {
+					myTaskExecutor.execute(task);
+				}
+			});
+		} else {
+			myTaskExecutor.execute(task);
+		}
+	}
+
+	/**
+	 * Reads the next batch of results from the source and writes it, in a new transaction. If the
+	 * batch is smaller than the batch size it is the last one, and the search is marked as finished.
+	 * 
+	 * @return The next order (index) to use, or <code>-1</code> if the search no longer exists or is
+	 *         no longer loading (e.g. because it was marked as failed after making no progress)
+	 */
+	private int writeNextBatch(final Long theSearchPid, final BasePidSource theSource, final int theFirstOrder, final int theBatchSize) {
+		TransactionTemplate tt = newRequiresNewTxTemplate();
+		return tt.execute(new TransactionCallback<Integer>() {
+			@Override
+			public Integer doInTransaction(TransactionStatus theStatus) {
+				Search search = mySearchDao.findOne(theSearchPid);
+				if (search == null || search.getStatus() != SearchStatusEnum.LOADING) {
+					return -1;
+				}
+
+				List<Long> pids = theSource.nextBatch(theBatchSize);
+				List<SearchResult> results = new ArrayList<SearchResult>(pids.size());
+				int order = theFirstOrder;
+				for (Long next : pids) {
+					SearchResult nextResult = new SearchResult(search);
+					nextResult.setResourcePid(next);
+					nextResult.setOrder(order);
+					results.add(nextResult);
+					order++;
+				}
+				mySearchResultDao.save(results);
+
+				search.setNumFound(order);
+				search.setLastProgress(new Date());
+				if (pids.size() < theBatchSize) {
+					search.setTotalCount(order);
+					search.setStatus(SearchStatusEnum.FINISHED);
+				}
+				mySearchDao.save(search);
+
+				ourLog.debug("Wrote {} results for search {}", order - theFirstOrder, theSearchPid);
+				return order;
+			}
+		});
+	}
+
+	/**
+	 * A source of resource PIDs to be written as search results
+	 */
+	public static abstract class BasePidSource {
+
+		/**
+		 * Returns up to the given number of PIDs, following on from those returned by the previous
+		 * call. Returning fewer than requested means that there are no more. This is called on the
+		 * background thread, within the transaction which writes the batch.
+		 */
+		public abstract List<Long> nextBatch(int theMaxSize);
+
+	}
+
+	/**
+	 * Source for results which have already been loaded into memory
+	 */
+	public static class ListPidSource extends BasePidSource {
+
+		private int myNextIndex;
+		private final List<Long> myPids;
+
+		public ListPidSource(List<Long> thePids) {
+			myPids = thePids;
+		}
+
+		@Override
+		public List<Long> nextBatch(int theMaxSize) {
+			int fromIndex = myNextIndex;
+			myNextIndex = Math.min(myPids.size(), fromIndex + theMaxSize);
+			return myPids.subList(fromIndex, myNextIndex);
+		}
+
+	}
+
+}
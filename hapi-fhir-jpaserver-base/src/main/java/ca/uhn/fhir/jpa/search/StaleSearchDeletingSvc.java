@@ -20,17 +20,20 @@ package ca.uhn.fhir.jpa.search;
  * #L%
  */
 
-import java.util.Collection;
+import java.util.ArrayList;
 import java.util.Date;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.apache.commons.lang3.time.DateUtils;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.transaction.PlatformTransactionManager;
 import org.springframework.transaction.TransactionStatus;
 import org.springframework.transaction.annotation.Propagation;
 import org.springframework.transaction.annotation.Transactional;
-import org.springframework.transaction.support.TransactionCallbackWithoutResult;
+import org.springframework.transaction.support.TransactionCallback;
 import org.springframework.transaction.support.TransactionTemplate;
 
 import ca.uhn.fhir.jpa.dao.DaoConfig;
@@ -38,9 +41,17 @@ import ca.uhn.fhir.jpa.dao.data.ISearchDao;
 import ca.uhn.fhir.jpa.dao.data.ISearchIncludeDao;
 import ca.uhn.fhir.jpa.dao.data.ISearchResultDao;
 import ca.uhn.fhir.jpa.entity.Search;
+import ca.uhn.fhir.jpa.util.StopWatch;
 
 /**
  * Deletes old searches
+ * <p>
+ * Searches are deleted in batches (see {@link DaoConfig#setExpireSearchResultsBatchSize(int)}) using
+ * set-based delete statements, and each pass stops once its time budget
+ * (see {@link DaoConfig#setExpireSearchResultsMaxMillisPerPass(long)}) is used up. The searches in
+ * each batch are locked before they are deleted, skipping any which are already locked, so if several
+ * servers share a database each of them deletes a different set of searches.
+ * </p>
  */
 public class StaleSearchDeletingSvc {
 	private static final org.slf4j.Logger ourLog = org.slf4j.LoggerFactory.getLogger(StaleSearchDeletingSvc.class);
@@ -60,6 +71,79 @@ public class StaleSearchDeletingSvc {
 	@Autowired
 	private PlatformTransactionManager myTransactionManager;
 
+	private volatile long myLastPassMillis;
+
+	private volatile int myLastPassResultsDeleted;
+
+	private volatile int myLastPassSearchesDeleted;
+
+	private final AtomicLong myTotalResultsDeleted = new AtomicLong();
+
+	private final AtomicLong myTotalSearchesDeleted = new AtomicLong();
+
+	/**
+	 * Deletes a single batch of stale searches
+	 * 
+	 * @return An array containing the number of searches and the number of search results deleted
+	 */
+	private int[] deleteBatch(final Date theCutoff, final int theBatchSize) {
+		TransactionTemplate tt = new TransactionTemplate(myTransactionManager);
+		return tt.execute(new TransactionCallback<int[]>() {
+			@Override
+			public int[] doInTransaction(TransactionStatus theStatus) {
+				List<Search> toDelete = mySearchDao.findWhereCreatedBeforeForUpdate(theCutoff, new PageRequest(0, theBatchSize));
+				if (toDelete.isEmpty()) {
+					return new int[] { 0, 0 };
+				}
+
+				List<Long> pids = new ArrayList<Long>(toDelete.size());
+				for (Search next : toDelete) {
+					pids.add(next.getId());
+				}
+
+				mySearchIncludeDao.deleteForSearches(pids);
+				int results = mySearchResultDao.deleteForSearches(pids);
+				int searches = mySearchDao.deleteByPids(pids);
+				return new int[] { searches, results };
+			}
+		});
+	}
+
+	/**
+	 * Returns the number of milliseconds taken by the most recent pass
+	 */
+	public long getLastPassMillis() {
+		return myLastPassMillis;
+	}
+
+	/**
+	 * Returns the number of search results (rows in HFJ_SEARCH_RESULT) deleted by the most recent pass
+	 */
+	public int getLastPassResultsDeleted() {
+		return myLastPassResultsDeleted;
+	}
+
+	/**
+	 * Returns the number of searches deleted by the most recent pass
+	 */
+	public int getLastPassSearchesDeleted() {
+		return myLastPassSearchesDeleted;
+	}
+
+	/**
+	 * Returns the total number of search results (rows in HFJ_SEARCH_RESULT) deleted since this service was started
+	 */
+	public long getTotalResultsDeleted() {
+		return myTotalResultsDeleted.get();
+	}
+
+	/**
+	 * Returns the total number of searches deleted since this service was started
+	 */
+	public long getTotalSearchesDeleted() {
+		return myTotalSearchesDeleted.get();
+	}
+
 	@Scheduled(fixedDelay = 10 * DateUtils.MILLIS_PER_SECOND)
 	@Transactional(propagation = Propagation.NOT_SUPPORTED)
 	public synchronized void pollForStaleSearches() {
@@ -67,26 +151,35 @@ public class StaleSearchDeletingSvc {
 			Date cutoff = new Date(System.currentTimeMillis() - myDaoConfig.getExpireSearchResultsAfterMillis());
 			ourLog.debug("Searching for searches which are before {}", cutoff);
 
-			Collection<Search> toDelete = mySearchDao.findWhereCreatedBefore(cutoff);
-			if (toDelete.isEmpty()) {
-				return;
-			}
+			int batchSize = myDaoConfig.getExpireSearchResultsBatchSize();
+			long maxMillis = myDaoConfig.getExpireSearchResultsMaxMillisPerPass();
 
-			TransactionTemplate tt = new TransactionTemplate(myTransactionManager);
-			for (final Search next : toDelete) {
-				tt.execute(new TransactionCallbackWithoutResult() {
-					@Override
-					protected void doInTransactionWithoutResult(TransactionStatus theArg0) {
-						Search searchToDelete = mySearchDao.findOne(next.getId());
-						ourLog.info("Expiring stale search {} / {}", searchToDelete.getId(), searchToDelete.getUuid());
-						mySearchIncludeDao.deleteForSearch(searchToDelete.getId());
-						mySearchResultDao.deleteForSearch(searchToDelete.getId());
-						mySearchDao.delete(searchToDelete);
-					}
-				});
+			StopWatch sw = new StopWatch();
+			int searches = 0;
+			int results = 0;
+			while (true) {
+				int[] deleted = deleteBatch(cutoff, batchSize);
+				searches += deleted[0];
+				results += deleted[1];
+
+				if (deleted[0] < batchSize) {
+					break;
+				}
+				if (sw.getMillis() >= maxMillis) {
+					ourLog.info("Stale search deletion pass exceeded {}ms, remaining searches will be deleted on the next pass", maxMillis);
+					break;
+				}
 			}
 
-			ourLog.info("Deleted {} searches, {} remaining", toDelete.size(), mySearchDao.count());
+			myLastPassMillis = sw.getMillis();
+			myLastPassSearchesDeleted = searches;
+			myLastPassResultsDeleted = results;
+			myTotalSearchesDeleted.addAndGet(searches);
+			myTotalResultsDeleted.addAndGet(results);
+
+			if (searches > 0) {
+				ourLog.info("Deleted {} searches and {} search results in {}ms", new Object[] { searches, results, myLastPassMillis });
+			}
 		}
 	}
 
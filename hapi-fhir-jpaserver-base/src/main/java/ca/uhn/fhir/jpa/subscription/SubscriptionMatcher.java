@@ -0,0 +1,282 @@
+package ca.uhn.fhir.jpa.subscription;
+
+
+/*
+ * #%L
+ * HAPI FHIR JPA Server
+ * %%
+ * Copyright (C) 2014 - 2017 University Health Network
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import static org.apache.commons.lang3.StringUtils.isBlank;
+import static org.apache.commons.lang3.StringUtils.isNotBlank;
+
+import java.util.List;
+import java.util.Map.Entry;
+
+import ca.uhn.fhir.context.RuntimeResourceDefinition;
+import ca.uhn.fhir.context.RuntimeSearchParam;
+import ca.uhn.fhir.jpa.dao.BaseHapiFhirDao;
+import ca.uhn.fhir.jpa.dao.ResourceIndexedSearchParams;
+import ca.uhn.fhir.jpa.dao.SearchParameterMap;
+import ca.uhn.fhir.jpa.entity.ResourceIndexedSearchParamString;
+import ca.uhn.fhir.jpa.entity.ResourceIndexedSearchParamToken;
+import ca.uhn.fhir.jpa.entity.ResourceIndexedSearchParamUri;
+import ca.uhn.fhir.jpa.entity.ResourceLink;
+import ca.uhn.fhir.jpa.entity.ResourceTable;
+import ca.uhn.fhir.model.api.IQueryParameterType;
+import ca.uhn.fhir.model.dstu.resource.BaseResource;
+import ca.uhn.fhir.model.primitive.IdDt;
+import ca.uhn.fhir.rest.param.ReferenceParam;
+import ca.uhn.fhir.rest.param.StringParam;
+import ca.uhn.fhir.rest.param.TokenParam;
+import ca.uhn.fhir.rest.param.UriParam;
+
+/**
+ * The criteria of a single active subscription, translated once into a
+ * {@link SearchParameterMap} so that newly written resources can be tested
+ * against it without running a search.
+ * <p>
+ * Criteria made up only of plain token, string, URI and reference parameters
+ * (and <code>_id</code>) are evaluated in memory against the indexes which were
+ * extracted from the resource while it was being stored. For anything else
+ * (dates, quantities, chains, modifiers, etc.) {@link #isMatchableInMemory()}
+ * returns <code>false</code> and the caller must check the resource with a
+ * search restricted to its ID instead.
+ * </p>
+ */
+public class SubscriptionMatcher {
+
+	private final String myCriteria;
+	private final boolean myMatchableInMemory;
+	private final SearchParameterMap myParams;
+	private final RuntimeResourceDefinition myResourceDef;
+	private final Long mySubscriptionTablePid;
+
+	public SubscriptionMatcher(Long theSubscriptionTablePid, String theCriteria, RuntimeResourceDefinition theResourceDef, SearchParameterMap theParams) {
+		mySubscriptionTablePid = theSubscriptionTablePid;
+		myCriteria = theCriteria;
+		myResourceDef = theResourceDef;
+		myParams = theParams;
+		myMatchableInMemory = determineMatchableInMemory();
+	}
+
+	private boolean determineMatchableInMemory() {
+		if (myParams.getLastUpdated() != null) {
+			return false;
+		}
+		for (Entry<String, List<List<? extends IQueryParameterType>>> nextEntry : myParams.entrySet()) {
+			String nextParamName = nextEntry.getKey();
+			RuntimeSearchParam nextParamDef = null;
+			if (!BaseResource.SP_RES_ID.equals(nextParamName)) {
+				nextParamDef = myResourceDef.getSearchParam(nextParamName);
+				if (nextParamDef == null) {
+					return false;
+				}
+			}
+			for (List<? extends IQueryParameterType> nextAnd : nextEntry.getValue()) {
+				for (IQueryParameterType nextOr : nextAnd) {
+					if (!isMatchableInMemory(nextParamDef, nextOr)) {
+						return false;
+					}
+				}
+			}
+		}
+		return true;
+	}
+
+	public String getCriteria() {
+		return myCriteria;
+	}
+
+	public String getResourceType() {
+		return myResourceDef.getName();
+	}
+
+	public Long getSubscriptionTablePid() {
+		return mySubscriptionTablePid;
+	}
+
+	/**
+	 * Returns <code>true</code> if {@link #matches(ResourceTable, ResourceIndexedSearchParams)} can
+	 * be used for this subscription
+	 */
+	public boolean isMatchableInMemory() {
+		return myMatchableInMemory;
+	}
+
+	/**
+	 * Tests whether a resource which has just been stored matches the criteria. May only be
+	 * called if {@link #isMatchableInMemory()} returns <code>true</code>.
+	 * 
+	 * @param theEntity
+	 *           The entity for the resource being stored
+	 * @param theParams
+	 *           The indexes which were extracted from the resource
+	 */
+	public boolean matches(ResourceTable theEntity, ResourceIndexedSearchParams theParams) {
+		if (!myMatchableInMemory) {
+			throw new IllegalStateException("Criteria can not be matched in memory: " + myCriteria);
+		}
+		if (!getResourceType().equals(theEntity.getResourceType())) {
+			return false;
+		}
+
+		for (Entry<String, List<List<? extends IQueryParameterType>>> nextEntry : myParams.entrySet()) {
+			String nextParamName = nextEntry.getKey();
+			for (List<? extends IQueryParameterType> nextAnd : nextEntry.getValue()) {
+				if (nextAnd.isEmpty()) {
+					continue;
+				}
+				boolean found = false;
+				for (IQueryParameterType nextOr : nextAnd) {
+					if (matches(nextParamName, nextOr, theEntity, theParams)) {
+						found = true;
+						break;
+					}
+				}
+				if (!found) {
+					return false;
+				}
+			}
+		}
+
+		return true;
+	}
+
+	private boolean matches(String theParamName, IQueryParameterType theParam, ResourceTable theEntity, ResourceIndexedSearchParams theParams) {
+		if (BaseResource.SP_RES_ID.equals(theParamName)) {
+			String idPart = new IdDt(((StringParam) theParam).getValue()).getIdPart();
+			return theEntity.getIdDt().getIdPart().equals(idPart);
+		}
+
+		if (theParam instanceof TokenParam) {
+			return matchesToken(theParamName, (TokenParam) theParam, theParams);
+		} else if (theParam instanceof StringParam) {
+			return matchesString(theParamName, (StringParam) theParam, theParams);
+		} else if (theParam instanceof UriParam) {
+			return matchesUri(theParamName, (UriParam) theParam, theParams);
+		} else {
+			return matchesReference(myResourceDef.getSearchParam(theParamName), (ReferenceParam) theParam, theParams);
+		}
+	}
+
+	private static boolean isMatchableInMemory(RuntimeSearchParam theParamDef, IQueryParameterType theParam) {
+		if (theParam.getMissing() != null) {
+			return false;
+		}
+
+		if (theParamDef == null) {
+			// _id
+			return theParam instanceof StringParam && isNotBlank(((StringParam) theParam).getValue());
+		}
+
+		switch (theParamDef.getParamType()) {
+		case TOKEN:
+			if (!(theParam instanceof TokenParam)) {
+				return false;
+			}
+			TokenParam token = (TokenParam) theParam;
+			return token.getModifier() == null && !token.isText();
+		case STRING:
+			if (!(theParam instanceof StringParam)) {
+				return false;
+			}
+			StringParam string = (StringParam) theParam;
+			return !string.isContains() && string.getValueNotNull().length() <= ResourceIndexedSearchParamString.MAX_LENGTH;
+		case URI:
+			return theParam instanceof UriParam && ((UriParam) theParam).getQualifier() == null;
+		case REFERENCE:
+			if (!(theParam instanceof ReferenceParam)) {
+				return false;
+			}
+			ReferenceParam reference = (ReferenceParam) theParam;
+			return isBlank(reference.getChain()) && isBlank(reference.getBaseUrl()) && isNotBlank(reference.getIdPart());
+		default:
+			return false;
+		}
+	}
+
+	private static boolean matchesReference(RuntimeSearchParam theParamDef, ReferenceParam theParam, ResourceIndexedSearchParams theParams) {
+		List<String> paths = theParamDef.getPathsSplit();
+		String resourceType = theParam.getResourceType();
+		for (ResourceLink next : theParams.getLinks()) {
+			ResourceTable target = next.getTargetResource();
+			if (target == null || !paths.contains(next.getSourcePath())) {
+				continue;
+			}
+			if (isNotBlank(resourceType) && !resourceType.equals(target.getResourceType())) {
+				continue;
+			}
+			if (theParam.getIdPart().equals(target.getIdDt().getIdPart())) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private static boolean matchesString(String theParamName, StringParam theParam, ResourceIndexedSearchParams theParams) {
+		String normalized = BaseHapiFhirDao.normalizeString(theParam.getValueNotNull());
+		for (ResourceIndexedSearchParamString next : theParams.getStringParams()) {
+			if (!theParamName.equals(next.getParamName()) || next.getValueNormalized() == null) {
+				continue;
+			}
+			if (!next.getValueNormalized().startsWith(normalized)) {
+				continue;
+			}
+			if (theParam.isExact() && !theParam.getValueNotNull().equals(next.getValueExact())) {
+				continue;
+			}
+			return true;
+		}
+		return false;
+	}
+
+	private static boolean matchesToken(String theParamName, TokenParam theParam, ResourceIndexedSearchParams theParams) {
+		String system = theParam.getSystem();
+		String code = theParam.getValue();
+		for (ResourceIndexedSearchParamToken next : theParams.getTokenParams()) {
+			if (!theParamName.equals(next.getParamName())) {
+				continue;
+			}
+			if (isNotBlank(system)) {
+				if (!system.equals(next.getSystem())) {
+					continue;
+				}
+			} else if (system != null) {
+				// If the system is "", we only match on null systems
+				if (next.getSystem() != null) {
+					continue;
+				}
+			}
+			if (isNotBlank(code) && !code.equals(next.getValue())) {
+				continue;
+			}
+			return true;
+		}
+		return false;
+	}
+
+	private static boolean matchesUri(String theParamName, UriParam theParam, ResourceIndexedSearchParams theParams) {
+		for (ResourceIndexedSearchParamUri next : theParams.getUriParams()) {
+			if (theParamName.equals(next.getParamName()) && theParam.getValueNotNull().equals(next.getUri())) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+}
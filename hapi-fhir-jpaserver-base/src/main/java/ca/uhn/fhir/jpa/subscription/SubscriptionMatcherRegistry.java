@@ -0,0 +1,179 @@
+package ca.uhn.fhir.jpa.subscription;
+
+
+/*
+ * #%L
+ * HAPI FHIR JPA Server
+ * %%
+ * Copyright (C) 2014 - 2017 University Health Network
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+/**
+ * Holds the {@link SubscriptionMatcher matchers} for all active subscriptions, indexed by
+ * the resource type named in their criteria so that a write only has to be tested against the
+ * subscriptions which could possibly match it.
+ * <p>
+ * Changes made from within a transaction are applied once that transaction commits, so that
+ * a rolled back write never leaves the registry out of step with the database.
+ * </p>
+ * <p>
+ * This class is thread safe.
+ * </p>
+ */
+public class SubscriptionMatcherRegistry {
+
+	private final AtomicInteger myFlaggedCount = new AtomicInteger();
+	private final ConcurrentMap<String, ConcurrentMap<Long, SubscriptionMatcher>> myResourceTypeToMatchers = new ConcurrentHashMap<String, ConcurrentMap<Long, SubscriptionMatcher>>();
+	private final ConcurrentMap<Long, SubscriptionMatcher> mySubscriptionTablePidToMatcher = new ConcurrentHashMap<Long, SubscriptionMatcher>();
+
+	/**
+	 * Removes all matchers
+	 */
+	public synchronized void clear() {
+		myResourceTypeToMatchers.clear();
+		mySubscriptionTablePidToMatcher.clear();
+	}
+
+	/**
+	 * Records that resources were flagged for delivery to subscriptions. The count is
+	 * added once the current transaction (if any) commits.
+	 */
+	public void addFlaggedCountAfterCommit(final int theCount) {
+		runAfterCommit(new Runnable() {
+			@Override
+			public void run() {
+				myFlaggedCount.addAndGet(theCount);
+			}
+		});
+	}
+
+	/**
+	 * Returns the number of resources flagged for delivery since the last call to this method
+	 */
+	public int getAndResetFlaggedCount() {
+		return myFlaggedCount.getAndSet(0);
+	}
+
+	/**
+	 * Returns the matchers for active subscriptions whose criteria are for the given resource type
+	 */
+	public Collection<SubscriptionMatcher> getMatchers(String theResourceType) {
+		ConcurrentMap<Long, SubscriptionMatcher> matchers = myResourceTypeToMatchers.get(theResourceType);
+		if (matchers == null) {
+			return Collections.emptyList();
+		}
+		return matchers.values();
+	}
+
+	/**
+	 * Adds a matcher, replacing any existing matcher for the same subscription
+	 */
+	public synchronized void register(SubscriptionMatcher theMatcher) {
+		unregister(theMatcher.getSubscriptionTablePid());
+
+		ConcurrentMap<Long, SubscriptionMatcher> matchers = myResourceTypeToMatchers.get(theMatcher.getResourceType());
+		if (matchers == null) {
+			matchers = new ConcurrentHashMap<Long, SubscriptionMatcher>();
+			myResourceTypeToMatchers.put(theMatcher.getResourceType(), matchers);
+		}
+		matchers.put(theMatcher.getSubscriptionTablePid(), theMatcher);
+		mySubscriptionTablePidToMatcher.put(theMatcher.getSubscriptionTablePid(), theMatcher);
+	}
+
+	/**
+	 * Calls {@link #register(SubscriptionMatcher)} once the current transaction (if any) commits
+	 */
+	public void registerAfterCommit(final SubscriptionMatcher theMatcher) {
+		runAfterCommit(new Runnable() {
+			@Override
+			public void run() {
+				register(theMatcher);
+			}
+		});
+	}
+
+	/**
+	 * Replaces the registered matchers with the given ones. Matchers are registered before the
+	 * old ones are removed, so a subscription which is in both sets is never missing.
+	 */
+	public synchronized void replaceAll(Collection<SubscriptionMatcher> theMatchers) {
+		Set<Long> pids = new HashSet<Long>();
+		for (SubscriptionMatcher next : theMatchers) {
+			register(next);
+			pids.add(next.getSubscriptionTablePid());
+		}
+		for (Long next : new ArrayList<Long>(mySubscriptionTablePidToMatcher.keySet())) {
+			if (!pids.contains(next)) {
+				unregister(next);
+			}
+		}
+	}
+
+	public int size() {
+		return mySubscriptionTablePidToMatcher.size();
+	}
+
+	/**
+	 * Removes the matcher for the given subscription, if one is registered
+	 */
+	public synchronized void unregister(Long theSubscriptionTablePid) {
+		SubscriptionMatcher existing = mySubscriptionTablePidToMatcher.remove(theSubscriptionTablePid);
+		if (existing != null) {
+			ConcurrentMap<Long, SubscriptionMatcher> matchers = myResourceTypeToMatchers.get(existing.getResourceType());
+			if (matchers != null) {
+				matchers.remove(theSubscriptionTablePid);
+			}
+		}
+	}
+
+	/**
+	 * Calls {@link #unregister(Long)} once the current transaction (if any) commits
+	 */
+	public void unregisterAfterCommit(final Long theSubscriptionTablePid) {
+		runAfterCommit(new Runnable() {
+			@Override
+			public void run() {
+				unregister(theSubscriptionTablePid);
+			}
+		});
+	}
+
+	private static void runAfterCommit(final Runnable theTask) {
+		if (TransactionSynchronizationManager.isSynchronizationActive()) {
+			TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+				@Override
+				public void afterCommit() {
+					theTask.run();
+				}
+			});
+		} else {
+			theTask.run();
+		}
+	}
+
+}
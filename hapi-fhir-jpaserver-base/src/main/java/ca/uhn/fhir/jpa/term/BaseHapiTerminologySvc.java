@@ -28,6 +28,7 @@ import java.util.IdentityHashMap;
 import java.util.List;
 import java.util.Set;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
 import javax.persistence.EntityManager;
 import javax.persistence.PersistenceContext;
@@ -43,6 +44,8 @@ import org.springframework.transaction.TransactionStatus;
 import org.springframework.transaction.annotation.Propagation;
 import org.springframework.transaction.annotation.Transactional;
 import org.springframework.transaction.support.TransactionCallbackWithoutResult;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 import org.springframework.transaction.support.TransactionTemplate;
 
 import com.google.common.base.Stopwatch;
@@ -52,11 +55,13 @@ import ca.uhn.fhir.jpa.dao.BaseHapiFhirDao;
 import ca.uhn.fhir.jpa.dao.DaoConfig;
 import ca.uhn.fhir.jpa.dao.data.ITermCodeSystemDao;
 import ca.uhn.fhir.jpa.dao.data.ITermCodeSystemVersionDao;
+import ca.uhn.fhir.jpa.dao.data.ITermConceptClosureDao;
 import ca.uhn.fhir.jpa.dao.data.ITermConceptDao;
 import ca.uhn.fhir.jpa.dao.data.ITermConceptParentChildLinkDao;
 import ca.uhn.fhir.jpa.entity.TermCodeSystem;
 import ca.uhn.fhir.jpa.entity.TermCodeSystemVersion;
 import ca.uhn.fhir.jpa.entity.TermConcept;
+import ca.uhn.fhir.jpa.entity.TermConceptClosure;
 import ca.uhn.fhir.jpa.entity.TermConceptParentChildLink;
 import ca.uhn.fhir.jpa.entity.TermConceptParentChildLink.RelationshipTypeEnum;
 import ca.uhn.fhir.jpa.util.StopWatch;
@@ -75,6 +80,9 @@ public abstract class BaseHapiTerminologySvc implements IHapiTerminologySvc {
 	@Autowired
 	private ITermCodeSystemVersionDao myCodeSystemVersionDao;
 
+	@Autowired
+	private ITermConceptClosureDao myConceptClosureDao;
+
 	@Autowired
 	protected ITermConceptDao myConceptDao;
 
@@ -96,6 +104,7 @@ public abstract class BaseHapiTerminologySvc implements IHapiTerminologySvc {
 	
 	private boolean myProcessDeferred = true;
 	private long myNextReindexPass;
+	private final AtomicLong myConceptModificationCount = new AtomicLong();
 
 	private boolean addToSet(Set<TermConcept> theSetToPopulate, TermConcept theConcept) {
 		boolean retVal = theSetToPopulate.add(theConcept);
@@ -156,7 +165,15 @@ public abstract class BaseHapiTerminologySvc implements IHapiTerminologySvc {
 		Set<TermConcept> retVal = new HashSet<TermConcept>();
 		retVal.add(concept);
 
-		fetchParents(concept, retVal);
+		List<TermConcept> ancestors = myConceptDao.findAncestors(concept.getId());
+		if (ancestors.isEmpty() && !concept.getParents().isEmpty()) {
+			// Stored before the closure table existed and not yet reindexed
+			fetchParents(concept, retVal);
+		} else {
+			for (TermConcept next : ancestors) {
+				addToSet(retVal, next);
+			}
+		}
 
 		ourLog.info("Fetched {} codes above code {} in {}ms", new Object[] { retVal.size(), theCode, stopwatch.elapsed(TimeUnit.MILLISECONDS) });
 		return retVal;
@@ -188,7 +205,15 @@ public abstract class BaseHapiTerminologySvc implements IHapiTerminologySvc {
 		Set<TermConcept> retVal = new HashSet<TermConcept>();
 		retVal.add(concept);
 
-		fetchChildren(concept, retVal);
+		List<TermConcept> descendants = myConceptDao.findDescendants(concept.getId());
+		if (descendants.isEmpty() && !concept.getChildren().isEmpty()) {
+			// Stored before the closure table existed and not yet reindexed
+			fetchChildren(concept, retVal);
+		} else {
+			for (TermConcept next : descendants) {
+				addToSet(retVal, next);
+			}
+		}
 
 		ourLog.info("Fetched {} codes below code {} in {}ms", new Object[] { retVal.size(), theCode, stopwatch.elapsed(TimeUnit.MILLISECONDS) });
 		return retVal;
@@ -282,14 +307,44 @@ public abstract class BaseHapiTerminologySvc implements IHapiTerminologySvc {
 		retVal += ensureParentsSaved(theConcept.getParents());
 		if (theConcept.getId() == null || theConcept.getIndexStatus() == null) {
 			retVal++;
+			boolean isNew = theConcept.getId() == null;
 			theConcept.setIndexStatus(BaseHapiFhirDao.INDEX_STATUS_INDEXED);
 			myConceptDao.saveAndFlush(theConcept);
+			saveConceptClosure(theConcept, isNew);
 		}
 		
 		ourLog.trace("Saved {} and got PID {}", theConcept.getCode(), theConcept.getId());
 		return retVal;
 	}
 
+	/**
+	 * Stores one closure row for every ancestor of the given (already saved) concept.
+	 * Parents are always saved before their children, so every ancestor has a PID
+	 * by the time this is called.
+	 */
+	private void saveConceptClosure(TermConcept theConcept, boolean theNew) {
+		if (!theNew) {
+			myConceptClosureDao.deleteByDescendant(theConcept.getId());
+		}
+
+		Set<Long> ancestorPids = new HashSet<Long>();
+		addAncestorPids(theConcept, ancestorPids);
+
+		Long codeSystemVersionPid = theConcept.getCodeSystem().getPid();
+		for (Long nextAncestorPid : ancestorPids) {
+			myConceptClosureDao.save(new TermConceptClosure(codeSystemVersionPid, nextAncestorPid, theConcept.getId()));
+		}
+	}
+
+	private void addAncestorPids(TermConcept theConcept, Set<Long> theAncestorPids) {
+		for (TermConceptParentChildLink nextParentLink : theConcept.getParents()) {
+			TermConcept parent = nextParentLink.getParent();
+			if (parent.getId() != null && theAncestorPids.add(parent.getId())) {
+				addAncestorPids(parent, theAncestorPids);
+			}
+		}
+	}
+
 	private int ensureParentsSaved(Collection<TermConceptParentChildLink> theParents) {
 		ourLog.trace("Checking {} parents", theParents.size());
 		int retVal = 0;
@@ -300,6 +355,7 @@ public abstract class BaseHapiTerminologySvc implements IHapiTerminologySvc {
 				retVal += ensureParentsSaved(nextParent.getParents());
 				if (nextParent.getId() == null) {
 					myConceptDao.saveAndFlush(nextParent);
+					saveConceptClosure(nextParent, true);
 					retVal++;
 					ourLog.debug("Saved parent code {} and got id {}", nextParent.getCode(), nextParent.getId());
 				}
@@ -364,11 +420,37 @@ public abstract class BaseHapiTerminologySvc implements IHapiTerminologySvc {
 			ourLog.info("Saved {} deferred relationships ({} remain) in {}ms ({}ms / code)", new Object[] {relCount, myConceptLinksToSaveLater.size(), stopwatch.getMillis(), stopwatch.getMillisPerOperation(codeCount)});
 		}
 		
+		if (codeCount > 0 || relCount > 0) {
+			markConceptsModified();
+		}
+
 		if ((myConceptsToSaveLater.size() + myConceptLinksToSaveLater.size()) == 0) {
 			ourLog.info("All deferred concepts and relationships have now been synchronized to the database");
 		}
 	}
 
+	@Override
+	public long getConceptModificationCount() {
+		return myConceptModificationCount.get();
+	}
+
+	/**
+	 * Bumps the modification count once the current transaction commits, so that
+	 * nobody can see the new count before the new concepts are visible
+	 */
+	private void markConceptsModified() {
+		if (TransactionSynchronizationManager.isSynchronizationActive()) {
+			TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+				@Override
+				public void afterCommit() {
+					myConceptModificationCount.incrementAndGet();
+				}
+			});
+		} else {
+			myConceptModificationCount.incrementAndGet();
+		}
+	}
+
 	@Autowired
 	private PlatformTransactionManager myTransactionMgr;
 	
@@ -428,12 +510,14 @@ public abstract class BaseHapiTerminologySvc implements IHapiTerminologySvc {
 		ourLog.info("Deleting old code system versions");
 		for (TermCodeSystemVersion next : existing) {
 			ourLog.info(" * Deleting code system version {}", next.getPid());
+			myConceptClosureDao.deleteByCodeSystemVersion(next.getPid());
 			myConceptParentChildLinkDao.deleteByCodeSystemVersion(next.getPid());
 			myConceptDao.deleteByCodeSystemVersion(next.getPid());
 		}
 
 		ourLog.info("Flushing...");
 		
+		myConceptClosureDao.flush();
 		myConceptParentChildLinkDao.flush();
 		myConceptDao.flush();
 
@@ -496,8 +580,11 @@ public abstract class BaseHapiTerminologySvc implements IHapiTerminologySvc {
 
 		myConceptDao.flush();
 		myConceptParentChildLinkDao.flush();
+		myConceptClosureDao.flush();
 
 		ourLog.info("Done deleting old code system versions");
+
+		markConceptsModified();
 		
 		if (myConceptsToSaveLater.size() > 0 || myConceptLinksToSaveLater.size() > 0) {
 			ourLog.info("Note that some concept saving was deferred - still have {} concepts and {} relationships", myConceptsToSaveLater.size(), myConceptLinksToSaveLater.size());
@@ -50,6 +50,13 @@ public interface IHapiTerminologySvc {
 
 	void saveDeferred();
 
+	/**
+	 * Returns a count which changes every time that concepts are stored or deferred
+	 * concepts are saved. Callers which cache terminology lookups can use this to
+	 * tell when their cached results are stale.
+	 */
+	long getConceptModificationCount();
+
 	/**
 	 * This is mostly for unit tests - we can disable processing of deferred concepts
 	 * by changing this flag
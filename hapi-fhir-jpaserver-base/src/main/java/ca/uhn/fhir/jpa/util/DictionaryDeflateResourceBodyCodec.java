@@ -0,0 +1,150 @@
+package ca.uhn.fhir.jpa.util;
+
+
+/*
+ * #%L
+ * HAPI FHIR JPA Server
+ * %%
+ * Copyright (C) 2014 - 2017 University Health Network
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+import com.google.common.base.Charsets;
+
+import ca.uhn.fhir.parser.DataFormatException;
+
+/**
+ * Compresses resource bodies using deflate (zlib format) at the fastest compression level,
+ * with a preset dictionary for each resource type. The dictionary holds fragments of JSON which
+ * appear in most resources, so that even small resources compress well, and the deflater and
+ * inflater are reused by each thread instead of being created for every call.
+ * <p>
+ * Note that the dictionary must never be changed, since bodies can only be decoded using the
+ * same dictionary they were encoded with. A different dictionary needs a new
+ * {@link ca.uhn.fhir.jpa.entity.ResourceEncodingEnum encoding}.
+ * </p>
+ */
+public class DictionaryDeflateResourceBodyCodec implements IResourceBodyCodec {
+
+	//@formatter:off
+	private static final String COMMON_DICTIONARY = 
+			"\"contained\":[{\"resourceType\":\"" +
+			"\"valueQuantity\":{\"value\":\"unit\":\"system\":\"http://unitsofmeasure.org\",\"code\":\"" +
+			"\"period\":{\"start\":\"\",\"end\":\"" +
+			"\"address\":[{\"use\":\"home\",\"line\":[\"\"],\"city\":\"\",\"state\":\"\",\"postalCode\":\"\",\"country\":\"" +
+			"\"telecom\":[{\"system\":\"phone\",\"value\":\"\",\"use\":\"work\"},{\"system\":\"email\",\"value\":\"" +
+			"\"name\":[{\"use\":\"official\",\"family\":\"\",\"given\":[\"" +
+			"\"gender\":\"female\",\"birthDate\":\"\"active\":true," +
+			"\"effectiveDateTime\":\"\"issued\":\"\"status\":\"final\",\"category\":[{\"coding\":[{\"system\":\"http://hl7.org/fhir/" +
+			"\"valueCodeableConcept\":{\"coding\":[{\"system\":\"http://loinc.org\",\"code\":\"" +
+			"\"extension\":[{\"url\":\"http://hl7.org/fhir/StructureDefinition/\",\"valueString\":\"\"valueCode\":\"\"valueDateTime\":\"" +
+			"\"identifier\":[{\"use\":\"usual\",\"type\":{\"coding\":[{\"system\":\"http://hl7.org/fhir/v2/0203\",\"code\":\"MR\"}]},\"system\":\"urn:oid:\",\"value\":\"" +
+			"\"text\":{\"status\":\"generated\",\"div\":\"<div xmlns=\\\"http://www.w3.org/1999/xhtml\\\"><table><tbody><tr><td>\"}," +
+			"\"code\":{\"coding\":[{\"system\":\"http://snomed.info/sct\",\"code\":\"\",\"display\":\"\"}],\"text\":\"" +
+			"\"subject\":{\"reference\":\"Patient/\"},\"patient\":{\"reference\":\"Patient/\",\"display\":\"" +
+			"\"meta\":{\"versionId\":\"\",\"lastUpdated\":\"T00:00:00.000+00:00\",\"profile\":[\"http://hl7.org/fhir/StructureDefinition/\"],\"tag\":[{\"system\":\"";
+	//@formatter:on
+
+	private static final ConcurrentHashMap<String, byte[]> ourDictionaries = new ConcurrentHashMap<String, byte[]>();
+
+	private static final ThreadLocal<Deflater> ourDeflater = new ThreadLocal<Deflater>() {
+		@Override
+		protected Deflater initialValue() {
+			return new Deflater(Deflater.BEST_SPEED);
+		}
+	};
+
+	private static final ThreadLocal<Inflater> ourInflater = new ThreadLocal<Inflater>() {
+		@Override
+		protected Inflater initialValue() {
+			return new Inflater();
+		}
+	};
+
+	@Override
+	public String decode(String theResourceType, byte[] theBody) {
+		Inflater inflater = ourInflater.get();
+		inflater.reset();
+		inflater.setInput(theBody);
+
+		byte[] buffer = new byte[Math.max(theBody.length * 5, 256)];
+		int length = 0;
+		try {
+			while (!inflater.finished()) {
+				if (length == buffer.length) {
+					buffer = Arrays.copyOf(buffer, buffer.length * 2);
+				}
+				int count = inflater.inflate(buffer, length, buffer.length - length);
+				if (count == 0 && !inflater.finished()) {
+					if (inflater.needsDictionary()) {
+						try {
+							inflater.setDictionary(getDictionary(theResourceType));
+						} catch (IllegalArgumentException e) {
+							throw new DataFormatException("Failed to decompress contents: body was not encoded for resource type " + theResourceType, e);
+						}
+					} else if (inflater.needsInput()) {
+						throw new DataFormatException("Failed to decompress contents: unexpected end of data");
+					}
+				}
+				length += count;
+			}
+		} catch (java.util.zip.DataFormatException e) {
+			throw new DataFormatException("Failed to decompress contents", e);
+		}
+
+		return new String(buffer, 0, length, Charsets.UTF_8);
+	}
+
+	@Override
+	public byte[] encode(String theResourceType, String theEncodedResource) {
+		byte[] input = theEncodedResource.getBytes(Charsets.UTF_8);
+
+		Deflater deflater = ourDeflater.get();
+		deflater.reset();
+		deflater.setDictionary(getDictionary(theResourceType));
+		deflater.setInput(input);
+		deflater.finish();
+
+		byte[] buffer = new byte[input.length / 2 + 64];
+		int length = 0;
+		while (!deflater.finished()) {
+			if (length == buffer.length) {
+				buffer = Arrays.copyOf(buffer, buffer.length * 2);
+			}
+			length += deflater.deflate(buffer, length, buffer.length - length);
+		}
+
+		return Arrays.copyOf(buffer, length);
+	}
+
+	/**
+	 * The dictionary for a resource type ends with the start of the resource itself, since deflate
+	 * encodes matches which are close to the data being compressed most compactly
+	 */
+	private static byte[] getDictionary(String theResourceType) {
+		byte[] retVal = ourDictionaries.get(theResourceType);
+		if (retVal == null) {
+			retVal = (COMMON_DICTIONARY + "{\"resourceType\":\"" + theResourceType + "\",\"id\":\"").getBytes(Charsets.UTF_8);
+			ourDictionaries.put(theResourceType, retVal);
+		}
+		return retVal;
+	}
+
+}
@@ -0,0 +1,50 @@
+package ca.uhn.fhir.jpa.util;
+
+
+/*
+ * #%L
+ * HAPI FHIR JPA Server
+ * %%
+ * Copyright (C) 2014 - 2017 University Health Network
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+/**
+ * Converts the encoded (JSON) form of a resource to and from the bytes which are
+ * stored in the RES_TEXT column of the resource tables
+ * 
+ * @see ca.uhn.fhir.jpa.entity.ResourceEncodingEnum
+ */
+public interface IResourceBodyCodec {
+
+	/**
+	 * Decodes bytes previously produced by {@link #encode(String, String)}
+	 * 
+	 * @param theResourceType The resource type (e.g. <code>Patient</code>)
+	 * @param theBody The stored bytes
+	 * @return The encoded resource
+	 */
+	String decode(String theResourceType, byte[] theBody);
+
+	/**
+	 * Converts an encoded resource to the bytes to store
+	 * 
+	 * @param theResourceType The resource type (e.g. <code>Patient</code>)
+	 * @param theEncodedResource The encoded resource
+	 * @return The bytes to store
+	 */
+	byte[] encode(String theResourceType, String theEncodedResource);
+
+}
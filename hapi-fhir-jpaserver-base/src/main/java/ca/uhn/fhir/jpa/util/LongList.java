@@ -0,0 +1,245 @@
+package ca.uhn.fhir.jpa.util;
+
+
+/*
+ * #%L
+ * HAPI FHIR JPA Server
+ * %%
+ * Copyright (C) 2014 - 2017 University Health Network
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.RandomAccess;
+
+/**
+ * A growable list of primitive <code>long</code> values, used for passing around
+ * resource PIDs without allocating a {@link Long} for every entry. Values are only
+ * boxed when they are accessed through the {@link java.util.List} interface, so
+ * instances can still be handed to JPA queries (e.g. as the value of an
+ * <code>IN</code> clause) or any other API expecting a <code>Collection&lt;Long&gt;</code>.
+ * <p>
+ * This class is not thread safe, and does not accept <code>null</code> values.
+ * </p>
+ */
+public class LongList extends AbstractList<Long> implements RandomAccess {
+
+	private static final int DEFAULT_CAPACITY = 10;
+
+	private int mySize;
+	private long[] myValues;
+
+	/**
+	 * Constructor
+	 */
+	public LongList() {
+		this(DEFAULT_CAPACITY);
+	}
+
+	/**
+	 * Constructor
+	 * 
+	 * @param theValues
+	 *           The initial contents of the list, in iteration order
+	 */
+	public LongList(Collection<Long> theValues) {
+		this(theValues.size());
+		addAll(theValues);
+	}
+
+	/**
+	 * Constructor
+	 * 
+	 * @param theInitialCapacity
+	 *           The initial capacity of the list
+	 */
+	public LongList(int theInitialCapacity) {
+		if (theInitialCapacity < 0) {
+			throw new IllegalArgumentException("Capacity must not be negative: " + theInitialCapacity);
+		}
+		myValues = new long[theInitialCapacity];
+	}
+
+	@Override
+	public void add(int theIndex, Long theValue) {
+		if (theIndex < 0 || theIndex > mySize) {
+			throw new IndexOutOfBoundsException("Index: " + theIndex + ", Size: " + mySize);
+		}
+		long value = theValue.longValue();
+		ensureCapacity(mySize + 1);
+		System.arraycopy(myValues, theIndex, myValues, theIndex + 1, mySize - theIndex);
+		myValues[theIndex] = value;
+		mySize++;
+		modCount++;
+	}
+
+	@Override
+	public boolean add(Long theValue) {
+		addLong(theValue.longValue());
+		return true;
+	}
+
+	@Override
+	public boolean addAll(Collection<? extends Long> theValues) {
+		if (theValues instanceof LongList) {
+			LongList values = (LongList) theValues;
+			ensureCapacity(mySize + values.mySize);
+			System.arraycopy(values.myValues, 0, myValues, mySize, values.mySize);
+			mySize += values.mySize;
+			modCount++;
+			return values.mySize > 0;
+		}
+		ensureCapacity(mySize + theValues.size());
+		for (Long next : theValues) {
+			addLong(next.longValue());
+		}
+		return theValues.isEmpty() == false;
+	}
+
+	public void addLong(long theValue) {
+		ensureCapacity(mySize + 1);
+		myValues[mySize++] = theValue;
+		modCount++;
+	}
+
+	@Override
+	public void clear() {
+		mySize = 0;
+		modCount++;
+	}
+
+	@Override
+	public boolean contains(Object theValue) {
+		return indexOf(theValue) != -1;
+	}
+
+	private void ensureCapacity(int theMinCapacity) {
+		if (theMinCapacity > myValues.length) {
+			int newCapacity = Math.max(theMinCapacity, myValues.length + (myValues.length >> 1) + 1);
+			myValues = Arrays.copyOf(myValues, newCapacity);
+		}
+	}
+
+	@Override
+	public Long get(int theIndex) {
+		return getLong(theIndex);
+	}
+
+	public long getLong(int theIndex) {
+		rangeCheck(theIndex);
+		return myValues[theIndex];
+	}
+
+	@Override
+	public int indexOf(Object theValue) {
+		if (!(theValue instanceof Long)) {
+			return -1;
+		}
+		long value = ((Long) theValue).longValue();
+		for (int i = 0; i < mySize; i++) {
+			if (myValues[i] == value) {
+				return i;
+			}
+		}
+		return -1;
+	}
+
+	private void rangeCheck(int theIndex) {
+		if (theIndex < 0 || theIndex >= mySize) {
+			throw new IndexOutOfBoundsException("Index: " + theIndex + ", Size: " + mySize);
+		}
+	}
+
+	@Override
+	public Long remove(int theIndex) {
+		rangeCheck(theIndex);
+		long retVal = myValues[theIndex];
+		System.arraycopy(myValues, theIndex + 1, myValues, theIndex, mySize - theIndex - 1);
+		mySize--;
+		modCount++;
+		return retVal;
+	}
+
+	/**
+	 * Removes any repeated values from this list, keeping the first occurrence of each
+	 * value and otherwise preserving the order of the list
+	 */
+	public void removeDuplicates() {
+		if (mySize < 2) {
+			return;
+		}
+		SortedLongSet distinct = SortedLongSet.of(this);
+		if (distinct.size() == mySize) {
+			return;
+		}
+
+		boolean[] seen = new boolean[distinct.size()];
+		int newSize = 0;
+		for (int i = 0; i < mySize; i++) {
+			long next = myValues[i];
+			int index = distinct.indexOf(next);
+			if (!seen[index]) {
+				seen[index] = true;
+				myValues[newSize++] = next;
+			}
+		}
+		mySize = newSize;
+		modCount++;
+	}
+
+	@Override
+	protected void removeRange(int theFromIndex, int theToIndex) {
+		System.arraycopy(myValues, theToIndex, myValues, theFromIndex, mySize - theToIndex);
+		mySize -= (theToIndex - theFromIndex);
+		modCount++;
+	}
+
+	@Override
+	public Long set(int theIndex, Long theValue) {
+		rangeCheck(theIndex);
+		long retVal = myValues[theIndex];
+		myValues[theIndex] = theValue.longValue();
+		return retVal;
+	}
+
+	@Override
+	public int size() {
+		return mySize;
+	}
+
+	/**
+	 * Returns a new list containing a copy of the given range of this list. Unlike
+	 * {@link #subList(int, int)}, the returned list is independent of this one.
+	 */
+	public LongList copyOfRange(int theFromIndex, int theToIndex) {
+		if (theFromIndex < 0 || theToIndex > mySize || theFromIndex > theToIndex) {
+			throw new IndexOutOfBoundsException("From: " + theFromIndex + ", To: " + theToIndex + ", Size: " + mySize);
+		}
+		LongList retVal = new LongList(theToIndex - theFromIndex);
+		System.arraycopy(myValues, theFromIndex, retVal.myValues, 0, theToIndex - theFromIndex);
+		retVal.mySize = theToIndex - theFromIndex;
+		return retVal;
+	}
+
+	/**
+	 * Returns a copy of the contents of this list as a primitive array
+	 */
+	public long[] toLongArray() {
+		return Arrays.copyOf(myValues, mySize);
+	}
+
+}
@@ -0,0 +1,251 @@
+package ca.uhn.fhir.jpa.util;
+
+
+/*
+ * #%L
+ * HAPI FHIR JPA Server
+ * %%
+ * Copyright (C) 2014 - 2017 University Health Network
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * An immutable set of primitive <code>long</code> values, backed by a sorted array
+ * with no duplicates. Membership tests are binary searches and set operations
+ * ({@link #intersect(SortedLongSet)}, {@link #union(SortedLongSet)} and
+ * {@link #difference(SortedLongSet)}) are linear merges, so large sets of resource
+ * PIDs can be combined without boxing every value.
+ * <p>
+ * Iteration is always in ascending numeric order. All mutating methods inherited from
+ * {@link java.util.Set} throw {@link UnsupportedOperationException}.
+ * </p>
+ */
+public class SortedLongSet extends AbstractSet<Long> {
+
+	private static final SortedLongSet EMPTY = new SortedLongSet(new long[0]);
+
+	private final long[] myValues;
+
+	private SortedLongSet(long[] theSortedDistinctValues) {
+		myValues = theSortedDistinctValues;
+	}
+
+	@Override
+	public boolean contains(Object theValue) {
+		if (!(theValue instanceof Long)) {
+			return false;
+		}
+		return containsLong(((Long) theValue).longValue());
+	}
+
+	public boolean containsLong(long theValue) {
+		return Arrays.binarySearch(myValues, theValue) >= 0;
+	}
+
+	/**
+	 * Returns a set containing the values in this set which are not in the given set
+	 */
+	public SortedLongSet difference(SortedLongSet theOther) {
+		if (isEmpty() || theOther.isEmpty()) {
+			return this;
+		}
+		long[] other = theOther.myValues;
+		long[] retVal = new long[myValues.length];
+		int count = 0;
+		int i = 0;
+		int j = 0;
+		while (i < myValues.length) {
+			if (j == other.length || myValues[i] < other[j]) {
+				retVal[count++] = myValues[i++];
+			} else if (myValues[i] > other[j]) {
+				j++;
+			} else {
+				i++;
+				j++;
+			}
+		}
+		return newInstance(retVal, count);
+	}
+
+	public long getLong(int theIndex) {
+		if (theIndex < 0 || theIndex >= myValues.length) {
+			throw new IndexOutOfBoundsException("Index: " + theIndex + ", Size: " + myValues.length);
+		}
+		return myValues[theIndex];
+	}
+
+	/**
+	 * Returns the position of the given value within this set's ascending ordering,
+	 * or <code>-1</code> if the value is not in this set
+	 */
+	public int indexOf(long theValue) {
+		int retVal = Arrays.binarySearch(myValues, theValue);
+		return retVal >= 0 ? retVal : -1;
+	}
+
+	/**
+	 * Returns a set containing only the values found in both this set and the given set
+	 */
+	public SortedLongSet intersect(SortedLongSet theOther) {
+		long[] other = theOther.myValues;
+		long[] retVal = new long[Math.min(myValues.length, other.length)];
+		int count = 0;
+		int i = 0;
+		int j = 0;
+		while (i < myValues.length && j < other.length) {
+			if (myValues[i] < other[j]) {
+				i++;
+			} else if (myValues[i] > other[j]) {
+				j++;
+			} else {
+				retVal[count++] = myValues[i];
+				i++;
+				j++;
+			}
+		}
+		return newInstance(retVal, count);
+	}
+
+	@Override
+	public Iterator<Long> iterator() {
+		return new Iterator<Long>() {
+			private int myIndex;
+
+			@Override
+			public boolean hasNext() {
+				return myIndex < myValues.length;
+			}
+
+			@Override
+			public Long next() {
+				if (myIndex >= myValues.length) {
+					throw new NoSuchElementException();
+				}
+				return myValues[myIndex++];
+			}
+
+			@Override
+			public void remove() {
+				throw new UnsupportedOperationException();
+			}
+		};
+	}
+
+	@Override
+	public int size() {
+		return myValues.length;
+	}
+
+	/**
+	 * Returns a copy of the contents of this set as an ascending primitive array
+	 */
+	public long[] toLongArray() {
+		return myValues.clone();
+	}
+
+	/**
+	 * Returns a set containing every value found in either this set or the given set
+	 */
+	public SortedLongSet union(SortedLongSet theOther) {
+		if (theOther.isEmpty()) {
+			return this;
+		}
+		if (isEmpty()) {
+			return theOther;
+		}
+		long[] other = theOther.myValues;
+		long[] retVal = new long[myValues.length + other.length];
+		int count = 0;
+		int i = 0;
+		int j = 0;
+		while (i < myValues.length || j < other.length) {
+			if (j == other.length || (i < myValues.length && myValues[i] < other[j])) {
+				retVal[count++] = myValues[i++];
+			} else if (i == myValues.length || myValues[i] > other[j]) {
+				retVal[count++] = other[j++];
+			} else {
+				retVal[count++] = myValues[i];
+				i++;
+				j++;
+			}
+		}
+		return newInstance(retVal, count);
+	}
+
+	/**
+	 * Returns an empty set
+	 */
+	public static SortedLongSet empty() {
+		return EMPTY;
+	}
+
+	private static SortedLongSet newInstance(long[] theSortedDistinctValues, int theCount) {
+		if (theCount == 0) {
+			return EMPTY;
+		}
+		if (theCount == theSortedDistinctValues.length) {
+			return new SortedLongSet(theSortedDistinctValues);
+		}
+		return new SortedLongSet(Arrays.copyOf(theSortedDistinctValues, theCount));
+	}
+
+	/**
+	 * Creates a set containing the distinct values in the given collection. If the
+	 * collection is already a {@link SortedLongSet} it is returned as-is.
+	 */
+	public static SortedLongSet of(Collection<Long> theValues) {
+		if (theValues instanceof SortedLongSet) {
+			return (SortedLongSet) theValues;
+		}
+
+		long[] values;
+		if (theValues instanceof LongList) {
+			values = ((LongList) theValues).toLongArray();
+		} else {
+			values = new long[theValues.size()];
+			int index = 0;
+			for (Long next : theValues) {
+				values[index++] = next.longValue();
+			}
+		}
+		return of(values);
+	}
+
+	/**
+	 * Creates a set containing the distinct values in the given array. The array is
+	 * sorted in place and may be retained by the returned set, so it must not be
+	 * modified by the caller afterwards.
+	 */
+	public static SortedLongSet of(long... theValues) {
+		if (theValues.length == 0) {
+			return EMPTY;
+		}
+		Arrays.sort(theValues);
+		int count = 1;
+		for (int i = 1; i < theValues.length; i++) {
+			if (theValues[i] != theValues[count - 1]) {
+				theValues[count++] = theValues[i];
+			}
+		}
+		return newInstance(theValues, count);
+	}
+
+}
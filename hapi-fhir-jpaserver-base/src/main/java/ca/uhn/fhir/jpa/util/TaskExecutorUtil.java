@@ -0,0 +1,120 @@
+package ca.uhn.fhir.jpa.util;
+
+
+/*
+ * #%L
+ * HAPI FHIR JPA Server
+ * %%
+ * Copyright (C) 2014 - 2017 University Health Network
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.Semaphore;
+
+import org.springframework.core.task.TaskExecutor;
+import org.springframework.core.task.TaskRejectedException;
+
+import ca.uhn.fhir.rest.server.exceptions.InternalErrorException;
+
+public class TaskExecutorUtil {
+	private static final org.slf4j.Logger ourLog = org.slf4j.LoggerFactory.getLogger(TaskExecutorUtil.class);
+
+	private TaskExecutorUtil() {
+		// non instantiable
+	}
+
+	private static <R> R call(Callable<R> theTask) {
+		try {
+			return theTask.call();
+		} catch (RuntimeException e) {
+			throw e;
+		} catch (Exception e) {
+			throw new InternalErrorException(e);
+		}
+	}
+
+	/**
+	 * Executes the given tasks and returns their results in the same order as the tasks. Up to
+	 * <code>theMaxConcurrency</code> tasks are executed at the same time by the given executor
+	 * (tasks rejected by the executor are executed in the calling thread). If the executor is
+	 * <code>null</code> or the concurrency is 1, the tasks are executed one after another in
+	 * the calling thread.
+	 * <p>
+	 * If a task throws an exception, it is rethrown (wrapped in an {@link InternalErrorException}
+	 * if it is checked) once all of the tasks before it have completed.
+	 * </p>
+	 */
+	public static <R> List<R> executeAll(TaskExecutor theExecutor, List<Callable<R>> theTasks, int theMaxConcurrency) {
+		int concurrency = Math.min(theMaxConcurrency, theTasks.size());
+
+		List<R> retVal = new ArrayList<R>(theTasks.size());
+		if (concurrency <= 1 || theExecutor == null) {
+			for (Callable<R> next : theTasks) {
+				retVal.add(call(next));
+			}
+			return retVal;
+		}
+
+		final Semaphore inFlight = new Semaphore(concurrency);
+		List<FutureTask<R>> futures = new ArrayList<FutureTask<R>>(theTasks.size());
+		for (final Callable<R> next : theTasks) {
+			inFlight.acquireUninterruptibly();
+			FutureTask<R> future = new FutureTask<R>(new Callable<R>() {
+				@Override
+				public R call() throws Exception {
+					try {
+						return next.call();
+					} finally {
+						inFlight.release();
+					}
+				}
+			});
+			futures.add(future);
+			try {
+				theExecutor.execute(future);
+			} catch (TaskRejectedException e) {
+				ourLog.debug("Task rejected by executor, running it in the calling thread");
+				future.run();
+			}
+		}
+
+		boolean interrupted = false;
+		for (FutureTask<R> next : futures) {
+			while (true) {
+				try {
+					retVal.add(next.get());
+					break;
+				} catch (InterruptedException e) {
+					interrupted = true;
+				} catch (ExecutionException e) {
+					if (e.getCause() instanceof RuntimeException) {
+						throw (RuntimeException) e.getCause();
+					}
+					throw new InternalErrorException(e.getCause());
+				}
+			}
+		}
+		if (interrupted) {
+			Thread.currentThread().interrupt();
+		}
+		return retVal;
+	}
+
+}
@@ -20,20 +20,56 @@ package ca.uhn.fhir.jpa.validation;
  * #L%
  */
 
+import static org.apache.commons.lang3.ObjectUtils.defaultIfNull;
+import static org.apache.commons.lang3.StringUtils.defaultString;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
 import javax.annotation.PostConstruct;
 import javax.annotation.PreDestroy;
 
+import org.apache.commons.lang3.Validate;
 import org.hl7.fhir.dstu3.hapi.validation.DefaultProfileValidationSupport;
+import org.hl7.fhir.dstu3.hapi.validation.FhirInstanceValidator;
 import org.hl7.fhir.dstu3.hapi.validation.ValidationSupportChain;
+import org.hl7.fhir.dstu3.model.UriType;
+import org.hl7.fhir.dstu3.model.ValueSet.ConceptReferenceComponent;
+import org.hl7.fhir.dstu3.model.ValueSet.ConceptSetComponent;
+import org.hl7.fhir.dstu3.model.ValueSet.ConceptSetFilterComponent;
+import org.hl7.fhir.dstu3.model.ValueSet.ValueSetExpansionComponent;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
+import com.google.common.util.concurrent.UncheckedExecutionException;
+
+import ca.uhn.fhir.context.FhirContext;
 import ca.uhn.fhir.jpa.term.IHapiTerminologySvcDstu3;
+import ca.uhn.fhir.rest.server.exceptions.InternalErrorException;
 
 public class JpaValidationSupportChainDstu3 extends ValidationSupportChain {
 
+	/**
+	 * Guava caches can't hold <code>null</code>, so the loaders store this in place of a
+	 * <code>null</code> result
+	 */
+	private static final Object NULL_VALUE = new Object();
+
+	private long myCacheMaximumSize = 10000;
+	private long myCacheTimeToLiveMillis = TimeUnit.MINUTES.toMillis(10);
+	private volatile Cache<String, Object> myCodeSystemSupportedCache;
+	private volatile Cache<String, Object> myCodeValidationCache;
 	private DefaultProfileValidationSupport myDefaultProfileValidationSupport = new DefaultProfileValidationSupport();
-	
+	private volatile Cache<String, Object> myExpansionCache;
+	private volatile FhirInstanceValidator myInstanceValidator;
+	private volatile long myTerminologyModificationCount;
+
 	@Autowired
 	@Qualifier("myJpaValidationSupportDstu3")
 	public ca.uhn.fhir.jpa.dao.dstu3.IJpaValidationSupportDstu3 myJpaValidationSupportDstu3;
@@ -43,10 +79,145 @@ public class JpaValidationSupportChainDstu3 extends ValidationSupportChain {
 	
 	public JpaValidationSupportChainDstu3() {
 		super();
+		createCaches();
 	}
-	
+
+	private synchronized void createCaches() {
+		myCodeSystemSupportedCache = newCache();
+		myCodeValidationCache = newCache();
+		myExpansionCache = newCache();
+	}
+
+	@Override
+	public ValueSetExpansionComponent expandValueSet(final FhirContext theCtx, final ConceptSetComponent theInclude) {
+		ValueSetExpansionComponent retVal = getCached(myExpansionCache, toKey(theInclude), new Callable<Object>() {
+			@Override
+			public Object call() throws Exception {
+				return defaultIfNull(JpaValidationSupportChainDstu3.super.expandValueSet(theCtx, theInclude), NULL_VALUE);
+			}
+		});
+		// Expansions are mutable, so don't hand out the cached instance
+		return retVal != null ? retVal.copy() : null;
+	}
+
 	public void flush() {
 		myDefaultProfileValidationSupport.flush();
+		invalidateCaches();
+	}
+
+	/**
+	 * Returns the maximum number of entries held in each of the code system support, code
+	 * validation and value set expansion caches
+	 */
+	public long getCacheMaximumSize() {
+		return myCacheMaximumSize;
+	}
+
+	/**
+	 * Returns the number of milliseconds that a cached code system support check, code validation
+	 * or value set expansion is kept for
+	 */
+	public long getCacheTimeToLiveMillis() {
+		return myCacheTimeToLiveMillis;
+	}
+
+	@SuppressWarnings("unchecked")
+	private <T> T getCached(Cache<String, Object> theCache, String theKey, Callable<Object> theLoader) {
+		invalidateCachesIfTerminologyModified();
+
+		Object retVal;
+		try {
+			retVal = theCache.get(theKey, theLoader);
+		} catch (ExecutionException e) {
+			throw new InternalErrorException(e.getCause());
+		} catch (UncheckedExecutionException e) {
+			if (e.getCause() instanceof RuntimeException) {
+				throw (RuntimeException) e.getCause();
+			}
+			throw new InternalErrorException(e.getCause());
+		}
+		return retVal == NULL_VALUE ? null : (T) retVal;
+	}
+
+	/**
+	 * Returns the hit and miss counts for the code system support cache
+	 */
+	public CacheStats getCodeSystemSupportedCacheStats() {
+		return myCodeSystemSupportedCache.stats();
+	}
+
+	/**
+	 * Returns the hit and miss counts for the code validation cache
+	 */
+	public CacheStats getCodeValidationCacheStats() {
+		return myCodeValidationCache.stats();
+	}
+
+	/**
+	 * Returns the hit and miss counts for the value set expansion cache
+	 */
+	public CacheStats getExpansionCacheStats() {
+		return myExpansionCache.stats();
+	}
+
+	/**
+	 * Discards all cached code system support checks, code validations and value set expansions,
+	 * as well as the resources cached by the instance validator (see {@link #setInstanceValidator(FhirInstanceValidator)}).
+	 * This is called automatically when a CodeSystem, ValueSet or StructureDefinition resource is stored,
+	 * or when the terminology service finishes saving deferred concepts.
+	 */
+	public void invalidateCaches() {
+		myCodeSystemSupportedCache.invalidateAll();
+		myCodeValidationCache.invalidateAll();
+		myExpansionCache.invalidateAll();
+
+		FhirInstanceValidator instanceValidator = myInstanceValidator;
+		if (instanceValidator != null) {
+			instanceValidator.invalidateCaches();
+		}
+	}
+
+	/**
+	 * Discards all cached results once the current transaction commits (or immediately if no
+	 * transaction is active), so that results computed before the commit are not kept
+	 */
+	public void invalidateCachesAfterCommit() {
+		if (TransactionSynchronizationManager.isSynchronizationActive()) {
+			TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+				@Override
+				public void afterCommit() {
+					invalidateCaches();
+				}
+			});
+		} else {
+			invalidateCaches();
+		}
+	}
+
+	private void invalidateCachesIfTerminologyModified() {
+		if (myTerminologyService == null) {
+			return;
+		}
+		long modificationCount = myTerminologyService.getConceptModificationCount();
+		if (modificationCount != myTerminologyModificationCount) {
+			myTerminologyModificationCount = modificationCount;
+			invalidateCaches();
+		}
+	}
+
+	@Override
+	public boolean isCodeSystemSupported(final FhirContext theCtx, final String theSystem) {
+		Boolean retVal = getCached(myCodeSystemSupportedCache, defaultString(theSystem), new Callable<Object>() {
+			@Override
+			public Object call() throws Exception {
+				return JpaValidationSupportChainDstu3.super.isCodeSystemSupported(theCtx, theSystem);
+			}
+		});
+		return retVal;
+	}
+
+	private Cache<String, Object> newCache() {
+		return CacheBuilder.newBuilder().maximumSize(myCacheMaximumSize).expireAfterWrite(myCacheTimeToLiveMillis, TimeUnit.MILLISECONDS).recordStats().build();
 	}
 
 	@PostConstruct
@@ -60,6 +231,63 @@ public class JpaValidationSupportChainDstu3 extends ValidationSupportChain {
 	public void preDestroy() {
 		flush();
 	}
-	
-	
+
+	/**
+	 * Sets the maximum number of entries held in each of the code system support, code
+	 * validation and value set expansion caches (default is 10000). Changing this
+	 * discards any cached entries.
+	 */
+	public void setCacheMaximumSize(long theCacheMaximumSize) {
+		Validate.isTrue(theCacheMaximumSize >= 0, "theCacheMaximumSize must not be negative");
+		myCacheMaximumSize = theCacheMaximumSize;
+		createCaches();
+	}
+
+	/**
+	 * Sets the number of milliseconds that a cached code system support check, code validation
+	 * or value set expansion is kept for (default is 10 minutes). Both positive and negative
+	 * results are cached. Changing this discards any cached entries.
+	 */
+	public void setCacheTimeToLiveMillis(long theCacheTimeToLiveMillis) {
+		Validate.isTrue(theCacheTimeToLiveMillis >= 0, "theCacheTimeToLiveMillis must not be negative");
+		myCacheTimeToLiveMillis = theCacheTimeToLiveMillis;
+		createCaches();
+	}
+
+	/**
+	 * Sets the instance validator which uses this chain, so that the structure definitions, value
+	 * sets and code systems it has fetched are discarded along with this chain's caches
+	 * (see {@link #invalidateCaches()})
+	 */
+	public void setInstanceValidator(FhirInstanceValidator theInstanceValidator) {
+		myInstanceValidator = theInstanceValidator;
+	}
+
+	@Override
+	public CodeValidationResult validateCode(final FhirContext theCtx, final String theCodeSystem, final String theCode, final String theDisplay) {
+		String key = defaultString(theCodeSystem) + "|" + defaultString(theCode) + "|" + defaultString(theDisplay);
+		return getCached(myCodeValidationCache, key, new Callable<Object>() {
+			@Override
+			public Object call() throws Exception {
+				return defaultIfNull(JpaValidationSupportChainDstu3.super.validateCode(theCtx, theCodeSystem, theCode, theDisplay), NULL_VALUE);
+			}
+		});
+	}
+
+	private static String toKey(ConceptSetComponent theInclude) {
+		StringBuilder b = new StringBuilder();
+		b.append(defaultString(theInclude.getSystem()));
+		b.append('|').append(defaultString(theInclude.getVersion()));
+		for (UriType next : theInclude.getValueSet()) {
+			b.append("|vs=").append(defaultString(next.getValue()));
+		}
+		for (ConceptReferenceComponent next : theInclude.getConcept()) {
+			b.append("|code=").append(defaultString(next.getCode()));
+		}
+		for (ConceptSetFilterComponent next : theInclude.getFilter()) {
+			b.append("|filter=").append(defaultString(next.getProperty())).append(' ').append(next.getOpElement().getValueAsString()).append(' ').append(defaultString(next.getValue()));
+		}
+		return b.toString();
+	}
+
 }
@@ -65,6 +65,8 @@ public class FhirSystemDaoDstu1Test extends BaseJpaTest {
 	@Before
 	public void before() {
 		super.purgeDatabase(ourEntityManager, ourTxManager);
+		ourCtx.getBean(TagDefinitionCacheSvc.class).clearCache();
+		ourCtx.getBean(ForcedIdCacheSvc.class).clearCache();
 	}
 
 	@Override
@@ -34,6 +34,8 @@ import ca.uhn.fhir.jpa.dao.IFhirResourceDaoSubscription;
 import ca.uhn.fhir.jpa.dao.IFhirResourceDaoValueSet;
 import ca.uhn.fhir.jpa.dao.IFhirSystemDao;
 import ca.uhn.fhir.jpa.dao.IFulltextSearchSvc;
+import ca.uhn.fhir.jpa.dao.ForcedIdCacheSvc;
+import ca.uhn.fhir.jpa.dao.TagDefinitionCacheSvc;
 import ca.uhn.fhir.jpa.entity.ResourceIndexedSearchParamString;
 import ca.uhn.fhir.jpa.entity.ResourceTable;
 import ca.uhn.fhir.jpa.provider.JpaSystemProviderDstu2;
@@ -145,6 +147,10 @@ public abstract class BaseJpaDstu2Test extends BaseJpaTest {
 	@Autowired
 	protected PlatformTransactionManager myTxManager;
 	@Autowired
+	protected TagDefinitionCacheSvc myTagDefinitionCacheSvc;
+	@Autowired
+	protected ForcedIdCacheSvc myForcedIdCacheSvc;
+	@Autowired
 	@Qualifier("myValueSetDaoDstu2")
 	protected IFhirResourceDaoValueSet<ValueSet, CodingDt, CodeableConceptDt> myValueSetDao;
 	@Before
@@ -168,6 +174,8 @@ public abstract class BaseJpaDstu2Test extends BaseJpaTest {
 	public void beforePurgeDatabase() {
 		final EntityManager entityManager = this.myEntityManager;
 		purgeDatabase(entityManager, myTxManager);
+		myTagDefinitionCacheSvc.clearCache();
+		myForcedIdCacheSvc.clearCache();
 	}
 
 	@Before
@@ -31,11 +31,14 @@ import org.springframework.transaction.support.TransactionTemplate;
 import ca.uhn.fhir.context.FhirContext;
 import ca.uhn.fhir.jpa.config.TestDstu3Config;
 import ca.uhn.fhir.jpa.dao.*;
+import ca.uhn.fhir.jpa.dao.data.IResourceReindexJobDao;
 import ca.uhn.fhir.jpa.dao.data.IResourceTableDao;
+import ca.uhn.fhir.jpa.dao.data.ITermConceptDao;
 import ca.uhn.fhir.jpa.dao.dstu2.FhirResourceDaoDstu2SearchNoFtTest;
 import ca.uhn.fhir.jpa.entity.ResourceIndexedSearchParamString;
 import ca.uhn.fhir.jpa.entity.ResourceTable;
 import ca.uhn.fhir.jpa.provider.dstu3.JpaSystemProviderDstu3;
+import ca.uhn.fhir.jpa.reindex.ResourceReindexingSvc;
 import ca.uhn.fhir.jpa.search.StaleSearchDeletingSvc;
 import ca.uhn.fhir.jpa.term.IHapiTerminologySvc;
 import ca.uhn.fhir.jpa.validation.JpaValidationSupportChainDstu3;
@@ -108,7 +111,7 @@ public abstract class BaseJpaDstu3Test extends BaseJpaTest {
 	protected IFhirResourceDao<Immunization> myImmunizationDao;
 	protected IServerInterceptor myInterceptor;
 	@Autowired
-	private JpaValidationSupportChainDstu3 myJpaValidationSupportChainDstu3;
+	protected JpaValidationSupportChainDstu3 myJpaValidationSupportChainDstu3;
 	@Autowired
 	@Qualifier("myLocationDaoDstu3")
 	protected IFhirResourceDao<Location> myLocationDao;
@@ -152,6 +155,10 @@ public abstract class BaseJpaDstu3Test extends BaseJpaTest {
 	@Qualifier("myResourceProvidersDstu3")
 	protected Object myResourceProviders;
 	@Autowired
+	protected IResourceReindexJobDao myResourceReindexJobDao;
+	@Autowired
+	protected ResourceReindexingSvc myResourceReindexingSvc;
+	@Autowired
 	protected IResourceTableDao myResourceTableDao;
 	@Autowired
 	protected IFulltextSearchSvc mySearchDao;
@@ -173,10 +180,16 @@ public abstract class BaseJpaDstu3Test extends BaseJpaTest {
 	@Qualifier("mySystemProviderDstu3")
 	protected JpaSystemProviderDstu3 mySystemProvider;
 	@Autowired
+	protected ITermConceptDao myTermConceptDao;
+	@Autowired
 	protected IHapiTerminologySvc myTermSvc;
 	@Autowired
 	protected PlatformTransactionManager myTxManager;
 	@Autowired
+	protected TagDefinitionCacheSvc myTagDefinitionCacheSvc;
+	@Autowired
+	protected ForcedIdCacheSvc myForcedIdCacheSvc;
+	@Autowired
 	@Qualifier("myJpaValidationSupportChainDstu3")
 	protected IValidationSupport myValidationSupport;
 	@Autowired
@@ -212,6 +225,10 @@ public abstract class BaseJpaDstu3Test extends BaseJpaTest {
 	public void beforePurgeDatabase() {
 		final EntityManager entityManager = this.myEntityManager;
 		purgeDatabase(entityManager, myTxManager);
+		myTagDefinitionCacheSvc.clearCache();
+		myForcedIdCacheSvc.clearCache();
+		// Also discards the profiles, value sets and code systems cached by the instance validator
+		myJpaValidationSupportChainDstu3.invalidateCaches();
 	}
 
 	@Before
@@ -3,10 +3,12 @@ package ca.uhn.fhir.jpa.dao.dstu3;
 import static org.hamcrest.Matchers.contains;
 import static org.hamcrest.Matchers.containsInAnyOrder;
 import static org.hamcrest.Matchers.empty;
+import static org.hamcrest.Matchers.lessThanOrEqualTo;
 import static org.hamcrest.Matchers.not;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotEquals;
 import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
 import static org.mockito.Mockito.mock;
 
 import java.util.List;
@@ -22,12 +24,16 @@ import org.hl7.fhir.dstu3.model.Patient;
 import org.hl7.fhir.dstu3.model.Quantity;
 import org.hl7.fhir.dstu3.model.StringType;
 import org.hl7.fhir.instance.model.api.IIdType;
+import org.junit.After;
 import org.junit.AfterClass;
 import org.junit.Ignore;
 import org.junit.Test;
+import org.springframework.beans.factory.annotation.Autowired;
 
+import ca.uhn.fhir.jpa.dao.DaoConfig;
 import ca.uhn.fhir.jpa.dao.FulltextSearchSvcImpl.Suggestion;
 import ca.uhn.fhir.jpa.dao.SearchParameterMap;
+import ca.uhn.fhir.jpa.search.FulltextIndexingSvc;
 import ca.uhn.fhir.rest.param.StringAndListParam;
 import ca.uhn.fhir.rest.param.StringOrListParam;
 import ca.uhn.fhir.rest.param.StringParam;
@@ -41,6 +47,16 @@ public class FhirResourceDaoDstu3SearchFtTest extends BaseJpaDstu3Test {
 	
 	private static final org.slf4j.Logger ourLog = org.slf4j.LoggerFactory.getLogger(FhirResourceDaoDstu3SearchFtTest.class);
 
+	@Autowired
+	private FulltextIndexingSvc myFulltextIndexingSvc;
+
+	@After
+	public void afterResetFulltextIndexing() {
+		myDaoConfig.setFulltextIndexingAsync(new DaoConfig().isFulltextIndexingAsync());
+		myDaoConfig.setFulltextIndexingMaxWaitMillis(new DaoConfig().getFulltextIndexingMaxWaitMillis());
+		myDaoConfig.setFulltextIndexingQueueCapacity(new DaoConfig().getFulltextIndexingQueueCapacity());
+	}
+
 	@AfterClass
 	public static void afterClassClearContext() {
 		TestUtil.clearAllStaticFieldsForUnitTest();
@@ -252,6 +268,79 @@ public class FhirResourceDaoDstu3SearchFtTest extends BaseJpaDstu3Test {
 	}
 	
 	
+	@Test
+	public void testSearchWithAsyncIndexing() {
+		myDaoConfig.setFulltextIndexingAsync(true);
+		myDaoConfig.setFulltextIndexingMaxWaitMillis(10000);
+
+		Patient patient = new Patient();
+		patient.getText().setDivAsString("<div>DIVASYNCAAA</div>");
+		patient.addName().addGiven("NAMEASYNCAAA");
+		IIdType pId1 = myPatientDao.create(patient, mockSrd()).getId().toUnqualifiedVersionless();
+
+		SearchParameterMap map = new SearchParameterMap();
+		map.add(Constants.PARAM_CONTENT, new StringParam("NAMEASYNCAAA"));
+		assertThat(toUnqualifiedVersionlessIdValues(myPatientDao.search(map)), contains(toValues(pId1)));
+
+		map = new SearchParameterMap();
+		map.add(Constants.PARAM_TEXT, new StringParam("DIVASYNCAAA"));
+		assertThat(toUnqualifiedVersionlessIdValues(myPatientDao.search(map)), contains(toValues(pId1)));
+
+		patient = new Patient();
+		patient.setId(pId1);
+		patient.addName().addGiven("NAMEASYNCBBB");
+		myPatientDao.update(patient, mockSrd());
+
+		map = new SearchParameterMap();
+		map.add(Constants.PARAM_CONTENT, new StringParam("NAMEASYNCAAA"));
+		assertThat(toUnqualifiedVersionlessIdValues(myPatientDao.search(map)), empty());
+
+		map = new SearchParameterMap();
+		map.add(Constants.PARAM_CONTENT, new StringParam("NAMEASYNCBBB"));
+		assertThat(toUnqualifiedVersionlessIdValues(myPatientDao.search(map)), contains(toValues(pId1)));
+
+		myPatientDao.delete(pId1, mockSrd());
+		map = new SearchParameterMap();
+		map.add(Constants.PARAM_CONTENT, new StringParam("NAMEASYNCBBB"));
+		assertThat(toUnqualifiedVersionlessIdValues(myPatientDao.search(map)), empty());
+	}
+
+	@Test
+	public void testAsyncIndexingQueueNotProcessedWhenSchedulingDisabled() {
+		myDaoConfig.setFulltextIndexingAsync(true);
+
+		Patient patient = new Patient();
+		patient.addName().addGiven("NAMESCHEDULING");
+		myPatientDao.create(patient, mockSrd());
+		assertEquals(1, myFulltextIndexingSvc.getQueueSize());
+
+		myFulltextIndexingSvc.processQueue();
+		assertEquals(1, myFulltextIndexingSvc.getQueueSize());
+
+		assertTrue(myFulltextIndexingSvc.awaitIndexing(10000));
+		assertEquals(0, myFulltextIndexingSvc.getQueueSize());
+	}
+
+	@Test
+	public void testAsyncIndexingQueueIsBounded() {
+		myDaoConfig.setFulltextIndexingAsync(true);
+		myDaoConfig.setFulltextIndexingQueueCapacity(2);
+
+		for (int i = 0; i < 10; i++) {
+			Patient patient = new Patient();
+			patient.addName().addGiven("NAMEBOUNDED" + i);
+			myPatientDao.create(patient, mockSrd());
+			assertThat(myFulltextIndexingSvc.getQueueSize(), lessThanOrEqualTo(2));
+		}
+
+		assertTrue(myFulltextIndexingSvc.awaitIndexing(10000));
+		assertEquals(0, myFulltextIndexingSvc.getQueueSize());
+
+		SearchParameterMap map = new SearchParameterMap();
+		map.add(Constants.PARAM_CONTENT, new StringParam("NAMEBOUNDED9"));
+		assertEquals(1, myPatientDao.search(map).size());
+	}
+
 	@Test
 	public void testSearchAndReindex() {
 		Patient patient;
@@ -3,8 +3,10 @@ package ca.uhn.fhir.jpa.dao.dstu3;
 import static org.hamcrest.Matchers.contains;
 import static org.hamcrest.Matchers.containsInAnyOrder;
 import static org.hamcrest.Matchers.containsInRelativeOrder;
+import static org.hamcrest.Matchers.containsString;
 import static org.hamcrest.Matchers.empty;
 import static org.hamcrest.Matchers.endsWith;
+import static org.hamcrest.Matchers.greaterThanOrEqualTo;
 import static org.hamcrest.Matchers.hasItem;
 import static org.hamcrest.Matchers.hasItems;
 import static org.hamcrest.Matchers.not;
@@ -48,7 +50,10 @@ import ca.uhn.fhir.jpa.dao.BaseHapiFhirDao;
 import ca.uhn.fhir.jpa.dao.DaoConfig;
 import ca.uhn.fhir.jpa.dao.SearchParameterMap;
 import ca.uhn.fhir.jpa.dao.SearchParameterMap.EverythingModeEnum;
+import ca.uhn.fhir.jpa.dao.data.ISearchDao;
 import ca.uhn.fhir.jpa.entity.*;
+import ca.uhn.fhir.jpa.search.PersistedJpaBundleProvider;
+import ca.uhn.fhir.jpa.search.SearchResultStreamingSvc;
 import ca.uhn.fhir.jpa.search.StaleSearchDeletingSvc;
 import ca.uhn.fhir.model.api.IQueryParameterType;
 import ca.uhn.fhir.model.api.Include;
@@ -58,6 +63,7 @@ import ca.uhn.fhir.rest.api.SortSpec;
 import ca.uhn.fhir.rest.param.*;
 import ca.uhn.fhir.rest.server.Constants;
 import ca.uhn.fhir.rest.server.IBundleProvider;
+import ca.uhn.fhir.rest.server.exceptions.InternalErrorException;
 import ca.uhn.fhir.rest.server.exceptions.InvalidRequestException;
 import ca.uhn.fhir.util.TestUtil;
 
@@ -65,6 +71,128 @@ import ca.uhn.fhir.util.TestUtil;
 public class FhirResourceDaoDstu3SearchNoFtTest extends BaseJpaDstu3Test {
 	private static final org.slf4j.Logger ourLog = org.slf4j.LoggerFactory.getLogger(FhirResourceDaoDstu3SearchNoFtTest.class);
 
+	@Test
+	public void testSearchWithStreamedResults() {
+		myDaoConfig.setStreamSearchResults(true);
+		myDaoConfig.setStreamSearchResultsBatchSize(5);
+
+		List<IIdType> ids = new ArrayList<IIdType>();
+		for (int i = 0; i < 23; i++) {
+			Patient p = new Patient();
+			p.addName().setFamily("FAM" + i);
+			p.setActive(true);
+			ids.add(myPatientDao.create(p, mySrd).getId().toUnqualifiedVersionless());
+		}
+
+		// The query for the last parameter is streamed
+		IBundleProvider results = myPatientDao.search(Patient.SP_ACTIVE, new TokenParam(null, "true"));
+		assertEquals(23, results.size());
+		List<IIdType> found = new ArrayList<IIdType>();
+		for (int i = 0; i < results.size(); i += 10) {
+			found.addAll(toUnqualifiedVersionlessIds(results.getResources(i, Math.min(i + 10, results.size()))));
+		}
+		assertThat(found, containsInAnyOrder(ids.toArray(new IIdType[0])));
+
+		// Earlier parameters are resolved and restrict the streamed query
+		SearchParameterMap map = new SearchParameterMap();
+		map.add(Patient.SP_FAMILY, new StringParam("FAM1"));
+		map.add(Patient.SP_ACTIVE, new TokenParam(null, "true"));
+		results = myPatientDao.search(map);
+		assertEquals(11, results.size());
+		assertThat(toUnqualifiedVersionlessIds(results), containsInAnyOrder(ids.get(1), ids.get(10), ids.get(11), ids.get(12), ids.get(13), ids.get(14), ids.get(15), ids.get(16), ids.get(17), ids.get(18), ids.get(19)));
+
+		map = new SearchParameterMap();
+		map.add(Patient.SP_FAMILY, new StringParam("NOTFOUND"));
+		map.add(Patient.SP_ACTIVE, new TokenParam(null, "true"));
+		results = myPatientDao.search(map);
+		assertEquals(0, results.size());
+
+		// Search for all resources of a type is streamed too
+		results = myPatientDao.search(new SearchParameterMap());
+		assertEquals(23, results.size());
+		found = toUnqualifiedVersionlessIds(results.getResources(20, 23));
+		assertEquals(3, found.size());
+		assertThat(toUnqualifiedVersionlessIds(results), containsInAnyOrder(ids.toArray(new IIdType[0])));
+
+		// No results
+		results = myPatientDao.search(Patient.SP_FAMILY, new StringParam("NOTFOUND"));
+		assertEquals(0, results.size());
+		assertEquals(0, results.getResources(0, 10).size());
+	}
+
+	@Test
+	public void testSearchWithStreamedResultsExcludesResourcesCreatedAfterSearchStarts() {
+		myDaoConfig.setStreamSearchResults(true);
+		myDaoConfig.setStreamSearchResultsBatchSize(5);
+
+		final List<IIdType> ids = new ArrayList<IIdType>();
+		for (int i = 0; i < 12; i++) {
+			Patient p = new Patient();
+			p.setActive(true);
+			ids.add(myPatientDao.create(p, mySrd).getId().toUnqualifiedVersionless());
+		}
+
+		// The results are streamed once this transaction commits, after the new resources exist
+		IBundleProvider results = newTxTemplate().execute(new TransactionCallback<IBundleProvider>() {
+			@Override
+			public IBundleProvider doInTransaction(TransactionStatus theStatus) {
+				IBundleProvider retVal = myPatientDao.search(Patient.SP_ACTIVE, new TokenParam(null, "true"));
+				for (int i = 0; i < 3; i++) {
+					Patient p = new Patient();
+					p.setActive(true);
+					myPatientDao.create(p, mySrd);
+				}
+				return retVal;
+			}
+		});
+
+		assertEquals(12, results.size());
+		List<IIdType> found = toUnqualifiedVersionlessIds(results.getResources(0, 20));
+		assertThat(found, containsInAnyOrder(ids.toArray(new IIdType[0])));
+		assertEquals(12, mySearchEntityDao.findByUuid(((PersistedJpaBundleProvider) results).getSearchUuid()).getNumFound().intValue());
+	}
+
+	@Test
+	public void testAbandonedLoadingSearchesAreFailed() {
+		myDaoConfig.setStreamSearchResultsMaxWaitMillis(1000);
+
+		Date noProgressSince = new Date(System.currentTimeMillis() - 2000);
+		final Search abandoned = createLoadingSearch(noProgressSince);
+		final Search inProgress = createLoadingSearch(new Date());
+
+		assertEquals(1, mySearchResultStreamingSvc.failAbandonedSearches());
+		assertEquals(SearchStatusEnum.FAILED, mySearchEntityDao.findOne(abandoned.getId()).getStatus());
+		assertEquals(SearchStatusEnum.LOADING, mySearchEntityDao.findOne(inProgress.getId()).getStatus());
+
+		// A request for the results of an abandoned search fails it instead of waiting
+		Search abandonedLater = createLoadingSearch(noProgressSince);
+		try {
+			new PersistedJpaBundleProvider(abandonedLater.getUuid(), myPatientDao).getResources(0, 5);
+			fail();
+		} catch (InternalErrorException e) {
+			assertThat(e.getMessage(), containsString("no results have been written for 1000ms"));
+		}
+		assertEquals(SearchStatusEnum.FAILED, mySearchEntityDao.findOne(abandonedLater.getId()).getStatus());
+	}
+
+	private Search createLoadingSearch(final Date theLastProgress) {
+		return newTxTemplate().execute(new TransactionCallback<Search>() {
+			@Override
+			public Search doInTransaction(TransactionStatus theStatus) {
+				Search search = new Search();
+				search.setUuid(UUID.randomUUID().toString());
+				search.setCreated(new Date());
+				search.setSearchType(SearchTypeEnum.SEARCH);
+				search.setResourceType("Patient");
+				search.setTotalCount(10);
+				search.setNumFound(0);
+				search.setStatus(SearchStatusEnum.LOADING);
+				search.setLastProgress(theLastProgress);
+				return mySearchEntityDao.save(search);
+			}
+		});
+	}
+
 	@Test
 	public void testSearchWithRevIncludes() {
 		final String methodName = "testSearchWithRevIncludes";
@@ -592,6 +720,32 @@ public class FhirResourceDaoDstu3SearchNoFtTest extends BaseJpaDstu3Test {
 		
 	}
 
+	@Test
+	public void testSearchByIdParamAndOtherParam() {
+		IIdType id1;
+		{
+			Patient patient = new Patient();
+			patient.addIdentifier().setSystem("urn:system").setValue("001");
+			id1 = myPatientDao.create(patient, mySrd).getId().toUnqualifiedVersionless();
+		}
+		IIdType id2;
+		{
+			Patient patient = new Patient();
+			patient.addIdentifier().setSystem("urn:system").setValue("002");
+			id2 = myPatientDao.create(patient, mySrd).getId().toUnqualifiedVersionless();
+		}
+
+		SearchParameterMap params = new SearchParameterMap();
+		params.add(Patient.SP_IDENTIFIER, new TokenParam("urn:system", "001"));
+		params.add("_id", new StringOrListParam().addOr(new StringParam(id1.getIdPart())).addOr(new StringParam(id2.getIdPart())));
+		assertThat(toUnqualifiedVersionlessIds(myPatientDao.search(params)), containsInAnyOrder(id1));
+
+		params = new SearchParameterMap();
+		params.add(Patient.SP_IDENTIFIER, new TokenParam("urn:system", "001"));
+		params.add("_id", new StringParam(id2.getIdPart()));
+		assertThat(toUnqualifiedVersionlessIds(myPatientDao.search(params)), empty());
+	}
+
 	@Test
 	public void testSearchByIdParamOr() {
 		IIdType id1;
@@ -1507,10 +1661,20 @@ public class FhirResourceDaoDstu3SearchNoFtTest extends BaseJpaDstu3Test {
 	public final void after() {
 		myDaoConfig.setExpireSearchResults(new DaoConfig().isExpireSearchResults());
 		myDaoConfig.setExpireSearchResultsAfterMillis(new DaoConfig().getExpireSearchResultsAfterMillis());
+		myDaoConfig.setExpireSearchResultsBatchSize(new DaoConfig().getExpireSearchResultsBatchSize());
+		myDaoConfig.setStreamSearchResults(new DaoConfig().isStreamSearchResults());
+		myDaoConfig.setStreamSearchResultsBatchSize(new DaoConfig().getStreamSearchResultsBatchSize());
+		myDaoConfig.setStreamSearchResultsMaxWaitMillis(new DaoConfig().getStreamSearchResultsMaxWaitMillis());
 	}
 	
 	@Autowired
 	protected StaleSearchDeletingSvc myStaleSearchDeletingSvc;
+
+	@Autowired
+	private ISearchDao mySearchEntityDao;
+
+	@Autowired
+	private SearchResultStreamingSvc mySearchResultStreamingSvc;
 	
 
 	@Test
@@ -1577,6 +1741,37 @@ public class FhirResourceDaoDstu3SearchNoFtTest extends BaseJpaDstu3Test {
 		assertThat(toUnqualifiedVersionlessIds(bundleProvider), not(containsInAnyOrder(pid1, pid2)));
 	}
 
+	@Test
+	public void testSearchPagesExpiryInBatches() throws Exception {
+		Patient patient = new Patient();
+		patient.addName().setFamily("EXPIRE");
+		IIdType pid1 = myPatientDao.create(patient, mySrd).getId().toUnqualifiedVersionless();
+
+		List<IBundleProvider> bundleProviders = new ArrayList<IBundleProvider>();
+		for (int i = 0; i < 5; i++) {
+			SearchParameterMap params = new SearchParameterMap();
+			params.add(Patient.SP_FAMILY, new StringParam("EXPIRE"));
+			IBundleProvider bundleProvider = myPatientDao.search(params);
+			assertThat(toUnqualifiedVersionlessIds(bundleProvider), contains(pid1));
+			bundleProviders.add(bundleProvider);
+		}
+
+		Thread.sleep(1500);
+
+		long totalBefore = myStaleSearchDeletingSvc.getTotalSearchesDeleted();
+		myDaoConfig.setExpireSearchResultsBatchSize(2);
+		myDaoConfig.setExpireSearchResultsAfterMillis(500);
+		myStaleSearchDeletingSvc.pollForStaleSearches();
+
+		// Other tests may have left stale searches behind too
+		assertThat(myStaleSearchDeletingSvc.getLastPassSearchesDeleted(), greaterThanOrEqualTo(5));
+		assertThat(myStaleSearchDeletingSvc.getLastPassResultsDeleted(), greaterThanOrEqualTo(5));
+		assertEquals(totalBefore + myStaleSearchDeletingSvc.getLastPassSearchesDeleted(), myStaleSearchDeletingSvc.getTotalSearchesDeleted());
+		for (IBundleProvider next : bundleProviders) {
+			assertThat(toUnqualifiedVersionlessIds(next), empty());
+		}
+	}
+
 	@Test
 	public void testSearchStringParamReallyLong() {
 		String methodName = "testSearchStringParamReallyLong";
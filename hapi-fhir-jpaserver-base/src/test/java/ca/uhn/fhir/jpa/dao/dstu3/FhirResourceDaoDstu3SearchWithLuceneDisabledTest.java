@@ -142,6 +142,10 @@ public class FhirResourceDaoDstu3SearchWithLuceneDisabledTest extends BaseJpaTes
 
 	@Autowired
 	protected PlatformTransactionManager myTxManager;
+	@Autowired
+	protected TagDefinitionCacheSvc myTagDefinitionCacheSvc;
+	@Autowired
+	protected ForcedIdCacheSvc myForcedIdCacheSvc;
 
 	@Autowired
 	@Qualifier("myJpaValidationSupportChainDstu3")
@@ -152,6 +156,8 @@ public class FhirResourceDaoDstu3SearchWithLuceneDisabledTest extends BaseJpaTes
 	public void beforePurgeDatabase() {
 		final EntityManager entityManager = this.myEntityManager;
 		purgeDatabase(entityManager, myTxManager);
+		myTagDefinitionCacheSvc.clearCache();
+		myForcedIdCacheSvc.clearCache();
 	}
 
 	@Before
@@ -19,6 +19,7 @@ import java.util.List;
 
 import javax.persistence.TypedQuery;
 
+import org.hl7.fhir.dstu3.model.DateTimeType;
 import org.hl7.fhir.dstu3.model.Observation;
 import org.hl7.fhir.dstu3.model.Observation.ObservationStatus;
 import org.hl7.fhir.dstu3.model.Patient;
@@ -31,6 +32,8 @@ import org.junit.AfterClass;
 import org.junit.Before;
 import org.junit.Test;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.support.TransactionCallbackWithoutResult;
 
 import ca.uhn.fhir.jpa.dao.SearchParameterMap;
 import ca.uhn.fhir.jpa.dao.data.ISubscriptionFlaggedResourceDataDao;
@@ -412,6 +415,91 @@ public class FhirResourceDaoDstu3SubscriptionTest extends BaseJpaDstu3Test {
 	}
 
 
+	@Test
+	public void testSubscriptionCriteriaAreMatchedWhenResourcesAreWritten() throws Exception {
+		Patient p = new Patient();
+		p.addName().setFamily("testSubscriptionCriteriaAreMatchedWhenResourcesAreWritten");
+		IIdType pId = myPatientDao.create(p, mySrd).getId().toUnqualifiedVersionless();
+		IIdType otherPatientId = myPatientDao.create(new Patient(), mySrd).getId().toUnqualifiedVersionless();
+
+		// Matched in memory
+		Subscription subs = new Subscription();
+		subs.getChannel().setType(SubscriptionChannelType.WEBSOCKET);
+		subs.setCriteria("Observation?code=http://foo|CODE1,http://foo|CODE2&subject=Patient/" + pId.getIdPart());
+		subs.setStatus(SubscriptionStatus.ACTIVE);
+		Long codeSubsId = mySubscriptionDao.getSubscriptionTablePidForSubscriptionResource(mySubscriptionDao.create(subs, mySrd).getId());
+
+		// Needs a search, since dates aren't matched in memory
+		subs = new Subscription();
+		subs.getChannel().setType(SubscriptionChannelType.WEBSOCKET);
+		subs.setCriteria("Observation?date=gt2015-01-01");
+		subs.setStatus(SubscriptionStatus.ACTIVE);
+		Long dateSubsId = mySubscriptionDao.getSubscriptionTablePidForSubscriptionResource(mySubscriptionDao.create(subs, mySrd).getId());
+
+		// Not active
+		subs = new Subscription();
+		subs.getChannel().setType(SubscriptionChannelType.WEBSOCKET);
+		subs.setCriteria("Observation?code=http://foo|CODE1");
+		subs.setStatus(SubscriptionStatus.REQUESTED);
+		Long requestedSubsId = mySubscriptionDao.getSubscriptionTablePidForSubscriptionResource(mySubscriptionDao.create(subs, mySrd).getId());
+
+		Observation obs = new Observation();
+		obs.getSubject().setReferenceElement(pId);
+		obs.getCode().addCoding().setSystem("http://foo").setCode("CODE2");
+		obs.setEffective(new DateTimeType("2016-01-01"));
+		IIdType bothId = myObservationDao.create(obs, mySrd).getId().toUnqualifiedVersionless();
+
+		obs = new Observation();
+		obs.getSubject().setReferenceElement(pId);
+		obs.getCode().addCoding().setSystem("http://foo").setCode("CODE3");
+		obs.setEffective(new DateTimeType("2016-01-01"));
+		IIdType dateOnlyId = myObservationDao.create(obs, mySrd).getId().toUnqualifiedVersionless();
+
+		obs = new Observation();
+		obs.getSubject().setReferenceElement(otherPatientId);
+		obs.getCode().addCoding().setSystem("http://foo").setCode("CODE1");
+		obs.setEffective(new DateTimeType("2010-01-01"));
+		myObservationDao.create(obs, mySrd);
+
+		assertEquals(3, mySubscriptionDao.pollForNewUndeliveredResources());
+		assertThat(toUnqualifiedVersionlessIds(mySubscriptionDao.getUndeliveredResourcesAndPurge(codeSubsId)), contains(bothId));
+		assertThat(toUnqualifiedVersionlessIds(mySubscriptionDao.getUndeliveredResourcesAndPurge(dateSubsId)), contains(bothId, dateOnlyId));
+		assertThat(mySubscriptionDao.getUndeliveredResourcesAndPurge(requestedSubsId), empty());
+	}
+
+	@Test
+	public void testSubscriptionChangedElsewhereIsPickedUpByRefresh() throws Exception {
+		Subscription subs = new Subscription();
+		subs.getChannel().setType(SubscriptionChannelType.WEBSOCKET);
+		subs.setCriteria("Observation?code=http://foo|REFRESH");
+		subs.setStatus(SubscriptionStatus.ACTIVE);
+		final IIdType subsId = mySubscriptionDao.create(subs, mySrd).getId().toUnqualifiedVersionless();
+
+		Observation obs = new Observation();
+		obs.getCode().addCoding().setSystem("http://foo").setCode("REFRESH");
+		myObservationDao.create(obs, mySrd);
+		assertEquals(1, mySubscriptionDao.pollForNewUndeliveredResources());
+
+		// Simulate another server turning the subscription off
+		newTxTemplate().execute(new TransactionCallbackWithoutResult() {
+			@Override
+			protected void doInTransactionWithoutResult(TransactionStatus theStatus) {
+				myEntityManager.createNamedQuery("Q_HFJ_SUBSCRIPTION_SET_STATUS").setParameter("res_id", subsId.getIdPartAsLong()).setParameter("status", SubscriptionStatus.OFF.toCode()).executeUpdate();
+				myEntityManager.createQuery("UPDATE ResourceTable t SET t.myVersion = t.myVersion + 1 WHERE t.myId = :id").setParameter("id", subsId.getIdPartAsLong()).executeUpdate();
+			}
+		});
+
+		// Not refreshed yet
+		myObservationDao.create(obs, mySrd);
+		assertEquals(1, mySubscriptionDao.pollForNewUndeliveredResources());
+
+		myDaoConfig.setSchedulingDisabled(false);
+		mySubscriptionDao.refreshMatchersScheduler();
+
+		myObservationDao.create(obs, mySrd);
+		assertEquals(0, mySubscriptionDao.pollForNewUndeliveredResources());
+	}
+
 	@Test
 	public void testSubscriptionResourcesAppear2() throws Exception {
 		myDaoConfig.setSubscriptionPollDelay(0);
@@ -7,6 +7,7 @@ import static org.hamcrest.Matchers.containsString;
 import static org.hamcrest.Matchers.empty;
 import static org.hamcrest.Matchers.endsWith;
 import static org.hamcrest.Matchers.greaterThan;
+import static org.hamcrest.Matchers.greaterThanOrEqualTo;
 import static org.hamcrest.Matchers.hasItem;
 import static org.hamcrest.Matchers.matchesPattern;
 import static org.hamcrest.Matchers.not;
@@ -14,6 +15,7 @@ import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotEquals;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
 import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertThat;
 import static org.junit.Assert.assertTrue;
@@ -24,6 +26,7 @@ import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.verifyNoMoreInteractions;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.Date;
@@ -31,6 +34,12 @@ import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import javax.persistence.TypedQuery;
 
 import org.apache.commons.io.IOUtils;
 import org.apache.commons.lang3.RandomStringUtils;
@@ -82,17 +91,25 @@ import org.hl7.fhir.dstu3.model.UriType;
 import org.hl7.fhir.instance.model.api.IAnyResource;
 import org.hl7.fhir.instance.model.api.IBaseResource;
 import org.hl7.fhir.instance.model.api.IIdType;
+import org.junit.After;
 import org.junit.AfterClass;
 import org.junit.Ignore;
 import org.junit.Test;
 import org.mockito.ArgumentCaptor;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.support.TransactionCallbackWithoutResult;
+import org.springframework.transaction.support.TransactionTemplate;
 
 import com.google.common.collect.Lists;
 
 import ca.uhn.fhir.jpa.dao.BaseHapiFhirDao;
 import ca.uhn.fhir.jpa.dao.BaseHapiFhirResourceDao;
+import ca.uhn.fhir.jpa.dao.DaoConfig;
 import ca.uhn.fhir.jpa.dao.IFhirResourceDao;
+import ca.uhn.fhir.jpa.dao.ParsedResourceCache;
 import ca.uhn.fhir.jpa.dao.SearchParameterMap;
+import ca.uhn.fhir.jpa.entity.ResourceEncodingEnum;
 import ca.uhn.fhir.jpa.entity.ResourceIndexedSearchParamString;
 import ca.uhn.fhir.jpa.entity.TagTypeEnum;
 import ca.uhn.fhir.model.api.IQueryParameterType;
@@ -110,6 +127,7 @@ import ca.uhn.fhir.rest.param.DateParam;
 import ca.uhn.fhir.rest.param.DateRangeParam;
 import ca.uhn.fhir.rest.param.QuantityParam;
 import ca.uhn.fhir.rest.param.ReferenceParam;
+import ca.uhn.fhir.rest.param.StringOrListParam;
 import ca.uhn.fhir.rest.param.StringParam;
 import ca.uhn.fhir.rest.param.TokenOrListParam;
 import ca.uhn.fhir.rest.param.TokenParam;
@@ -565,6 +583,229 @@ public class FhirResourceDaoDstu3Test extends BaseJpaDstu3Test {
 		obs = myObservationDao.read(obsId.toUnqualifiedVersionless(), mySrd);
 	}
 
+	@Test
+	public void testForcedIdCache() {
+		Patient pat = new Patient();
+		pat.setId("FIC1");
+		IIdType id1 = myPatientDao.update(pat, mySrd).getId().toUnqualifiedVersionless();
+		pat = new Patient();
+		pat.setId("FIC2");
+		IIdType id2 = myPatientDao.update(pat, mySrd).getId().toUnqualifiedVersionless();
+		IIdType id3 = myPatientDao.create(new Patient(), mySrd).getId().toUnqualifiedVersionless();
+
+		Long pid1 = myPatientDao.readEntity(id1).getId();
+		Long pid2 = myPatientDao.readEntity(id2).getId();
+
+		myForcedIdCacheSvc.clearCache();
+		Map<String, Long> pids = myForcedIdCacheSvc.translateForcedIdsToPids("Patient", Arrays.asList("FIC1", "FIC2", "FIC3"));
+		assertEquals(2, pids.size());
+		assertEquals(pid1, pids.get("FIC1"));
+		assertEquals(pid2, pids.get("FIC2"));
+		assertEquals("FIC1", myForcedIdCacheSvc.translatePidToForcedId(pid1));
+		assertNull(myForcedIdCacheSvc.translatePidToForcedId(id3.getIdPartAsLong()));
+
+		// An ID created in a transaction which is rolled back must not stay cached
+		TransactionTemplate template = new TransactionTemplate(myTxManager);
+		template.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+		template.execute(new TransactionCallbackWithoutResult() {
+			@Override
+			protected void doInTransactionWithoutResult(TransactionStatus theStatus) {
+				Patient p = new Patient();
+				p.setId("FIC3");
+				myPatientDao.update(p, mySrd);
+				assertNotNull(myForcedIdCacheSvc.translateForcedIdToPid("Patient", "FIC3"));
+				theStatus.setRollbackOnly();
+			}
+		});
+		assertNull(myForcedIdCacheSvc.translateForcedIdToPid("Patient", "FIC3"));
+		try {
+			myPatientDao.read(new IdType("Patient/FIC3"), mySrd);
+			fail();
+		} catch (ResourceNotFoundException e) {
+			// good
+		}
+
+		SearchParameterMap map = new SearchParameterMap();
+		map.add("_id", new StringOrListParam().addOr(new StringParam("FIC1")).addOr(new StringParam("FIC2")).addOr(new StringParam("FIC3")));
+		assertThat(toUnqualifiedVersionlessIdValues(myPatientDao.search(map)), containsInAnyOrder(id1.getValue(), id2.getValue()));
+	}
+
+	@Test
+	public void testStoreResourceBodyInHistoryOnly() {
+		Patient pat = new Patient();
+		pat.addName().setFamily("BODYFAM1");
+		IIdType id1 = myPatientDao.create(pat, mySrd).getId().toUnqualifiedVersionless();
+		assertNotNull(myResourceTableDao.findOne(id1.getIdPartAsLong()).getResource());
+
+		myDaoConfig.setStoreResourceBodyInHistoryOnly(true);
+
+		pat = new Patient();
+		pat.addName().setFamily("BODYFAM2");
+		IIdType id2 = myPatientDao.create(pat, mySrd).getId().toUnqualifiedVersionless();
+		assertNull(myResourceTableDao.findOne(id2.getIdPartAsLong()).getResource());
+
+		pat.setId(id2);
+		pat.getName().get(0).addGiven("GIVEN2");
+		myPatientDao.update(pat, mySrd);
+		assertNull(myResourceTableDao.findOne(id2.getIdPartAsLong()).getResource());
+
+		// An existing body is removed when the resource is next updated
+		pat = myPatientDao.read(id1, mySrd);
+		pat.getName().get(0).addGiven("GIVEN1");
+		myPatientDao.update(pat, mySrd);
+		assertNull(myResourceTableDao.findOne(id1.getIdPartAsLong()).getResource());
+
+		assertEquals("GIVEN1", myPatientDao.read(id1, mySrd).getName().get(0).getGiven().get(0).getValue());
+		assertEquals("GIVEN2", myPatientDao.read(id2, mySrd).getName().get(0).getGiven().get(0).getValue());
+		assertEquals(0, myPatientDao.read(id2.withVersion("1"), mySrd).getName().get(0).getGiven().size());
+		assertEquals(2, myPatientDao.history(id2, null, null, mySrd).size());
+
+		SearchParameterMap map = new SearchParameterMap();
+		map.add(Patient.SP_GIVEN, new StringOrListParam().addOr(new StringParam("GIVEN1")).addOr(new StringParam("GIVEN2")));
+		List<IBaseResource> found = myPatientDao.search(map).getResources(0, 10);
+		assertEquals(2, found.size());
+		for (IBaseResource next : found) {
+			assertThat(((Patient) next).getName().get(0).getFamily(), matchesPattern("BODYFAM[12]"));
+		}
+
+		// Reindexing must not store the body on the resource row again
+		mySystemDao.markAllResourcesForReindexing();
+		mySystemDao.performReindexingPass(null);
+		assertNull(myResourceTableDao.findOne(id2.getIdPartAsLong()).getResource());
+		assertEquals("GIVEN2", myPatientDao.read(id2, mySrd).getName().get(0).getGiven().get(0).getValue());
+
+		myPatientDao.delete(id2, mySrd);
+		try {
+			myPatientDao.read(id2, mySrd);
+			fail();
+		} catch (ResourceGoneException e) {
+			// good
+		}
+		assertEquals("GIVEN2", myPatientDao.read(id2.withVersion("2"), mySrd).getName().get(0).getGiven().get(0).getValue());
+		assertEquals(3, myPatientDao.history(id2, null, null, mySrd).size());
+	}
+
+	@Test
+	public void testStoreResourceBodyInHistoryOnlyThenChangeEncodingAndReindex() {
+		myDaoConfig.setStoreResourceBodyInHistoryOnly(true);
+		myDaoConfig.setResourceEncoding(ResourceEncodingEnum.JSOND);
+		Patient pat = new Patient();
+		pat.addName().setFamily("REIDXFAM").addGiven("REIDXGIVEN");
+		IIdType id = myPatientDao.create(pat, mySrd).getId().toUnqualifiedVersionless();
+
+		// Reindexing under a new encoding must not leave the body unreadable
+		myDaoConfig.setResourceEncoding(ResourceEncodingEnum.JSONC);
+		mySystemDao.markAllResourcesForReindexing();
+		mySystemDao.performReindexingPass(null);
+		assertNull(myResourceTableDao.findOne(id.getIdPartAsLong()).getResource());
+
+		myDaoConfig.setParsedResourceCacheMaxEntries(0);
+		assertEquals("REIDXGIVEN", myPatientDao.read(id, mySrd).getName().get(0).getGiven().get(0).getValue());
+		List<IBaseResource> found = myPatientDao.search(Patient.SP_FAMILY, new StringParam("REIDXFAM")).getResources(0, 10);
+		assertEquals(1, found.size());
+		assertEquals("REIDXGIVEN", ((Patient) found.get(0)).getName().get(0).getGiven().get(0).getValue());
+
+		// The next version is stored using the new encoding, and both versions stay readable
+		pat = myPatientDao.read(id, mySrd);
+		pat.getName().get(0).addGiven("REIDXGIVEN2");
+		myPatientDao.update(pat, mySrd);
+		myDaoConfig.setResourceEncoding(ResourceEncodingEnum.JSON);
+		assertEquals("REIDXGIVEN2", myPatientDao.read(id, mySrd).getName().get(0).getGiven().get(1).getValue());
+		assertEquals(1, myPatientDao.read(id.withVersion("1"), mySrd).getName().get(0).getGiven().size());
+	}
+
+	@Test
+	public void testMixedResourceEncodings() {
+		myDaoConfig.setResourceEncoding(ResourceEncodingEnum.JSOND);
+		Patient pat = new Patient();
+		pat.addName().setFamily("ENCFAM1");
+		IIdType id1 = myPatientDao.create(pat, mySrd).getId().toUnqualifiedVersionless();
+		assertEquals(ResourceEncodingEnum.JSOND, myResourceTableDao.findOne(id1.getIdPartAsLong()).getEncoding());
+
+		myDaoConfig.setResourceEncoding(ResourceEncodingEnum.JSONC);
+		pat = new Patient();
+		pat.addName().setFamily("ENCFAM2");
+		IIdType id2 = myPatientDao.create(pat, mySrd).getId().toUnqualifiedVersionless();
+
+		myDaoConfig.setResourceEncoding(ResourceEncodingEnum.JSON);
+		pat = myPatientDao.read(id1, mySrd);
+		pat.getName().get(0).addGiven("ENCGIVEN");
+		myPatientDao.update(pat, mySrd);
+		assertEquals(ResourceEncodingEnum.JSON, myResourceTableDao.findOne(id1.getIdPartAsLong()).getEncoding());
+
+		myDaoConfig.setResourceEncoding(ResourceEncodingEnum.JSONC);
+		assertEquals("ENCGIVEN", myPatientDao.read(id1, mySrd).getName().get(0).getGiven().get(0).getValue());
+		assertEquals(0, myPatientDao.read(id1.withVersion("1"), mySrd).getName().get(0).getGiven().size());
+		assertEquals("ENCFAM2", myPatientDao.read(id2, mySrd).getName().get(0).getFamily());
+		assertEquals(2, myPatientDao.search(Patient.SP_FAMILY, new StringParam("ENCFAM")).size());
+	}
+
+	@Test
+	public void testResourceBodyMigration() {
+		Patient pat = new Patient();
+		pat.addName().setFamily("MIGFAM1");
+		final IIdType id1 = myPatientDao.create(pat, mySrd).getId().toUnqualifiedVersionless();
+		pat = new Patient();
+		pat.addName().setFamily("MIGFAM2");
+		IIdType id2 = myPatientDao.create(pat, mySrd).getId().toUnqualifiedVersionless();
+
+		// Resources stored by older versions may have no version entry for their current version
+		new TransactionTemplate(myTxManager).execute(new TransactionCallbackWithoutResult() {
+			@Override
+			protected void doInTransactionWithoutResult(TransactionStatus theStatus) {
+				myEntityManager.createQuery("DELETE FROM ResourceHistoryTable h WHERE h.myResourceId = :id").setParameter("id", id1.getIdPartAsLong()).executeUpdate();
+			}
+		});
+
+		myDaoConfig.setStoreResourceBodyInHistoryOnly(true);
+		assertEquals(1, mySystemDao.performResourceBodyMigrationPass(1));
+		assertThat(mySystemDao.performResourceBodyMigrationPass(null), greaterThanOrEqualTo(1));
+		assertEquals(0, mySystemDao.performResourceBodyMigrationPass(null));
+
+		assertNull(myResourceTableDao.findOne(id1.getIdPartAsLong()).getResource());
+		assertNull(myResourceTableDao.findOne(id2.getIdPartAsLong()).getResource());
+		assertEquals("MIGFAM1", myPatientDao.read(id1, mySrd).getName().get(0).getFamily());
+		assertEquals("MIGFAM2", myPatientDao.read(id2, mySrd).getName().get(0).getFamily());
+		assertEquals(1, myPatientDao.history(id1, null, null, mySrd).size());
+	}
+
+	@Test
+	public void testResourceBodyMigrationWithMixedEncodings() {
+		myDaoConfig.setResourceEncoding(ResourceEncodingEnum.JSOND);
+		Patient pat = new Patient();
+		pat.addName().setFamily("MIXFAM").addGiven("MIXGIVEN1");
+		IIdType id1 = myPatientDao.create(pat, mySrd).getId().toUnqualifiedVersionless();
+
+		// Reindexing rewrites the body on the resource row, but not the one in the version table
+		myDaoConfig.setResourceEncoding(ResourceEncodingEnum.JSONC);
+		mySystemDao.markAllResourcesForReindexing();
+		mySystemDao.performReindexingPass(null);
+		assertEquals(ResourceEncodingEnum.JSONC, myResourceTableDao.findOne(id1.getIdPartAsLong()).getEncoding());
+
+		pat = new Patient();
+		pat.addName().setFamily("MIXFAM").addGiven("MIXGIVEN2");
+		IIdType id2 = myPatientDao.create(pat, mySrd).getId().toUnqualifiedVersionless();
+
+		myDaoConfig.setStoreResourceBodyInHistoryOnly(true);
+		myDaoConfig.setResourceEncoding(ResourceEncodingEnum.JSON);
+		mySystemDao.performResourceBodyMigrationPass(null);
+		assertNull(myResourceTableDao.findOne(id1.getIdPartAsLong()).getResource());
+
+		pat = myPatientDao.read(id2, mySrd);
+		pat.getName().get(0).addGiven("MIXGIVEN3");
+		myPatientDao.update(pat, mySrd);
+
+		myDaoConfig.setParsedResourceCacheMaxEntries(0);
+		assertEquals("MIXGIVEN1", myPatientDao.read(id1, mySrd).getName().get(0).getGiven().get(0).getValue());
+		assertEquals("MIXGIVEN3", myPatientDao.read(id2, mySrd).getName().get(0).getGiven().get(1).getValue());
+		assertEquals(1, myPatientDao.read(id2.withVersion("1"), mySrd).getName().get(0).getGiven().size());
+		List<String> given = new ArrayList<String>();
+		for (IBaseResource next : myPatientDao.search(Patient.SP_FAMILY, new StringParam("MIXFAM")).getResources(0, 10)) {
+			given.add(((Patient) next).getName().get(0).getGiven().get(0).getValue());
+		}
+		assertThat(given, containsInAnyOrder("MIXGIVEN1", "MIXGIVEN2"));
+	}
+
 	@Test
 	public void testCreateLongString() {
 		//@formatter:off
@@ -654,6 +895,35 @@ public class FhirResourceDaoDstu3Test extends BaseJpaDstu3Test {
 		assertNotEquals("ABC", id);
 	}
 
+	@Test
+	public void testCreateWithSameTagConcurrently() throws Exception {
+		final String methodName = "testCreateWithSameTagConcurrently";
+
+		ExecutorService executor = Executors.newFixedThreadPool(4);
+		List<Future<IIdType>> futures = new ArrayList<Future<IIdType>>();
+		for (int i = 0; i < 8; i++) {
+			futures.add(executor.submit(new Callable<IIdType>() {
+				@Override
+				public IIdType call() throws Exception {
+					Patient p = new Patient();
+					p.getMeta().addTag("http://foo", methodName, null);
+					p.getMeta().addSecurity().setSystem("http://sec").setCode(methodName);
+					return myPatientDao.create(p, mySrd).getId().toUnqualifiedVersionless();
+				}
+			}));
+		}
+		executor.shutdown();
+		for (Future<IIdType> next : futures) {
+			Patient p = myPatientDao.read(next.get(), mySrd);
+			assertEquals(methodName, p.getMeta().getTag().get(0).getCode());
+			assertEquals(methodName, p.getMeta().getSecurity().get(0).getCode());
+		}
+
+		TypedQuery<Long> q = myEntityManager.createQuery("SELECT COUNT(t) FROM TagDefinition t WHERE t.myCode = :code", Long.class);
+		q.setParameter("code", methodName);
+		assertEquals(2L, q.getSingleResult().longValue());
+	}
+
 	@Test
 	public void testCreateWithIfNoneExistBasic() {
 		String methodName = "testCreateWithIfNoneExistBasic";
@@ -777,6 +1047,61 @@ public class FhirResourceDaoDstu3Test extends BaseJpaDstu3Test {
 
 	}
 
+	@Test
+	public void testCreateWithManyReferences() {
+		List<IIdType> obsIds = new ArrayList<IIdType>();
+		for (int i = 0; i < 20; i++) {
+			Observation obs = new Observation();
+			obs.getCode().addCoding().setSystem("foo").setCode("testCreateWithManyReferences");
+			if (i % 2 == 0) {
+				obs.setId("testCreateWithManyReferences" + i);
+				obsIds.add(myObservationDao.update(obs, mySrd).getId().toUnqualifiedVersionless());
+			} else {
+				obsIds.add(myObservationDao.create(obs, mySrd).getId().toUnqualifiedVersionless());
+			}
+		}
+		myForcedIdCacheSvc.clearCache();
+
+		DiagnosticReport dr = new DiagnosticReport();
+		for (IIdType next : obsIds) {
+			dr.addResult().setReferenceElement(next);
+		}
+		IIdType drId = myDiagnosticReportDao.create(dr, mySrd).getId().toUnqualifiedVersionless();
+
+		for (IIdType next : obsIds) {
+			SearchParameterMap map = new SearchParameterMap();
+			map.add(DiagnosticReport.SP_RESULT, new ReferenceParam(next.getValue()));
+			assertThat(toUnqualifiedVersionlessIdValues(myDiagnosticReportDao.search(map)), contains(drId.getValue()));
+		}
+
+		dr = new DiagnosticReport();
+		for (IIdType next : obsIds) {
+			dr.addResult().setReferenceElement(next);
+		}
+		dr.addResult().setReference("Observation/testCreateWithManyReferencesMissing");
+		try {
+			myDiagnosticReportDao.create(dr, mySrd);
+			fail();
+		} catch (InvalidRequestException e) {
+			assertEquals("Resource Observation/testCreateWithManyReferencesMissing not found, specified in path: DiagnosticReport.result", e.getMessage());
+		}
+
+		// References to forced IDs don't need to load their target
+		myDaoConfig.setTrustForcedIdReferenceTargets(true);
+		dr = new DiagnosticReport();
+		for (IIdType next : obsIds) {
+			dr.addResult().setReferenceElement(next);
+		}
+		IIdType drId2 = myDiagnosticReportDao.create(dr, mySrd).getId().toUnqualifiedVersionless();
+
+		SearchParameterMap map = new SearchParameterMap();
+		map.add(DiagnosticReport.SP_RESULT, new ReferenceParam(obsIds.get(0).getValue()));
+		assertThat(toUnqualifiedVersionlessIdValues(myDiagnosticReportDao.search(map)), containsInAnyOrder(drId.getValue(), drId2.getValue()));
+		map = new SearchParameterMap();
+		map.add(DiagnosticReport.SP_RESULT, new ReferenceParam(obsIds.get(1).getValue()));
+		assertThat(toUnqualifiedVersionlessIdValues(myDiagnosticReportDao.search(map)), containsInAnyOrder(drId.getValue(), drId2.getValue()));
+	}
+
 	@Test
 	public void testCreateWithInvalid() {
 		Observation o1 = new Observation();
@@ -2292,6 +2617,49 @@ public class FhirResourceDaoDstu3Test extends BaseJpaDstu3Test {
 
 	}
 
+	@Test
+	public void testReadWithParsedResourceCache() {
+		myDaoConfig.setParsedResourceCacheMaxEntries(100);
+
+		Patient p1 = new Patient();
+		p1.addName().setFamily("testReadWithParsedResourceCache");
+		IIdType id1 = myPatientDao.create(p1, mySrd).getId().toUnqualified();
+
+		ParsedResourceCache.Statistics before = myDaoConfig.getParsedResourceCacheStatistics();
+
+		Patient read1 = myPatientDao.read(id1.toVersionless(), mySrd);
+		read1.getName().get(0).setFamily("MODIFIED");
+		read1.addIdentifier().setValue("MODIFIED");
+		Patient read2 = myPatientDao.read(id1.toVersionless(), mySrd);
+		Patient read3 = myPatientDao.read(id1, mySrd);
+
+		// Modifying a returned resource must not affect the cached copy
+		assertNotSame(read1, read2);
+		assertEquals("testReadWithParsedResourceCache", read2.getName().get(0).getFamily());
+		assertEquals(0, read2.getIdentifier().size());
+		assertEquals(id1.getValue(), read2.getIdElement().toUnqualified().getValue());
+		assertEquals("testReadWithParsedResourceCache", read3.getName().get(0).getFamily());
+		assertEquals(id1.getValue(), read3.getIdElement().toUnqualified().getValue());
+
+		ParsedResourceCache.Statistics after = myDaoConfig.getParsedResourceCacheStatistics();
+		ourLog.info("Cache stats: {}", after);
+		assertThat(after.getHits() - before.getHits(), greaterThanOrEqualTo(2L));
+		assertThat(after.getMisses() - before.getMisses(), greaterThanOrEqualTo(1L));
+
+		// A new version gets its own entry
+		p1.setId(id1.toVersionless());
+		p1.getName().get(0).setFamily("testReadWithParsedResourceCache2");
+		IIdType id2 = myPatientDao.update(p1, mySrd).getId().toUnqualified();
+		assertEquals("testReadWithParsedResourceCache2", myPatientDao.read(id2.toVersionless(), mySrd).getName().get(0).getFamily());
+		assertEquals("testReadWithParsedResourceCache", myPatientDao.read(id1, mySrd).getName().get(0).getFamily());
+
+		// Byte limit evicts entries
+		myDaoConfig.setParsedResourceCacheMaxBytes(1);
+		assertEquals(0, myDaoConfig.getParsedResourceCacheStatistics().getEntries());
+		assertEquals("testReadWithParsedResourceCache2", myPatientDao.read(id2.toVersionless(), mySrd).getName().get(0).getFamily());
+		assertEquals(0, myDaoConfig.getParsedResourceCacheStatistics().getEntries());
+	}
+
 	@Test
 	public void testReadInvalidVersion() throws Exception {
 		String methodName = "testReadInvalidVersion";
@@ -3359,6 +3727,15 @@ public class FhirResourceDaoDstu3Test extends BaseJpaDstu3Test {
 		}
 	}
 
+	@After
+	public void afterResetParsedResourceCache() {
+		myDaoConfig.setParsedResourceCacheMaxEntries(new DaoConfig().getParsedResourceCacheMaxEntries());
+		myDaoConfig.setParsedResourceCacheMaxBytes(new DaoConfig().getParsedResourceCacheMaxBytes());
+		myDaoConfig.setTrustForcedIdReferenceTargets(new DaoConfig().isTrustForcedIdReferenceTargets());
+		myDaoConfig.setStoreResourceBodyInHistoryOnly(new DaoConfig().isStoreResourceBodyInHistoryOnly());
+		myDaoConfig.setResourceEncoding(new DaoConfig().getResourceEncoding());
+	}
+
 	@AfterClass
 	public static void afterClassClearContext() {
 		TestUtil.clearAllStaticFieldsForUnitTest();
@@ -24,10 +24,15 @@ import java.util.Set;
 import java.util.TimeZone;
 
 import org.hl7.fhir.dstu3.model.Coding;
+import org.hl7.fhir.dstu3.model.DateTimeType;
 import org.hl7.fhir.dstu3.model.IdType;
 import org.hl7.fhir.dstu3.model.InstantType;
+import org.hl7.fhir.dstu3.model.Observation;
+import org.hl7.fhir.dstu3.model.Observation.ObservationStatus;
 import org.hl7.fhir.dstu3.model.Organization;
 import org.hl7.fhir.dstu3.model.Patient;
+import org.hl7.fhir.dstu3.model.Quantity;
+import org.hl7.fhir.dstu3.model.Reference;
 import org.hl7.fhir.dstu3.model.Resource;
 import org.hl7.fhir.dstu3.model.UriType;
 import org.hl7.fhir.instance.model.api.IBaseResource;
@@ -37,10 +42,16 @@ import org.junit.Ignore;
 import org.junit.Test;
 import org.mockito.ArgumentCaptor;
 
+import ca.uhn.fhir.jpa.dao.DaoMethodOutcome;
+import ca.uhn.fhir.jpa.dao.SearchParamIndexChanges;
+import ca.uhn.fhir.jpa.dao.SearchParameterMap;
 import ca.uhn.fhir.model.primitive.InstantDt;
 import ca.uhn.fhir.rest.api.MethodOutcome;
 import ca.uhn.fhir.rest.api.RestOperationTypeEnum;
+import ca.uhn.fhir.rest.param.DateParam;
+import ca.uhn.fhir.rest.param.ReferenceParam;
 import ca.uhn.fhir.rest.param.StringParam;
+import ca.uhn.fhir.rest.param.TokenParam;
 import ca.uhn.fhir.rest.server.IBundleProvider;
 import ca.uhn.fhir.rest.server.exceptions.InvalidRequestException;
 import ca.uhn.fhir.rest.server.exceptions.ResourceGoneException;
@@ -58,6 +69,56 @@ public class FhirResourceDaoDstu3UpdateTest extends BaseJpaDstu3Test {
 	}
 
 
+	@Test
+	public void testUpdateOnlyWritesChangedIndexes() {
+		Patient p = new Patient();
+		p.addName().setFamily("INDEXCHANGES");
+		IIdType patientId = myPatientDao.create(p, mySrd).getId().toUnqualifiedVersionless();
+
+		Observation obs = new Observation();
+		obs.setStatus(ObservationStatus.PRELIMINARY);
+		obs.getCode().addCoding().setSystem("http://loinc.org").setCode("8480-6");
+		obs.setSubject(new Reference(patientId));
+		obs.setEffective(new DateTimeType("2017-01-01T10:00:00Z"));
+		obs.setValue(new Quantity().setValue(120).setSystem("http://unitsofmeasure.org").setCode("mm[Hg]"));
+		DaoMethodOutcome outcome = myObservationDao.create(obs, mySrd);
+		IIdType obsId = outcome.getId().toUnqualifiedVersionless();
+		SearchParamIndexChanges changes = outcome.getEntity().getIndexChanges();
+		assertEquals(0, changes.getKept());
+		assertEquals(0, changes.getRemoved());
+		int added = changes.getAdded();
+		assertTrue(added > 0);
+
+		// Only the status token changes
+		obs.setId(obsId);
+		obs.setStatus(ObservationStatus.FINAL);
+		changes = myObservationDao.update(obs, mySrd).getEntity().getIndexChanges();
+		ourLog.info("Index changes: {}", changes);
+		assertEquals(1, changes.getRemoved());
+		assertEquals(1, changes.getAdded());
+		assertEquals(added - 1, changes.getKept());
+
+		// Nothing changes
+		changes = myObservationDao.update(obs, mySrd).getEntity().getIndexChanges();
+		assertEquals(0, changes.getRemoved());
+		assertEquals(0, changes.getAdded());
+		assertEquals(added, changes.getKept());
+
+		SearchParameterMap map = new SearchParameterMap();
+		map.add(Observation.SP_STATUS, new TokenParam(null, "final"));
+		assertThat(toUnqualifiedVersionlessIds(myObservationDao.search(map)), contains(obsId));
+		map = new SearchParameterMap();
+		map.add(Observation.SP_STATUS, new TokenParam(null, "preliminary"));
+		assertEquals(0, myObservationDao.search(map).size());
+		assertThat(toUnqualifiedVersionlessIds(myObservationDao.search(Observation.SP_DATE, new DateParam("2017-01-01T10:00:00Z"))), contains(obsId));
+		assertThat(toUnqualifiedVersionlessIds(myObservationDao.search(Observation.SP_SUBJECT, new ReferenceParam(patientId.getValue()))), contains(obsId));
+
+		// Deleting removes everything
+		changes = myObservationDao.delete(obsId, mySrd).getEntity().getIndexChanges();
+		assertEquals(added, changes.getRemoved());
+		assertEquals(0, changes.getKept());
+	}
+
 	@Test
 	public void testUpdateAndGetHistoryResource() throws InterruptedException {
 		Patient patient = new Patient();
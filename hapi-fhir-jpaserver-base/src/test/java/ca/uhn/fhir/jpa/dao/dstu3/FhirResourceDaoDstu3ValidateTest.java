@@ -3,19 +3,28 @@ package ca.uhn.fhir.jpa.dao.dstu3;
 import static org.hamcrest.Matchers.containsString;
 import static org.junit.Assert.assertThat;
 import static org.junit.Assert.fail;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
 
 import java.io.IOException;
 import java.nio.charset.StandardCharsets;
 
 import org.apache.commons.io.IOUtils;
+import org.hl7.fhir.dstu3.hapi.validation.FhirInstanceValidator;
 import org.hl7.fhir.dstu3.model.*;
 import org.hl7.fhir.dstu3.model.Bundle.BundleEntryComponent;
+import org.hl7.fhir.dstu3.model.Enumerations.PublicationStatus;
 import org.hl7.fhir.dstu3.model.Observation.ObservationStatus;
+import org.hl7.fhir.dstu3.model.StructureDefinition.StructureDefinitionKind;
+import org.hl7.fhir.dstu3.model.StructureDefinition.TypeDerivationRule;
 import org.hl7.fhir.instance.model.api.IBaseResource;
 import org.hl7.fhir.instance.model.api.IIdType;
 import org.junit.AfterClass;
 import org.junit.Ignore;
 import org.junit.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
 
 import ca.uhn.fhir.jpa.util.StopWatch;
 import ca.uhn.fhir.rest.api.MethodOutcome;
@@ -25,10 +34,15 @@ import ca.uhn.fhir.rest.server.exceptions.InvalidRequestException;
 import ca.uhn.fhir.rest.server.exceptions.PreconditionFailedException;
 import ca.uhn.fhir.rest.server.exceptions.ResourceVersionConflictException;
 import ca.uhn.fhir.util.TestUtil;
+import ca.uhn.fhir.validation.IValidatorModule;
 
 public class FhirResourceDaoDstu3ValidateTest extends BaseJpaDstu3Test {
 	private static final org.slf4j.Logger ourLog = org.slf4j.LoggerFactory.getLogger(FhirResourceDaoDstu3ValidateTest.class);
 
+	@Autowired
+	@Qualifier("myInstanceValidatorDstu3")
+	private IValidatorModule myInstanceValidator;
+
 	@AfterClass
 	public static void afterClassClearContext() {
 		TestUtil.clearAllStaticFieldsForUnitTest();
@@ -175,6 +189,43 @@ public class FhirResourceDaoDstu3ValidateTest extends BaseJpaDstu3Test {
 
 	}
 
+	@Test
+	public void testUpdateProfileInvalidatesInstanceValidatorCaches() {
+		FhirInstanceValidator validator = mock(FhirInstanceValidator.class);
+		myJpaValidationSupportChainDstu3.setInstanceValidator(validator);
+		try {
+			StructureDefinition sd = new StructureDefinition();
+			sd.setUrl("http://example.com/foo/bar/testUpdateProfileInvalidatesInstanceValidatorCaches");
+			sd.setName("testUpdateProfileInvalidatesInstanceValidatorCaches");
+			sd.setStatus(PublicationStatus.ACTIVE);
+			sd.setKind(StructureDefinitionKind.RESOURCE);
+			sd.setAbstract(false);
+			sd.setType("Observation");
+			sd.setBaseDefinition("http://hl7.org/fhir/StructureDefinition/Observation");
+			sd.setDerivation(TypeDerivationRule.CONSTRAINT);
+			sd.getDifferential().addElement().setPath("Observation.subject").setMin(1);
+			IIdType sdId = myStructureDefinitionDao.create(sd, mySrd).getId().toUnqualifiedVersionless();
+			verify(validator, times(1)).invalidateCaches();
+
+			Observation obs = new Observation();
+			obs.getMeta().addProfile(sd.getUrl());
+			obs.setStatus(ObservationStatus.FINAL);
+			myObservationDao.create(obs, mySrd);
+			verify(validator, times(1)).invalidateCaches();
+
+			// The profile is fetched again the next time something is validated against it
+			sd.setId(sdId);
+			sd.getDifferential().getElement().get(0).setMin(0);
+			myStructureDefinitionDao.update(sd, mySrd);
+			verify(validator, times(2)).invalidateCaches();
+
+			myStructureDefinitionDao.delete(sdId, mySrd);
+			verify(validator, times(3)).invalidateCaches();
+		} finally {
+			myJpaValidationSupportChainDstu3.setInstanceValidator((FhirInstanceValidator) myInstanceValidator);
+		}
+	}
+
 	@Test
 	public void testValidateForCreate() {
 		String methodName = "testValidateForCreate";
@@ -10,7 +10,9 @@ import static org.junit.Assert.assertTrue;
 
 import java.io.IOException;
 
+import org.hl7.fhir.dstu3.hapi.validation.IValidationSupport.CodeValidationResult;
 import org.hl7.fhir.dstu3.model.CodeSystem;
+import org.hl7.fhir.dstu3.model.CodeSystem.CodeSystemContentMode;
 import org.hl7.fhir.dstu3.model.CodeType;
 import org.hl7.fhir.dstu3.model.CodeableConcept;
 import org.hl7.fhir.dstu3.model.Coding;
@@ -54,6 +56,33 @@ public class FhirResourceDaoDstu3ValueSetTest extends BaseJpaDstu3Test {
 
 	}
 
+	@Test
+	public void testValidateCodeIsCachedUntilCodeSystemChanges() {
+		CodeSystem cs = new CodeSystem();
+		cs.setUrl("http://example.com/cached");
+		cs.setContent(CodeSystemContentMode.COMPLETE);
+		cs.addConcept().setCode("A").setDisplay("Code A");
+		IIdType id = myCodeSystemDao.create(cs, mySrd).getId().toUnqualifiedVersionless();
+
+		long hits = myJpaValidationSupportChainDstu3.getCodeValidationCacheStats().hitCount();
+		assertTrue(myJpaValidationSupportChainDstu3.validateCode(myFhirCtx, "http://example.com/cached", "A", null).isOk());
+		assertTrue(myJpaValidationSupportChainDstu3.validateCode(myFhirCtx, "http://example.com/cached", "A", null).isOk());
+		assertEquals(hits + 1, myJpaValidationSupportChainDstu3.getCodeValidationCacheStats().hitCount());
+
+		// Negative results are cached too
+		CodeValidationResult result = myJpaValidationSupportChainDstu3.validateCode(myFhirCtx, "http://example.com/cached", "B", null);
+		assertTrue(result == null || !result.isOk());
+		myJpaValidationSupportChainDstu3.validateCode(myFhirCtx, "http://example.com/cached", "B", null);
+		assertEquals(hits + 2, myJpaValidationSupportChainDstu3.getCodeValidationCacheStats().hitCount());
+
+		// Updating the code system discards the cached results
+		cs.setId(id);
+		cs.addConcept().setCode("B").setDisplay("Code B");
+		myCodeSystemDao.update(cs, mySrd);
+		assertTrue(myJpaValidationSupportChainDstu3.validateCode(myFhirCtx, "http://example.com/cached", "B", null).isOk());
+		assertEquals(hits + 2, myJpaValidationSupportChainDstu3.getCodeValidationCacheStats().hitCount());
+	}
+
 	@Test
 	public void testValidateCodeOperationByCodeAndSystemBad() {
 		UriType valueSetIdentifier = null;
@@ -1,5 +1,6 @@
 package ca.uhn.fhir.jpa.dao.dstu3;
 
+import static org.hamcrest.Matchers.contains;
 import static org.hamcrest.Matchers.containsString;
 import static org.hamcrest.Matchers.empty;
 import static org.hamcrest.Matchers.emptyString;
@@ -23,7 +24,15 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.io.UnsupportedEncodingException;
 import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import javax.mail.Quota.Resource;
 
@@ -51,17 +60,27 @@ import org.springframework.transaction.support.TransactionTemplate;
 import ca.uhn.fhir.jpa.dao.BaseHapiFhirDao;
 import ca.uhn.fhir.jpa.dao.DaoConfig;
 import ca.uhn.fhir.jpa.dao.SearchParameterMap;
+import ca.uhn.fhir.jpa.entity.BaseResourceIndexedSearchParam;
+import ca.uhn.fhir.jpa.entity.ReindexJobStatusEnum;
 import ca.uhn.fhir.jpa.entity.ResourceEncodingEnum;
+import ca.uhn.fhir.jpa.entity.ResourceIndexedSearchParamString;
+import ca.uhn.fhir.jpa.entity.ResourceIndexedSearchParamToken;
+import ca.uhn.fhir.jpa.entity.ResourceReindexJobEntity;
 import ca.uhn.fhir.jpa.entity.ResourceTable;
 import ca.uhn.fhir.jpa.entity.TagTypeEnum;
 import ca.uhn.fhir.jpa.provider.SystemProviderDstu2Test;
+import ca.uhn.fhir.jpa.reindex.ReindexJobStatus;
 import ca.uhn.fhir.model.api.ResourceMetadataKeyEnum;
 import ca.uhn.fhir.model.primitive.IdDt;
 import ca.uhn.fhir.rest.api.RestOperationTypeEnum;
+import ca.uhn.fhir.rest.method.RequestDetails;
+import ca.uhn.fhir.rest.param.StringParam;
+import ca.uhn.fhir.rest.param.TokenParam;
 import ca.uhn.fhir.rest.server.Constants;
 import ca.uhn.fhir.rest.server.IBundleProvider;
 import ca.uhn.fhir.rest.server.exceptions.*;
 import ca.uhn.fhir.rest.server.interceptor.IServerInterceptor.ActionRequestDetails;
+import ca.uhn.fhir.rest.server.interceptor.InterceptorAdapter;
 import ca.uhn.fhir.util.TestUtil;
 
 public class FhirSystemDaoDstu3Test extends BaseJpaDstu3SystemTest {
@@ -72,6 +91,10 @@ public class FhirSystemDaoDstu3Test extends BaseJpaDstu3SystemTest {
 	public void after() {
 		myDaoConfig.setAllowInlineMatchUrlReferences(false);
 		myDaoConfig.setAllowMultipleDelete(new DaoConfig().isAllowMultipleDelete());
+		myDaoConfig.setBatchEntryConcurrency(new DaoConfig().getBatchEntryConcurrency());
+		myDaoConfig.setReindexChunkSize(new DaoConfig().getReindexChunkSize());
+		myDaoConfig.setReindexThreadCount(new DaoConfig().getReindexThreadCount());
+		myDaoConfig.setUseHashColumnsForSearch(new DaoConfig().isUseHashColumnsForSearch());
 	}
 
 	@SuppressWarnings("unchecked")
@@ -238,6 +261,206 @@ public class FhirSystemDaoDstu3Test extends BaseJpaDstu3SystemTest {
 
 	}
 	
+	@Test
+	public void testReindexingBackfillsSearchParamHashes() {
+		myDaoConfig.setUseHashColumnsForSearch(true);
+
+		Patient p = new Patient();
+		p.addIdentifier().setSystem("urn:system").setValue("HASH001");
+		p.addName().setFamily("Hashfamily");
+		final IIdType id = myPatientDao.create(p, mySrd).getId().toUnqualifiedVersionless();
+
+		SearchParameterMap map = new SearchParameterMap();
+		map.add(Patient.SP_IDENTIFIER, new TokenParam("urn:system", "HASH001"));
+		assertThat(toUnqualifiedVersionlessIdValues(myPatientDao.search(map)), contains(id.getValue()));
+		map = new SearchParameterMap();
+		map.add(Patient.SP_IDENTIFIER, new TokenParam(null, "HASH001"));
+		assertThat(toUnqualifiedVersionlessIdValues(myPatientDao.search(map)), contains(id.getValue()));
+		map = new SearchParameterMap();
+		map.add(Patient.SP_FAMILY, new StringParam("Hashfamily").setExact(true));
+		assertThat(toUnqualifiedVersionlessIdValues(myPatientDao.search(map)), contains(id.getValue()));
+
+		// Simulate rows written before the hash columns existed
+		TransactionTemplate template = new TransactionTemplate(myTxManager);
+		template.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+		template.execute(new TransactionCallback<Void>() {
+			@Override
+			public Void doInTransaction(TransactionStatus theStatus) {
+				myEntityManager.createQuery("UPDATE ResourceIndexedSearchParamToken t SET t.myHashIdentity = null, t.myHashSystem = null, t.myHashSystemAndValue = null, t.myHashValue = null").executeUpdate();
+				myEntityManager.createQuery("UPDATE ResourceIndexedSearchParamString t SET t.myHashIdentity = null, t.myHashExact = null").executeUpdate();
+				return null;
+			}
+		});
+
+		map = new SearchParameterMap();
+		map.add(Patient.SP_IDENTIFIER, new TokenParam("urn:system", "HASH001"));
+		assertThat(toUnqualifiedVersionlessIdValues(myPatientDao.search(map)), empty());
+
+		myDaoConfig.setUseHashColumnsForSearch(false);
+		assertThat(toUnqualifiedVersionlessIdValues(myPatientDao.search(map)), contains(id.getValue()));
+
+		mySystemDao.markAllResourcesForReindexing();
+		mySystemDao.performReindexingPass(null);
+
+		ResourceIndexedSearchParamToken token = template.execute(new TransactionCallback<ResourceIndexedSearchParamToken>() {
+			@Override
+			public ResourceIndexedSearchParamToken doInTransaction(TransactionStatus theStatus) {
+				return myEntityManager.createQuery("SELECT t FROM ResourceIndexedSearchParamToken t WHERE t.myResourcePid = :pid AND t.myParamName = 'identifier'", ResourceIndexedSearchParamToken.class).setParameter("pid", id.getIdPartAsLong()).getSingleResult();
+			}
+		});
+		assertEquals(Long.valueOf(BaseResourceIndexedSearchParam.calculateHashIdentity("Patient", "identifier")), token.getHashIdentity());
+		assertEquals(Long.valueOf(ResourceIndexedSearchParamToken.calculateHashSystemAndValue("Patient", "identifier", "urn:system", "HASH001")), token.getHashSystemAndValue());
+
+		myDaoConfig.setUseHashColumnsForSearch(true);
+		assertThat(toUnqualifiedVersionlessIdValues(myPatientDao.search(map)), contains(id.getValue()));
+		map = new SearchParameterMap();
+		map.add(Patient.SP_FAMILY, new StringParam("Hashfamily").setExact(true));
+		assertThat(toUnqualifiedVersionlessIdValues(myPatientDao.search(map)), contains(id.getValue()));
+	}
+
+	@Test
+	public void testReindexingRewritesStaleNormalizedStringValues() {
+		Patient p = new Patient();
+		p.addName().setFamily("Normalfamily");
+		final IIdType id = myPatientDao.create(p, mySrd).getId().toUnqualifiedVersionless();
+
+		SearchParameterMap map = new SearchParameterMap();
+		map.add(Patient.SP_FAMILY, new StringParam("Normalfamily"));
+		assertThat(toUnqualifiedVersionlessIdValues(myPatientDao.search(map)), contains(id.getValue()));
+
+		// Only the normalized value differs from what would be extracted now, the exact value is unchanged
+		TransactionTemplate template = new TransactionTemplate(myTxManager);
+		template.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+		template.execute(new TransactionCallback<Void>() {
+			@Override
+			public Void doInTransaction(TransactionStatus theStatus) {
+				myEntityManager.createQuery("UPDATE ResourceIndexedSearchParamString t SET t.myValueNormalized = 'STALE' WHERE t.myParamName = 'family'").executeUpdate();
+				return null;
+			}
+		});
+		assertThat(toUnqualifiedVersionlessIdValues(myPatientDao.search(map)), empty());
+
+		mySystemDao.markAllResourcesForReindexing();
+		mySystemDao.performReindexingPass(null);
+
+		ResourceIndexedSearchParamString family = template.execute(new TransactionCallback<ResourceIndexedSearchParamString>() {
+			@Override
+			public ResourceIndexedSearchParamString doInTransaction(TransactionStatus theStatus) {
+				return myEntityManager.createQuery("SELECT t FROM ResourceIndexedSearchParamString t WHERE t.myResourcePid = :pid AND t.myParamName = 'family'", ResourceIndexedSearchParamString.class).setParameter("pid", id.getIdPartAsLong()).getSingleResult();
+			}
+		});
+		assertEquals("Normalfamily", family.getValueExact());
+		assertEquals("NORMALFAMILY", family.getValueNormalized());
+		assertThat(toUnqualifiedVersionlessIdValues(myPatientDao.search(map)), contains(id.getValue()));
+	}
+
+	@Test
+	public void testReindexingSvcUsesChunksAndIsolatesFailures() {
+		myDaoConfig.setReindexChunkSize(3);
+		myDaoConfig.setReindexThreadCount(2);
+
+		final List<Long> pids = new ArrayList<Long>();
+		for (int i = 0; i < 10; i++) {
+			Patient p = new Patient();
+			p.addName().setFamily("family" + i);
+			pids.add(myPatientDao.create(p, mySrd).getId().getIdPartAsLong());
+		}
+
+		mySystemDao.markAllResourcesForReindexing();
+
+		// Make one resource in the middle unparseable
+		TransactionTemplate template = new TransactionTemplate(myTxManager);
+		template.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+		template.execute(new TransactionCallback<ResourceTable>() {
+			@Override
+			public ResourceTable doInTransaction(TransactionStatus theStatus) {
+				ResourceTable table = myEntityManager.find(ResourceTable.class, pids.get(4));
+				table.setEncoding(ResourceEncodingEnum.JSON);
+				try {
+					table.setResource("{\"resourceType\":\"FOO\"}".getBytes("UTF-8"));
+				} catch (UnsupportedEncodingException e) {
+					throw new Error(e);
+				}
+				myEntityManager.merge(table);
+				return null;
+			}
+		});
+
+		myResourceReindexingSvc.runReindexingPass();
+
+		for (int i = 0; i < pids.size(); i++) {
+			Long expected = i == 4 ? Long.valueOf(2) : Long.valueOf(1);
+			assertEquals("Resource " + i, expected, myResourceTableDao.findOne(pids.get(i)).getIndexStatus());
+		}
+
+		ReindexJobStatus status = myResourceReindexingSvc.getStatus();
+		assertEquals(ReindexJobStatusEnum.COMPLETE, status.getStatus());
+		assertEquals(10, status.getProcessedCount());
+		assertEquals(1, status.getFailedCount());
+		assertEquals(null, status.getEstimatedMillisRemaining());
+
+		// Nothing left to do, so no new job is started
+		myResourceReindexingSvc.runReindexingPass();
+		assertEquals(status.getJobId(), myResourceReindexingSvc.getStatus().getJobId());
+	}
+
+	@Test
+	public void testReindexingSvcBoundedPassStopsAfterMaxRounds() {
+		myDaoConfig.setReindexChunkSize(2);
+		myDaoConfig.setReindexThreadCount(1);
+
+		for (int i = 0; i < 5; i++) {
+			Patient p = new Patient();
+			p.addName().setFamily("family" + i);
+			myPatientDao.create(p, mySrd);
+		}
+
+		mySystemDao.markAllResourcesForReindexing();
+
+		assertEquals(4, myResourceReindexingSvc.runReindexingPass(2));
+		ReindexJobStatus status = myResourceReindexingSvc.getStatus();
+		assertEquals(ReindexJobStatusEnum.ACTIVE, status.getStatus());
+		assertEquals(4, status.getProcessedCount());
+
+		assertEquals(1, myResourceReindexingSvc.runReindexingPass(2));
+		status = myResourceReindexingSvc.getStatus();
+		assertEquals(ReindexJobStatusEnum.COMPLETE, status.getStatus());
+		assertEquals(5, status.getProcessedCount());
+	}
+
+	@Test
+	public void testReindexingSvcResumesFromCheckpoint() {
+		final List<Long> pids = new ArrayList<Long>();
+		for (int i = 0; i < 4; i++) {
+			Patient p = new Patient();
+			p.addName().setFamily("family" + i);
+			pids.add(myPatientDao.create(p, mySrd).getId().getIdPartAsLong());
+		}
+
+		mySystemDao.markAllResourcesForReindexing();
+
+		// Simulate a job that was interrupted after checkpointing the first two resources
+		ResourceReindexJobEntity job = new ResourceReindexJobEntity();
+		job.setStatus(ReindexJobStatusEnum.ACTIVE);
+		job.setCreated(new Date());
+		job.setUpdated(new Date());
+		job.setTotalCount(4);
+		job.setProcessedCount(2);
+		job.setLastPid(pids.get(1));
+		myResourceReindexJobDao.save(job);
+
+		myResourceReindexingSvc.runReindexingPass();
+
+		assertEquals(null, myResourceTableDao.findOne(pids.get(0)).getIndexStatus());
+		assertEquals(null, myResourceTableDao.findOne(pids.get(1)).getIndexStatus());
+		assertEquals(Long.valueOf(1), myResourceTableDao.findOne(pids.get(2)).getIndexStatus());
+		assertEquals(Long.valueOf(1), myResourceTableDao.findOne(pids.get(3)).getIndexStatus());
+
+		ReindexJobStatus status = myResourceReindexingSvc.getStatus();
+		assertEquals(ReindexJobStatusEnum.COMPLETE, status.getStatus());
+		assertEquals(4, status.getProcessedCount());
+	}
+
 	@Test
 	public void testSystemMetaOperation() {
 
@@ -361,6 +584,78 @@ public class FhirSystemDaoDstu3Test extends BaseJpaDstu3SystemTest {
 	}
 	
 	
+	@Test
+	public void testTransactionBatchWithConcurrency() {
+		String methodName = "testTransactionBatchWithConcurrency";
+		myDaoConfig.setBatchEntryConcurrency(4);
+
+		/*
+		 * Each create waits (up to a limit) until another one is in progress too, so
+		 * that the test fails if the entries are not processed concurrently
+		 */
+		final CountDownLatch overlapLatch = new CountDownLatch(2);
+		final AtomicInteger inProgress = new AtomicInteger();
+		final AtomicInteger maxInProgress = new AtomicInteger();
+		final Set<RequestDetails> requestDetails = Collections.synchronizedSet(new HashSet<RequestDetails>());
+		myDaoConfig.getInterceptors().add(new InterceptorAdapter() {
+			@Override
+			public void incomingRequestPreHandled(RestOperationTypeEnum theOperation, ActionRequestDetails theProcessedRequest) {
+				if (theOperation != RestOperationTypeEnum.CREATE) {
+					return;
+				}
+				requestDetails.add(theProcessedRequest.getRequestDetails());
+				int current = inProgress.incrementAndGet();
+				while (true) {
+					int max = maxInProgress.get();
+					if (current <= max || maxInProgress.compareAndSet(max, current)) {
+						break;
+					}
+				}
+				try {
+					overlapLatch.countDown();
+					overlapLatch.await(10, TimeUnit.SECONDS);
+				} catch (InterruptedException e) {
+					throw new Error(e);
+				} finally {
+					inProgress.decrementAndGet();
+				}
+			}
+		});
+
+		Bundle request = new Bundle();
+		request.setType(BundleType.BATCH);
+		for (int i = 0; i < 20; i++) {
+			if (i == 7) {
+				request.addEntry().getRequest().setMethod(HTTPVerb.GET).setUrl("Patient/THIS_ID_DOESNT_EXIST");
+				continue;
+			}
+			Patient p = new Patient();
+			p.addName().setFamily(methodName + i);
+			request.addEntry().setResource(p).getRequest().setMethod(HTTPVerb.POST);
+		}
+
+		Bundle resp = mySystemDao.transaction(mySrd, request);
+		assertEquals(21, resp.getEntry().size());
+		assertEquals(BundleType.BATCHRESPONSE, resp.getTypeElement().getValue());
+
+		for (int i = 0; i < 20; i++) {
+			BundleEntryComponent respEntry = resp.getEntry().get(i + 1);
+			if (i == 7) {
+				assertEquals("404 Not Found", respEntry.getResponse().getStatus());
+				continue;
+			}
+			assertEquals("201 Created", respEntry.getResponse().getStatus());
+			Patient created = myPatientDao.read(new IdType(respEntry.getResponse().getLocation()), mySrd);
+			assertEquals(methodName + i, created.getName().get(0).getFamily());
+		}
+
+		assertThat(maxInProgress.get(), greaterThan(1));
+
+		// Each entry has its own request details
+		assertEquals(19, requestDetails.size());
+		assertThat(requestDetails, not(org.hamcrest.Matchers.hasItem((RequestDetails) mySrd)));
+	}
+
 	@Test
 	public void testTransactionCreateInlineMatchUrlWithNoMatches() {
 		String methodName = "testTransactionCreateInlineMatchUrlWithNoMatches";
@@ -2,22 +2,44 @@ package ca.uhn.fhir.jpa.dao.dstu3;
 
 import static org.junit.Assert.*;
 
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import org.hl7.fhir.dstu3.hapi.validation.DefaultProfileValidationSupport;
+import org.hl7.fhir.dstu3.hapi.validation.HapiWorkerContext;
 import org.hl7.fhir.dstu3.hapi.validation.IValidationSupport;
+import org.hl7.fhir.dstu3.model.Base;
+import org.hl7.fhir.dstu3.model.CodeableConcept;
+import org.hl7.fhir.dstu3.model.Coding;
+import org.hl7.fhir.dstu3.model.DateType;
+import org.hl7.fhir.dstu3.model.ExplanationOfBenefit;
 import org.hl7.fhir.dstu3.model.Observation;
+import org.hl7.fhir.dstu3.model.Patient;
+import org.hl7.fhir.dstu3.model.Reference;
+import org.hl7.fhir.dstu3.utils.FHIRPathEngine;
+import org.hl7.fhir.exceptions.FHIRException;
+import org.hl7.fhir.instance.model.api.IBaseResource;
 import org.junit.AfterClass;
 import org.junit.BeforeClass;
+import org.junit.Ignore;
 import org.junit.Test;
 
 import ca.uhn.fhir.context.FhirContext;
 import ca.uhn.fhir.jpa.entity.BaseResourceIndexedSearchParam;
 import ca.uhn.fhir.jpa.entity.ResourceIndexedSearchParamToken;
 import ca.uhn.fhir.jpa.entity.ResourceTable;
+import ca.uhn.fhir.jpa.util.StopWatch;
+import ca.uhn.fhir.rest.server.exceptions.InternalErrorException;
 import ca.uhn.fhir.util.TestUtil;
 
 public class SearchParamExtractorDstu3Test {
+	private static final org.slf4j.Logger ourLog = org.slf4j.LoggerFactory.getLogger(SearchParamExtractorDstu3Test.class);
 
 	private static FhirContext ourCtx = FhirContext.forDstu3();
 	private static IValidationSupport ourValidationSupport;
@@ -45,5 +67,122 @@ public class SearchParamExtractorDstu3Test {
 		assertEquals("SYSTEM", token.getSystem());
 		assertEquals("CODE", token.getValue());
 	}
-	
+
+	@Test
+	public void testConcurrentExtraction() throws Exception {
+		final SearchParamExtractorDstu3 extractor = new SearchParamExtractorDstu3(ourCtx, ourValidationSupport);
+		final Patient patient = createLargePatient(0);
+		final int expected = extractAll(extractor, patient);
+
+		ExecutorService executor = Executors.newFixedThreadPool(4);
+		try {
+			List<Future<Integer>> futures = new ArrayList<Future<Integer>>();
+			for (int i = 0; i < 20; i++) {
+				futures.add(executor.submit(new Callable<Integer>() {
+					@Override
+					public Integer call() throws Exception {
+						return extractAll(extractor, patient);
+					}
+				}));
+			}
+			for (Future<Integer> next : futures) {
+				assertEquals(expected, next.get().intValue());
+			}
+		} finally {
+			executor.shutdown();
+		}
+	}
+
+	/**
+	 * Not really a test, but logs how long indexing a batch of large resources
+	 * takes with the shared engine and cached expressions compared to creating
+	 * an engine and parsing each expression on every call
+	 */
+	@Test
+	@Ignore
+	public void testExtractionPerformance() {
+		List<IBaseResource> resources = new ArrayList<IBaseResource>();
+		for (int i = 0; i < 100; i++) {
+			resources.add(createLargePatient(i));
+			resources.add(createLargeExplanationOfBenefit(i));
+		}
+
+		SearchParamExtractorDstu3 cached = new SearchParamExtractorDstu3(ourCtx, ourValidationSupport);
+		SearchParamExtractorDstu3 uncached = new SearchParamExtractorDstu3(ourCtx, ourValidationSupport) {
+			@Override
+			protected List<Object> extractValues(String thePaths, IBaseResource theResource) {
+				FHIRPathEngine fp = new FHIRPathEngine(new HapiWorkerContext(ourCtx, ourValidationSupport));
+				List<Object> values = new ArrayList<Object>();
+				try {
+					for (String nextPath : SPLIT.split(thePaths)) {
+						values.addAll(fp.evaluate((Base) theResource, nextPath));
+					}
+				} catch (FHIRException e) {
+					throw new InternalErrorException(e);
+				}
+				return values;
+			}
+		};
+
+		// Warm up
+		int cachedCount = extractAll(cached, resources);
+		int uncachedCount = extractAll(uncached, resources);
+		assertEquals(uncachedCount, cachedCount);
+
+		StopWatch sw = new StopWatch();
+		extractAll(uncached, resources);
+		long uncachedMillis = sw.getMillisAndRestart();
+		extractAll(cached, resources);
+		long cachedMillis = sw.getMillis();
+
+		ourLog.info("Extracted {} params from {} resources: {}ms without cached expressions, {}ms with", new Object[] { cachedCount, resources.size(), uncachedMillis, cachedMillis });
+	}
+
+	private static int extractAll(SearchParamExtractorDstu3 theExtractor, List<IBaseResource> theResources) {
+		int retVal = 0;
+		for (IBaseResource next : theResources) {
+			retVal += extractAll(theExtractor, next);
+		}
+		return retVal;
+	}
+
+	private static int extractAll(SearchParamExtractorDstu3 theExtractor, IBaseResource theResource) {
+		ResourceTable entity = new ResourceTable();
+		int retVal = 0;
+		retVal += theExtractor.extractSearchParamCoords(entity, theResource).size();
+		retVal += theExtractor.extractSearchParamDates(entity, theResource).size();
+		retVal += theExtractor.extractSearchParamNumber(entity, theResource).size();
+		retVal += theExtractor.extractSearchParamQuantity(entity, theResource).size();
+		retVal += theExtractor.extractSearchParamStrings(entity, theResource).size();
+		retVal += theExtractor.extractSearchParamTokens(entity, theResource).size();
+		retVal += theExtractor.extractSearchParamUri(entity, theResource).size();
+		return retVal;
+	}
+
+	private static Patient createLargePatient(int theIndex) {
+		Patient patient = new Patient();
+		for (int i = 0; i < 10; i++) {
+			patient.addIdentifier().setSystem("urn:system:" + i).setValue("ID" + theIndex + "-" + i);
+			patient.addName().setFamily("FAMILY" + i).addGiven("GIVEN" + i).addPrefix("PREFIX");
+			patient.addTelecom().setValue("555-" + i);
+			patient.addAddress().addLine("LINE " + i).setCity("CITY" + i).setState("STATE").setPostalCode("POSTAL" + i).setCountry("COUNTRY");
+			patient.addGeneralPractitioner(new Reference("Practitioner/" + i));
+		}
+		patient.setActive(true);
+		return patient;
+	}
+
+	private static ExplanationOfBenefit createLargeExplanationOfBenefit(int theIndex) {
+		ExplanationOfBenefit eob = new ExplanationOfBenefit();
+		eob.addIdentifier().setSystem("urn:eob").setValue("EOB" + theIndex);
+		eob.setPatient(new Reference("Patient/" + theIndex));
+		eob.setProvider(new Reference("Practitioner/" + theIndex));
+		eob.setOrganization(new Reference("Organization/" + theIndex));
+		eob.setClaim(new Reference("Claim/" + theIndex));
+		for (int i = 0; i < 20; i++) {
+			eob.addItem().setSequence(i).setServiced(new DateType(new Date())).setService(new CodeableConcept().addCoding(new Coding("urn:service", "S" + i, null)));
+		}
+		return eob;
+	}
+
 }
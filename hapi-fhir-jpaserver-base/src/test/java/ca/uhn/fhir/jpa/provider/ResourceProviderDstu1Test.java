@@ -39,6 +39,8 @@ import ca.uhn.fhir.jpa.dao.BaseJpaTest;
 import ca.uhn.fhir.jpa.dao.DaoConfig;
 import ca.uhn.fhir.jpa.dao.IFhirResourceDao;
 import ca.uhn.fhir.jpa.dao.IFhirSystemDao;
+import ca.uhn.fhir.jpa.dao.ForcedIdCacheSvc;
+import ca.uhn.fhir.jpa.dao.TagDefinitionCacheSvc;
 import ca.uhn.fhir.jpa.testutil.RandomServerPortProvider;
 import ca.uhn.fhir.model.api.Bundle;
 import ca.uhn.fhir.model.api.IResource;
@@ -594,6 +596,8 @@ public class ResourceProviderDstu1Test  extends BaseJpaTest {
 	@Before
 	public void before() {
 		super.purgeDatabase(ourEntityManager, ourTxManager);
+		ourAppCtx.getBean(TagDefinitionCacheSvc.class).clearCache();
+		ourAppCtx.getBean(ForcedIdCacheSvc.class).clearCache();
 	}
 
 }
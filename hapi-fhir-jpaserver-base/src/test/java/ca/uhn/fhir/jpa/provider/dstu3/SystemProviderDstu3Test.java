@@ -1,6 +1,7 @@
 package ca.uhn.fhir.jpa.provider.dstu3;
 
 import static org.hamcrest.Matchers.containsString;
+import static org.hamcrest.Matchers.instanceOf;
 import static org.hamcrest.Matchers.not;
 import static org.hamcrest.Matchers.startsWith;
 import static org.junit.Assert.assertEquals;
@@ -381,6 +382,24 @@ public class SystemProviderDstu3Test extends BaseJpaDstu3Test {
 		}
 	}
 	
+	@Test
+	public void testReindexStatus() throws Exception {
+		Patient p = new Patient();
+		p.addName().setFamily("family");
+		myPatientDao.create(p, mySrd);
+
+		mySystemDao.markAllResourcesForReindexing();
+		myResourceReindexingSvc.runReindexingPass();
+
+		Parameters output = ourClient.operation().onServer().named("$reindex-status").withNoParameters(Parameters.class).execute();
+		ourLog.info(ourCtx.newXmlParser().setPrettyPrint(true).encodeResourceToString(output));
+
+		assertEquals("COMPLETE", output.getParameter().get(0).getValue().primitiveValue());
+		assertEquals("status", output.getParameter().get(0).getName());
+		assertEquals("total", output.getParameter().get(1).getName());
+		assertThat(output.getParameter().get(1).getValue(), instanceOf(DecimalType.class));
+	}
+
 	@Transactional(propagation = Propagation.NEVER)
 	@Test
 	public void testSuggestKeywords() throws Exception {
@@ -8,6 +8,7 @@ import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertThat;
 import static org.junit.Assert.fail;
 
+import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
 
@@ -215,6 +216,38 @@ public class TerminologySvcImplTest extends BaseJpaDstu3Test {
 	}
 
 	
+	@Test
+	public void testFindCodesUsesClosure() {
+		IIdType id = createCodeSystem();
+
+		TermConcept childAAB = findCode("childAAB");
+		assertThat(toCodes(new HashSet<TermConcept>(myTermConceptDao.findAncestors(childAAB.getId()))), containsInAnyOrder("ParentA", "childAA"));
+
+		TermConcept parentA = findCode("ParentA");
+		assertThat(toCodes(new HashSet<TermConcept>(myTermConceptDao.findDescendants(parentA.getId()))), containsInAnyOrder("childAA", "childAAA", "childAAB", "childAB"));
+
+		TermConcept parentB = findCode("ParentB");
+		assertThat(myTermConceptDao.findDescendants(parentB.getId()), empty());
+
+		// Reindexing rebuilds the rows for each concept rather than duplicating them
+		mySystemDao.markAllResourcesForReindexing();
+		mySystemDao.performReindexingPass(100);
+		myTermSvc.saveDeferred();
+
+		Set<String> codes = toCodes(myTermSvc.findCodesBelow(id.getIdPartAsLong(), id.getVersionIdPartAsLong(), "ParentA"));
+		assertThat(codes, containsInAnyOrder("ParentA", "childAA", "childAAA", "childAAB", "childAB"));
+		assertEquals(4, myTermConceptDao.findDescendants(parentA.getId()).size());
+	}
+
+	private TermConcept findCode(String theCode) {
+		for (TermConcept next : myTermSvc.findCodes("http://foo")) {
+			if (next.getCode().equals(theCode)) {
+				return next;
+			}
+		}
+		throw new IllegalArgumentException(theCode);
+	}
+
 	@Test
 	public void testCreateDuplicateCodeSystemUri() {
 		CodeSystem codeSystem = new CodeSystem();
@@ -0,0 +1,99 @@
+package ca.uhn.fhir.jpa.util;
+
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.empty;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+
+public class LongListTest {
+
+	@Test
+	public void testAddAndGet() {
+		LongList list = new LongList(1);
+		for (long i = 0; i < 100; i++) {
+			list.addLong(i * 10);
+		}
+		list.add(Long.valueOf(1000));
+
+		assertEquals(101, list.size());
+		assertEquals(0L, list.getLong(0));
+		assertEquals(Long.valueOf(990), list.get(99));
+		assertEquals(1000L, list.getLong(100));
+		assertTrue(list.contains(500L));
+		assertFalse(list.contains(501L));
+		assertFalse(list.contains("500"));
+
+		try {
+			list.getLong(101);
+			fail();
+		} catch (IndexOutOfBoundsException e) {
+			// good
+		}
+	}
+
+	@Test
+	public void testAddAll() {
+		LongList list = new LongList(Arrays.asList(1L, 2L));
+		list.addAll(new LongList(Arrays.asList(3L, 4L)));
+		list.addAll(Arrays.asList(5L));
+		assertThat(list, contains(1L, 2L, 3L, 4L, 5L));
+	}
+
+	@Test
+	public void testCopyOfRangeIsIndependent() {
+		LongList list = new LongList(Arrays.asList(1L, 2L, 3L, 4L));
+		LongList copy = list.copyOfRange(1, 3);
+		copy.add(99L);
+
+		assertThat(copy, contains(2L, 3L, 99L));
+		assertThat(list, contains(1L, 2L, 3L, 4L));
+	}
+
+	@Test
+	public void testEqualsBoxedList() {
+		List<Long> boxed = new ArrayList<Long>(Arrays.asList(3L, 1L, 2L));
+		LongList list = new LongList(boxed);
+		assertEquals(boxed, list);
+		assertEquals(boxed.hashCode(), list.hashCode());
+	}
+
+	@Test
+	public void testInsertRemoveAndSet() {
+		LongList list = new LongList(Arrays.asList(1L, 2L, 3L));
+		list.add(1, 10L);
+		assertThat(list, contains(1L, 10L, 2L, 3L));
+
+		assertEquals(Long.valueOf(2), list.remove(2));
+		assertThat(list, contains(1L, 10L, 3L));
+
+		assertEquals(Long.valueOf(10), list.set(1, 20L));
+		assertThat(list, contains(1L, 20L, 3L));
+
+		list.subList(0, 2).clear();
+		assertThat(list, contains(3L));
+
+		list.clear();
+		assertThat(list, empty());
+	}
+
+	@Test
+	public void testRemoveDuplicatesKeepsFirstOccurrence() {
+		LongList list = new LongList(Arrays.asList(5L, 3L, 5L, 1L, 3L, 9L, 1L));
+		list.removeDuplicates();
+		assertThat(list, contains(5L, 3L, 1L, 9L));
+
+		list = new LongList(Arrays.asList(2L, 1L));
+		list.removeDuplicates();
+		assertThat(list, contains(2L, 1L));
+	}
+
+}
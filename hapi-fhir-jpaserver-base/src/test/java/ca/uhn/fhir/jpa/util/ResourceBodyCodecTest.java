@@ -0,0 +1,158 @@
+package ca.uhn.fhir.jpa.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+import static org.hamcrest.Matchers.lessThan;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.apache.commons.io.IOUtils;
+import org.hl7.fhir.dstu3.model.Bundle;
+import org.hl7.fhir.dstu3.model.Bundle.BundleEntryComponent;
+import org.hl7.fhir.dstu3.model.Resource;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Ignore;
+import org.junit.Test;
+
+import ca.uhn.fhir.context.FhirContext;
+import ca.uhn.fhir.jpa.entity.ResourceEncodingEnum;
+import ca.uhn.fhir.parser.DataFormatException;
+import ca.uhn.fhir.util.TestUtil;
+
+public class ResourceBodyCodecTest {
+
+	private static final org.slf4j.Logger ourLog = org.slf4j.LoggerFactory.getLogger(ResourceBodyCodecTest.class);
+	private static FhirContext ourCtx;
+	private static List<String> ourResourceTypes;
+	private static List<String> ourResources;
+
+	@BeforeClass
+	public static void beforeClass() throws IOException {
+		ourCtx = FhirContext.forDstu3();
+		ourResourceTypes = new ArrayList<String>();
+		ourResources = new ArrayList<String>();
+
+		String input = IOUtils.toString(ResourceBodyCodecTest.class.getResourceAsStream("/david_big_bundle.json"), StandardCharsets.UTF_8);
+		Bundle bundle = ourCtx.newJsonParser().parseResource(Bundle.class, input);
+		for (BundleEntryComponent next : bundle.getEntry()) {
+			Resource resource = next.getResource();
+			ourResourceTypes.add(resource.getResourceType().name());
+			ourResources.add(ourCtx.newJsonParser().encodeResourceToString(resource));
+		}
+
+		input = IOUtils.toString(ResourceBodyCodecTest.class.getResourceAsStream("/allergyintolerance-sd-david.json"), StandardCharsets.UTF_8);
+		ourResourceTypes.add("StructureDefinition");
+		ourResources.add(input);
+	}
+
+	@Test
+	public void testRoundTrip() {
+		for (ResourceEncodingEnum nextEncoding : ResourceEncodingEnum.values()) {
+			IResourceBodyCodec codec = nextEncoding.getCodec();
+			for (int i = 0; i < ourResources.size(); i++) {
+				String type = ourResourceTypes.get(i);
+				byte[] encoded = codec.encode(type, ourResources.get(i));
+				assertEquals(nextEncoding.name(), ourResources.get(i), codec.decode(type, encoded));
+			}
+			assertEquals("", codec.decode("Patient", codec.encode("Patient", "")));
+		}
+	}
+
+	@Test
+	public void testDictionaryDecodeInvalid() {
+		IResourceBodyCodec codec = ResourceEncodingEnum.JSOND.getCodec();
+		byte[] encoded = codec.encode("Patient", "{\"resourceType\":\"Patient\",\"id\":\"1\",\"active\":true}");
+
+		try {
+			codec.decode("Observation", encoded);
+			fail();
+		} catch (DataFormatException e) {
+			assertEquals("Failed to decompress contents: body was not encoded for resource type Observation", e.getMessage());
+		}
+
+		try {
+			codec.decode("Patient", Arrays.copyOf(encoded, encoded.length - 8));
+			fail();
+		} catch (DataFormatException e) {
+			assertEquals("Failed to decompress contents: unexpected end of data", e.getMessage());
+		}
+	}
+
+	/**
+	 * Uses the resources returned by a real Patient/$everything
+	 */
+	@Test
+	public void testCompressedEncodingsAreSmaller() {
+		long jsonSize = 0;
+		for (ResourceEncodingEnum nextEncoding : ResourceEncodingEnum.values()) {
+			IResourceBodyCodec codec = nextEncoding.getCodec();
+
+			long size = 0;
+			for (int i = 0; i < ourResources.size(); i++) {
+				size += codec.encode(ourResourceTypes.get(i), ourResources.get(i)).length;
+			}
+
+			if (nextEncoding == ResourceEncodingEnum.JSON) {
+				jsonSize = size;
+			} else {
+				assertThat(nextEncoding.name(), size, lessThan(jsonSize));
+			}
+		}
+	}
+
+	/**
+	 * Not really a test, but logs the size and the encoding and decoding cost of each encoding,
+	 * using the resources returned by a real Patient/$everything
+	 */
+	@Test
+	@Ignore
+	public void testCompareEncodings() {
+		int iterations = 20;
+		for (ResourceEncodingEnum nextEncoding : ResourceEncodingEnum.values()) {
+			IResourceBodyCodec codec = nextEncoding.getCodec();
+
+			List<byte[]> encoded = new ArrayList<byte[]>();
+			long size = 0;
+			for (int i = 0; i < ourResources.size(); i++) {
+				byte[] next = codec.encode(ourResourceTypes.get(i), ourResources.get(i));
+				encoded.add(next);
+				size += next.length;
+			}
+
+			long encodeNanos = 0;
+			long decodeNanos = 0;
+			for (int pass = 0; pass < iterations; pass++) {
+				long start = System.nanoTime();
+				for (int i = 0; i < ourResources.size(); i++) {
+					codec.encode(ourResourceTypes.get(i), ourResources.get(i));
+				}
+				long middle = System.nanoTime();
+				for (int i = 0; i < ourResources.size(); i++) {
+					codec.decode(ourResourceTypes.get(i), encoded.get(i));
+				}
+				long end = System.nanoTime();
+
+				// The first passes only warm up the JIT
+				if (pass >= iterations / 2) {
+					encodeNanos += middle - start;
+					decodeNanos += end - middle;
+				}
+			}
+
+			int measured = (iterations - iterations / 2) * ourResources.size();
+			ourLog.info("Encoding {}: {} resources stored in {} bytes - {}us per encode, {}us per decode", new Object[] { nextEncoding, ourResources.size(), size, encodeNanos / 1000 / measured, decodeNanos / 1000 / measured });
+		}
+	}
+
+	@AfterClass
+	public static void afterClassClearContext() {
+		TestUtil.clearAllStaticFieldsForUnitTest();
+	}
+
+}
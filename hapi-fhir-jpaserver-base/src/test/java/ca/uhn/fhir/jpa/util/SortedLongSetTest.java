@@ -0,0 +1,176 @@
+package ca.uhn.fhir.jpa.util;
+
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.empty;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+import org.junit.Ignore;
+import org.junit.Test;
+
+public class SortedLongSetTest {
+
+	private static final org.slf4j.Logger ourLog = org.slf4j.LoggerFactory.getLogger(SortedLongSetTest.class);
+
+	@Test
+	public void testContainsAndIndexOf() {
+		SortedLongSet set = SortedLongSet.of(Arrays.asList(7L, 3L, 7L, 1L));
+
+		assertThat(set, contains(1L, 3L, 7L));
+		assertTrue(set.containsLong(3L));
+		assertTrue(set.contains(Long.valueOf(7)));
+		assertFalse(set.containsLong(2L));
+		assertFalse(set.contains("3"));
+		assertEquals(2, set.indexOf(7L));
+		assertEquals(-1, set.indexOf(8L));
+		assertEquals(3L, set.getLong(1));
+	}
+
+	@Test
+	public void testEqualsBoxedSet() {
+		Set<Long> boxed = new HashSet<Long>(Arrays.asList(5L, 100L, -2L));
+		SortedLongSet set = SortedLongSet.of(boxed);
+		assertEquals(boxed, set);
+		assertEquals(set, boxed);
+		assertEquals(boxed.hashCode(), set.hashCode());
+	}
+
+	@Test
+	public void testImmutable() {
+		SortedLongSet set = SortedLongSet.of(1L, 2L);
+		try {
+			set.add(3L);
+			fail();
+		} catch (UnsupportedOperationException e) {
+			// good
+		}
+		try {
+			set.iterator().remove();
+			fail();
+		} catch (UnsupportedOperationException e) {
+			// good
+		}
+	}
+
+	@Test
+	public void testOfReturnsSameInstance() {
+		SortedLongSet set = SortedLongSet.of(1L, 2L);
+		assertSame(set, SortedLongSet.of(set));
+		assertSame(SortedLongSet.empty(), SortedLongSet.of(new ArrayList<Long>()));
+	}
+
+	@Test
+	public void testSetOperations() {
+		SortedLongSet a = SortedLongSet.of(1L, 3L, 5L, 7L, 9L);
+		SortedLongSet b = SortedLongSet.of(3L, 4L, 5L, 10L);
+
+		assertThat(a.intersect(b), contains(3L, 5L));
+		assertThat(a.union(b), contains(1L, 3L, 4L, 5L, 7L, 9L, 10L));
+		assertThat(a.difference(b), contains(1L, 7L, 9L));
+		assertThat(b.difference(a), contains(4L, 10L));
+
+		assertThat(a.intersect(SortedLongSet.empty()), empty());
+		assertSame(a, a.union(SortedLongSet.empty()));
+		assertSame(a, SortedLongSet.empty().union(a));
+		assertSame(a, a.difference(SortedLongSet.empty()));
+		assertThat(a.difference(a), empty());
+	}
+
+	@Test
+	public void testSetOperationsMatchBoxedCollections() {
+		Random random = new Random(123);
+		for (int pass = 0; pass < 50; pass++) {
+			Set<Long> boxedA = new HashSet<Long>();
+			Set<Long> boxedB = new HashSet<Long>();
+			for (int i = 0; i < 200; i++) {
+				boxedA.add((long) random.nextInt(300));
+				boxedB.add((long) random.nextInt(300));
+			}
+			SortedLongSet a = SortedLongSet.of(boxedA);
+			SortedLongSet b = SortedLongSet.of(boxedB);
+
+			Set<Long> expected = new HashSet<Long>(boxedA);
+			expected.retainAll(boxedB);
+			assertEquals(expected, a.intersect(b));
+
+			expected = new HashSet<Long>(boxedA);
+			expected.addAll(boxedB);
+			assertEquals(expected, a.union(b));
+
+			expected = new HashSet<Long>(boxedA);
+			expected.removeAll(boxedB);
+			assertEquals(expected, a.difference(b));
+		}
+	}
+
+	/**
+	 * Not a strict benchmark (timings are logged, not asserted), but compares the
+	 * primitive collections against the boxed collections they replace in the
+	 * search pipeline: an AND intersection, a position lookup for result ordering,
+	 * and an order-preserving de-duplication
+	 */
+	@Test
+	@Ignore
+	public void testPerformanceComparedToBoxedCollections() {
+		int count = 500000;
+		Random random = new Random(456);
+		long[] first = new long[count];
+		long[] second = new long[count];
+		for (int i = 0; i < count; i++) {
+			first[i] = random.nextInt(count * 2);
+			second[i] = random.nextInt(count * 2);
+		}
+
+		for (int pass = 0; pass < 3; pass++) {
+			StopWatch sw = new StopWatch();
+			Set<Long> boxedFirst = new HashSet<Long>();
+			Set<Long> boxedSecond = new HashSet<Long>();
+			for (int i = 0; i < count; i++) {
+				boxedFirst.add(first[i]);
+				boxedSecond.add(second[i]);
+			}
+			boxedFirst.retainAll(boxedSecond);
+			Map<Long, Integer> boxedPositions = new HashMap<Long, Integer>();
+			List<Long> boxedOrder = new ArrayList<Long>();
+			for (int i = 0; i < count; i++) {
+				boxedPositions.put(first[i], i);
+				boxedOrder.add(first[i]);
+			}
+			List<Long> boxedDistinct = new ArrayList<Long>(new LinkedHashSet<Long>(boxedOrder));
+			long boxedMillis = sw.getMillisAndRestart();
+
+			SortedLongSet primitiveFirst = SortedLongSet.of(first.clone());
+			SortedLongSet primitiveSecond = SortedLongSet.of(second.clone());
+			SortedLongSet intersection = primitiveFirst.intersect(primitiveSecond);
+			int[] positions = new int[primitiveFirst.size()];
+			LongList primitiveOrder = new LongList(count);
+			for (int i = 0; i < count; i++) {
+				positions[primitiveFirst.indexOf(first[i])] = i;
+				primitiveOrder.addLong(first[i]);
+			}
+			primitiveOrder.removeDuplicates();
+			long primitiveMillis = sw.getMillisAndRestart();
+
+			assertEquals(boxedFirst.size(), intersection.size());
+			assertEquals(boxedPositions.size(), positions.length);
+			assertEquals(boxedDistinct, primitiveOrder);
+
+			ourLog.info("Pass {} with {} PIDs - Boxed collections: {}ms - Primitive collections: {}ms", new Object[] { pass, count, boxedMillis, primitiveMillis });
+		}
+	}
+
+}
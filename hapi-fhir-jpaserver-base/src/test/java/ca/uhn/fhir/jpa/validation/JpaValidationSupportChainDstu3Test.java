@@ -0,0 +1,64 @@
+package ca.uhn.fhir.jpa.validation;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import org.hl7.fhir.dstu3.hapi.validation.IValidationSupport;
+import org.hl7.fhir.dstu3.model.ValueSet.ConceptSetComponent;
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.Test;
+
+import ca.uhn.fhir.context.FhirContext;
+import ca.uhn.fhir.util.TestUtil;
+
+public class JpaValidationSupportChainDstu3Test {
+
+	private static final String SYSTEM = "http://example.com/system";
+	private static FhirContext ourCtx = FhirContext.forDstu3();
+	private JpaValidationSupportChainDstu3 mySvc;
+	private IValidationSupport mySupport;
+
+	@Before
+	public void before() {
+		mySupport = mock(IValidationSupport.class);
+		when(mySupport.isCodeSystemSupported(any(FhirContext.class), eq(SYSTEM))).thenReturn(true);
+
+		mySvc = new JpaValidationSupportChainDstu3();
+		mySvc.addValidationSupport(mySupport);
+	}
+
+	@Test
+	public void testExpandValueSetCachesNullResult() {
+		ConceptSetComponent include = new ConceptSetComponent();
+		include.setSystem(SYSTEM);
+
+		assertNull(mySvc.expandValueSet(ourCtx, include));
+		assertNull(mySvc.expandValueSet(ourCtx, include));
+
+		verify(mySupport, times(1)).expandValueSet(any(FhirContext.class), any(ConceptSetComponent.class));
+		assertEquals(1, mySvc.getExpansionCacheStats().hitCount());
+	}
+
+	@Test
+	public void testValidateCodeCachesNullResult() {
+		assertNull(mySvc.validateCode(ourCtx, SYSTEM, "A", null));
+		assertNull(mySvc.validateCode(ourCtx, SYSTEM, "A", null));
+
+		verify(mySupport, times(1)).validateCode(any(FhirContext.class), anyString(), anyString(), anyString());
+		assertEquals(1, mySvc.getCodeValidationCacheStats().hitCount());
+	}
+
+	@AfterClass
+	public static void afterClassClearContext() {
+		TestUtil.clearAllStaticFieldsForUnitTest();
+	}
+
+}
@@ -22,13 +22,15 @@ package ca.uhn.fhir.rest.server;
 import static org.apache.commons.lang3.StringUtils.isNotBlank;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Date;
 import java.util.HashSet;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Set;
 import java.util.UUID;
 
-import org.apache.commons.lang3.Validate;
+import org.hl7.fhir.instance.model.api.IBase;
 import org.hl7.fhir.instance.model.api.IBaseResource;
 import org.hl7.fhir.instance.model.api.IIdType;
 import org.hl7.fhir.instance.model.api.IPrimitiveType;
@@ -212,7 +214,6 @@ public class Dstu1BundleFactory implements IVersionSpecificBundleFactory {
 			} else {
 				if (theResult.size() > numToReturn) {
 					searchId = pagingProvider.storeResultList(theResult);
-					Validate.notNull(searchId, "Paging provider returned null searchId");
 				}
 			}
 		}
@@ -250,6 +251,18 @@ public class Dstu1BundleFactory implements IVersionSpecificBundleFactory {
 		}
 	}
 
+	/**
+	 * Streaming is not supported for DSTU1, so this populates the complete bundle (as
+	 * {@link #initializeBundleFromBundleProvider(IRestfulServer, IBundleProvider, EncodingEnum, String, String, boolean, int, Integer, String, BundleTypeEnum, Set) initializeBundleFromBundleProvider}
+	 * does) and returns an empty iterator
+	 */
+	@Override
+	public Iterator<IBase> initializeStreamingBundleFromBundleProvider(IRestfulServer<?> theServer, IBundleProvider theResult, EncodingEnum theResponseEncoding, String theServerBase,
+			String theCompleteUrl, boolean thePrettyPrint, int theOffset, Integer theLimit, String theSearchId, BundleTypeEnum theBundleType, Set<Include> theIncludes, int theBatchSize) {
+		initializeBundleFromBundleProvider(theServer, theResult, theResponseEncoding, theServerBase, theCompleteUrl, thePrettyPrint, theOffset, theLimit, theSearchId, theBundleType, theIncludes);
+		return Collections.<IBase> emptyList().iterator();
+	}
+
 	private void addProfileIfNeeded(IRestfulServer<?> theServer, String theServerBase, IBaseResource nextRes) {
 		RuntimeResourceDefinition def = theServer.getFhirContext().getResourceDefinition(nextRes);
 		if (theServer.getAddProfileTag() == AddProfileTagEnum.ALWAYS || !def.isStandardType()) {
@@ -22,14 +22,14 @@ package ca.uhn.fhir.rest.server.provider.dstu2;
 import static org.apache.commons.lang3.StringUtils.isNotBlank;
 
 import java.util.ArrayList;
-import java.util.Collections;
 import java.util.Date;
 import java.util.HashSet;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Set;
 import java.util.UUID;
 
-import org.apache.commons.lang3.Validate;
+import org.hl7.fhir.instance.model.api.IBase;
 import org.hl7.fhir.instance.model.api.IBaseResource;
 import org.hl7.fhir.instance.model.api.IIdType;
 import org.hl7.fhir.instance.model.api.IPrimitiveType;
@@ -39,7 +39,6 @@ import ca.uhn.fhir.model.api.IResource;
 import ca.uhn.fhir.model.api.Include;
 import ca.uhn.fhir.model.api.ResourceMetadataKeyEnum;
 import ca.uhn.fhir.model.base.composite.BaseResourceReferenceDt;
-import ca.uhn.fhir.model.base.resource.BaseOperationOutcome;
 import ca.uhn.fhir.model.dstu2.resource.Bundle;
 import ca.uhn.fhir.model.dstu2.resource.Bundle.Entry;
 import ca.uhn.fhir.model.dstu2.resource.Bundle.Link;
@@ -50,15 +49,14 @@ import ca.uhn.fhir.model.primitive.InstantDt;
 import ca.uhn.fhir.model.valueset.BundleEntrySearchModeEnum;
 import ca.uhn.fhir.model.valueset.BundleEntryTransactionMethodEnum;
 import ca.uhn.fhir.model.valueset.BundleTypeEnum;
+import ca.uhn.fhir.rest.server.BaseStreamingBundleEntryIterator;
+import ca.uhn.fhir.rest.server.BundleProviderPage;
 import ca.uhn.fhir.rest.server.BundleInclusionRule;
 import ca.uhn.fhir.rest.server.Constants;
 import ca.uhn.fhir.rest.server.EncodingEnum;
 import ca.uhn.fhir.rest.server.IBundleProvider;
-import ca.uhn.fhir.rest.server.IPagingProvider;
 import ca.uhn.fhir.rest.server.IRestfulServer;
 import ca.uhn.fhir.rest.server.IVersionSpecificBundleFactory;
-import ca.uhn.fhir.rest.server.RestfulServerUtils;
-import ca.uhn.fhir.rest.server.exceptions.InternalErrorException;
 import ca.uhn.fhir.util.ResourceReferenceInfo;
 
 public class Dstu2BundleFactory implements IVersionSpecificBundleFactory {
@@ -298,77 +296,29 @@ public class Dstu2BundleFactory implements IVersionSpecificBundleFactory {
 		return false;
 	}
 
+	private void addPagingLinks(BundleProviderPage thePage, EncodingEnum theResponseEncoding, String theServerBase, boolean thePrettyPrint, BundleTypeEnum theBundleType, Set<Include> theIncludes) {
+		String next = thePage.createNextLink(theIncludes, theServerBase, theResponseEncoding, thePrettyPrint, theBundleType);
+		if (next != null) {
+			myBundle.addLink().setRelation(Constants.LINK_NEXT).setUrl(next);
+		}
+		String previous = thePage.createPreviousLink(theIncludes, theServerBase, theResponseEncoding, thePrettyPrint, theBundleType);
+		if (previous != null) {
+			myBundle.addLink().setRelation(Constants.LINK_PREVIOUS).setUrl(previous);
+		}
+	}
+
 	@Override
 	public void initializeBundleFromBundleProvider(IRestfulServer<?> theServer, IBundleProvider theResult, EncodingEnum theResponseEncoding, String theServerBase, String theCompleteUrl,
 			boolean thePrettyPrint, int theOffset, Integer theLimit, String theSearchId, BundleTypeEnum theBundleType, Set<Include> theIncludes) {
 		myBase = theServerBase;
-		
-		int numToReturn;
-		String searchId = null;
-		List<IBaseResource> resourceList;
-		if (theServer.getPagingProvider() == null) {
-			numToReturn = theResult.size();
-			if (numToReturn > 0) {
-				resourceList = theResult.getResources(0, numToReturn);
-			} else {
-				resourceList = Collections.emptyList();
-			}
-			RestfulServerUtils.validateResourceListNotNull(resourceList);
-
-		} else {
-			IPagingProvider pagingProvider = theServer.getPagingProvider();
-			if (theLimit == null) {
-				numToReturn = pagingProvider.getDefaultPageSize();
-			} else {
-				numToReturn = Math.min(pagingProvider.getMaximumPageSize(), theLimit);
-			}
 
-			numToReturn = Math.min(numToReturn, theResult.size() - theOffset);
-			if (numToReturn > 0) {
-				resourceList = theResult.getResources(theOffset, numToReturn + theOffset);
-			} else {
-				resourceList = Collections.emptyList();
-			}
-			RestfulServerUtils.validateResourceListNotNull(resourceList);
-
-			if (theSearchId != null) {
-				searchId = theSearchId;
-			} else {
-				if (theResult.size() > numToReturn) {
-					searchId = pagingProvider.storeResultList(theResult);
-					Validate.notNull(searchId, "Paging provider returned null searchId");
-				}
-			}
-		}
-
-		for (IBaseResource next : resourceList) {
-			if (next.getIdElement() == null || next.getIdElement().isEmpty()) {
-				if (!(next instanceof BaseOperationOutcome)) {
-					throw new InternalErrorException("Server method returned resource of type[" + next.getClass().getSimpleName() + "] with no ID specified (IResource#setId(IdDt) must be called)");
-				}
-			}
-		}
+		BundleProviderPage page = new BundleProviderPage(theServer, theResult, theOffset, theLimit);
+		List<IBaseResource> resourceList = page.loadResources();
+		page.determineSearchId(theSearchId);
 
 		addResourcesToBundle(new ArrayList<IBaseResource>(resourceList), theBundleType, theServerBase, theServer.getBundleInclusionRule(), theIncludes);
 		addRootPropertiesToBundle(null, theServerBase, theCompleteUrl, theResult.size(), theBundleType, theResult.getPublished());
-
-		if (theServer.getPagingProvider() != null) {
-			int limit;
-			limit = theLimit != null ? theLimit : theServer.getPagingProvider().getDefaultPageSize();
-			limit = Math.min(limit, theServer.getPagingProvider().getMaximumPageSize());
-
-			if (searchId != null) {
-				if (theOffset + numToReturn < theResult.size()) {
-					myBundle.addLink().setRelation(Constants.LINK_NEXT)
-							.setUrl(RestfulServerUtils.createPagingLink(theIncludes, theServerBase, searchId, theOffset + numToReturn, numToReturn, theResponseEncoding, thePrettyPrint, theBundleType));
-				}
-				if (theOffset > 0) {
-					int start = Math.max(0, theOffset - limit);
-					myBundle.addLink().setRelation(Constants.LINK_PREVIOUS)
-							.setUrl(RestfulServerUtils.createPagingLink(theIncludes, theServerBase, searchId, start, limit, theResponseEncoding, thePrettyPrint, theBundleType));
-				}
-			}
-		}
+		addPagingLinks(page, theResponseEncoding, theServerBase, thePrettyPrint, theBundleType, theIncludes);
 	}
 
 	@Override
@@ -409,6 +359,46 @@ public class Dstu2BundleFactory implements IVersionSpecificBundleFactory {
 		myBundle.getTotalElement().setValue(theTotalResults);
 	}
 
+	@Override
+	public Iterator<IBase> initializeStreamingBundleFromBundleProvider(final IRestfulServer<?> theServer, IBundleProvider theResult, EncodingEnum theResponseEncoding, final String theServerBase,
+			String theCompleteUrl, boolean thePrettyPrint, int theOffset, Integer theLimit, String theSearchId, final BundleTypeEnum theBundleType, final Set<Include> theIncludes, int theBatchSize) {
+		myBase = theServerBase;
+		myBundle = new Bundle();
+		final Bundle bundle = myBundle;
+
+		BundleProviderPage page = new BundleProviderPage(theServer, theResult, theOffset, theLimit);
+		BaseStreamingBundleEntryIterator entries = new BaseStreamingBundleEntryIterator(theResult, page.getFromIndex(), page.getToIndex(), theBatchSize) {
+			@Override
+			protected List<? extends IBase> createEntries(List<IBaseResource> theResources) {
+				BundleProviderPage.validateResourceIds(theResources);
+
+				myBundle = new Bundle();
+				try {
+					addResourcesToBundle(theResources, theBundleType, theServerBase, theServer.getBundleInclusionRule(), theIncludes);
+					List<Entry> retVal = new ArrayList<Entry>(myBundle.getEntry().size());
+					for (Entry next : myBundle.getEntry()) {
+						boolean foundByReference = next.getSearch().getModeElement().getValueAsEnum() == SearchEntryModeEnum.INCLUDE && !theResources.contains(next.getResource());
+						if (foundByReference && !markReturned(next.getResource())) {
+							continue;
+						}
+						retVal.add(next);
+					}
+					return retVal;
+				} finally {
+					myBundle = bundle;
+				}
+			}
+		};
+
+		// Load the first batch before the search is stored, as initializeBundleFromBundleProvider does
+		entries.hasNext();
+		page.determineSearchId(theSearchId);
+
+		addRootPropertiesToBundle(null, theServerBase, theCompleteUrl, theResult.size(), theBundleType, theResult.getPublished());
+		addPagingLinks(page, theResponseEncoding, theServerBase, thePrettyPrint, theBundleType, theIncludes);
+		return entries;
+	}
+
 	@Override
 	public void initializeWithBundleResource(IBaseResource theBundle) {
 		myBundle = (Bundle) theBundle;
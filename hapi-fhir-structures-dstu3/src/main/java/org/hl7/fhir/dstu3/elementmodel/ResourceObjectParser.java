@@ -0,0 +1,118 @@
+package org.hl7.fhir.dstu3.elementmodel;
+
+import java.io.IOException;
+import java.util.List;
+
+import org.hl7.fhir.dstu3.context.IWorkerContext;
+import org.hl7.fhir.dstu3.elementmodel.Element.SpecialElement;
+import org.hl7.fhir.dstu3.model.Base;
+import org.hl7.fhir.dstu3.model.IdType;
+import org.hl7.fhir.dstu3.model.Narrative;
+import org.hl7.fhir.dstu3.model.PrimitiveType;
+import org.hl7.fhir.dstu3.model.Resource;
+import org.hl7.fhir.dstu3.model.StructureDefinition;
+import org.hl7.fhir.exceptions.DefinitionException;
+import org.hl7.fhir.exceptions.FHIRException;
+import org.hl7.fhir.utilities.Utilities;
+import org.hl7.fhir.utilities.xhtml.XhtmlComposer;
+import org.hl7.fhir.utilities.xhtml.XhtmlNode;
+
+/**
+ * Builds an {@link Element} tree directly from a parsed resource object model, walking
+ * the same structure definition driven properties as {@link JsonParser} does. This
+ * avoids encoding a resource that has already been parsed to a string only to parse it
+ * again before it can be validated.
+ */
+public class ResourceObjectParser {
+
+	private final IWorkerContext myContext;
+
+	public ResourceObjectParser(IWorkerContext theContext) {
+		myContext = theContext;
+	}
+
+	private StructureDefinition getDefinition(String theName) throws FHIRException {
+		StructureDefinition sd = myContext.fetchResource(StructureDefinition.class, "http://hl7.org/fhir/StructureDefinition/" + theName);
+		if (sd == null) {
+			throw new FHIRException("This does not appear to be a FHIR resource (unknown name '" + theName + "')");
+		}
+		return sd;
+	}
+
+	/**
+	 * Returns an element tree for the given resource
+	 */
+	public Element parse(Resource theResource) throws FHIRException {
+		String name = theResource.fhirType();
+		StructureDefinition sd = getDefinition(name);
+
+		Element result = new Element(name, new Property(myContext, sd.getSnapshot().getElement().get(0), sd));
+		result.setType(name);
+		parseChildren(theResource, result);
+		result.numberChildren();
+		return result;
+	}
+
+	private void parseChildren(Base theBase, Element theContext) throws FHIRException {
+		List<Property> properties = theContext.getProperty().getChildProperties(theContext.getName(), null);
+		for (Property property : properties) {
+			String name = property.getName();
+			boolean choice = property.isChoice();
+			String propertyName = choice ? name.substring(0, name.length() - 3) : name;
+
+			if (theBase instanceof Narrative && "div".equals(propertyName)) {
+				parseNarrativeDiv((Narrative) theBase, theContext, property);
+				continue;
+			}
+			if (theBase instanceof PrimitiveType && "value".equals(propertyName)) {
+				// Held as the value of the element itself
+				continue;
+			}
+
+			Base[] values = theBase.getProperty(propertyName.hashCode(), propertyName, false);
+			if (values == null) {
+				continue;
+			}
+			for (Base nextValue : values) {
+				if (nextValue == null || nextValue.isEmpty()) {
+					continue;
+				}
+
+				String elementName = choice ? propertyName + Utilities.capitalize(nextValue.fhirType()) : name;
+				Element element = new Element(elementName, property);
+				theContext.getChildren().add(element);
+
+				if (property.isResource()) {
+					Resource resource = (Resource) nextValue;
+					StructureDefinition sd = getDefinition(resource.fhirType());
+					element.updateProperty(new Property(myContext, sd.getSnapshot().getElement().get(0), sd), SpecialElement.fromProperty(element.getProperty()), property);
+					element.setType(resource.fhirType());
+				} else if (nextValue.hasPrimitiveValue()) {
+					if (nextValue instanceof IdType && theBase instanceof Resource) {
+						// Resource IDs are stored qualified but serialized as just the ID part
+						element.setValue(((IdType) nextValue).getIdPart());
+					} else {
+						element.setValue(nextValue.primitiveValue());
+					}
+				}
+				parseChildren(nextValue, element);
+			}
+		}
+	}
+
+	private void parseNarrativeDiv(Narrative theNarrative, Element theContext, Property theProperty) throws FHIRException {
+		XhtmlNode div = theNarrative.getDiv();
+		if (div == null || div.isEmpty()) {
+			return;
+		}
+		Element element = new Element("div", theProperty);
+		element.setXhtml(div);
+		try {
+			element.setValue(new XhtmlComposer().compose(div));
+		} catch (IOException e) {
+			throw new FHIRException(e);
+		}
+		theContext.getChildren().add(element);
+	}
+
+}
@@ -9,7 +9,9 @@ import javax.xml.parsers.DocumentBuilder;
 import javax.xml.parsers.DocumentBuilderFactory;
 
 import org.apache.commons.lang3.Validate;
+import org.hl7.fhir.dstu3.elementmodel.ResourceObjectParser;
 import org.hl7.fhir.dstu3.model.OperationOutcome.IssueSeverity;
+import org.hl7.fhir.dstu3.model.Resource;
 import org.hl7.fhir.dstu3.model.StructureDefinition;
 import org.hl7.fhir.dstu3.validation.IResourceValidator.BestPracticeWarningLevel;
 import org.hl7.fhir.dstu3.validation.IResourceValidator.IdStatus;
@@ -38,6 +40,9 @@ public class FhirInstanceValidator extends BaseValidatorBridge implements IValid
 	private DocumentBuilderFactory myDocBuilderFactory;
 	private StructureDefinition myStructureDefintion;
 	private IValidationSupport myValidationSupport;
+	private boolean myValidateParsedResources;
+	private HapiWorkerContext myWorkerContext;
+	private FhirContext myWorkerContextFhirContext;
 
 	/**
 	 * Constructor
@@ -97,6 +102,36 @@ public class FhirInstanceValidator extends BaseValidatorBridge implements IValid
 		return myValidationSupport;
 	}
 
+	/**
+	 * Returns the worker context used to validate resources against the given FHIR context. The worker
+	 * context (and the structure definitions it has fetched and cached) is kept for as long as the
+	 * FHIR context and validation support stay the same, rather than being rebuilt for every resource.
+	 * See {@link #invalidateCaches()}
+	 */
+	private synchronized HapiWorkerContext getWorkerContext(FhirContext theCtx) {
+		if (myWorkerContext == null || myWorkerContextFhirContext != theCtx) {
+			myWorkerContext = new HapiWorkerContext(theCtx, myValidationSupport);
+			myWorkerContextFhirContext = theCtx;
+		}
+		return myWorkerContext;
+	}
+
+	/**
+	 * Discards the worker context, along with the structure definitions, value sets and code systems
+	 * it has fetched from the validation support and cached. This should be called whenever those
+	 * resources may have changed, so that the next validation fetches them again.
+	 */
+	public synchronized void invalidateCaches() {
+		myWorkerContext = null;
+	}
+
+	/**
+	 * See {@link #setValidateParsedResources(boolean)}
+	 */
+	public boolean isValidateParsedResources() {
+		return myValidateParsedResources;
+	}
+
 	/**
 	 * Sets the "best practice warning level". When validating, any deviations from best practices will be reported at
 	 * this level.
@@ -123,16 +158,29 @@ public class FhirInstanceValidator extends BaseValidatorBridge implements IValid
 	 * Sets the {@link IValidationSupport validation support} in use by this validator. Default is an instance of
 	 * {@link DefaultProfileValidationSupport} if the no-arguments constructor for this object was used.
 	 */
-	public void setValidationSupport(IValidationSupport theValidationSupport) {
+	public synchronized void setValidationSupport(IValidationSupport theValidationSupport) {
 		myValidationSupport = theValidationSupport;
+		myWorkerContext = null;
 	}
 
-	protected List<ValidationMessage> validate(final FhirContext theCtx, String theInput, EncodingEnum theEncoding) {
-		HapiWorkerContext workerContext = new HapiWorkerContext(theCtx, myValidationSupport);
+	/**
+	 * If set to <code>true</code> (default is <code>false</code>), resources which have already been parsed
+	 * into the DSTU3 object model are validated by walking that object model directly, instead of being
+	 * encoded to a string and then parsed again by the validator. Resources supplied only as a string are
+	 * always validated from that string.
+	 * <p>
+	 * Note that because no string is parsed, this mode does not report the line and column of each issue,
+	 * and can not report problems which can only exist in the raw text (e.g. unknown elements).
+	 * </p>
+	 */
+	public void setValidateParsedResources(boolean theValidateParsedResources) {
+		myValidateParsedResources = theValidateParsedResources;
+	}
 
+	private InstanceValidator newInstanceValidator(FhirContext theCtx) {
 		InstanceValidator v;
 		try {
-			v = new InstanceValidator(workerContext);
+			v = new InstanceValidator(getWorkerContext(theCtx));
 		} catch (Exception e) {
 			throw new ConfigurationException(e);
 		}
@@ -140,6 +188,40 @@ public class FhirInstanceValidator extends BaseValidatorBridge implements IValid
 		v.setBestPracticeWarningLevel(myBestPracticeWarningLevel);
 		v.setAnyExtensionsAllowed(true);
 		v.setResourceIdRule(IdStatus.OPTIONAL);
+		return v;
+	}
+
+	private List<ValidationMessage> removeIgnoredMessages(List<ValidationMessage> theMessages) {
+		for (int i = 0; i < theMessages.size(); i++) {
+			ValidationMessage next = theMessages.get(i);
+			if ("Binding has no source, so can't be checked".equals(next.getMessage())) {
+				theMessages.remove(i);
+				i--;
+			}
+		}
+		return theMessages;
+	}
+
+	protected List<ValidationMessage> validate(FhirContext theCtx, Resource theResource) {
+		InstanceValidator v = newInstanceValidator(theCtx);
+
+		List<ValidationMessage> messages = new ArrayList<ValidationMessage>();
+
+		StructureDefinition profile = findStructureDefinitionForResourceName(theCtx, theResource.fhirType());
+		if (profile != null) {
+			try {
+				org.hl7.fhir.dstu3.elementmodel.Element element = new ResourceObjectParser(getWorkerContext(theCtx)).parse(theResource);
+				v.validate(null, messages, element, profile);
+			} catch (Exception e) {
+				throw new InternalErrorException("Unexpected failure while validating resource", e);
+			}
+		}
+
+		return removeIgnoredMessages(messages);
+	}
+
+	protected List<ValidationMessage> validate(final FhirContext theCtx, String theInput, EncodingEnum theEncoding) {
+		InstanceValidator v = newInstanceValidator(theCtx);
 
 		List<ValidationMessage> messages = new ArrayList<ValidationMessage>();
 
@@ -183,14 +265,7 @@ public class FhirInstanceValidator extends BaseValidatorBridge implements IValid
 			throw new IllegalArgumentException("Unknown encoding: " + theEncoding);
 		}
 
-		for (int i = 0; i < messages.size(); i++) {
-			ValidationMessage next = messages.get(i);
-			if ("Binding has no source, so can't be checked".equals(next.getMessage())) {
-				messages.remove(i);
-				i--;
-			}
-		}
-		return messages;
+		return removeIgnoredMessages(messages);
 	}
 
 	private StructureDefinition findStructureDefinitionForResourceName(final FhirContext theCtx, String resourceName) {
@@ -201,6 +276,9 @@ public class FhirInstanceValidator extends BaseValidatorBridge implements IValid
 
 	@Override
 	protected List<ValidationMessage> validate(IValidationContext<?> theCtx) {
+		if (myValidateParsedResources && theCtx.getResource() instanceof Resource) {
+			return validate(theCtx.getFhirContext(), (Resource) theCtx.getResource());
+		}
 		return validate(theCtx.getFhirContext(), theCtx.getResourceAsString(), theCtx.getResourceAsStringEncoding());
 	}
 
@@ -6,11 +6,11 @@ import static org.apache.commons.lang3.StringUtils.isNotBlank;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
-import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 import org.apache.commons.lang3.Validate;
 import org.hl7.fhir.dstu3.context.IWorkerContext;
@@ -49,7 +49,7 @@ import ca.uhn.fhir.util.CoverageIgnore;
 
 public final class HapiWorkerContext implements IWorkerContext, ValueSetExpander, ValueSetExpanderFactory {
 	private final FhirContext myCtx;
-	private Map<String, Resource> myFetchedResourceCache = new HashMap<String, Resource>();
+	private Map<String, Resource> myFetchedResourceCache = new ConcurrentHashMap<String, Resource>();
 	private IValidationSupport myValidationSupport;
 	private ExpansionProfile myExpansionProfile;
 
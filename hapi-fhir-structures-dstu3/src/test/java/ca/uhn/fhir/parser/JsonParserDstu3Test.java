@@ -22,6 +22,7 @@ import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 
 import java.io.IOException;
+import java.io.StringWriter;
 import java.math.BigDecimal;
 import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
@@ -43,6 +44,7 @@ import org.hl7.fhir.dstu3.model.Binary;
 import org.hl7.fhir.dstu3.model.Bundle;
 import org.hl7.fhir.dstu3.model.Bundle.BundleEntryComponent;
 import org.hl7.fhir.dstu3.model.Bundle.BundleType;
+import org.hl7.fhir.dstu3.model.Bundle.SearchEntryMode;
 import org.hl7.fhir.dstu3.model.Claim;
 import org.hl7.fhir.dstu3.model.Coding;
 import org.hl7.fhir.dstu3.model.Communication;
@@ -68,6 +70,7 @@ import org.hl7.fhir.dstu3.model.Medication;
 import org.hl7.fhir.dstu3.model.MedicationRequest;
 import org.hl7.fhir.dstu3.model.Observation;
 import org.hl7.fhir.dstu3.model.Observation.ObservationStatus;
+import org.hl7.fhir.dstu3.model.Organization;
 import org.hl7.fhir.dstu3.model.Parameters;
 import org.hl7.fhir.dstu3.model.Patient;
 import org.hl7.fhir.dstu3.model.PrimitiveType;
@@ -565,6 +568,44 @@ public class JsonParserDstu3Test {
 		assertEquals("VERSION2", label.getVersion());
 	}
 
+	@Test
+	public void testEncodeBundleToWriterWithStreamingEntries() throws IOException {
+		Bundle complete = new Bundle();
+		complete.setId("BUNDLE");
+		complete.setType(BundleType.SEARCHSET);
+		complete.setTotal(3);
+		complete.addLink().setRelation("self").setUrl("http://example.com/Patient");
+		for (int i = 0; i < 3; i++) {
+			Organization org = new Organization();
+			org.setName("ORG" + i);
+			Patient patient = new Patient();
+			patient.setId("Patient/" + i);
+			patient.addName().setFamily("FAMILY" + i);
+			patient.getManagingOrganization().setResource(org);
+			complete.addEntry().setFullUrl("http://example.com/Patient/" + i).setResource(patient).getSearch().setMode(SearchEntryMode.MATCH);
+		}
+
+		Bundle envelope = new Bundle();
+		envelope.setId("BUNDLE");
+		envelope.setType(BundleType.SEARCHSET);
+		envelope.setTotal(3);
+		envelope.addLink().setRelation("self").setUrl("http://example.com/Patient");
+		List<BundleEntryComponent> entries = new ArrayList<BundleEntryComponent>(complete.getEntry());
+
+		String expected = ourCtx.newJsonParser().setPrettyPrint(true).encodeResourceToString(complete);
+		StringWriter writer = new StringWriter();
+		((JsonParser) ourCtx.newJsonParser().setPrettyPrint(true)).encodeBundleToWriter(envelope, entries.iterator(), writer);
+		String actual = writer.toString();
+		ourLog.info(actual);
+
+		assertEquals(expected, actual);
+		assertEquals(0, envelope.getEntry().size());
+
+		writer = new StringWriter();
+		((JsonParser) ourCtx.newJsonParser()).encodeBundleToWriter(envelope, new ArrayList<BundleEntryComponent>().iterator(), writer);
+		assertThat(writer.toString(), not(containsString("entry")));
+	}
+
 	@Test
 	public void testEncodeBundleNewBundleNoText() {
 
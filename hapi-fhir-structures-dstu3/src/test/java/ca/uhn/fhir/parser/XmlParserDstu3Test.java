@@ -21,6 +21,7 @@ import static org.mockito.Mockito.verify;
 
 import java.io.IOException;
 import java.io.StringReader;
+import java.io.StringWriter;
 import java.nio.charset.StandardCharsets;
 import java.text.SimpleDateFormat;
 import java.util.*;
@@ -37,6 +38,7 @@ import org.hl7.fhir.dstu3.model.Address.AddressUseEnumFactory;
 import org.hl7.fhir.dstu3.model.Bundle.BundleEntryComponent;
 import org.hl7.fhir.dstu3.model.Bundle.BundleLinkComponent;
 import org.hl7.fhir.dstu3.model.Bundle.BundleType;
+import org.hl7.fhir.dstu3.model.Bundle.SearchEntryMode;
 import org.hl7.fhir.dstu3.model.ContactPoint.ContactPointSystem;
 import org.hl7.fhir.dstu3.model.DiagnosticReport.DiagnosticReportStatus;
 import org.hl7.fhir.dstu3.model.ElementDefinition.ElementDefinitionBindingComponent;
@@ -1007,6 +1009,44 @@ public class XmlParserDstu3Test {
 		assertEquals("<Binary xmlns=\"http://hl7.org/fhir\"><content value=\"AQIDBA==\"/></Binary>", output);
 	}
 
+	@Test
+	public void testEncodeBundleToWriterWithStreamingEntries() throws IOException {
+		Bundle complete = new Bundle();
+		complete.setId("BUNDLE");
+		complete.setType(BundleType.SEARCHSET);
+		complete.setTotal(3);
+		complete.addLink().setRelation("self").setUrl("http://example.com/Patient");
+		for (int i = 0; i < 3; i++) {
+			Organization org = new Organization();
+			org.setName("ORG" + i);
+			Patient patient = new Patient();
+			patient.setId("Patient/" + i);
+			patient.addName().setFamily("FAMILY" + i);
+			patient.getManagingOrganization().setResource(org);
+			complete.addEntry().setFullUrl("http://example.com/Patient/" + i).setResource(patient).getSearch().setMode(SearchEntryMode.MATCH);
+		}
+
+		Bundle envelope = new Bundle();
+		envelope.setId("BUNDLE");
+		envelope.setType(BundleType.SEARCHSET);
+		envelope.setTotal(3);
+		envelope.addLink().setRelation("self").setUrl("http://example.com/Patient");
+		List<BundleEntryComponent> entries = new ArrayList<BundleEntryComponent>(complete.getEntry());
+
+		String expected = ourCtx.newXmlParser().setPrettyPrint(true).encodeResourceToString(complete);
+		StringWriter writer = new StringWriter();
+		((XmlParser) ourCtx.newXmlParser().setPrettyPrint(true)).encodeBundleToWriter(envelope, entries.iterator(), writer);
+		String actual = writer.toString();
+		ourLog.info(actual);
+
+		assertEquals(expected, actual);
+		assertEquals(0, envelope.getEntry().size());
+
+		writer = new StringWriter();
+		((XmlParser) ourCtx.newXmlParser()).encodeBundleToWriter(envelope, new ArrayList<BundleEntryComponent>().iterator(), writer);
+		assertThat(writer.toString(), not(containsString("entry")));
+	}
+
 	@Test
 	public void testEncodeBundleWithContained() {
 		DiagnosticReport rpt = new DiagnosticReport();
@@ -3018,6 +3058,75 @@ public class XmlParserDstu3Test {
 		assertEquals(htmlNs, p.getText().getDiv().getValueAsString());
 	}
 
+	/**
+	 * The cursor based reader may split long text runs into several events, make sure
+	 * these are joined back together
+	 */
+	@Test
+	public void testParseNarrativeWithLongTextAndEntities() throws Exception {
+		StringBuilder text = new StringBuilder();
+		for (int i = 0; i < 20000; i++) {
+			text.append(i % 100 == 0 ? "&amp;" : "x");
+		}
+		String htmlNs = "<div xmlns=\"http://www.w3.org/1999/xhtml\">" + text + "<b>BBB &lt; CCC</b>" + text + "</div>";
+		String res = "<Patient xmlns=\"http://hl7.org/fhir\"><id value=\"1333\"/><text>" + htmlNs + "</text></Patient>";
+
+		Patient p = ourCtx.newXmlParser().parseResource(Patient.class, res);
+		assertEquals(htmlNs, p.getText().getDiv().getValueAsString());
+
+		ca.uhn.fhir.model.primitive.XhtmlDt dt = new ca.uhn.fhir.model.primitive.XhtmlDt();
+		dt.setValueAsString(htmlNs);
+		assertEquals(htmlNs, dt.getValueAsString());
+	}
+
+	/**
+	 * Not really a test, but logs the throughput of parsing a large bundle with the XML
+	 * parser, compared to just iterating over the same document using the StAX event API
+	 * (which is what the parser used to do before it did any work)
+	 */
+	@Test
+	@Ignore
+	public void testParseLargeBundlePerformance() throws Exception {
+		Bundle bundle = new Bundle();
+		bundle.setType(BundleType.SEARCHSET);
+		for (int i = 0; i < 2000; i++) {
+			Observation obs = new Observation();
+			obs.setId("Observation/" + i);
+			obs.getText().setDivAsString("<div>Observation <b>" + i + "</b> &amp; some narrative</div>");
+			obs.setStatus(ObservationStatus.FINAL);
+			obs.getCode().addCoding().setSystem("http://loinc.org").setCode("8867-4").setDisplay("Heart rate");
+			obs.setValue(new Quantity().setValue(60 + (i % 40)).setUnit("beats/minute"));
+			obs.setSubject(new Reference("Patient/" + (i % 10)));
+			bundle.addEntry().setFullUrl("http://example.com/Observation/" + i).setResource(obs);
+		}
+		String input = ourCtx.newXmlParser().encodeResourceToString(bundle);
+
+		for (int pass = 0; pass < 2; pass++) {
+			int reps = pass == 0 ? 3 : 10;
+
+			long start = System.currentTimeMillis();
+			for (int i = 0; i < reps; i++) {
+				Bundle parsed = ourCtx.newXmlParser().parseResource(Bundle.class, input);
+				assertEquals(2000, parsed.getEntry().size());
+			}
+			long parseMillis = Math.max(1, System.currentTimeMillis() - start);
+
+			start = System.currentTimeMillis();
+			for (int i = 0; i < reps; i++) {
+				javax.xml.stream.XMLEventReader reader = ca.uhn.fhir.util.XmlUtil.createXmlReader(new StringReader(input));
+				while (reader.hasNext()) {
+					reader.nextEvent();
+				}
+			}
+			long eventMillis = Math.max(1, System.currentTimeMillis() - start);
+
+			if (pass > 0) {
+				ourLog.info("Parsed {} chars {} times in {}ms ({} chars/ms)", input.length(), reps, parseMillis, (input.length() * (long) reps) / parseMillis);
+				ourLog.info("Iterating the same content with XMLEventReader took {}ms", eventMillis);
+			}
+		}
+	}
+
 	@Test
 	public void testParseNestedExtensionsInvalid() {
 		//@formatter:off
@@ -1,13 +1,16 @@
 package ca.uhn.fhir.rest.client;
 
 import static org.hamcrest.Matchers.containsString;
+import static org.hamcrest.Matchers.lessThanOrEqualTo;
 import static org.hamcrest.Matchers.startsWith;
 import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.when;
@@ -18,6 +21,13 @@ import java.io.StringReader;
 import java.nio.charset.Charset;
 import java.nio.charset.StandardCharsets;
 import java.util.*;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
 
 import org.apache.commons.io.IOUtils;
 import org.apache.commons.io.input.ReaderInputStream;
@@ -60,6 +70,7 @@ import ca.uhn.fhir.parser.CustomTypeDstu3Test.MyCustomPatient;
 import ca.uhn.fhir.parser.IParser;
 import ca.uhn.fhir.rest.api.MethodOutcome;
 import ca.uhn.fhir.rest.api.PreferReturnEnum;
+import ca.uhn.fhir.rest.client.api.IClientCallback;
 import ca.uhn.fhir.rest.client.exceptions.FhirClientConnectionException;
 import ca.uhn.fhir.rest.client.exceptions.NonFhirResponseException;
 import ca.uhn.fhir.rest.client.interceptor.CookieInterceptor;
@@ -68,6 +79,7 @@ import ca.uhn.fhir.rest.param.ParamPrefixEnum;
 import ca.uhn.fhir.rest.server.Constants;
 import ca.uhn.fhir.rest.server.EncodingEnum;
 import ca.uhn.fhir.rest.server.exceptions.NotImplementedOperationException;
+import ca.uhn.fhir.rest.server.exceptions.ResourceNotFoundException;
 import ca.uhn.fhir.rest.server.exceptions.UnclassifiedServerFailureException;
 import ca.uhn.fhir.util.TestUtil;
 import ca.uhn.fhir.util.UrlUtil;
@@ -710,6 +722,58 @@ public class GenericClientDstu3Test {
 		assertEquals("http://foo/next", capt.getAllValues().get(0).getURI().toASCIIString());
 	}
 
+	@Test
+	public void testBundlePageIterator() throws Exception {
+		final List<String> responses = new ArrayList<String>();
+		Bundle page2 = new Bundle();
+		page2.addEntry().setResource(new Patient().setId("Patient/2"));
+		page2.addLink().setRelation("next").setUrl("http://example.com/fhir?_getpages=abc&_getpagesoffset=2");
+		responses.add(ourCtx.newXmlParser().encodeResourceToString(page2));
+		Bundle page3 = new Bundle();
+		page3.addEntry().setResource(new Patient().setId("Patient/3"));
+		responses.add(ourCtx.newXmlParser().encodeResourceToString(page3));
+
+		ArgumentCaptor<HttpUriRequest> capt = ArgumentCaptor.forClass(HttpUriRequest.class);
+		when(myHttpClient.execute(capt.capture())).thenReturn(myHttpResponse);
+		when(myHttpResponse.getStatusLine()).thenReturn(new BasicStatusLine(new ProtocolVersion("HTTP", 1, 1), 200, "OK"));
+		when(myHttpResponse.getEntity().getContentType()).thenReturn(new BasicHeader("content-type", Constants.CT_FHIR_XML + "; charset=UTF-8"));
+		final AtomicInteger idx = new AtomicInteger(0);
+		when(myHttpResponse.getEntity().getContent()).thenAnswer(new Answer<InputStream>() {
+			@Override
+			public InputStream answer(InvocationOnMock theInvocation) throws Throwable {
+				return new ReaderInputStream(new StringReader(responses.get(idx.getAndIncrement())), Charsets.UTF_8);
+			}
+		});
+
+		IGenericClient client = ourCtx.newRestfulGenericClient("http://example.com/fhir");
+		Bundle page1 = new Bundle();
+		page1.addEntry().setResource(new Patient().setId("Patient/1"));
+		page1.addLink().setRelation("next").setUrl("http://example.com/fhir?_getpages=abc&_getpagesoffset=1");
+
+		BundlePageIterator<Bundle> iter = new BundlePageIterator<Bundle>(client, page1);
+		iter.setPrefetchNextPage(true);
+
+		List<String> ids = new ArrayList<String>();
+		while (iter.hasNext()) {
+			Bundle next = iter.next();
+			ids.add(next.getEntry().get(0).getResource().getIdElement().getIdPart());
+			// Never more than one page ahead of the consumer
+			assertThat(idx.get(), lessThanOrEqualTo(ids.size()));
+		}
+
+		assertEquals(Arrays.asList("1", "2", "3"), ids);
+		assertEquals(2, capt.getAllValues().size());
+		assertEquals("http://example.com/fhir?_getpages=abc&_getpagesoffset=1", capt.getAllValues().get(0).getURI().toASCIIString());
+		assertEquals("http://example.com/fhir?_getpages=abc&_getpagesoffset=2", capt.getAllValues().get(1).getURI().toASCIIString());
+
+		try {
+			iter.next();
+			fail();
+		} catch (NoSuchElementException e) {
+			// good
+		}
+	}
+
 	@Test
 	public void testExplicitCustomTypeOperation() throws Exception {
 
@@ -1141,6 +1205,112 @@ public class GenericClientDstu3Test {
 		assertEquals(encoded, requestString);
 	}
 
+	@Test
+	public void testReadAsync() throws Exception {
+		Patient patient = new Patient();
+		patient.addName().setFamily("FAM");
+		final String respString = ourCtx.newJsonParser().encodeResourceToString(patient);
+
+		ArgumentCaptor<HttpUriRequest> capt = ArgumentCaptor.forClass(HttpUriRequest.class);
+		when(myHttpClient.execute(capt.capture())).thenReturn(myHttpResponse);
+		when(myHttpResponse.getStatusLine()).thenReturn(new BasicStatusLine(new ProtocolVersion("HTTP", 1, 1), 200, "OK"));
+		when(myHttpResponse.getEntity().getContentType()).thenReturn(new BasicHeader("content-type", Constants.CT_FHIR_JSON + "; charset=UTF-8"));
+		when(myHttpResponse.getEntity().getContent()).thenAnswer(new Answer<InputStream>() {
+			@Override
+			public InputStream answer(InvocationOnMock theInvocation) throws Throwable {
+				return new ReaderInputStream(new StringReader(respString), Charsets.UTF_8);
+			}
+		});
+
+		IGenericClient client = ourCtx.newRestfulGenericClient("http://example.com/fhir");
+
+		final AtomicReference<Patient> callbackResult = new AtomicReference<Patient>();
+		final CountDownLatch latch = new CountDownLatch(1);
+		Future<Patient> future = client.executeAsync(client.read().resource(Patient.class).withId("123"), new IClientCallback<Patient>() {
+			@Override
+			public void onFailure(Throwable theException) {
+				latch.countDown();
+			}
+
+			@Override
+			public void onSuccess(Patient theResult) {
+				callbackResult.set(theResult);
+				latch.countDown();
+			}
+		});
+
+		Patient resp = future.get(10, TimeUnit.SECONDS);
+		assertEquals("FAM", resp.getNameFirstRep().getFamily());
+		assertEquals("http://example.com/fhir/Patient/123", capt.getAllValues().get(0).getURI().toASCIIString());
+
+		assertTrue(latch.await(10, TimeUnit.SECONDS));
+		assertSame(resp, callbackResult.get());
+	}
+
+	@Test
+	public void testAsyncExecutorFollowsPoolMaxTotal() {
+		IRestfulClientFactory factory = ourCtx.getRestfulClientFactory();
+		int poolMaxTotal = factory.getPoolMaxTotal();
+		try {
+			factory.setPoolMaxTotal(7);
+			ThreadPoolExecutor executor = (ThreadPoolExecutor) factory.getAsyncExecutor();
+			assertEquals(7, executor.getCorePoolSize());
+			assertEquals(7, executor.getMaximumPoolSize());
+
+			factory.setPoolMaxTotal(3);
+			assertSame(executor, factory.getAsyncExecutor());
+			assertEquals(3, executor.getCorePoolSize());
+			assertEquals(3, executor.getMaximumPoolSize());
+
+			factory.setPoolMaxTotal(12);
+			assertEquals(12, executor.getCorePoolSize());
+			assertEquals(12, executor.getMaximumPoolSize());
+		} finally {
+			factory.setPoolMaxTotal(poolMaxTotal);
+		}
+	}
+
+	@Test
+	public void testReadAsyncWithErrorResponse() throws Exception {
+		ArgumentCaptor<HttpUriRequest> capt = ArgumentCaptor.forClass(HttpUriRequest.class);
+		when(myHttpClient.execute(capt.capture())).thenReturn(myHttpResponse);
+		when(myHttpResponse.getStatusLine()).thenReturn(new BasicStatusLine(new ProtocolVersion("HTTP", 1, 1), 404, "Not Found"));
+		when(myHttpResponse.getEntity().getContentType()).thenReturn(new BasicHeader("content-type", Constants.CT_TEXT + "; charset=UTF-8"));
+		when(myHttpResponse.getEntity().getContent()).thenAnswer(new Answer<InputStream>() {
+			@Override
+			public InputStream answer(InvocationOnMock theInvocation) throws Throwable {
+				return new ReaderInputStream(new StringReader("Not found"), Charsets.UTF_8);
+			}
+		});
+
+		IGenericClient client = ourCtx.newRestfulGenericClient("http://example.com/fhir");
+
+		final AtomicReference<Throwable> callbackFailure = new AtomicReference<Throwable>();
+		final CountDownLatch latch = new CountDownLatch(1);
+		Future<Patient> future = client.executeAsync(client.read().resource(Patient.class).withId("123"), new IClientCallback<Patient>() {
+			@Override
+			public void onFailure(Throwable theException) {
+				callbackFailure.set(theException);
+				latch.countDown();
+			}
+
+			@Override
+			public void onSuccess(Patient theResult) {
+				latch.countDown();
+			}
+		});
+
+		try {
+			future.get(10, TimeUnit.SECONDS);
+			fail();
+		} catch (ExecutionException e) {
+			assertEquals(ResourceNotFoundException.class, e.getCause().getClass());
+		}
+
+		assertTrue(latch.await(10, TimeUnit.SECONDS));
+		assertEquals(ResourceNotFoundException.class, callbackFailure.get().getClass());
+	}
+
 	@Test
 	public void testReadWithUnparseableResponse() throws Exception {
 		String msg = "{\"resourceTypeeeee\":\"Patient\"}";
@@ -0,0 +1,196 @@
+package ca.uhn.fhir.rest.server;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.hl7.fhir.dstu3.model.Patient;
+import org.hl7.fhir.instance.model.api.IBaseResource;
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.Test;
+
+import ca.uhn.fhir.util.TestUtil;
+
+public class ConcurrentMemoryPagingProviderDstu3Test {
+
+	private long myNow;
+	private ConcurrentMemoryPagingProvider mySvc;
+
+	@Before
+	public void before() {
+		myNow = 1000000L;
+		mySvc = new ConcurrentMemoryPagingProvider(3) {
+			@Override
+			protected long now() {
+				return myNow;
+			}
+		};
+	}
+
+	private IBundleProvider createResultList(int theSize) {
+		List<IBaseResource> resources = new ArrayList<IBaseResource>();
+		for (int i = 0; i < theSize; i++) {
+			resources.add(new Patient());
+		}
+		return new SimpleBundleProvider(resources);
+	}
+
+	@Test
+	public void testEvictOldestWhenSizeExceeded() {
+		String id0 = mySvc.storeResultList(createResultList(1));
+		String id1 = mySvc.storeResultList(createResultList(1));
+		String id2 = mySvc.storeResultList(createResultList(1));
+		String id3 = mySvc.storeResultList(createResultList(1));
+
+		assertEquals(3, mySvc.getSize());
+		assertEquals(1, mySvc.getEvictionCount());
+		assertNull(mySvc.retrieveResultList(id0));
+		assertNotNull(mySvc.retrieveResultList(id1));
+		assertNotNull(mySvc.retrieveResultList(id2));
+		assertNotNull(mySvc.retrieveResultList(id3));
+		assertEquals(3, mySvc.getHitCount());
+		assertEquals(1, mySvc.getMissCount());
+	}
+
+	@Test
+	public void testEvictWhenWeightExceeded() {
+		mySvc.setMaximumWeight(10);
+
+		String id0 = mySvc.storeResultList(createResultList(4));
+		String id1 = mySvc.storeResultList(createResultList(4));
+		assertEquals(8, mySvc.getTotalWeight());
+
+		String id2 = mySvc.storeResultList(createResultList(4));
+		assertEquals(8, mySvc.getTotalWeight());
+		assertNull(mySvc.retrieveResultList(id0));
+		assertNotNull(mySvc.retrieveResultList(id1));
+		assertNotNull(mySvc.retrieveResultList(id2));
+
+		// Heavier than the limit on its own, so not stored and nothing else is evicted
+		assertNull(mySvc.storeResultList(createResultList(11)));
+		assertNotNull(mySvc.retrieveResultList(id1));
+		assertEquals(8, mySvc.getTotalWeight());
+		assertEquals(1, mySvc.getEvictionCount());
+	}
+
+	@Test
+	public void testMaximumWeightSetAfterStoring() {
+		mySvc.storeResultList(createResultList(4));
+		String id1 = mySvc.storeResultList(createResultList(4));
+		assertEquals(8, mySvc.getTotalWeight());
+
+		mySvc.setMaximumWeight(10);
+		String id2 = mySvc.storeResultList(createResultList(4));
+		assertEquals(8, mySvc.getTotalWeight());
+		assertEquals(2, mySvc.getSize());
+		assertNotNull(mySvc.retrieveResultList(id1));
+		assertNotNull(mySvc.retrieveResultList(id2));
+		assertEquals(1, mySvc.getEvictionCount());
+	}
+
+	@Test
+	public void testCustomWeigher() {
+		mySvc.setMaximumWeight(100);
+		mySvc.setWeigher(new ConcurrentMemoryPagingProvider.IWeigher() {
+			@Override
+			public long weigh(IBundleProvider theBundleProvider) {
+				return 30;
+			}
+		});
+
+		mySvc.storeResultList(createResultList(1));
+		mySvc.storeResultList(createResultList(1));
+		assertEquals(60, mySvc.getTotalWeight());
+	}
+
+	@Test
+	public void testExpiry() {
+		mySvc.setTimeToLive(10, TimeUnit.SECONDS);
+
+		String id0 = mySvc.storeResultList(createResultList(1));
+		myNow += 5000;
+		String id1 = mySvc.storeResultList(createResultList(1));
+		assertNotNull(mySvc.retrieveResultList(id0));
+
+		myNow += 5000;
+		assertNull(mySvc.retrieveResultList(id0));
+		assertNotNull(mySvc.retrieveResultList(id1));
+		assertEquals(1, mySvc.getEvictionCount());
+
+		// Expired entries are also evicted when a new list is stored
+		myNow += 5000;
+		mySvc.storeResultList(createResultList(1));
+		assertEquals(1, mySvc.getSize());
+		assertEquals(2, mySvc.getEvictionCount());
+	}
+
+	@Test
+	public void testRetrieveReturnsStoredList() {
+		IBundleProvider list = createResultList(2);
+		String id = mySvc.storeResultList(list);
+		assertSame(list, mySvc.retrieveResultList(id));
+		assertNull(mySvc.retrieveResultList("FOO"));
+	}
+
+	@Test
+	public void testConcurrentAccess() throws Exception {
+		final ConcurrentMemoryPagingProvider svc = new ConcurrentMemoryPagingProvider(50);
+		svc.setMaximumWeight(500);
+
+		ExecutorService executor = Executors.newFixedThreadPool(8);
+		try {
+			List<Future<Integer>> futures = new ArrayList<Future<Integer>>();
+			for (int thread = 0; thread < 8; thread++) {
+				futures.add(executor.submit(new Callable<Integer>() {
+					@Override
+					public Integer call() throws Exception {
+						int found = 0;
+						for (int i = 0; i < 2000; i++) {
+							String id = svc.storeResultList(createResultList(i % 20));
+							if (svc.retrieveResultList(id) != null) {
+								found++;
+							}
+						}
+						return found;
+					}
+				}));
+			}
+			for (Future<Integer> next : futures) {
+				assertNotNull(next.get());
+			}
+		} finally {
+			executor.shutdown();
+		}
+
+		assertEquals(Collections.emptyList(), checkLimits(svc));
+		assertEquals(16000, svc.getHitCount() + svc.getMissCount());
+	}
+
+	private List<String> checkLimits(ConcurrentMemoryPagingProvider theSvc) {
+		List<String> retVal = new ArrayList<String>();
+		if (theSvc.getSize() > theSvc.getMaximumSize()) {
+			retVal.add("Size " + theSvc.getSize());
+		}
+		if (theSvc.getTotalWeight() > theSvc.getMaximumWeight()) {
+			retVal.add("Weight " + theSvc.getTotalWeight());
+		}
+		return retVal;
+	}
+
+	@AfterClass
+	public static void afterClassClearContext() {
+		TestUtil.clearAllStaticFieldsForUnitTest();
+	}
+
+}
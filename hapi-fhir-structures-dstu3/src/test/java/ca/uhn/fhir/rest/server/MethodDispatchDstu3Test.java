@@ -0,0 +1,340 @@
+package ca.uhn.fhir.rest.server;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.io.IOUtils;
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.HttpClientBuilder;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.eclipse.jetty.server.Server;
+import org.eclipse.jetty.servlet.ServletHandler;
+import org.eclipse.jetty.servlet.ServletHolder;
+import org.hl7.fhir.dstu3.model.IdType;
+import org.hl7.fhir.dstu3.model.Parameters;
+import org.hl7.fhir.dstu3.model.Patient;
+import org.hl7.fhir.dstu3.model.StringType;
+import org.hl7.fhir.instance.model.api.IBaseResource;
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Ignore;
+import org.junit.Test;
+
+import ca.uhn.fhir.context.FhirContext;
+import ca.uhn.fhir.rest.annotation.Create;
+import ca.uhn.fhir.rest.annotation.Delete;
+import ca.uhn.fhir.rest.annotation.History;
+import ca.uhn.fhir.rest.annotation.IdParam;
+import ca.uhn.fhir.rest.annotation.Operation;
+import ca.uhn.fhir.rest.annotation.OperationParam;
+import ca.uhn.fhir.rest.annotation.Read;
+import ca.uhn.fhir.rest.annotation.RequiredParam;
+import ca.uhn.fhir.rest.annotation.ResourceParam;
+import ca.uhn.fhir.rest.annotation.Search;
+import ca.uhn.fhir.rest.annotation.Update;
+import ca.uhn.fhir.rest.api.MethodOutcome;
+import ca.uhn.fhir.rest.api.RequestTypeEnum;
+import ca.uhn.fhir.rest.method.BaseMethodBinding;
+import ca.uhn.fhir.rest.method.RequestDetails;
+import ca.uhn.fhir.rest.param.StringParam;
+import ca.uhn.fhir.rest.server.servlet.ServletRequestDetails;
+import ca.uhn.fhir.util.PortUtil;
+import ca.uhn.fhir.util.TestUtil;
+
+public class MethodDispatchDstu3Test {
+
+	private static CloseableHttpClient ourClient;
+	private static FhirContext ourCtx = FhirContext.forDstu3();
+	private static String ourLastMethod;
+	private static final org.slf4j.Logger ourLog = org.slf4j.LoggerFactory.getLogger(MethodDispatchDstu3Test.class);
+	private static int ourPort;
+	private static Server ourServer;
+	private static RestfulServer ourServlet;
+
+	@Before
+	public void before() {
+		ourLastMethod = null;
+	}
+
+	private List<RequestDetails> createRequests() {
+		List<RequestDetails> retVal = new ArrayList<RequestDetails>();
+		retVal.add(createRequest(RequestTypeEnum.GET, null, null, "name", "smith"));
+		retVal.add(createRequest(RequestTypeEnum.POST, null, Constants.PARAM_SEARCH, "name", "smith"));
+		retVal.add(createRequest(RequestTypeEnum.GET, null, null, "family", "smith"));
+		retVal.add(createRequest(RequestTypeEnum.GET, null, null, Constants.PARAM_QUERY, "query03"));
+		retVal.add(createRequest(RequestTypeEnum.GET, null, null, Constants.PARAM_QUERY, "query18"));
+		retVal.add(createRequest(RequestTypeEnum.GET, null, null, Constants.PARAM_QUERY, "unknown"));
+		retVal.add(createRequest(RequestTypeEnum.GET, null, null, Constants.PARAM_QUERY, ""));
+		retVal.add(createRequest(RequestTypeEnum.GET, "1", null));
+		retVal.add(createRequest(RequestTypeEnum.GET, "1/_history/2", Constants.PARAM_HISTORY));
+		retVal.add(createRequest(RequestTypeEnum.GET, null, Constants.PARAM_HISTORY));
+		retVal.add(createRequest(RequestTypeEnum.GET, "1", "$op02"));
+		retVal.add(createRequest(RequestTypeEnum.POST, null, "$op09"));
+		retVal.add(createRequest(RequestTypeEnum.PUT, null, "$op09"));
+		retVal.add(createRequest(RequestTypeEnum.GET, null, "$unknown"));
+		retVal.add(createRequest(RequestTypeEnum.POST, null, null));
+		retVal.add(createRequest(RequestTypeEnum.PUT, "1", null));
+		retVal.add(createRequest(RequestTypeEnum.DELETE, "1", null));
+		retVal.add(createRequest(RequestTypeEnum.DELETE, "1", "$op02"));
+		return retVal;
+	}
+
+	private RequestDetails createRequest(RequestTypeEnum theRequestType, String theId, String theOperation, String... theParams) {
+		ServletRequestDetails retVal = new ServletRequestDetails();
+		retVal.setServer(ourServlet);
+		retVal.setRequestType(theRequestType);
+		retVal.setResourceName("Patient");
+		if (theId != null) {
+			retVal.setId(new IdType("Patient/" + theId));
+		}
+		retVal.setOperation(theOperation);
+		Map<String, String[]> params = new HashMap<String, String[]>();
+		for (int i = 0; i < theParams.length; i += 2) {
+			params.put(theParams[i], new String[] { theParams[i + 1] });
+		}
+		retVal.setParameters(params);
+		return retVal;
+	}
+
+	private ResourceBinding getPatientBinding() {
+		for (ResourceBinding next : ourServlet.getResourceBindings()) {
+			if ("Patient".equals(next.getResourceName())) {
+				return next;
+			}
+		}
+		throw new IllegalStateException();
+	}
+
+	/**
+	 * Tests every binding in order, which is how requests were dispatched before the
+	 * bindings were indexed
+	 */
+	private BaseMethodBinding<?> getMethodLinear(ResourceBinding theBinding, RequestDetails theRequest) {
+		for (BaseMethodBinding<?> next : theBinding.getMethodBindings()) {
+			if (next.incomingServerRequestMatchesMethod(theRequest)) {
+				return next;
+			}
+		}
+		return null;
+	}
+
+	private void executeGet(String theUrl, int theExpectedStatus) throws Exception {
+		HttpGet httpGet = new HttpGet("http://localhost:" + ourPort + theUrl);
+		CloseableHttpResponse status = ourClient.execute(httpGet);
+		try {
+			String responseContent = IOUtils.toString(status.getEntity().getContent());
+			ourLog.info(responseContent);
+			assertEquals(theExpectedStatus, status.getStatusLine().getStatusCode());
+		} finally {
+			IOUtils.closeQuietly(status.getEntity().getContent());
+		}
+	}
+
+	@Test
+	public void testDispatchMatchesLinearScan() {
+		ResourceBinding binding = getPatientBinding();
+		for (RequestDetails next : createRequests()) {
+			assertSame(next.getRequestType() + " " + next.getOperation() + " " + next.getParameters().keySet(), getMethodLinear(binding, next), binding.getMethod(next));
+		}
+	}
+
+	@Test
+	public void testDispatchOverHttp() throws Exception {
+		executeGet("/Patient?_query=query07", 200);
+		assertEquals("query07", ourLastMethod);
+
+		executeGet("/Patient?name=smith", 200);
+		assertEquals("search", ourLastMethod);
+
+		executeGet("/Patient/1/$op05", 200);
+		assertEquals("$op05", ourLastMethod);
+
+		ourLastMethod = null;
+		executeGet("/Patient?_query=unknown", 400);
+		assertNull(ourLastMethod);
+	}
+
+	@Test
+	public void testMethodAddedAfterIndexing() throws Exception {
+		ResourceBinding binding = getPatientBinding();
+		RequestDetails request = createRequest(RequestTypeEnum.GET, null, null, Constants.PARAM_QUERY, "query03");
+		BaseMethodBinding<?> method = binding.getMethod(request);
+		assertNotNull(method);
+
+		List<BaseMethodBinding<?>> methods = new ArrayList<BaseMethodBinding<?>>(binding.getMethodBindings());
+		binding.setMethods(new ArrayList<BaseMethodBinding<?>>());
+		try {
+			assertNull(binding.getMethod(request));
+			binding.addMethod(method);
+			assertSame(method, binding.getMethod(request));
+		} finally {
+			binding.setMethods(methods);
+		}
+	}
+
+	/**
+	 * Not really a test, but logs the time taken to dispatch a set of requests
+	 * to a resource with a large number of bindings
+	 */
+	@Test
+	@Ignore
+	public void testDispatchPerformance() {
+		ResourceBinding binding = getPatientBinding();
+		List<RequestDetails> requests = createRequests();
+		ourLog.info("Patient has {} method bindings", binding.getMethodBindings().size());
+
+		int reps = 20000;
+		for (int pass = 0; pass < 2; pass++) {
+			long start = System.nanoTime();
+			int found = 0;
+			for (int i = 0; i < reps; i++) {
+				for (RequestDetails next : requests) {
+					if (getMethodLinear(binding, next) != null) {
+						found++;
+					}
+				}
+			}
+			long linear = System.nanoTime() - start;
+
+			start = System.nanoTime();
+			for (int i = 0; i < reps; i++) {
+				for (RequestDetails next : requests) {
+					if (binding.getMethod(next) != null) {
+						found--;
+					}
+				}
+			}
+			long indexed = System.nanoTime() - start;
+
+			assertEquals(0, found);
+			ourLog.info("Pass {}: {} dispatches took {}ms with a linear scan and {}ms with the index", new Object[] { pass, reps * requests.size(), TimeUnit.NANOSECONDS.toMillis(linear), TimeUnit.NANOSECONDS.toMillis(indexed) });
+		}
+	}
+
+	@AfterClass
+	public static void afterClassClearContext() throws Exception {
+		ourServer.stop();
+		TestUtil.clearAllStaticFieldsForUnitTest();
+	}
+
+	@BeforeClass
+	public static void beforeClass() throws Exception {
+		ourPort = PortUtil.findFreePort();
+		ourServer = new Server(ourPort);
+
+		ServletHandler proxyHandler = new ServletHandler();
+		ourServlet = new RestfulServer(ourCtx);
+		ourServlet.setPagingProvider(new FifoMemoryPagingProvider(10));
+
+		ourServlet.setResourceProviders(new PatientProvider());
+		ServletHolder servletHolder = new ServletHolder(ourServlet);
+		proxyHandler.addServletWithMapping(servletHolder, "/*");
+		ourServer.setHandler(proxyHandler);
+		ourServer.start();
+
+		PoolingHttpClientConnectionManager connectionManager = new PoolingHttpClientConnectionManager(5000, TimeUnit.MILLISECONDS);
+		HttpClientBuilder builder = HttpClientBuilder.create();
+		builder.setConnectionManager(connectionManager);
+		ourClient = builder.build();
+	}
+
+	public static class PatientProvider implements IResourceProvider {
+
+		@Create
+		public MethodOutcome create(@ResourceParam Patient thePatient) {
+			ourLastMethod = "create";
+			return new MethodOutcome(new IdType("Patient/1"));
+		}
+
+		@Delete
+		public MethodOutcome delete(@IdParam IdType theId) {
+			ourLastMethod = "delete";
+			return new MethodOutcome();
+		}
+
+		@Override
+		public Class<? extends IBaseResource> getResourceType() {
+			return Patient.class;
+		}
+
+		@History
+		public List<Patient> history() {
+			ourLastMethod = "history";
+			return new ArrayList<Patient>();
+		}
+
+		private Parameters operation(String theName) {
+			ourLastMethod = theName;
+			Parameters retVal = new Parameters();
+			retVal.addParameter().setName("return").setValue(new StringType(theName));
+			return retVal;
+		}
+
+		//@formatter:off
+		@Operation(name = "$op00", idempotent = true) public Parameters op00(@IdParam(optional = true) IdType theId, @OperationParam(name = "p") StringType theP) { return operation("$op00"); }
+		@Operation(name = "$op01", idempotent = true) public Parameters op01(@IdParam(optional = true) IdType theId, @OperationParam(name = "p") StringType theP) { return operation("$op01"); }
+		@Operation(name = "$op02", idempotent = true) public Parameters op02(@IdParam(optional = true) IdType theId, @OperationParam(name = "p") StringType theP) { return operation("$op02"); }
+		@Operation(name = "$op03", idempotent = true) public Parameters op03(@IdParam(optional = true) IdType theId, @OperationParam(name = "p") StringType theP) { return operation("$op03"); }
+		@Operation(name = "$op04", idempotent = true) public Parameters op04(@IdParam(optional = true) IdType theId, @OperationParam(name = "p") StringType theP) { return operation("$op04"); }
+		@Operation(name = "$op05", idempotent = true) public Parameters op05(@IdParam(optional = true) IdType theId, @OperationParam(name = "p") StringType theP) { return operation("$op05"); }
+		@Operation(name = "$op06", idempotent = true) public Parameters op06(@IdParam(optional = true) IdType theId, @OperationParam(name = "p") StringType theP) { return operation("$op06"); }
+		@Operation(name = "$op07", idempotent = true) public Parameters op07(@IdParam(optional = true) IdType theId, @OperationParam(name = "p") StringType theP) { return operation("$op07"); }
+		@Operation(name = "$op08", idempotent = true) public Parameters op08(@IdParam(optional = true) IdType theId, @OperationParam(name = "p") StringType theP) { return operation("$op08"); }
+		@Operation(name = "$op09", idempotent = true) public Parameters op09(@IdParam(optional = true) IdType theId, @OperationParam(name = "p") StringType theP) { return operation("$op09"); }
+
+		@Search(queryName = "query00") public List<Patient> query00() { ourLastMethod = "query00"; return new ArrayList<Patient>(); }
+		@Search(queryName = "query01") public List<Patient> query01() { ourLastMethod = "query01"; return new ArrayList<Patient>(); }
+		@Search(queryName = "query02") public List<Patient> query02() { ourLastMethod = "query02"; return new ArrayList<Patient>(); }
+		@Search(queryName = "query03") public List<Patient> query03() { ourLastMethod = "query03"; return new ArrayList<Patient>(); }
+		@Search(queryName = "query04") public List<Patient> query04() { ourLastMethod = "query04"; return new ArrayList<Patient>(); }
+		@Search(queryName = "query05") public List<Patient> query05() { ourLastMethod = "query05"; return new ArrayList<Patient>(); }
+		@Search(queryName = "query06") public List<Patient> query06() { ourLastMethod = "query06"; return new ArrayList<Patient>(); }
+		@Search(queryName = "query07") public List<Patient> query07() { ourLastMethod = "query07"; return new ArrayList<Patient>(); }
+		@Search(queryName = "query08") public List<Patient> query08() { ourLastMethod = "query08"; return new ArrayList<Patient>(); }
+		@Search(queryName = "query09") public List<Patient> query09() { ourLastMethod = "query09"; return new ArrayList<Patient>(); }
+		@Search(queryName = "query10") public List<Patient> query10() { ourLastMethod = "query10"; return new ArrayList<Patient>(); }
+		@Search(queryName = "query11") public List<Patient> query11() { ourLastMethod = "query11"; return new ArrayList<Patient>(); }
+		@Search(queryName = "query12") public List<Patient> query12() { ourLastMethod = "query12"; return new ArrayList<Patient>(); }
+		@Search(queryName = "query13") public List<Patient> query13() { ourLastMethod = "query13"; return new ArrayList<Patient>(); }
+		@Search(queryName = "query14") public List<Patient> query14() { ourLastMethod = "query14"; return new ArrayList<Patient>(); }
+		@Search(queryName = "query15") public List<Patient> query15() { ourLastMethod = "query15"; return new ArrayList<Patient>(); }
+		@Search(queryName = "query16") public List<Patient> query16() { ourLastMethod = "query16"; return new ArrayList<Patient>(); }
+		@Search(queryName = "query17") public List<Patient> query17() { ourLastMethod = "query17"; return new ArrayList<Patient>(); }
+		@Search(queryName = "query18") public List<Patient> query18() { ourLastMethod = "query18"; return new ArrayList<Patient>(); }
+		@Search(queryName = "query19") public List<Patient> query19() { ourLastMethod = "query19"; return new ArrayList<Patient>(); }
+		//@formatter:on
+
+		@Read(version = true)
+		public Patient read(@IdParam IdType theId) {
+			ourLastMethod = "read";
+			Patient retVal = new Patient();
+			retVal.setId(theId);
+			return retVal;
+		}
+
+		@Search
+		public List<Patient> search(@RequiredParam(name = Patient.SP_NAME) StringParam theName) {
+			ourLastMethod = "search";
+			return new ArrayList<Patient>();
+		}
+
+		@Update
+		public MethodOutcome update(@IdParam IdType theId, @ResourceParam Patient thePatient) {
+			ourLastMethod = "update";
+			return new MethodOutcome();
+		}
+
+	}
+
+}
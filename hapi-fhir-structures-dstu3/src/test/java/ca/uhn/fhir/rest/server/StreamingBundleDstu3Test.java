@@ -0,0 +1,260 @@
+package ca.uhn.fhir.rest.server;
+
+import static org.hamcrest.Matchers.contains;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertThat;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.io.IOUtils;
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.HttpClientBuilder;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.eclipse.jetty.server.Server;
+import org.eclipse.jetty.servlet.ServletHandler;
+import org.eclipse.jetty.servlet.ServletHolder;
+import org.hl7.fhir.dstu3.model.Bundle;
+import org.hl7.fhir.dstu3.model.Bundle.BundleEntryComponent;
+import org.hl7.fhir.dstu3.model.Bundle.SearchEntryMode;
+import org.hl7.fhir.dstu3.model.Organization;
+import org.hl7.fhir.dstu3.model.Patient;
+import org.hl7.fhir.instance.model.api.IBaseResource;
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import ca.uhn.fhir.context.FhirContext;
+import ca.uhn.fhir.model.api.ResourceMetadataKeyEnum;
+import ca.uhn.fhir.model.primitive.InstantDt;
+import ca.uhn.fhir.rest.annotation.Search;
+import ca.uhn.fhir.rest.server.interceptor.IServerInterceptor;
+import ca.uhn.fhir.rest.server.interceptor.InterceptorAdapter;
+import ca.uhn.fhir.util.PortUtil;
+import ca.uhn.fhir.util.TestUtil;
+
+public class StreamingBundleDstu3Test {
+
+	private static CloseableHttpClient ourClient;
+	private static FhirContext ourCtx = FhirContext.forDstu3();
+	private static final org.slf4j.Logger ourLog = org.slf4j.LoggerFactory.getLogger(StreamingBundleDstu3Test.class);
+	private static List<String> ourLoadedRanges = new ArrayList<String>();
+	private static List<Integer> ourLoadedRangeCountWhenStored = new ArrayList<Integer>();
+	private static int ourPort;
+	private static Server ourServer;
+	private static RestfulServer ourServlet;
+
+	@Before
+	public void before() {
+		ourLoadedRanges.clear();
+		ourLoadedRangeCountWhenStored.clear();
+		ourServlet.setStreamingBundleBatchSize(3);
+		ourServlet.setInterceptors(new ArrayList<IServerInterceptor>());
+	}
+
+	private Bundle executeSearch(String theUrl) throws Exception {
+		HttpGet httpGet = new HttpGet(theUrl);
+		CloseableHttpResponse status = ourClient.execute(httpGet);
+		try {
+			String responseContent = IOUtils.toString(status.getEntity().getContent());
+			ourLog.info(responseContent);
+			assertEquals(200, status.getStatusLine().getStatusCode());
+			return ourCtx.newXmlParser().parseResource(Bundle.class, responseContent);
+		} finally {
+			IOUtils.closeQuietly(status.getEntity().getContent());
+		}
+	}
+
+	private List<String> toEntryIds(Bundle theBundle) {
+		List<String> retVal = new ArrayList<String>();
+		for (BundleEntryComponent next : theBundle.getEntry()) {
+			String id = next.getResource().getIdElement().toUnqualifiedVersionless().getValue();
+			if (next.getSearch().getMode() == SearchEntryMode.INCLUDE) {
+				id = "include:" + id;
+			}
+			retVal.add(id);
+		}
+		return retVal;
+	}
+
+	@Test
+	public void testSearchIsLoadedInBatches() throws Exception {
+		Bundle bundle = executeSearch("http://localhost:" + ourPort + "/Patient?_count=7");
+
+		assertThat(ourLoadedRanges, contains("0-3", "3-6", "6-7"));
+		assertEquals(20, bundle.getTotal());
+		assertThat(toEntryIds(bundle), contains("Patient/0", "Patient/1", "Patient/2", "Patient/3", "Patient/4", "Patient/5", "Patient/6"));
+		assertNotNull(bundle.getLink(Constants.LINK_SELF));
+		assertNotNull(bundle.getLink(Constants.LINK_NEXT));
+		assertNull(bundle.getLink(Constants.LINK_PREVIOUS));
+	}
+
+	@Test
+	public void testSearchIsStoredAfterFirstBatchIsLoaded() throws Exception {
+		executeSearch("http://localhost:" + ourPort + "/Patient?_count=7");
+
+		assertThat(ourLoadedRangeCountWhenStored, contains(1));
+	}
+
+	@Test
+	public void testSearchMatchesNonStreamingResponse() throws Exception {
+		Bundle streamed = executeSearch("http://localhost:" + ourPort + "/Patient?_query=withIncludes&_count=5");
+
+		ourServlet.setStreamingBundleBatchSize(0);
+		Bundle complete = executeSearch("http://localhost:" + ourPort + "/Patient?_query=withIncludes&_count=5");
+
+		assertEquals(complete.getTotal(), streamed.getTotal());
+		assertEquals(complete.getType(), streamed.getType());
+		assertEquals(complete.getLink().size(), streamed.getLink().size());
+		assertNotNull(streamed.getMeta().getLastUpdated());
+		assertEquals(toEntryIds(complete).size(), toEntryIds(streamed).size());
+		assertThat(toEntryIds(streamed), contains("Patient/0", "Patient/1", "Patient/2", "include:Organization/O", "Patient/3", "Patient/4"));
+	}
+
+	@Test
+	public void testPagingIsLoadedInBatches() throws Exception {
+		Bundle bundle = executeSearch("http://localhost:" + ourPort + "/Patient?_count=4");
+		String next = bundle.getLink(Constants.LINK_NEXT).getUrl();
+
+		ourLoadedRanges.clear();
+		bundle = executeSearch(next);
+
+		assertThat(ourLoadedRanges, contains("4-7", "7-8"));
+		assertThat(toEntryIds(bundle), contains("Patient/4", "Patient/5", "Patient/6", "Patient/7"));
+		assertNotNull(bundle.getLink(Constants.LINK_NEXT));
+		assertNotNull(bundle.getLink(Constants.LINK_PREVIOUS));
+	}
+
+	@Test
+	public void testNotStreamedWhenInterceptorRegistered() throws Exception {
+		ourServlet.registerInterceptor(new InterceptorAdapter());
+
+		Bundle bundle = executeSearch("http://localhost:" + ourPort + "/Patient?_count=7");
+
+		assertThat(ourLoadedRanges, contains("0-7"));
+		assertEquals(7, bundle.getEntry().size());
+	}
+
+	@Test
+	public void testSummaryCountLoadsOnlyFirstBatch() throws Exception {
+		Bundle bundle = executeSearch("http://localhost:" + ourPort + "/Patient?_count=7&_summary=count");
+
+		assertThat(ourLoadedRanges, contains("0-3"));
+		assertEquals(20, bundle.getTotal());
+		assertEquals(0, bundle.getEntry().size());
+	}
+
+	@AfterClass
+	public static void afterClassClearContext() throws Exception {
+		ourServer.stop();
+		TestUtil.clearAllStaticFieldsForUnitTest();
+	}
+
+	@BeforeClass
+	public static void beforeClass() throws Exception {
+		ourPort = PortUtil.findFreePort();
+		ourServer = new Server(ourPort);
+
+		DummyPatientResourceProvider patientProvider = new DummyPatientResourceProvider();
+
+		ServletHandler proxyHandler = new ServletHandler();
+		ourServlet = new RestfulServer(ourCtx);
+		ourServlet.setPagingProvider(new FifoMemoryPagingProvider(10) {
+			@Override
+			public synchronized String storeResultList(IBundleProvider theList) {
+				ourLoadedRangeCountWhenStored.add(ourLoadedRanges.size());
+				return super.storeResultList(theList);
+			}
+		});
+
+		ourServlet.setResourceProviders(patientProvider);
+		ServletHolder servletHolder = new ServletHolder(ourServlet);
+		proxyHandler.addServletWithMapping(servletHolder, "/*");
+		ourServer.setHandler(proxyHandler);
+		ourServer.start();
+
+		PoolingHttpClientConnectionManager connectionManager = new PoolingHttpClientConnectionManager(5000, TimeUnit.MILLISECONDS);
+		HttpClientBuilder builder = HttpClientBuilder.create();
+		builder.setConnectionManager(connectionManager);
+		ourClient = builder.build();
+
+	}
+
+	public static class DummyPatientResourceProvider implements IResourceProvider {
+
+		@Override
+		public Class<? extends IBaseResource> getResourceType() {
+			return Patient.class;
+		}
+
+		@Search()
+		public IBundleProvider search() {
+			return new RecordingBundleProvider(false);
+		}
+
+		@Search(queryName = "withIncludes")
+		public IBundleProvider searchWithIncludes() {
+			return new RecordingBundleProvider(true);
+		}
+
+	}
+
+	/**
+	 * Returns 20 patients and records which ranges were requested. If includes are
+	 * requested, each page of patients is followed by the same organization, the
+	 * way the JPA server returns included resources.
+	 */
+	private static class RecordingBundleProvider implements IBundleProvider {
+
+		private final Date myPublished = new Date();
+		private final boolean myWithIncludes;
+
+		public RecordingBundleProvider(boolean theWithIncludes) {
+			myWithIncludes = theWithIncludes;
+		}
+
+		@Override
+		public InstantDt getPublished() {
+			return new InstantDt(myPublished);
+		}
+
+		@Override
+		public List<IBaseResource> getResources(int theFromIndex, int theToIndex) {
+			ourLoadedRanges.add(theFromIndex + "-" + theToIndex);
+			List<IBaseResource> retVal = new ArrayList<IBaseResource>();
+			for (int i = theFromIndex; i < theToIndex; i++) {
+				Patient patient = new Patient();
+				patient.setId("Patient/" + i);
+				patient.addName().setFamily("FAMILY" + i);
+				retVal.add(patient);
+			}
+			if (myWithIncludes) {
+				Organization org = new Organization();
+				org.setId("Organization/O");
+				org.setName("ORG");
+				ResourceMetadataKeyEnum.ENTRY_SEARCH_MODE.put(org, "include");
+				retVal.add(org);
+			}
+			return retVal;
+		}
+
+		@Override
+		public Integer preferredPageSize() {
+			return null;
+		}
+
+		@Override
+		public int size() {
+			return 20;
+		}
+
+	}
+
+}
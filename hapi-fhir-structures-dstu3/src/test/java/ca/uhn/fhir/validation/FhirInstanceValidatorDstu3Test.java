@@ -14,6 +14,7 @@ import static org.mockito.Mockito.when;
 import java.io.IOException;
 import java.io.InputStream;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
@@ -96,6 +97,63 @@ public class FhirInstanceValidatorDstu3Test {
 	/**
 	 * See #370
 	 */
+	private List<String> validateAndDescribeMessages(IBaseResource theResource) {
+		List<String> retVal = new ArrayList<String>();
+		for (SingleValidationMessage next : myVal.validateWithResult(theResource).getMessages()) {
+			retVal.add(next.getSeverity() + " " + next.getLocationString() + " " + next.getMessage());
+		}
+		Collections.sort(retVal);
+		return retVal;
+	}
+
+	@Test
+	public void testValidateParsedResourcesMatchesStringValidation() throws Exception {
+		List<IBaseResource> resources = new ArrayList<IBaseResource>();
+
+		Observation obs = new Observation();
+		obs.getCode().addCoding().setSystem("http://loinc.org").setCode("12345");
+		obs.setValue(new StringType("AAA"));
+		resources.add(obs);
+
+		obs = new Observation();
+		obs.setId("Observation/123/_history/2");
+		obs.setStatus(ObservationStatus.FINAL);
+		obs.getCode().setText("No code here!");
+		obs.setValue(new Quantity().setValue(1.5).setUnit("mg").setSystem("http://unitsofmeasure.org").setCode("mg"));
+		obs.setEffective(new DateTimeType("2011-01-02T11:22:33Z"));
+		resources.add(obs);
+
+		RelatedPerson rp = new RelatedPerson();
+		rp.getPatient().setReference("Patient/1");
+		rp.getRelationship().addCoding().setSystem("http://hl7.org/fhir/v2/0131").setCode("GAGAGAGA");
+		resources.add(rp);
+
+		Patient patient = new Patient();
+		patient.getText().setStatus(Narrative.NarrativeStatus.GENERATED).setDivAsString("<div>Hello <b>World</b></div>");
+		patient.addExtension().setUrl("http://example.com/ext").setValue(new StringType("EXT"));
+		patient.getBirthDateElement().addExtension().setUrl("http://example.com/time").setValue(new TimeType("12:00:00"));
+		patient.addName().setFamily("FAMILY").addGiven("GIVEN");
+		Organization org = new Organization();
+		org.setId("#org");
+		org.setName("ORG");
+		patient.getContained().add(org);
+		patient.setManagingOrganization(new Reference("#org"));
+		resources.add(patient);
+
+		resources.add(ourCtx.newXmlParser().parseResource(IOUtils.toString(FhirInstanceValidatorDstu3Test.class.getResourceAsStream("/sample-document.xml"), "UTF-8")));
+
+		for (IBaseResource next : resources) {
+			myInstanceVal.setValidateParsedResources(false);
+			List<String> expected = validateAndDescribeMessages(next);
+
+			myInstanceVal.setValidateParsedResources(true);
+			List<String> actual = validateAndDescribeMessages(next);
+
+			ourLog.info("{} messages for {}", expected.size(), next.getClass().getSimpleName());
+			assertEquals(expected, actual);
+		}
+	}
+
 	@Test
 	public void testValidateRelatedPerson() {
 		
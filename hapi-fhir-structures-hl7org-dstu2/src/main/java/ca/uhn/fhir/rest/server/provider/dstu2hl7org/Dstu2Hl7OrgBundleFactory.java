@@ -26,11 +26,11 @@ import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Date;
 import java.util.HashSet;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Set;
 import java.util.UUID;
 
-import org.apache.commons.lang3.Validate;
 import org.hl7.fhir.instance.model.Bundle;
 import org.hl7.fhir.instance.model.Bundle.BundleEntryComponent;
 import org.hl7.fhir.instance.model.Bundle.BundleLinkComponent;
@@ -38,9 +38,9 @@ import org.hl7.fhir.instance.model.Bundle.HTTPVerb;
 import org.hl7.fhir.instance.model.Bundle.SearchEntryMode;
 import org.hl7.fhir.instance.model.IdType;
 import org.hl7.fhir.instance.model.InstantType;
-import org.hl7.fhir.instance.model.OperationOutcome;
 import org.hl7.fhir.instance.model.Resource;
 import org.hl7.fhir.instance.model.api.IAnyResource;
+import org.hl7.fhir.instance.model.api.IBase;
 import org.hl7.fhir.instance.model.api.IBaseReference;
 import org.hl7.fhir.instance.model.api.IBaseResource;
 import org.hl7.fhir.instance.model.api.IDomainResource;
@@ -50,15 +50,14 @@ import org.hl7.fhir.instance.model.api.IPrimitiveType;
 import ca.uhn.fhir.context.FhirContext;
 import ca.uhn.fhir.model.api.Include;
 import ca.uhn.fhir.model.valueset.BundleTypeEnum;
+import ca.uhn.fhir.rest.server.BaseStreamingBundleEntryIterator;
+import ca.uhn.fhir.rest.server.BundleProviderPage;
 import ca.uhn.fhir.rest.server.BundleInclusionRule;
 import ca.uhn.fhir.rest.server.Constants;
 import ca.uhn.fhir.rest.server.EncodingEnum;
 import ca.uhn.fhir.rest.server.IBundleProvider;
-import ca.uhn.fhir.rest.server.IPagingProvider;
 import ca.uhn.fhir.rest.server.IRestfulServer;
 import ca.uhn.fhir.rest.server.IVersionSpecificBundleFactory;
-import ca.uhn.fhir.rest.server.RestfulServerUtils;
-import ca.uhn.fhir.rest.server.exceptions.InternalErrorException;
 import ca.uhn.fhir.util.ResourceReferenceInfo;
 
 public class Dstu2Hl7OrgBundleFactory implements IVersionSpecificBundleFactory {
@@ -298,75 +297,29 @@ public class Dstu2Hl7OrgBundleFactory implements IVersionSpecificBundleFactory {
     return false;
   }
 
-  @Override
-  public void initializeBundleFromBundleProvider(IRestfulServer<?> theServer, IBundleProvider theResult,
-      EncodingEnum theResponseEncoding, String theServerBase, String theCompleteUrl, boolean thePrettyPrint,
-      int theOffset, Integer theLimit, String theSearchId, BundleTypeEnum theBundleType, Set<Include> theIncludes) {
-    myBase = theServerBase;
-    int numToReturn;
-    String searchId = null;
-    List<IBaseResource> resourceList;
-    if (theServer.getPagingProvider() == null) {
-      numToReturn = theResult.size();
-      if (numToReturn == 0) {
-        resourceList = Collections.emptyList();
-      } else {
-        resourceList = theResult.getResources(0, numToReturn);
-        RestfulServerUtils.validateResourceListNotNull(resourceList);
-      }
-    } else {
-      IPagingProvider pagingProvider = theServer.getPagingProvider();
-      if (theLimit == null) {
-        numToReturn = pagingProvider.getDefaultPageSize();
-      } else {
-        numToReturn = Math.min(pagingProvider.getMaximumPageSize(), theLimit);
-      }
-
-      numToReturn = Math.min(numToReturn, theResult.size() - theOffset);
-      resourceList = theResult.getResources(theOffset, numToReturn + theOffset);
-      RestfulServerUtils.validateResourceListNotNull(resourceList);
-
-      if (theSearchId != null) {
-        searchId = theSearchId;
-      } else {
-        if (theResult.size() > numToReturn) {
-          searchId = pagingProvider.storeResultList(theResult);
-          Validate.notNull(searchId, "Paging provider returned null searchId");
-        }
-      }
+  private void addPagingLinks(BundleProviderPage thePage, EncodingEnum theResponseEncoding, String theServerBase, boolean thePrettyPrint, BundleTypeEnum theBundleType, Set<Include> theIncludes) {
+    String next = thePage.createNextLink(theIncludes, theServerBase, theResponseEncoding, thePrettyPrint, theBundleType);
+    if (next != null) {
+      myBundle.addLink().setRelation(Constants.LINK_NEXT).setUrl(next);
     }
-
-    for (IBaseResource next : resourceList) {
-      if (next.getIdElement() == null || next.getIdElement().isEmpty()) {
-        if (!(next instanceof OperationOutcome)) {
-          throw new InternalErrorException("Server method returned resource of type[" + next.getClass().getSimpleName()
-              + "] with no ID specified (IBaseResource#setId(IdDt) must be called)");
-        }
-      }
+    String previous = thePage.createPreviousLink(theIncludes, theServerBase, theResponseEncoding, thePrettyPrint, theBundleType);
+    if (previous != null) {
+      myBundle.addLink().setRelation(Constants.LINK_PREVIOUS).setUrl(previous);
     }
+  }
 
-    addResourcesToBundle(resourceList, theBundleType, theServerBase, theServer.getBundleInclusionRule(), theIncludes);
-    addRootPropertiesToBundle(null, theServerBase, theCompleteUrl, theResult.size(), theBundleType,
-        theResult.getPublished());
+  @Override
+  public void initializeBundleFromBundleProvider(IRestfulServer<?> theServer, IBundleProvider theResult, EncodingEnum theResponseEncoding, String theServerBase, String theCompleteUrl,
+      boolean thePrettyPrint, int theOffset, Integer theLimit, String theSearchId, BundleTypeEnum theBundleType, Set<Include> theIncludes) {
+    myBase = theServerBase;
 
-    if (theServer.getPagingProvider() != null) {
-      int limit;
-      limit = theLimit != null ? theLimit : theServer.getPagingProvider().getDefaultPageSize();
-      limit = Math.min(limit, theServer.getPagingProvider().getMaximumPageSize());
+    BundleProviderPage page = new BundleProviderPage(theServer, theResult, theOffset, theLimit);
+    List<IBaseResource> resourceList = page.loadResources();
+    page.determineSearchId(theSearchId);
 
-      if (searchId != null) {
-        if (theOffset + numToReturn < theResult.size()) {
-          myBundle.addLink().setRelation(Constants.LINK_NEXT)
-              .setUrl(RestfulServerUtils.createPagingLink(theIncludes, theServerBase, searchId, theOffset + numToReturn,
-                  numToReturn, theResponseEncoding, thePrettyPrint, theBundleType));
-        }
-        if (theOffset > 0) {
-          int start = Math.max(0, theOffset - limit);
-          myBundle.addLink().setRelation(Constants.LINK_PREVIOUS).setUrl(RestfulServerUtils.createPagingLink(
-              theIncludes, theServerBase, searchId, start, limit, theResponseEncoding, thePrettyPrint, theBundleType));
-        }
-      }
-    }
+    addResourcesToBundle(new ArrayList<IBaseResource>(resourceList), theBundleType, theServerBase, theServer.getBundleInclusionRule(), theIncludes);
+    addRootPropertiesToBundle(null, theServerBase, theCompleteUrl, theResult.size(), theBundleType, theResult.getPublished());
+    addPagingLinks(page, theResponseEncoding, theServerBase, thePrettyPrint, theBundleType, theIncludes);
   }
 
   @Override
@@ -408,6 +361,46 @@ public class Dstu2Hl7OrgBundleFactory implements IVersionSpecificBundleFactory {
     myBundle.getTotalElement().setValue(theTotalResults);
   }
 
+  @Override
+  public Iterator<IBase> initializeStreamingBundleFromBundleProvider(final IRestfulServer<?> theServer, IBundleProvider theResult, EncodingEnum theResponseEncoding, final String theServerBase,
+      String theCompleteUrl, boolean thePrettyPrint, int theOffset, Integer theLimit, String theSearchId, final BundleTypeEnum theBundleType, final Set<Include> theIncludes, int theBatchSize) {
+    myBase = theServerBase;
+    myBundle = new Bundle();
+    final Bundle bundle = myBundle;
+
+    BundleProviderPage page = new BundleProviderPage(theServer, theResult, theOffset, theLimit);
+    BaseStreamingBundleEntryIterator entries = new BaseStreamingBundleEntryIterator(theResult, page.getFromIndex(), page.getToIndex(), theBatchSize) {
+      @Override
+      protected List<? extends IBase> createEntries(List<IBaseResource> theResources) {
+        BundleProviderPage.validateResourceIds(theResources);
+
+        myBundle = new Bundle();
+        try {
+          addResourcesToBundle(theResources, theBundleType, theServerBase, theServer.getBundleInclusionRule(), theIncludes);
+          List<BundleEntryComponent> retVal = new ArrayList<BundleEntryComponent>(myBundle.getEntry().size());
+          for (BundleEntryComponent next : myBundle.getEntry()) {
+            boolean foundByReference = next.getSearch().getMode() == SearchEntryMode.INCLUDE && !theResources.contains(next.getResource());
+            if (foundByReference && !markReturned(next.getResource())) {
+              continue;
+            }
+            retVal.add(next);
+          }
+          return retVal;
+        } finally {
+          myBundle = bundle;
+        }
+      }
+    };
+
+    // Load the first batch before the search is stored, as initializeBundleFromBundleProvider does
+    entries.hasNext();
+    page.determineSearchId(theSearchId);
+
+    addRootPropertiesToBundle(null, theServerBase, theCompleteUrl, theResult.size(), theBundleType, theResult.getPublished());
+    addPagingLinks(page, theResponseEncoding, theServerBase, thePrettyPrint, theBundleType, theIncludes);
+    return entries;
+  }
+
   @Override
   public void initializeWithBundleResource(IBaseResource theBundle) {
     myBundle = (Bundle) theBundle;